@@ -1,19 +1,43 @@
 package layer;
 
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import layer.activation.Activation;
+import matrix.FloatMatrix;
 import matrix.Matrix;
+import matrix.QuantizedMatrix;
+import matrix.SparseVector;
 import matrix.Vector;
 
 /**
  * This class is an implementation of a dense layer in a network,
  * it has a number of input nodes and a number of output nodes as well as a 
  * function that propegates forward and backwards
+ * <p>
+ * The weights are held either as a Matrix or, to halve their memory, as a
+ * FloatMatrix. With float weights the inputs, outputs, gradients and bias
+ * stay in double and every product is summed in double
+ * <p>
+ * The input can also be a SparseVector, in which case only the columns of
+ * the weights where the input is non zero are read in forward propagation
+ * and updated in backward propagation
+ * <p>
+ * For inference the weights can also be quantized to 8 bit integers with a
+ * scale for each output, see quantize. A quantized layer quantizes its input
+ * with a scale calibrated from sample inputs, and cannot be trained until
+ * its weights are converted back to double with dequantize
  * 
  * @author Joseph Bronsten
  */
 public class Dense extends Layer {
 
     private Matrix weights;
+    private FloatMatrix floatWeights;
+    private QuantizedMatrix quantizedWeights;
+    private double inputScale;
     private Vector bias;
+    private SparseVector sparseInput;
 
     /**
      * Creates a dense layer with a matrix of weights initialized with He 
@@ -22,13 +46,22 @@ public class Dense extends Layer {
      * @param outputSize the size of the output vector
      */
     public Dense(int inputSize, int outputSize){
-        super(inputSize, outputSize);
+        this(inputSize, outputSize, ThreadLocalRandom.current().nextLong());
+    }
 
-        double max = Math.sqrt(6/inputSize); // He init 
-        // double max = Math.sqrt(6/(inputSize + outputSize)) // Xavier init
-        double min = -max;
+    /**
+     * Creates a dense layer with a matrix of weights initialized with He
+     * initialization from a seed, so the same seed always gives the same
+     * weights, and a bias vector initialized with 0's
+     * @param inputSize the size of the input vector
+     * @param outputSize the size of the output vector
+     * @param seed the seed of the random weights
+     */
+    public Dense(int inputSize, int outputSize, long seed){
+        super(inputSize, outputSize);
 
-        this.weights = new Matrix(outputSize, inputSize, min, max);
+        this.weights = Matrix.he(outputSize, inputSize, seed);
+        // this.weights = Matrix.xavier(outputSize, inputSize, seed);
         this.bias = new Vector(outputSize);
     }
 
@@ -55,6 +88,20 @@ public class Dense extends Layer {
         this(weights.getRows(), weights.getColumns(), weights, bias);
     }
 
+    /**
+     * Creates a dense layer with the input and output sizes, and single 
+     * precision weights and a bias vector
+     * @param inputSize the size of the input vector
+     * @param outputSize the size of the output vector
+     * @param weights the given weights
+     * @param bias the given bias
+     */
+    public Dense(int inputSize, int outputSize, FloatMatrix weights, Vector bias){
+        super(inputSize, outputSize);
+        this.setWeights(weights);
+        this.setBias(bias);
+    }
+
     /**
      * Sets the weight matrix of the dense layer to a given matrix
      * @param weights the given weights matrix
@@ -66,6 +113,135 @@ public class Dense extends Layer {
             throw new IllegalArgumentException("Invalid weights dimensions");
         }
         this.weights = weights;
+        this.floatWeights = null;
+        this.quantizedWeights = null;
+    }
+
+    /**
+     * Sets the weights of the dense layer to a given single precision matrix,
+     * after which the layer holds its weights in float
+     * @param weights the given weights matrix
+     */
+    public void setWeights(FloatMatrix weights) {
+        handleNull(weights, "Weights matrix cannot be null");
+        if(weights.getRows() != this.getOutputSize() || 
+            weights.getColumns() != this.getInputSize()){
+            throw new IllegalArgumentException("Invalid weights dimensions");
+        }
+        this.floatWeights = weights;
+        this.weights = null;
+        this.quantizedWeights = null;
+    }
+
+    /**
+     * Converts the weights of the dense layer to single precision, rounding
+     * each weight to the nearest float. Nothing changes if the weights are
+     * already held in float
+     */
+    public void useSinglePrecision(){
+        if(this.floatWeights == null){
+            setWeights(new FloatMatrix(getWeights()));
+        }
+    }
+
+    /**
+     * Returns if the dense layer holds its weights in single precision
+     * @return true if the weights are a FloatMatrix
+     */
+    public boolean isSinglePrecision(){
+        return this.floatWeights != null;
+    }
+
+    /**
+     * Quantizes the weights of the dense layer to 8 bit integers with a
+     * symmetric scale for each output, and calibrates the scale of the input
+     * from sample inputs. The layer can then only be used for inference. The
+     * outputs of the layer for the samples are compared before and after
+     * quantization to report the drift the quantization causes
+     * @param calibrationInputs sample inputs that cover the range of the
+     * inputs the layer will see
+     * @return the drift of the outputs for the samples
+     */
+    public QuantizationReport quantize(List<Vector> calibrationInputs){
+        handleNull(calibrationInputs, "Calibration inputs cannot be null");
+        for(Vector input : calibrationInputs){
+            handleNull(input, "Calibration inputs cannot be null");
+            if(input.getRows() != this.getInputSize()){
+                throw new IllegalArgumentException("Invalid input dimensions");
+            }
+        }
+        double scale = QuantizedMatrix.calibrate(calibrationInputs);
+        Vector[] expected = new Vector[calibrationInputs.size()];
+        for(int n = 0; n < expected.length; n++){
+            expected[n] = weightedSum(calibrationInputs.get(n));
+        }
+
+        QuantizedMatrix quantized = QuantizedMatrix.quantize(getWeights());
+        this.weights = null;
+        this.floatWeights = null;
+        this.quantizedWeights = quantized;
+        this.inputScale = scale;
+
+        // Compare the outputs before and after quantization
+        double maxError = 0;
+        double errorSum = 0;
+        double errorSquares = 0;
+        double expectedSquares = 0;
+        int agreements = 0;
+        for(int n = 0; n < expected.length; n++){
+            Vector actual = weightedSum(calibrationInputs.get(n));
+            for(int i = 0; i < this.getOutputSize(); i++){
+                double error = Math.abs(actual.get(i) - expected[n].get(i));
+                maxError = Math.max(maxError, error);
+                errorSum += error;
+                errorSquares += error * error;
+                expectedSquares += expected[n].get(i) * expected[n].get(i);
+            }
+            if(actual.argmax() == expected[n].argmax()){
+                agreements++;
+            }
+        }
+        int outputs = expected.length * this.getOutputSize();
+        return new QuantizationReport(expected.length, maxError, errorSum / outputs,
+            expectedSquares == 0 ? 0 : Math.sqrt(errorSquares / expectedSquares),
+            (double) agreements / expected.length);
+    }
+
+    /**
+     * Converts quantized weights back to double precision, so the layer can
+     * be trained again. The weights are the values of the quantized weights,
+     * so the rounding of the quantization is kept. Nothing changes if the
+     * layer is not quantized
+     */
+    public void dequantize(){
+        if(this.quantizedWeights != null){
+            setWeights(this.quantizedWeights.toMatrix());
+        }
+    }
+
+    /**
+     * Returns if the dense layer holds its weights quantized to 8 bits
+     * @return true if quantize has been called since the weights were last set
+     */
+    public boolean isQuantized(){
+        return this.quantizedWeights != null;
+    }
+
+    /**
+     * Returns the quantized weights of the dense layer
+     * @return the weights of the dense layer, or null if the layer is not
+     * quantized
+     */
+    public QuantizedMatrix getQuantizedWeights(){
+        return this.quantizedWeights;
+    }
+
+    /**
+     * Returns the scale the input of a quantized layer is quantized with
+     * @return the input scale, or 0 if the layer is not quantized
+     */
+    public double getInputScale(){
+        return this.quantizedWeights != null ? this.inputScale : 0;
     }
 
     /**
@@ -81,13 +257,29 @@ public class Dense extends Layer {
     }
 
     /**
-     * Returns the weights of the dense layer
+     * Returns the weights of the dense layer. If the layer holds its weights
+     * in single precision or quantized this is a double precision copy of them
      * @return the weights of the dense layer
      */
     public Matrix getWeights(){
+        if(this.quantizedWeights != null){
+            return this.quantizedWeights.toMatrix();
+        }
+        if(this.floatWeights != null){
+            return this.floatWeights.toMatrix();
+        }
         return this.weights;
     }
 
+    /**
+     * Returns the single precision weights of the dense layer
+     * @return the weights of the dense layer, or null if the layer holds its
+     * weights in double precision
+     */
+    public FloatMatrix getFloatWeights(){
+        return this.floatWeights;
+    }
+
     /**
      * Returns the bias of the dense layer
      * @return the bias of the dense layer
@@ -107,6 +299,30 @@ public class Dense extends Layer {
         }
     }
     
+    /**
+     * Computes the weighted sum plus the bias (W * X + b) for an input with
+     * whichever weights the layer holds
+     * @param input the input vector
+     * @return the weighted sum plus the bias
+     */
+    private Vector weightedSum(Vector input) {
+        Vector output = new Vector(this.getOutputSize());
+        if(this.quantizedWeights != null){
+            QuantizedMatrix.affineInto(this.quantizedWeights, input, this.inputScale,
+                this.bias, null, null, output);
+            return output;
+        }
+        if(this.floatWeights != null){
+            FloatMatrix.multiplyInto(this.floatWeights, input, output);
+            output.addInPlace(this.bias);
+            return output;
+        }
+        // The bias is added to each group of rows of the matrix-vector product
+        // as soon as it is computed
+        Matrix.affineInto(this.weights, input, this.bias, null, null, output);
+        return output;
+    }
+
     /**
      * The forward propagation through the layer.
      * @param input the input vector for forward propagation.
@@ -120,15 +336,91 @@ public class Dense extends Layer {
         }
         // Store the input vector for use in backpropagation.
         setInputVector(input);
+        this.sparseInput = null;
+
+        // Compute the weighted sum plus the bias (Z = W * X + b).
+        return weightedSum(input);
+    }
+
+    /**
+     * The forward propagation through the layer followed by an activation
+     * layer, computed in a single pass over the output. The bias and the
+     * activation function are applied to each output value as soon as it is
+     * computed, and the values before the activation are stored in the
+     * activation layer so its backpropagation works as if its forwardProp
+     * had been called.
+     * @param input the input vector for forward propagation.
+     * @param activation the activation layer that follows this layer.
+     * @return the output of the activation layer.
+     */
+    public Vector forwardProp(Vector input, Activation activation) {
+        handleNull(input, "Input cannot be null");
+        handleNull(activation, "Activation cannot be null");
 
-        // Compute the weighted sum (Z = W * X).
-        Matrix output = Matrix.multiply(weights, input);
+        if(input.getRows() != this.getInputSize()){
+            throw new IllegalArgumentException("Invalid input dimensions");
+        }
+        if(activation.getInputSize() != this.getOutputSize()){
+            throw new IllegalArgumentException("Invalid activation dimensions");
+        }
+        // Store the input vector for use in backpropagation.
+        setInputVector(input);
+        this.sparseInput = null;
+
+        // Compute f(W * X + b), keeping Z = W * X + b for the activation.
+        Vector weightedSum = new Vector(this.getOutputSize());
+        Vector output = new Vector(this.getOutputSize());
+        if(this.quantizedWeights != null){
+            QuantizedMatrix.affineInto(this.quantizedWeights, input, this.inputScale,
+                this.bias, activation.getFunction(), weightedSum, output);
+        }
+        else if(this.floatWeights != null){
+            FloatMatrix.affineInto(this.floatWeights, input, this.bias,
+                activation.getFunction(), weightedSum, output);
+        }
+        else {
+            Matrix.affineInto(this.weights, input, this.bias,
+                activation.getFunction(), weightedSum, output);
+        }
+        activation.setInputVector(weightedSum);
+
+        return output;
+    }
+
+    /**
+     * The forward propagation through the layer for a sparse input, which
+     * only reads the columns of the weights where the input is non zero.
+     * @param input the sparse input vector for forward propagation.
+     * @return the result of the forward propagation.
+     */
+    public Vector forwardProp(SparseVector input) {
+        handleNull(input, "Input cannot be null");
+
+        if(input.getRows() != this.getInputSize()){
+            throw new IllegalArgumentException("Invalid input dimensions");
+        }
+        if(this.quantizedWeights != null){
+            // The quantized product reads every column, so the input is
+            // made dense
+            return forwardProp(input.toVector());
+        }
+        // Store the sparse input for use in backpropagation.
+        setInputVector(null);
+        this.sparseInput = input;
+
+        // Compute the weighted sum (Z = W * X) over the non zero inputs.
+        Vector output;
+        if(this.floatWeights != null){
+            output = SparseVector.multiply(this.floatWeights, input);
+        }
+        else {
+            output = SparseVector.multiply(this.weights, input);
+        }
 
         // Add the bias to the weighted sum (Z + b).
-        output = Matrix.add(output, this.bias);
+        output.addInPlace(this.bias);
 
-        // Convert the result to a Vector and return it.
-        return new Vector(output.get());
+        return output;
     }
 
     /**
@@ -141,25 +433,87 @@ public class Dense extends Layer {
         if(outputGrad.getRows() != this.getOutputSize()){
             throw new IllegalArgumentException("Invaild output gradient dimension");
         }
-        // Compute the gradient of the weights (dW = dL/dY * X^T).
-        Matrix weightsGrad = Matrix.multiply(outputGrad, getInputVector().T());
+        if(this.quantizedWeights != null){
+            throw new IllegalStateException(
+                    "A quantized layer cannot be trained");
+        }
+        if(this.sparseInput != null){
+            return backPropSparse(outputGrad);
+        }
+        if(this.floatWeights != null){
+            return backPropSinglePrecision(outputGrad);
+        }
+        // Scale the output gradient by the learning rate.
+        outputGrad.scaleInPlace(super.getLearningRate());
+
+        // Update the weights with the outer product of the scaled output
+        // gradient and the input (W = W - dL/dY * X^T) in one pass, so the
+        // gradient of the weights is never stored.
+        this.weights.addOuterProductInPlace(-1, outputGrad, getInputVector());
 
-        // Scale the weights gradient by the learning rate.
-        weightsGrad.scale(super.getLearningRate());
+        // Update the bias by subtracting the scaled output gradient (b = b - dL/dY).
+        this.bias.subtractInPlace(outputGrad);
 
-        // Scale the output gradient by the learning rate for bias adjustment.
-        outputGrad.scale(super.getLearningRate());
+        // Calculate the input gradient for the next layer (dX = W^T * dL/dY).
+        Vector inputGrad = Vector.multiplyTranspose(this.weights, outputGrad);
+
+        // Return the input gradient for the next layer's backpropagation.
+        return inputGrad;
+    }
+
+    /**
+     * The backward propagation through the layer when the weights are held in
+     * single precision. The weights are updated with the outer product of the
+     * scaled output gradient and the input directly, so the gradient of the
+     * weights is never stored.
+     * @param outputGrad the gradient of the output with respect to the loss function.
+     * @return the gradient of the input with respect to the loss function.
+     */
+    private Vector backPropSinglePrecision(Vector outputGrad) {
+        // Scale the output gradient by the learning rate.
+        outputGrad.scaleInPlace(super.getLearningRate());
 
-        // Update the weights by subtracting the scaled gradient (W = W - dW).
-        this.weights = Matrix.subtract(this.weights, weightsGrad);
+        // Update the weights (W = W - dL/dY * X^T).
+        this.floatWeights.addOuterProductInPlace(-1, outputGrad, getInputVector());
 
         // Update the bias by subtracting the scaled output gradient (b = b - dL/dY).
-        this.bias = Vector.subtract(this.bias, outputGrad);
+        this.bias.subtractInPlace(outputGrad);
 
         // Calculate the input gradient for the next layer (dX = W^T * dL/dY).
-        Vector inputGrad = Vector.multiply(this.weights.T(), outputGrad);
+        Vector inputGrad = new Vector(this.getInputSize());
+        FloatMatrix.multiplyTransposeAInto(this.floatWeights, outputGrad, inputGrad);
+        return inputGrad;
+    }
 
-        // Return the input gradient for the next layer's backpropagation.
+    /**
+     * The backward propagation through the layer after a sparse input. Only
+     * the columns of the weights where the input was non zero are updated.
+     * @param outputGrad the gradient of the output with respect to the loss function.
+     * @return the gradient of the input with respect to the loss function.
+     */
+    private Vector backPropSparse(Vector outputGrad) {
+        // Scale the output gradient by the learning rate.
+        outputGrad.scaleInPlace(super.getLearningRate());
+
+        // Update the touched columns of the weights (W = W - dL/dY * X^T).
+        if(this.floatWeights != null){
+            SparseVector.addOuterProduct(this.floatWeights, -1, outputGrad, this.sparseInput);
+        }
+        else {
+            SparseVector.addOuterProduct(this.weights, -1, outputGrad, this.sparseInput);
+        }
+
+        // Update the bias by subtracting the scaled output gradient (b = b - dL/dY).
+        this.bias.subtractInPlace(outputGrad);
+
+        // Calculate the input gradient for the next layer (dX = W^T * dL/dY).
+        Vector inputGrad = new Vector(this.getInputSize());
+        if(this.floatWeights != null){
+            FloatMatrix.multiplyTransposeAInto(this.floatWeights, outputGrad, inputGrad);
+        }
+        else {
+            Matrix.multiplyTransposeAInto(this.weights, outputGrad, inputGrad);
+        }
         return inputGrad;
     }
 }
@@ -0,0 +1,88 @@
+package layer;
+
+/**
+ * This class describes how far the outputs of a quantized dense layer drift
+ * from the outputs the layer gave before it was quantized, measured over a
+ * set of sample inputs. The outputs compared are the weighted sums plus the
+ * bias, before any activation
+ *
+ * @author Joseph Bronsten
+ */
+public final class QuantizationReport {
+    private final int samples;
+    private final double maxAbsoluteError;
+    private final double meanAbsoluteError;
+    private final double relativeError;
+    private final double argmaxAgreement;
+
+    /**
+     * Creates a report from the errors measured by Dense.quantize
+     * @param samples the number of sample inputs
+     * @param maxAbsoluteError the largest difference of any output
+     * @param meanAbsoluteError the mean difference over every output
+     * @param relativeError the L2 norm of the differences divided by the L2
+     * norm of the outputs before quantization
+     * @param argmaxAgreement the fraction of samples whose largest output is
+     * at the same index before and after quantization
+     */
+    QuantizationReport(int samples, double maxAbsoluteError, double meanAbsoluteError,
+                       double relativeError, double argmaxAgreement){
+        this.samples = samples;
+        this.maxAbsoluteError = maxAbsoluteError;
+        this.meanAbsoluteError = meanAbsoluteError;
+        this.relativeError = relativeError;
+        this.argmaxAgreement = argmaxAgreement;
+    }
+
+    /**
+     * Returns the number of sample inputs the errors were measured over
+     * @return the number of samples
+     */
+    public int getSamples(){
+        return this.samples;
+    }
+
+    /**
+     * Returns the largest difference between an output before and after
+     * quantization
+     * @return the largest absolute error
+     */
+    public double getMaxAbsoluteError(){
+        return this.maxAbsoluteError;
+    }
+
+    /**
+     * Returns the mean difference between the outputs before and after
+     * quantization
+     * @return the mean absolute error
+     */
+    public double getMeanAbsoluteError(){
+        return this.meanAbsoluteError;
+    }
+
+    /**
+     * Returns the L2 norm of the differences of all outputs divided by the L2
+     * norm of the outputs before quantization
+     * @return the relative error, or 0 if every output was 0
+     */
+    public double getRelativeError(){
+        return this.relativeError;
+    }
+
+    /**
+     * Returns the fraction of samples whose largest output is at the same
+     * index before and after quantization, which is how often a classifier
+     * ending in the layer keeps its prediction
+     * @return a value between 0 and 1
+     */
+    public double getArgmaxAgreement(){
+        return this.argmaxAgreement;
+    }
+
+    public String toString() {
+        return String.format("Quantization drift over %d samples: max abs error %.6g, " +
+            "mean abs error %.6g, relative error %.6g, argmax agreement %.4f",
+            this.samples, this.maxAbsoluteError, this.meanAbsoluteError,
+            this.relativeError, this.argmaxAgreement);
+    }
+}
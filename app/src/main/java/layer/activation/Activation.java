@@ -1,8 +1,9 @@
 package layer.activation;
 
+import java.util.function.DoubleUnaryOperator;
+
 import layer.Layer;
 import matrix.Vector;
-import matrix.Matrix;
 
 /**
  * This class represents an abstract activation function for a layer in a neural
@@ -42,11 +43,7 @@ public abstract class Activation extends Layer{
             throw new IllegalArgumentException("Input size mismatch");
         }
         setInputVector(input);
-        for(int index = 0; index <  input.toArray().length; index++){
-            double value = getInputVector().get(index);
-            value = activationFunc(value);
-            input.set(index, value);
-        }
+        input.lazy().map(this::activationFunc).evalInto(input);
         return input;
     }
 
@@ -60,15 +57,22 @@ public abstract class Activation extends Layer{
         if(outputGrad.getRows() != this.getInputSize()){
             throw new IllegalArgumentException("Output gradient size mismatch");
         }
-        Vector inputGrad = new Vector(getInputVector().getRows(), 0);
-        for(int index = 0; index < getInputVector().getRows(); index++){
-            double value = getInputVector().get(index);
-            value = activationPrime(value);
-            inputGrad.set(index, value);
-        }
-        inputGrad = Vector.elementWiseMultiply(outputGrad, inputGrad);
+        Vector inputGrad = new Vector(getInputVector().getRows());
+        outputGrad.lazy()
+            .times(getInputVector().lazy().map(this::activationPrime))
+            .evalInto(inputGrad);
         return inputGrad;
     }
+
+    /**
+     * Returns the activation function as an operator that can be applied to
+     * single values, for kernels that apply it while computing their output
+     * @return the activation function
+     */
+    public DoubleUnaryOperator getFunction(){
+        return this::activationFunc;
+    }
+
     /**
      * The base activation function
      * @param input the input of the function
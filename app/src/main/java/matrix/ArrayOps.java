@@ -0,0 +1,140 @@
+package matrix;
+
+/**
+ * This interface describes the element wise loops over contiguous ranges of
+ * arrays that the matrix kernels are built from. There is a scalar
+ * implementation that works everywhere and an implementation using the SIMD
+ * instructions of the JDK Vector API, which is used when the
+ * jdk.incubator.vector module is available
+ *
+ * @author Joseph Bronsten
+ */
+interface ArrayOps {
+
+    /**
+     * Adds two ranges of values, c[i] = a[i] + b[i]
+     * @param a the array of the first range
+     * @param aIndex the index of the first value of the first range
+     * @param b the array of the second range
+     * @param bIndex the index of the first value of the second range
+     * @param c the array the sums are written to
+     * @param cIndex the index the first sum is written to
+     * @param length the number of values in each range
+     */
+    void add(double[] a, int aIndex, double[] b, int bIndex,
+             double[] c, int cIndex, int length);
+
+    /**
+     * Subtracts two ranges of values, c[i] = a[i] - b[i]
+     * @param a the array of the first range
+     * @param aIndex the index of the first value of the first range
+     * @param b the array of the second range
+     * @param bIndex the index of the first value of the second range
+     * @param c the array the differences are written to
+     * @param cIndex the index the first difference is written to
+     * @param length the number of values in each range
+     */
+    void subtract(double[] a, int aIndex, double[] b, int bIndex,
+                  double[] c, int cIndex, int length);
+
+    /**
+     * Multiplies two ranges of values, c[i] = a[i] * b[i]
+     * @param a the array of the first range
+     * @param aIndex the index of the first value of the first range
+     * @param b the array of the second range
+     * @param bIndex the index of the first value of the second range
+     * @param c the array the products are written to
+     * @param cIndex the index the first product is written to
+     * @param length the number of values in each range
+     */
+    void multiply(double[] a, int aIndex, double[] b, int bIndex,
+                  double[] c, int cIndex, int length);
+
+    /**
+     * Scales a range of values, c[i] = a[i] * scaler
+     * @param a the array of the range
+     * @param aIndex the index of the first value of the range
+     * @param scaler the scaling value
+     * @param c the array the scaled values are written to
+     * @param cIndex the index the first scaled value is written to
+     * @param length the number of values in the range
+     */
+    void scale(double[] a, int aIndex, double scaler,
+               double[] c, int cIndex, int length);
+
+    /**
+     * Computes the dot product of two ranges of values
+     * @param a the array of the first range
+     * @param aIndex the index of the first value of the first range
+     * @param b the array of the second range
+     * @param bIndex the index of the first value of the second range
+     * @param length the number of values in each range
+     * @return the sum of the products of the values
+     */
+    double dot(double[] a, int aIndex, double[] b, int bIndex, int length);
+    /**
+     * Computes the dot products of four rows of a matrix with one range of
+     * values, reading each value of the range once for all four rows
+     * @param a the array of the rows
+     * @param aIndex the index of the first value of the first row
+     * @param aStride the distance between the starts of two rows
+     * @param x the array of the range
+     * @param xIndex the index of the first value of the range
+     * @param y the array the four dot products are written to
+     * @param yIndex the index the first dot product is written to
+     * @param yStep the distance between two dot products in the array
+     * @param length the number of values in each row and in the range
+     */
+    void dot4(double[] a, int aIndex, int aStride, double[] x, int xIndex,
+              double[] y, int yIndex, int yStep, int length);
+
+    /**
+     * Takes the larger of two ranges of values, c[i] = max(a[i], b[i]). A
+     * NaN in either range gives NaN
+     * @param a the array of the first range
+     * @param aIndex the index of the first value of the first range
+     * @param b the array of the second range
+     * @param bIndex the index of the first value of the second range
+     * @param c the array the larger values are written to
+     * @param cIndex the index the first larger value is written to
+     * @param length the number of values in each range
+     */
+    void maximum(double[] a, int aIndex, double[] b, int bIndex,
+                 double[] c, int cIndex, int length);
+
+    /**
+     * Computes the sum of a range of values
+     * @param a the array of the range
+     * @param aIndex the index of the first value of the range
+     * @param length the number of values in the range
+     * @return the sum of the values
+     */
+    double sum(double[] a, int aIndex, int length);
+
+    /**
+     * Computes the sum of the absolute values of a range of values
+     * @param a the array of the range
+     * @param aIndex the index of the first value of the range
+     * @param length the number of values in the range
+     * @return the sum of the absolute values
+     */
+    double sumAbs(double[] a, int aIndex, int length);
+
+    /**
+     * Computes the sum of the squares of a range of values
+     * @param a the array of the range
+     * @param aIndex the index of the first value of the range
+     * @param length the number of values in the range
+     * @return the sum of the squares
+     */
+    double sumSquares(double[] a, int aIndex, int length);
+
+    /**
+     * Finds the largest of a range of values, or NaN if the range holds a NaN
+     * @param a the array of the range
+     * @param aIndex the index of the first value of the range
+     * @param length the number of values in the range, at least 1
+     * @return the largest value
+     */
+    double max(double[] a, int aIndex, int length);
+}
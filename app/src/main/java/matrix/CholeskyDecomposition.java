@@ -0,0 +1,140 @@
+package matrix;
+
+/**
+ * This class is the Cholesky decomposition of a symmetric positive definite
+ * matrix, A = L * L^T, where L is lower triangular with a positive diagonal.
+ * It is created with Matrix.cholesky, and only reads the lower triangle of
+ * the matrix, so the values above the diagonal are never checked to be
+ * symmetric. It takes half of the work of an LU decomposition and needs no
+ * pivoting.
+ * <p>
+ * The matrix is factored BLOCK columns at a time like LUDecomposition, with
+ * the rest of the lower triangle updated by products on the blocked and
+ * parallel kernel used by Matrix.multiply
+ *
+ * @author Joseph Bronsten
+ */
+public final class CholeskyDecomposition {
+    private final double[] l;
+    private final int size;
+
+    /**
+     * Factors a symmetric positive definite matrix, which is copied and not
+     * changed
+     * @param matrix the matrix to factor
+     */
+    CholeskyDecomposition(Matrix matrix){
+        handleNull(matrix, "Matrix cannot be null for decomposition");
+        if(matrix.getRows() != matrix.getColumns()){
+            throw new IllegalArgumentException(
+                "Matrix must be square for Cholesky decomposition. Got shape: " +
+                matrix.getRows() + "x" + matrix.getColumns());
+        }
+        this.size = matrix.getRows();
+        Matrix copy = new Matrix(size, size);
+        OffHeapKernels.copy(matrix, copy);
+        this.l = copy.getData();
+        if(!DecompositionKernels.cholesky(l, size)){
+            throw new IllegalArgumentException(
+                "Matrix is not symmetric positive definite");
+        }
+    }
+
+    private static void handleNull(Object obj, String msg){
+        if(obj == null){
+            throw new NullPointerException(msg);
+        }
+    }
+
+    /**
+     * Returns the number of rows and columns of the factored matrix
+     * @return an int with the size of the matrix
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Returns the lower triangular factor
+     * @return a new matrix with the values of L
+     */
+    public Matrix getL(){
+        return new Matrix(l.clone(), size, size);
+    }
+
+    /**
+     * Returns the determinant of the matrix, the square of the product of the
+     * diagonal of L. The product can overflow for a large matrix
+     * @return the determinant of the matrix
+     */
+    public double determinant(){
+        double result = 1;
+        for(int i = 0; i < size; i++){
+            result *= l[i * size + i];
+        }
+        return result * result;
+    }
+
+    /**
+     * Solves A * X = B, where each column of B is a right hand side
+     * @param matrix the matrix B, with as many rows as A
+     * @return the solution X
+     */
+    public Matrix solve(Matrix matrix){
+        handleNull(matrix, "Matrix cannot be null for solve");
+        if(matrix.getRows() != size){
+            throw new IllegalArgumentException(
+                "Right hand side must have " + size + " rows. Got shape: " +
+                matrix.getRows() + "x" + matrix.getColumns());
+        }
+        Matrix result = new Matrix(size, matrix.getColumns());
+        OffHeapKernels.copy(matrix, result);
+        solveInPlace(result);
+        return result;
+    }
+
+    /**
+     * Solves A * x = b for a single right hand side
+     * @param vector the vector b, with as many entries as A has rows
+     * @return the solution x
+     */
+    public Vector solve(Vector vector){
+        handleNull(vector, "Vector cannot be null for solve");
+        if(vector.getRows() != size){
+            throw new IllegalArgumentException(
+                "Right hand side must have " + size + " rows. Got length: " +
+                vector.getRows());
+        }
+        Vector result = new Vector(size);
+        OffHeapKernels.copy(vector, result);
+        solveInPlace(result);
+        return result;
+    }
+
+    /**
+     * Returns the inverse of the matrix, found by solving for the columns of
+     * the identity
+     * @return the inverse of the matrix
+     */
+    public Matrix inverse(){
+        Matrix result = new Matrix(size, size);
+        double[] data = result.getData();
+        for(int i = 0; i < size; i++){
+            data[i * size + i] = 1;
+        }
+        solveInPlace(result);
+        return result;
+    }
+
+    /**
+     * Overwrites a row-major matrix with no offset and a stride of its
+     * columns with the solution of A * X = B, solving with L and then with
+     * L^T, which is L read with its rows and columns swapped
+     */
+    private void solveInPlace(Matrix matrix){
+        double[] x = matrix.getData();
+        int columns = matrix.getColumns();
+        DecompositionKernels.solveLower(size, columns, l, 0, size, 1, false, x, 0, columns);
+        DecompositionKernels.solveUpper(size, columns, l, 0, 1, size, false, x, 0, columns);
+    }
+}
@@ -0,0 +1,379 @@
+package matrix;
+
+/**
+ * This class holds the blocked loops behind LUDecomposition and
+ * CholeskyDecomposition. The matrices are square row-major arrays that are
+ * factored in place, BLOCK columns at a time. Each step factors a narrow
+ * panel with simple loops and then updates the rest of the matrix with one
+ * large product, which runs on the blocked and parallel kernel of Gemm, so
+ * almost all of the work of a large factorization is done by Gemm.
+ * <p>
+ * The triangular solves are blocked the same way, so solving for many right
+ * hand sides, such as the columns of an identity to find an inverse, is also
+ * mostly products
+ *
+ * @author Joseph Bronsten
+ */
+final class DecompositionKernels {
+    /** The number of columns factored by one panel step */
+    static final int BLOCK = 64;
+
+    /** The number of rows of a product computed into one scratch buffer */
+    private static final int UPDATE_ROWS = 256;
+
+    /** The number of columns of a right hand side one task solves */
+    private static final int SOLVE_COLUMNS = 256;
+
+    /** The number of multiply-adds below which the loops run on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private DecompositionKernels(){}
+
+    /**
+     * Computes C = C - A * B, where the operands are described as in
+     * Gemm.multiplyBlocked and C is row-major. The product is computed in
+     * bands of UPDATE_ROWS rows into a scratch buffer, which is then
+     * subtracted from C. C must not share any values with A or B
+     */
+    static void subtractProduct(int rows, int columns, int commonDim,
+                                double[] a, int aOffset, int aRowStep, int aColumnStep,
+                                double[] b, int bOffset, int bRowStep, int bColumnStep,
+                                double[] c, int cOffset, int cStride){
+        if(rows == 0 || columns == 0 || commonDim == 0){
+            return;
+        }
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            int band = Math.min(rows, UPDATE_ROWS);
+            double[] product = scope.array(band * columns);
+            for(int i = 0; i < rows; i += band){
+                int count = Math.min(band, rows - i);
+                if(Gemm.useBlocked(count, columns, commonDim)){
+                    Gemm.multiply(count, columns, commonDim,
+                        a, aOffset + i * aRowStep, aRowStep, aColumnStep,
+                        b, bOffset, bRowStep, bColumnStep,
+                        product, 0, columns, null);
+                }
+                else {
+                    Kernels.multiply(count, columns, commonDim,
+                        a, aOffset + i * aRowStep, aRowStep, aColumnStep,
+                        b, bOffset, bRowStep, bColumnStep,
+                        product, 0, columns);
+                }
+                for(int r = 0; r < count; r++){
+                    int cIndex = cOffset + (i + r) * cStride;
+                    Kernels.OPS.subtract(c, cIndex, product, r * columns, c, cIndex, columns);
+                }
+            }
+        }
+    }
+
+    /**
+     * Factors a square row-major matrix in place into P * A = L * U with
+     * partial pivoting, storing the unit lower triangle L below the diagonal
+     * and U on and above it
+     * @param lu the matrix, which is overwritten by L and U
+     * @param n the number of rows and columns
+     * @param pivots the array the pivots are written to, where pivots[j] is
+     * the row swapped with row j at step j
+     * @return true if a pivot was exactly zero, which means the matrix is
+     * singular
+     */
+    static boolean lu(double[] lu, int n, int[] pivots){
+        boolean singular = false;
+        for(int k0 = 0; k0 < n; k0 += BLOCK){
+            int kend = Math.min(n, k0 + BLOCK);
+
+            // Factor the panel of columns k0 to kend with simple loops
+            for(int j = k0; j < kend; j++){
+                int pivot = j;
+                double largest = Math.abs(lu[j * n + j]);
+                for(int i = j + 1; i < n; i++){
+                    double value = Math.abs(lu[i * n + j]);
+                    if(value > largest){
+                        largest = value;
+                        pivot = i;
+                    }
+                }
+                pivots[j] = pivot;
+                if(pivot != j){
+                    swapRows(lu, n, j, pivot);
+                }
+                double diagonal = lu[j * n + j];
+                if(diagonal == 0){
+                    singular = true;
+                    continue;
+                }
+                int column = j;
+                int width = kend - j - 1;
+                forRows(j + 1, n, (long) (n - j) * width, (start, end) ->
+                    eliminate(lu, n, column, width, start, end));
+            }
+            if(kend == n){
+                break;
+            }
+
+            // U12 = L11^-1 * A12, the rows of the panel right of it
+            solveLowerBlock(kend - k0, n - kend, lu, k0 * n + k0, n, 1, true,
+                lu, k0 * n + kend, n);
+
+            // A22 = A22 - L21 * U12, the update of the rest of the matrix
+            subtractProduct(n - kend, n - kend, kend - k0,
+                lu, kend * n + k0, n, 1,
+                lu, k0 * n + kend, n, 1,
+                lu, kend * n + kend, n);
+        }
+        return singular;
+    }
+
+    /**
+     * Factors the lower triangle of a symmetric positive definite row-major
+     * matrix in place into L * L^T. The values above the diagonal are
+     * overwritten with zeros
+     * @param l the matrix, which is overwritten by L
+     * @param n the number of rows and columns
+     * @return false if the matrix is not positive definite, in which case
+     * the values of the array are not a factorization
+     */
+    static boolean cholesky(double[] l, int n){
+        for(int k0 = 0; k0 < n; k0 += BLOCK){
+            int kend = Math.min(n, k0 + BLOCK);
+
+            // Factor the block on the diagonal
+            for(int j = k0; j < kend; j++){
+                int jIndex = j * n;
+                double diagonal = l[jIndex + j] - Kernels.OPS.sumSquares(l, jIndex + k0, j - k0);
+                if(!(diagonal > 0)){
+                    return false;
+                }
+                l[jIndex + j] = Math.sqrt(diagonal);
+                for(int i = j + 1; i < kend; i++){
+                    int iIndex = i * n;
+                    l[iIndex + j] = (l[iIndex + j] -
+                        Kernels.OPS.dot(l, iIndex + k0, l, jIndex + k0, j - k0)) / l[jIndex + j];
+                }
+            }
+            if(kend == n){
+                break;
+            }
+
+            // L21 = A21 * L11^-T, where every row is solved on its own
+            int first = k0;
+            int last = kend;
+            forRows(kend, n, (long) (n - kend) * BLOCK * BLOCK, (start, end) ->
+                solvePanelRows(l, n, first, last, start, end));
+
+            // A22 = A22 - L21 * L21^T, only on and below the diagonal, one
+            // band of rows at a time
+            for(int r0 = kend; r0 < n; r0 += UPDATE_ROWS){
+                int r1 = Math.min(n, r0 + UPDATE_ROWS);
+                subtractProduct(r1 - r0, r1 - kend, kend - k0,
+                    l, r0 * n + k0, n, 1,
+                    l, kend * n + k0, 1, n,
+                    l, r0 * n + kend, n);
+            }
+        }
+        for(int i = 0; i < n; i++){
+            for(int j = i + 1; j < n; j++){
+                l[i * n + j] = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Divides the rows from start to end exclusive of a pivot column by the
+     * pivot, and subtracts their multiple of the pivot row from the next
+     * width columns of the panel
+     */
+    private static void eliminate(double[] lu, int n, int column, int width,
+                                  int start, int end){
+        int pivotIndex = column * n + column;
+        double pivot = lu[pivotIndex];
+        for(int i = start; i < end; i++){
+            int index = i * n + column;
+            double factor = lu[index] / pivot;
+            lu[index] = factor;
+            for(int t = 1; t <= width; t++){
+                lu[index + t] -= factor * lu[pivotIndex + t];
+            }
+        }
+    }
+
+    /**
+     * Finds the values of L in columns first to last exclusive for the rows
+     * from start to end exclusive, below the block on the diagonal that is
+     * already factored. Each row is found on its own
+     */
+    private static void solvePanelRows(double[] l, int n, int first, int last,
+                                       int start, int end){
+        for(int i = start; i < end; i++){
+            int iIndex = i * n;
+            for(int j = first; j < last; j++){
+                int jIndex = j * n;
+                l[iIndex + j] = (l[iIndex + j] -
+                    Kernels.OPS.dot(l, iIndex + first, l, jIndex + first, j - first)) / l[jIndex + j];
+            }
+        }
+    }
+
+    /**
+     * Swaps two rows of a square row-major matrix
+     */
+    static void swapRows(double[] a, int n, int row1, int row2){
+        int index1 = row1 * n;
+        int index2 = row2 * n;
+        for(int j = 0; j < n; j++){
+            double value = a[index1 + j];
+            a[index1 + j] = a[index2 + j];
+            a[index2 + j] = value;
+        }
+    }
+
+    /**
+     * Solves T * X = B in place for a lower triangular T, where B has one
+     * column for each right hand side
+     * @param n the number of rows and columns of T
+     * @param m the number of columns of B
+     * @param t the array holding T
+     * @param tOffset the index of the first element of T
+     * @param tRowStep the distance between two rows of T
+     * @param tColumnStep the distance between two columns of T
+     * @param unit true if the diagonal of T is taken to be ones
+     * @param x the array holding B, which is overwritten by X
+     * @param xOffset the index of the first element of B
+     * @param xStride the distance between two rows of B
+     */
+    static void solveLower(int n, int m, double[] t, int tOffset, int tRowStep, int tColumnStep,
+                           boolean unit, double[] x, int xOffset, int xStride){
+        for(int ib = 0; ib < n; ib += BLOCK){
+            int count = Math.min(BLOCK, n - ib);
+            int tIndex = tOffset + ib * tRowStep;
+            int xIndex = xOffset + ib * xStride;
+            // Subtract the rows of X already solved, then solve the block
+            subtractProduct(count, m, ib,
+                t, tIndex, tRowStep, tColumnStep,
+                x, xOffset, xStride, 1,
+                x, xIndex, xStride);
+            solveLowerBlock(count, m, t, tIndex + ib * tColumnStep, tRowStep, tColumnStep,
+                unit, x, xIndex, xStride);
+        }
+    }
+
+    /**
+     * Solves T * X = B in place for an upper triangular T, where B has one
+     * column for each right hand side. The arguments are as in solveLower
+     */
+    static void solveUpper(int n, int m, double[] t, int tOffset, int tRowStep, int tColumnStep,
+                           boolean unit, double[] x, int xOffset, int xStride){
+        for(int ie = n; ie > 0; ie -= BLOCK){
+            int ib = Math.max(0, ie - BLOCK);
+            int count = ie - ib;
+            int tIndex = tOffset + ib * tRowStep;
+            int xIndex = xOffset + ib * xStride;
+            subtractProduct(count, m, n - ie,
+                t, tIndex + ie * tColumnStep, tRowStep, tColumnStep,
+                x, xOffset + ie * xStride, xStride, 1,
+                x, xIndex, xStride);
+            solveUpperBlock(count, m, t, tIndex + ib * tColumnStep, tRowStep, tColumnStep,
+                unit, x, xIndex, xStride);
+        }
+    }
+
+    /**
+     * Solves a small lower triangular system with simple loops, splitting the
+     * columns of the right hand side across threads when there are many
+     */
+    private static void solveLowerBlock(int n, int m, double[] t, int tOffset,
+                                        int tRowStep, int tColumnStep, boolean unit,
+                                        double[] x, int xOffset, int xStride){
+        forColumns(m, (long) n * n * m, (start, end) -> {
+            for(int i = 0; i < n; i++){
+                int xi = xOffset + i * xStride;
+                for(int k = 0; k < i; k++){
+                    double value = t[tOffset + i * tRowStep + k * tColumnStep];
+                    int xk = xOffset + k * xStride;
+                    for(int j = start; j < end; j++){
+                        x[xi + j] -= value * x[xk + j];
+                    }
+                }
+                if(!unit){
+                    double diagonal = t[tOffset + i * (tRowStep + tColumnStep)];
+                    for(int j = start; j < end; j++){
+                        x[xi + j] /= diagonal;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Solves a small upper triangular system with simple loops, splitting the
+     * columns of the right hand side across threads when there are many
+     */
+    private static void solveUpperBlock(int n, int m, double[] t, int tOffset,
+                                        int tRowStep, int tColumnStep, boolean unit,
+                                        double[] x, int xOffset, int xStride){
+        forColumns(m, (long) n * n * m, (start, end) -> {
+            for(int i = n - 1; i >= 0; i--){
+                int xi = xOffset + i * xStride;
+                for(int k = i + 1; k < n; k++){
+                    double value = t[tOffset + i * tRowStep + k * tColumnStep];
+                    int xk = xOffset + k * xStride;
+                    for(int j = start; j < end; j++){
+                        x[xi + j] -= value * x[xk + j];
+                    }
+                }
+                if(!unit){
+                    double diagonal = t[tOffset + i * (tRowStep + tColumnStep)];
+                    for(int j = start; j < end; j++){
+                        x[xi + j] /= diagonal;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Splits a range of rows into one band for each task, and runs them in
+     * parallel if the work is large enough
+     * @param start the first row
+     * @param end the row after the last row
+     * @param work the number of multiply-adds in the operation
+     * @param body the work for a band of rows
+     */
+    private static void forRows(int start, int end, long work, Range body){
+        int count = end - start;
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD) || count < 2 * BLOCK){
+            body.apply(start, end);
+            return;
+        }
+        int tasks = Math.min(4 * Parallel.parallelism(), count / BLOCK);
+        int band = (count + tasks - 1) / tasks;
+        Parallel.forRange(0, tasks, task ->
+            body.apply(start + task * band, Math.min(end, start + (task + 1) * band)));
+    }
+
+    /**
+     * Splits the columns of a right hand side into bands of SOLVE_COLUMNS,
+     * and runs them in parallel if the work is large enough
+     * @param columns the number of columns
+     * @param work the number of multiply-adds in the operation
+     * @param body the work for a band of columns
+     */
+    private static void forColumns(int columns, long work, Range body){
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD) || columns <= SOLVE_COLUMNS){
+            body.apply(0, columns);
+            return;
+        }
+        int bands = (columns + SOLVE_COLUMNS - 1) / SOLVE_COLUMNS;
+        Parallel.forRange(0, bands, band ->
+            body.apply(band * SOLVE_COLUMNS, Math.min(columns, (band + 1) * SOLVE_COLUMNS)));
+    }
+
+    /**
+     * The work for a range of rows or columns
+     */
+    private interface Range {
+        void apply(int start, int end);
+    }
+}
@@ -0,0 +1,404 @@
+package matrix;
+
+/**
+ * This class computes convolutions with the fast Fourier transform, which
+ * turns the convolution of a tile of the matrix with the kernel into an
+ * element wise product of their transforms. Its cost grows with the log of
+ * the size of the kernel instead of the size of the kernel, so it is used by
+ * Matrix.convolution for large kernels.
+ * <p>
+ * The matrix is split into tiles and the linear convolution of each tile with
+ * the kernel is added into the result where it lands (overlap-add), so the
+ * size of the transforms depends on the kernel and not on the size of the
+ * matrix. The values are real, so two tiles are transformed at once as the
+ * real and imaginary parts of one complex transform, and the transform of
+ * the kernel is computed once for all of the tiles.
+ * <p>
+ * The result differs from the direct loop by rounding. Each output is within
+ * TOLERANCE * sum(|kernel|) * max(|matrix|) of the value given by
+ * Matrix.convolutionDirect
+ *
+ * @author Joseph Bronsten
+ */
+final class FftConvolution {
+    /**
+     * The error of an output relative to the largest value a convolution of
+     * the matrix and kernel could give. The measured error for transforms of
+     * up to 4096 x 4096 values is below 1e-13
+     */
+    static final double TOLERANCE = 1e-10;
+
+    /**
+     * The cost of one value of a transform for each of its log2(size) passes,
+     * in multiply-adds of the direct loop. It was measured against the im2col
+     * convolution and also pays for the element wise product and overlap-add
+     */
+    private static final double TRANSFORM_COST = 3.0;
+
+    /** The largest number of values in one transform */
+    private static final int MAX_TRANSFORM_VALUES = 1 << 22;
+
+    /** The number of values in a transform above which its passes run in parallel */
+    private static final int PARALLEL_VALUES = 1 << 14;
+
+    private FftConvolution(){}
+
+    /**
+     * Returns if the transform is expected to be faster than the direct
+     * convolution for the given shapes, by comparing the multiply-adds of
+     * the direct convolution with the cost of the cheapest tiling
+     * @param rows the number of rows of the matrix
+     * @param columns the number of columns of the matrix
+     * @param kernelRows the number of rows of the kernel
+     * @param kernelColumns the number of columns of the kernel
+     * @return true if the transform should be used
+     */
+    static boolean preferred(int rows, int columns, int kernelRows, int kernelColumns){
+        if(kernelRows * kernelColumns < 16){
+            return false;
+        }
+        double direct = (double) (rows - kernelRows + 1) * (columns - kernelColumns + 1) *
+            kernelRows * kernelColumns;
+        Plan plan = plan(rows, columns, kernelRows, kernelColumns);
+        return plan != null && plan.cost < direct;
+    }
+
+    /**
+     * The size of the transforms used for a convolution
+     */
+    private static final class Plan {
+        final int rows;
+        final int columns;
+        final double cost;
+
+        Plan(int rows, int columns, double cost){
+            this.rows = rows;
+            this.columns = columns;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Finds the size of the transforms with the lowest cost. Each tile of the
+     * matrix fills a transform except for the kernelRows - 1 rows and
+     * kernelColumns - 1 columns its convolution spreads into, so larger
+     * transforms waste less of each transform but cost more for each value
+     * @param rows the number of rows of the matrix
+     * @param columns the number of columns of the matrix
+     * @param kernelRows the number of rows of the kernel
+     * @param kernelColumns the number of columns of the kernel
+     * @return the cheapest plan, or null if the kernel is too large for a transform
+     */
+    private static Plan plan(int rows, int columns, int kernelRows, int kernelColumns){
+        Plan best = null;
+        int maxRows = powerOfTwo(rows + kernelRows - 1);
+        int maxColumns = powerOfTwo(columns + kernelColumns - 1);
+        for(int n = powerOfTwo(kernelRows); n <= maxRows; n *= 2){
+            for(int m = powerOfTwo(kernelColumns); m <= maxColumns; m *= 2){
+                if((long) n * m > MAX_TRANSFORM_VALUES){
+                    break;
+                }
+                long tiles = (long) ceilDiv(rows, n - kernelRows + 1) *
+                    ceilDiv(columns, m - kernelColumns + 1);
+                // Two tiles share each forward and inverse transform, and the
+                // kernel needs one more forward transform
+                double transforms = 2 * ((tiles + 1) / 2) + 1;
+                double cost = TRANSFORM_COST * transforms * n * m *
+                    (Integer.numberOfTrailingZeros(n) + Integer.numberOfTrailingZeros(m));
+                if(best == null || cost < best.cost){
+                    best = new Plan(n, m, cost);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the convolution of a matrix with a kernel into a result matrix
+     * of shape (rows - kernelRows + 1) x (columns - kernelColumns + 1). The
+     * matrices must have backing arrays
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     */
+    static void convolution(Matrix matrix, Matrix kernel, Matrix result){
+        int kernelRows = kernel.getRows();
+        int kernelColumns = kernel.getColumns();
+        Plan plan = plan(matrix.getRows(), matrix.getColumns(), kernelRows, kernelColumns);
+        if(plan == null){
+            throw new IllegalArgumentException(
+                    "Kernel is too large for an FFT convolution");
+        }
+        int n = plan.rows;
+        int m = plan.columns;
+        Transform transform = new Transform(n, m);
+
+        // The tile convolves with the kernel as it is stored, which gives the
+        // convolution of Matrix.convolution at an offset of the kernel size
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] kernelReal = scope.array(n * m);
+            double[] kernelImaginary = scope.array(n * m);
+            double[] real = scope.array(n * m);
+            double[] imaginary = scope.array(n * m);
+            java.util.Arrays.fill(kernelReal, 0, n * m, 0);
+            java.util.Arrays.fill(kernelImaginary, 0, n * m, 0);
+            convolution(matrix, kernel, result, transform, kernelReal, kernelImaginary, real, imaginary);
+        }
+    }
+
+    /**
+     * Computes the convolution with the arrays of the transforms
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     * @param transform the transform of the size of the plan
+     * @param kernelReal zeros for the real parts of the kernel transform
+     * @param kernelImaginary zeros for the imaginary parts of the kernel transform
+     * @param real an array for the real parts of the tile transforms
+     * @param imaginary an array for the imaginary parts of the tile transforms
+     */
+    private static void convolution(Matrix matrix, Matrix kernel, Matrix result, Transform transform,
+                                    double[] kernelReal, double[] kernelImaginary,
+                                    double[] real, double[] imaginary){
+        int kernelRows = kernel.getRows();
+        int kernelColumns = kernel.getColumns();
+        int n = transform.rows;
+        int m = transform.columns;
+        for(int i = 0; i < kernelRows; i++){
+            for(int j = 0; j < kernelColumns; j++){
+                kernelReal[i * m + j] = kernel.get(i, j);
+            }
+        }
+        transform.apply(kernelReal, kernelImaginary, false);
+
+        for(int i = 0; i < result.getRows(); i++){
+            java.util.Arrays.fill(result.getData(), result.getOffset() + i * result.getStride(),
+                result.getOffset() + i * result.getStride() + result.getColumns(), 0);
+        }
+
+        int tileRows = n - kernelRows + 1;
+        int tileColumns = m - kernelColumns + 1;
+        int rowTiles = ceilDiv(matrix.getRows(), tileRows);
+        int tiles = rowTiles * ceilDiv(matrix.getColumns(), tileColumns);
+        for(int tile = 0; tile < tiles; tile += 2){
+            int first = tile;
+            int second = tile + 1 < tiles ? tile + 1 : -1;
+            java.util.Arrays.fill(real, 0, n * m, 0);
+            java.util.Arrays.fill(imaginary, 0, n * m, 0);
+            loadTile(matrix, first, rowTiles, tileRows, tileColumns, real, m);
+            if(second >= 0){
+                loadTile(matrix, second, rowTiles, tileRows, tileColumns, imaginary, m);
+            }
+            transform.apply(real, imaginary, false);
+            // The kernel is real, so the product keeps the convolutions of
+            // the two tiles in the real and imaginary parts
+            for(int p = 0; p < n * m; p++){
+                double re = real[p] * kernelReal[p] - imaginary[p] * kernelImaginary[p];
+                imaginary[p] = real[p] * kernelImaginary[p] + imaginary[p] * kernelReal[p];
+                real[p] = re;
+            }
+            transform.apply(real, imaginary, true);
+            addTile(real, first, rowTiles, tileRows, tileColumns, kernelRows, kernelColumns, result, m);
+            if(second >= 0){
+                addTile(imaginary, second, rowTiles, tileRows, tileColumns,
+                    kernelRows, kernelColumns, result, m);
+            }
+        }
+    }
+
+    /**
+     * Copies a tile of the matrix into the top left corner of a transform
+     */
+    private static void loadTile(Matrix matrix, int tile, int rowTiles,
+                                 int tileRows, int tileColumns, double[] target, int m){
+        int row = (tile % rowTiles) * tileRows;
+        int column = (tile / rowTiles) * tileColumns;
+        int rows = Math.min(tileRows, matrix.getRows() - row);
+        int columns = Math.min(tileColumns, matrix.getColumns() - column);
+        for(int i = 0; i < rows; i++){
+            System.arraycopy(matrix.getData(),
+                matrix.getOffset() + (row + i) * matrix.getStride() + column,
+                target, i * m, columns);
+        }
+    }
+
+    /**
+     * Adds the convolution of a tile with the kernel into the outputs of the
+     * result it overlaps
+     */
+    private static void addTile(double[] values, int tile, int rowTiles, int tileRows,
+                                int tileColumns, int kernelRows, int kernelColumns,
+                                Matrix result, int m){
+        int row = (tile % rowTiles) * tileRows - kernelRows + 1;
+        int column = (tile / rowTiles) * tileColumns - kernelColumns + 1;
+        int firstRow = Math.max(0, -row);
+        int lastRow = Math.min(tileRows + kernelRows - 1, result.getRows() - row);
+        int firstColumn = Math.max(0, -column);
+        int lastColumn = Math.min(tileColumns + kernelColumns - 1, result.getColumns() - column);
+        double[] c = result.getData();
+        for(int i = firstRow; i < lastRow; i++){
+            int cIndex = result.getOffset() + (row + i) * result.getStride() + column;
+            for(int j = firstColumn; j < lastColumn; j++){
+                c[cIndex + j] += values[i * m + j];
+            }
+        }
+    }
+
+    /**
+     * A two dimensional transform of a fixed size, computed as transforms of
+     * the rows followed by transforms of the columns
+     */
+    private static final class Transform {
+        private final int rows;
+        private final int columns;
+        private final double[] cos;
+        private final double[] sin;
+
+        Transform(int rows, int columns){
+            this.rows = rows;
+            this.columns = columns;
+            int size = Math.max(rows, columns);
+            this.cos = new double[size / 2];
+            this.sin = new double[size / 2];
+            for(int k = 0; k < size / 2; k++){
+                double angle = 2 * Math.PI * k / size;
+                this.cos[k] = Math.cos(angle);
+                this.sin[k] = Math.sin(angle);
+            }
+        }
+
+        /**
+         * Transforms a row major array of rows x columns complex values in
+         * place
+         * @param real the real parts
+         * @param imaginary the imaginary parts
+         * @param inverse true for the inverse transform, which includes the
+         * division by the number of values
+         */
+        void apply(double[] real, double[] imaginary, boolean inverse){
+            boolean parallel = Parallel.worthSplitting((long) rows * columns, PARALLEL_VALUES);
+            forRange(rows, parallel, (first, last) -> {
+                for(int i = first; i < last; i++){
+                    fft(real, imaginary, i * columns, 1, columns, inverse, null, null);
+                }
+            });
+            forRange(columns, parallel, (first, last) -> {
+                // The columns are strided, so each is copied into scratch
+                try (ScratchPool.Scope scope = ScratchPool.open()) {
+                    double[] re = scope.array(rows);
+                    double[] im = scope.array(rows);
+                    for(int j = first; j < last; j++){
+                        fft(real, imaginary, j, columns, rows, inverse, re, im);
+                    }
+                }
+            });
+            if(inverse){
+                double scale = 1.0 / ((double) rows * columns);
+                for(int p = 0; p < rows * columns; p++){
+                    real[p] *= scale;
+                    imaginary[p] *= scale;
+                }
+            }
+        }
+
+        /**
+         * A body run for a block of indices
+         */
+        private interface Block {
+            void run(int first, int last);
+        }
+
+        /**
+         * Runs a body for blocks of the indices below a count, in parallel if
+         * asked
+         */
+        private static void forRange(int count, boolean parallel, Block body){
+            if(!parallel){
+                body.run(0, count);
+                return;
+            }
+            int blocks = Math.min(count, Parallel.parallelism() * 4);
+            Parallel.forRange(0, blocks, block ->
+                body.run(block * count / blocks, (block + 1) * count / blocks));
+        }
+
+        /**
+         * Transforms a strided sequence of complex values with the iterative
+         * radix-2 algorithm. A strided sequence is first copied into the given
+         * scratch arrays so the passes read contiguous values
+         * @param real the real parts
+         * @param imaginary the imaginary parts
+         * @param offset the index of the first value
+         * @param step the distance between two values
+         * @param length the number of values, a power of two
+         * @param inverse true for the inverse transform without the division
+         * @param re scratch for the real parts of a strided sequence
+         * @param im scratch for the imaginary parts of a strided sequence
+         */
+        private void fft(double[] real, double[] imaginary, int offset, int step, int length,
+                         boolean inverse, double[] re, double[] im){
+            if(step != 1){
+                for(int i = 0; i < length; i++){
+                    re[i] = real[offset + i * step];
+                    im[i] = imaginary[offset + i * step];
+                }
+                fft(re, im, 0, 1, length, inverse, null, null);
+                for(int i = 0; i < length; i++){
+                    real[offset + i * step] = re[i];
+                    imaginary[offset + i * step] = im[i];
+                }
+                return;
+            }
+            // Put the values in bit reversed order
+            for(int i = 1, j = 0; i < length; i++){
+                int bit = length >> 1;
+                for(; (j & bit) != 0; bit >>= 1){
+                    j ^= bit;
+                }
+                j ^= bit;
+                if(i < j){
+                    double t = real[offset + i];
+                    real[offset + i] = real[offset + j];
+                    real[offset + j] = t;
+                    t = imaginary[offset + i];
+                    imaginary[offset + i] = imaginary[offset + j];
+                    imaginary[offset + j] = t;
+                }
+            }
+            int tableSize = this.cos.length * 2;
+            double sign = inverse ? 1 : -1;
+            for(int size = 2; size <= length; size *= 2){
+                int half = size / 2;
+                int tableStep = tableSize / size;
+                for(int start = 0; start < length; start += size){
+                    for(int k = 0; k < half; k++){
+                        double wr = this.cos[k * tableStep];
+                        double wi = sign * this.sin[k * tableStep];
+                        int a = offset + start + k;
+                        int b = a + half;
+                        double xr = real[b] * wr - imaginary[b] * wi;
+                        double xi = real[b] * wi + imaginary[b] * wr;
+                        real[b] = real[a] - xr;
+                        imaginary[b] = imaginary[a] - xi;
+                        real[a] += xr;
+                        imaginary[a] += xi;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest power of two that is at least the given value
+     */
+    private static int powerOfTwo(int value){
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Returns the division of two positive ints rounded up
+     */
+    private static int ceilDiv(int a, int b){
+        return (a + b - 1) / b;
+    }
+}
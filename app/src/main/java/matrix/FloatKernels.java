@@ -0,0 +1,343 @@
+package matrix;
+
+/**
+ * This class holds the loops behind the operations of FloatMatrix, including
+ * the mixed precision products of float matrices with double matrices. The
+ * arrays are laid out as described in Kernels and the callers are expected to
+ * have checked the shapes of the matrices.
+ * <p>
+ * Products of two float matrices sum in float. Products that involve a double
+ * matrix read the float values, widen them and sum in double, so holding the
+ * weights of a layer in float only loses the precision of the stored values
+ *
+ * @author Joseph Bronsten
+ */
+final class FloatKernels {
+    /** The number of rows of the result each parallel task computes */
+    private static final int ROW_BLOCK = 16;
+
+    /** The number of multiply-adds below which products run on one thread */
+    private static final long PARALLEL_THRESHOLD = 64L * 64 * 64;
+
+    private FloatKernels(){}
+
+    /**
+     * Computes the element wise sum of two matrices into a result matrix
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     * @param result the matrix the sum is written to
+     */
+    static void add(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        float[] a = matrixA.getData();
+        float[] b = matrixB.getData();
+        float[] c = result.getData();
+        for(int i = 0; i < result.getRows(); i++){
+            int aIndex = matrixA.getOffset() + i * matrixA.getStride();
+            int bIndex = matrixB.getOffset() + i * matrixB.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            for(int j = 0; j < result.getColumns(); j++){
+                c[cIndex + j] = a[aIndex + j] + b[bIndex + j];
+            }
+        }
+    }
+
+    /**
+     * Computes the element wise difference of two matrices into a result
+     * matrix
+     * @param matrixA the first matrix
+     * @param matrixB the matrix subtracted from the first matrix
+     * @param result the matrix the difference is written to
+     */
+    static void subtract(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        float[] a = matrixA.getData();
+        float[] b = matrixB.getData();
+        float[] c = result.getData();
+        for(int i = 0; i < result.getRows(); i++){
+            int aIndex = matrixA.getOffset() + i * matrixA.getStride();
+            int bIndex = matrixB.getOffset() + i * matrixB.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            for(int j = 0; j < result.getColumns(); j++){
+                c[cIndex + j] = a[aIndex + j] - b[bIndex + j];
+            }
+        }
+    }
+
+    /**
+     * Computes the element wise product of two matrices into a result matrix
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     * @param result the matrix the product is written to
+     */
+    static void elementWiseMultiply(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        float[] a = matrixA.getData();
+        float[] b = matrixB.getData();
+        float[] c = result.getData();
+        for(int i = 0; i < result.getRows(); i++){
+            int aIndex = matrixA.getOffset() + i * matrixA.getStride();
+            int bIndex = matrixB.getOffset() + i * matrixB.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            for(int j = 0; j < result.getColumns(); j++){
+                c[cIndex + j] = a[aIndex + j] * b[bIndex + j];
+            }
+        }
+    }
+
+    /**
+     * Scales every element of a matrix into a result matrix, the result may be
+     * the same matrix as the input
+     * @param matrix the matrix to scale
+     * @param scaler the scaling value
+     * @param result the matrix the scaled values are written to
+     */
+    static void scale(FloatMatrix matrix, float scaler, FloatMatrix result){
+        float[] a = matrix.getData();
+        float[] c = result.getData();
+        for(int i = 0; i < result.getRows(); i++){
+            int aIndex = matrix.getOffset() + i * matrix.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            for(int j = 0; j < result.getColumns(); j++){
+                c[cIndex + j] = a[aIndex + j] * scaler;
+            }
+        }
+    }
+
+    /**
+     * Computes C = A * B for float matrices, where the operands are described
+     * as in Gemm.multiplyBlocked so either of them can be read transposed.
+     * Large products are split into blocks of rows of the result that are
+     * computed in parallel
+     * @param rows the rows of the result
+     * @param columns the columns of the result
+     * @param commonDim the shared dimension of the product
+     * @param a the array holding the first matrix
+     * @param aOffset the index of the first element of A
+     * @param aRowStep the distance between two rows of A
+     * @param aColumnStep the distance between two columns of A
+     * @param b the array holding the second matrix
+     * @param bOffset the index of the first element of B
+     * @param bRowStep the distance between two rows of B
+     * @param bColumnStep the distance between two columns of B
+     * @param c the array the result is written to
+     * @param cOffset the index of the first element of C
+     * @param cStride the distance between two rows of C
+     */
+    static void multiply(int rows, int columns, int commonDim,
+                         float[] a, int aOffset, int aRowStep, int aColumnStep,
+                         float[] b, int bOffset, int bRowStep, int bColumnStep,
+                         float[] c, int cOffset, int cStride){
+        forRowBlocks(rows, (long) rows * columns * commonDim, (start, end) -> {
+            for(int i = start; i < end; i++){
+                int aIndex = aOffset + i * aRowStep;
+                int cIndex = cOffset + i * cStride;
+                if(bColumnStep != 1){
+                    // B is read transposed, so each element is a dot product
+                    for(int j = 0; j < columns; j++){
+                        int bIndex = bOffset + j * bColumnStep;
+                        float sum = 0;
+                        for(int k = 0; k < commonDim; k++){
+                            sum += a[aIndex + k * aColumnStep] * b[bIndex + k * bRowStep];
+                        }
+                        c[cIndex + j] = sum;
+                    }
+                    continue;
+                }
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = 0;
+                }
+                for(int k = 0; k < commonDim; k++){
+                    float value = a[aIndex + k * aColumnStep];
+                    int bIndex = bOffset + k * bRowStep;
+                    for(int j = 0; j < columns; j++){
+                        c[cIndex + j] += value * b[bIndex + j];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes C = A * B in double precision where A holds floats, with A
+     * described as in Gemm.multiplyBlocked so it can be read transposed
+     * @param rows the rows of the result
+     * @param columns the columns of the result
+     * @param commonDim the shared dimension of the product
+     * @param a the array holding the first matrix
+     * @param aOffset the index of the first element of A
+     * @param aRowStep the distance between two rows of A
+     * @param aColumnStep the distance between two columns of A
+     * @param b the array holding the second matrix
+     * @param bOffset the index of the first element of B
+     * @param bStride the distance between two rows of B
+     * @param c the array the result is written to
+     * @param cOffset the index of the first element of C
+     * @param cStride the distance between two rows of C
+     */
+    static void multiply(int rows, int columns, int commonDim,
+                         float[] a, int aOffset, int aRowStep, int aColumnStep,
+                         double[] b, int bOffset, int bStride,
+                         double[] c, int cOffset, int cStride){
+        if(columns == 1 && aColumnStep == 1){
+            // A matrix-vector product, where each element is a dot product
+            // over a row of A that is read in order
+            forRowBlocks(rows, (long) rows * commonDim, (start, end) -> {
+                for(int i = start; i < end; i++){
+                    int aIndex = aOffset + i * aRowStep;
+                    double sum = 0;
+                    for(int k = 0; k < commonDim; k++){
+                        sum += a[aIndex + k] * b[bOffset + k * bStride];
+                    }
+                    c[cOffset + i * cStride] = sum;
+                }
+            });
+            return;
+        }
+        if(aColumnStep != 1){
+            // A is read transposed, so walk it one stored row at a time and
+            // split the work over columns of the result instead
+            for(int i = 0; i < rows; i++){
+                int cIndex = cOffset + i * cStride;
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = 0;
+                }
+            }
+            for(int k = 0; k < commonDim; k++){
+                int aIndex = aOffset + k * aColumnStep;
+                int bIndex = bOffset + k * bStride;
+                for(int i = 0; i < rows; i++){
+                    double value = a[aIndex + i * aRowStep];
+                    int cIndex = cOffset + i * cStride;
+                    for(int j = 0; j < columns; j++){
+                        c[cIndex + j] += value * b[bIndex + j];
+                    }
+                }
+            }
+            return;
+        }
+        forRowBlocks(rows, (long) rows * columns * commonDim, (start, end) -> {
+            for(int i = start; i < end; i++){
+                int aIndex = aOffset + i * aRowStep;
+                int cIndex = cOffset + i * cStride;
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = 0;
+                }
+                for(int k = 0; k < commonDim; k++){
+                    double value = a[aIndex + k];
+                    int bIndex = bOffset + k * bStride;
+                    for(int j = 0; j < columns; j++){
+                        c[cIndex + j] += value * b[bIndex + j];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds scaler * x * y^T to a float matrix in place, where x and y are
+     * double columns
+     * @param matrix the matrix that is updated
+     * @param scaler the scaling value of the outer product
+     * @param x the column with one value for each row of the matrix
+     * @param y the column with one value for each column of the matrix
+     */
+    static void addOuterProduct(FloatMatrix matrix, double scaler, Matrix x, Matrix y){
+        float[] a = matrix.getData();
+        double[] xData = x.getData();
+        double[] yData = y.getData();
+        int columns = matrix.getColumns();
+        forRowBlocks(matrix.getRows(), matrix.getElementCount(), (start, end) -> {
+            for(int i = start; i < end; i++){
+                double value = scaler * xData[x.getOffset() + i * x.getStride()];
+                int aIndex = matrix.getOffset() + i * matrix.getStride();
+                for(int j = 0; j < columns; j++){
+                    a[aIndex + j] += (float) (value * yData[y.getOffset() + j * y.getStride()]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the transpose of a matrix into a result matrix, one block of
+     * Kernels.TRANSPOSE_BLOCK rows and columns at a time
+     * @param matrix the matrix to transpose
+     * @param result the matrix the transpose is written to
+     */
+    static void transpose(FloatMatrix matrix, FloatMatrix result){
+        float[] a = matrix.getData();
+        float[] c = result.getData();
+        int rows = matrix.getRows();
+        int columns = matrix.getColumns();
+        int block = Kernels.TRANSPOSE_BLOCK;
+
+        for(int ib = 0; ib < rows; ib += block){
+            for(int jb = 0; jb < columns; jb += block){
+                for(int i = ib; i < Math.min(ib + block, rows); i++){
+                    int aIndex = matrix.getOffset() + i * matrix.getStride();
+                    for(int j = jb; j < Math.min(jb + block, columns); j++){
+                        c[result.getOffset() + j * result.getStride() + i] = a[aIndex + j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution of a matrix with a kernel into a result matrix
+     * of shape (rows - kernelRows + 1) x (columns - kernelColumns + 1)
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     */
+    static void convolution(FloatMatrix matrix, FloatMatrix kernel, FloatMatrix result){
+        float[] m = matrix.getData();
+        float[] c = result.getData();
+        int kernelRows = kernel.getRows();
+        int kernelColumns = kernel.getColumns();
+
+        float[] flippedKernel = new float[kernelRows * kernelColumns];
+        for (int i = 0; i < kernelRows; i++) {
+            for (int j = 0; j < kernelColumns; j++) {
+                flippedKernel[i * kernelColumns + j] =
+                    kernel.get(kernelRows - 1 - i, kernelColumns - 1 - j);
+            }
+        }
+
+        for (int i = 0; i < result.getRows(); i++) {
+            int cIndex = result.getOffset() + i * result.getStride();
+            for (int j = 0; j < result.getColumns(); j++) {
+                float sum = 0;
+                for (int r = 0; r < kernelRows; r++) {
+                    int mIndex = matrix.getOffset() + (i + r) * matrix.getStride() + j;
+                    int kIndex = r * kernelColumns;
+                    for (int s = 0; s < kernelColumns; s++) {
+                        sum += m[mIndex + s] * flippedKernel[kIndex + s];
+                    }
+                }
+                c[cIndex + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * Splits the rows of a result into blocks of ROW_BLOCK rows, and computes
+     * them in parallel if the work is large enough
+     * @param rows the number of rows of the result
+     * @param work the number of multiply-adds in the operation
+     * @param body the work for a range of rows from start to end exclusive
+     */
+    private static void forRowBlocks(int rows, long work, RowRange body){
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD) || rows <= ROW_BLOCK){
+            body.apply(0, rows);
+            return;
+        }
+        int blocks = (rows + ROW_BLOCK - 1) / ROW_BLOCK;
+        Parallel.forRange(0, blocks, block ->
+            body.apply(block * ROW_BLOCK, Math.min(rows, (block + 1) * ROW_BLOCK)));
+    }
+
+    /**
+     * The work for a range of rows of a result
+     */
+    private interface RowRange {
+        void apply(int start, int end);
+    }
+}
@@ -0,0 +1,950 @@
+package matrix;
+
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+/**
+ * This class is the single precision counterpart of Matrix. It stores its
+ * values as floats in a flat row-major array laid out like the array of a
+ * Matrix, which halves the memory the values take up and the bandwidth
+ * needed to read them.
+ * <p>
+ * Operations between float matrices compute in float. The mixed precision
+ * operations take a float matrix and double matrices, widen the floats as
+ * they are read and compute in double, which is how a layer can hold its
+ * weights in float while its inputs and outputs stay in double
+ *
+ * @author Joseph Bronsten
+ */
+public class FloatMatrix {
+    private float[] data;
+    private int offset;
+    private int stride;
+    private int numberOfRows;
+    private int numberOfColumns;
+
+    /**
+     * Creates a new matrix object given a 2d array of floats and the shape of
+     * the matrix. The values are copied into a single flat row-major array
+     * @param matrix a 2d array of floats
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public FloatMatrix(float[][] matrix, int rows, int columns){
+        handleNull(matrix, "Matrix cannot be null");
+        if(rows == 0 || columns == 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        if((matrix.length != rows) || (matrix[0].length != columns)){
+            throw new IllegalArgumentException(
+                    "Invalid number of rows or columns");
+        }
+
+        this.data = new float[elementCount(rows, columns)];
+        for(int i = 0; i < rows; i++){
+            handleNull(matrix[i], "Matrix rows cannot be null");
+            if(matrix[i].length != columns){
+                throw new IllegalArgumentException(
+                        "Invalid number of rows or columns");
+            }
+            System.arraycopy(matrix[i], 0, this.data, i * columns, columns);
+        }
+        this.offset = 0;
+        this.stride = columns;
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
+    }
+
+    /**
+     * Create a new matrix object given a 2d array of floats
+     * @param matrix a 2d array of floats
+     */
+    public FloatMatrix(float[][] matrix) {
+        this(matrix, matrix.length, matrix[0].length);
+    }
+
+    /**
+     * Creates a matrix that uses the given flat row-major array as its
+     * storage without copying it. The element at (row, column) is stored at
+     * index offset + row * stride + column
+     * @param data the backing array
+     * @param offset the index of the first element of the matrix
+     * @param stride the distance in the array between the start of two rows
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public FloatMatrix(float[] data, int offset, int stride, int rows, int columns){
+        handleNull(data, "Matrix data cannot be null");
+        if(rows <= 0 || columns <= 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        if(offset < 0 || stride < columns ||
+            offset + (long) (rows - 1) * stride + columns > data.length){
+            throw new IllegalArgumentException(
+                    "Invalid offset or stride for the matrix data");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
+    }
+
+    /**
+     * Creates a matrix that uses the given flat row-major array as its
+     * storage without copying it
+     * @param data the backing array of length rows * columns
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public FloatMatrix(float[] data, int rows, int columns){
+        this(data, 0, columns, rows, columns);
+    }
+
+    /**
+     * Create a new matrix object filled with zeros with the given shape
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public FloatMatrix(int rows, int columns){
+        this(new float[elementCount(rows, columns)], rows, columns);
+    }
+
+    /**
+     * Create a new matrix object filled with a given value with the given
+     * shape
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param value a float which each index of the matrix is set to
+     */
+    public FloatMatrix(int rows, int columns, float value){
+        this(rows, columns);
+        Arrays.fill(this.data, value);
+    }
+
+    /**
+     * Initializes the matrix with values drawn from a uniform distribution
+     * between the given minimum and maximum values.
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param min the minimum value of the uniform distribution
+     * @param max the maximum value of the uniform distribution
+     */
+    public FloatMatrix(int rows, int columns, float min, float max) {
+        this(rows, columns);
+        if (min >= max) {
+            throw new IllegalArgumentException("Min must be less than Max.");
+        }
+
+        for (int i = 0; i < this.data.length; i++) {
+            this.data[i] = (float) (min + (max - min) * Math.random());
+        }
+    }
+
+    /**
+     * Creates a single precision copy of a matrix, rounding each value to the
+     * nearest float
+     * @param matrix the matrix to copy
+     */
+    public FloatMatrix(Matrix matrix){
+        this(checkNotNull(matrix).getRows(), matrix.getColumns());
+        matrix = OffHeapKernels.onHeap(matrix);
+        double[] values = matrix.getData();
+        for(int i = 0; i < this.numberOfRows; i++){
+            int index = matrix.getOffset() + i * matrix.getStride();
+            for(int j = 0; j < this.numberOfColumns; j++){
+                this.data[i * this.stride + j] = (float) values[index + j];
+            }
+        }
+    }
+
+    /**
+     * Returns a double precision copy of the matrix
+     * @return the matrix as a Matrix object
+     */
+    public Matrix toMatrix(){
+        Matrix result = new Matrix(this.numberOfRows, this.numberOfColumns);
+        double[] values = result.getData();
+        for(int i = 0; i < this.numberOfRows; i++){
+            int index = index(i, 0);
+            for(int j = 0; j < this.numberOfColumns; j++){
+                values[i * this.numberOfColumns + j] = this.data[index + j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A helper method that checks the shape of a new matrix and returns the
+     * number of elements needed to store it
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @return the number of elements in the matrix
+     */
+    private static int elementCount(int rows, int columns){
+        if(rows <= 0 || columns <= 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        long count = (long) rows * columns;
+        if(count > Integer.MAX_VALUE){
+            throw new IllegalArgumentException(
+                    "Matrix is too large: " + rows + "x" + columns);
+        }
+        return (int) count;
+    }
+
+    /**
+     * A helper method that throws an error if a matrix to convert is null,
+     * for use before the constructor can run any other code
+     * @param matrix the matrix to check
+     * @return the given matrix
+     */
+    private static Matrix checkNotNull(Matrix matrix){
+        handleNull(matrix, "Matrix cannot be null");
+        return matrix;
+    }
+
+    /**
+     * A helper function that throws an error if the passed object is null
+     * @param obj the object to check
+     * @param msg the error message
+     */
+    private static void handleNull(Object obj, String msg){
+        if(obj == null){
+            throw new NullPointerException(msg);
+        }
+    }
+
+    /**
+     * A helper function that throws an error if either passed object is null
+     * @param objA the first object to check
+     * @param objB the second object to check
+     * @param msg the error message
+     */
+    private static void handleNull(Object objA, Object objB, String msg){
+        if(objA == null || objB == null){
+            throw new NullPointerException(msg);
+        }
+    }
+
+    /**
+     * A helper method to check that two matrices can be multiplied
+     * @param rowsA the rows of the first matrix
+     * @param columnsA the columns of the first matrix
+     * @param rowsB the rows of the second matrix
+     * @param columnsB the columns of the second matrix
+     */
+    private static void multiplyCheck(int rowsA, int columnsA, int rowsB, int columnsB){
+        if(columnsA != rowsB){
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply matrix of shape: " +
+                rowsA + "x" + columnsA + " with matrix of shape: " +
+                rowsB + "x" + columnsB);
+        }
+    }
+
+    /**
+     * A helper method to check that two matrices have the same shape
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     */
+    private static void addCheck(FloatMatrix matrixA, FloatMatrix matrixB){
+        if(matrixA.numberOfRows != matrixB.numberOfRows ||
+            matrixA.numberOfColumns != matrixB.numberOfColumns){
+            throw new IllegalArgumentException(
+                "Matrices must have the same dimensions. Got shapes: " +
+                matrixA.numberOfRows + "x" + matrixA.numberOfColumns + " and " +
+                matrixB.numberOfRows + "x" + matrixB.numberOfColumns);
+        }
+    }
+
+    /**
+     * A helper method to check if a result matrix has the given shape
+     * @param result the matrix an operation writes to
+     * @param rows the number of rows the result must have
+     * @param columns the number of columns the result must have
+     */
+    private static void resultCheck(FloatMatrix result, int rows, int columns){
+        handleNull(result, "Result matrix cannot be null");
+        resultCheck(result.numberOfRows, result.numberOfColumns, rows, columns);
+    }
+
+    /**
+     * A helper method to check if a double result matrix has the given shape
+     * @param result the matrix an operation writes to
+     * @param rows the number of rows the result must have
+     * @param columns the number of columns the result must have
+     */
+    private static void resultCheck(Matrix result, int rows, int columns){
+        handleNull(result, "Result matrix cannot be null");
+        resultCheck(result.getRows(), result.getColumns(), rows, columns);
+    }
+
+    /**
+     * A helper method that compares the shape of a result with the shape it
+     * must have
+     */
+    private static void resultCheck(int resultRows, int resultColumns, int rows, int columns){
+        if(resultRows != rows || resultColumns != columns){
+            throw new IllegalArgumentException(
+                "Invalid shape for result matrix. Expected: " + rows + "x" +
+                columns + " but got: " + resultRows + "x" + resultColumns);
+        }
+    }
+
+    /**
+     * A helper method to check that a result matrix does not share its storage
+     * with an operand, for operations that read an operand after writing to
+     * the result
+     * @param result the matrix an operation writes to
+     * @param operand the matrix the operation reads from
+     */
+    private static void overlapCheck(FloatMatrix result, FloatMatrix operand){
+        if(result.data == operand.data){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+    }
+
+    /**
+     * Returns the number of rows in the matrix
+     * @return an int with the number of rows
+     */
+    public int getRows(){
+        return this.numberOfRows;
+    }
+
+    /**
+     * Returns the number of columns in the matrix
+     * @return an int with the number of columns
+     */
+    public int getColumns(){
+        return this.numberOfColumns;
+    }
+
+    /**
+     * Gets the number of elements in the matrix
+     * @return an int with the number of elements
+     */
+    public int getElementCount(){
+        return this.numberOfRows * this.numberOfColumns;
+    }
+
+    /**
+     * Returns the flat row-major array backing the matrix. Changes to the
+     * array are reflected in the matrix
+     * @return the backing array of the matrix
+     */
+    public float[] getData(){
+        return this.data;
+    }
+
+    /**
+     * Returns the index in the backing array of the first element
+     * @return the offset of the matrix in its backing array
+     */
+    public int getOffset(){
+        return this.offset;
+    }
+
+    /**
+     * Returns the distance in the backing array between the start of two
+     * consecutive rows
+     * @return the row stride of the matrix
+     */
+    public int getStride(){
+        return this.stride;
+    }
+
+    /**
+     * Returns if the rows of the matrix are stored next to each other without
+     * any gaps in the backing array
+     * @return true if the stride is equal to the number of columns
+     */
+    public boolean isContiguous(){
+        return this.stride == this.numberOfColumns;
+    }
+
+    /**
+     * Returns the index in the backing array of the given element
+     * @param row the row index
+     * @param column the column index
+     * @return the index of the element in the backing array
+     */
+    private int index(int row, int column){
+        return this.offset + row * this.stride + column;
+    }
+
+    /**
+     * Returns a 2d array representing the matrix. The array is a copy of the
+     * matrix, so changes to it are not reflected in the matrix
+     * @return a 2d array of floats representing the matrix
+     */
+    public float[][] get() {
+        float[][] result = new float[this.numberOfRows][];
+        for(int i = 0; i < this.numberOfRows; i++){
+            result[i] = getRow(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the given row as an array
+     * @param row an int with the row to return
+     * @return an array of floats representing the row
+     */
+    public float[] getRow(int row){
+        if(row >= 0 && row < this.numberOfRows){
+            int start = index(row, 0);
+            return Arrays.copyOfRange(this.data, start,
+                start + this.numberOfColumns);
+        }
+        else {
+            throw new IllegalArgumentException(
+                    "Invalid row index");
+        }
+    }
+
+    /**
+     * Returns a copy of the given column as an array
+     * @param column an int with the column to return
+     * @return an array of floats representing the column
+     */
+    public float[] getColumn(int column){
+        if(column >= 0 && column < this.numberOfColumns){
+            float[] columnArray = new float[this.numberOfRows];
+            for(int i = 0; i < this.numberOfRows; i++){
+                columnArray[i] = this.data[index(i, column)];
+            }
+            return columnArray;
+        }
+        else {
+            throw new IllegalArgumentException(
+                    "Invalid column index");
+        }
+    }
+
+    /**
+     * Gets a value at the specified index in the matrix
+     * @param row the row index
+     * @param column the column index
+     * @return the value at the index
+     */
+    public float get(int row, int column){
+        if(!(row >= 0 && row < this.numberOfRows)){
+            throw new IllegalArgumentException(
+                    "Invalid row index");
+        }
+        if(!(column >= 0 && column < this.numberOfColumns)){
+            throw new IllegalArgumentException(
+                    "Invalid column index");
+        }
+        return this.data[index(row, column)];
+    }
+
+    /**
+     * Sets a value at the specified index in the matrix
+     * @param row the row index
+     * @param column the column index
+     * @param value the new value to set
+     */
+    public void set(int row, int column, float value){
+        if((row >= 0 && row < this.numberOfRows) &&
+                (column >= 0 && column < this.numberOfColumns)){
+            this.data[index(row, column)] = value;
+        }
+        else {
+            throw new IllegalArgumentException(
+                    "Invalid row or column index");
+        }
+    }
+
+    /**
+     * Returns the transpose of the matrix
+     * @param matrix the matrix to transpose
+     * @return the transpose of the matrix
+     */
+    public static FloatMatrix transpose(FloatMatrix matrix){
+        handleNull(matrix, "Matrices and cannot be null for transposition");
+        FloatMatrix result = new FloatMatrix(matrix.numberOfColumns, matrix.numberOfRows);
+        transposeInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Writes the transpose of the matrix into a given result matrix
+     * @param matrix the matrix to transpose
+     * @param result the matrix the transpose is written to, which cannot
+     * share storage with the given matrix
+     */
+    public static void transposeInto(FloatMatrix matrix, FloatMatrix result){
+        handleNull(matrix, "Matrices and cannot be null for transposition");
+        resultCheck(result, matrix.numberOfColumns, matrix.numberOfRows);
+        overlapCheck(result, matrix);
+        FloatKernels.transpose(matrix, result);
+    }
+
+    public FloatMatrix T(){
+        return transpose(this);
+    }
+
+    /**
+     * Returns the product of the two matrices
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @return the product of both matrices
+     */
+    public static FloatMatrix multiply(FloatMatrix matrixA, FloatMatrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        FloatMatrix result = new FloatMatrix(matrixA.numberOfRows, matrixB.numberOfColumns);
+        multiplyInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Writes the product of the two matrices into a given result matrix
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with either operand
+     */
+    public static void multiplyInto(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        multiply(matrixA, false, matrixB, false, result);
+    }
+
+    /**
+     * Returns the product of the transpose of the first matrix with the second
+     * matrix, reading the first matrix in transposed order instead of copying
+     * it
+     * @param matrixA the matrix whose transpose is the first in the
+     * multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @return the product of the transpose of the first matrix and the second
+     */
+    public static FloatMatrix multiplyTransposeA(FloatMatrix matrixA, FloatMatrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        FloatMatrix result = new FloatMatrix(matrixA.numberOfColumns, matrixB.numberOfColumns);
+        multiplyTransposeAInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Writes the product of the transpose of the first matrix with the second
+     * matrix into a given result matrix
+     * @param matrixA the matrix whose transpose is the first in the
+     * multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with either operand
+     */
+    public static void multiplyTransposeAInto(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        multiply(matrixA, true, matrixB, false, result);
+    }
+
+    /**
+     * Returns the product of the first matrix with the transpose of the second
+     * matrix, reading the second matrix in transposed order instead of
+     * copying it
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the matrix whose transpose is the second in the
+     * multiplication
+     * @return the product of the first matrix and the transpose of the second
+     */
+    public static FloatMatrix multiplyTransposeB(FloatMatrix matrixA, FloatMatrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        FloatMatrix result = new FloatMatrix(matrixA.numberOfRows, matrixB.numberOfRows);
+        multiplyTransposeBInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Writes the product of the first matrix with the transpose of the second
+     * matrix into a given result matrix
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the matrix whose transpose is the second in the
+     * multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with either operand
+     */
+    public static void multiplyTransposeBInto(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        multiply(matrixA, false, matrixB, true, result);
+    }
+
+    /**
+     * A helper method that checks the operands of a product, either of which
+     * may be read transposed, and computes it into the result
+     */
+    private static void multiply(FloatMatrix matrixA, boolean transposeA,
+                                 FloatMatrix matrixB, boolean transposeB,
+                                 FloatMatrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        int rowsA = transposeA ? matrixA.numberOfColumns : matrixA.numberOfRows;
+        int columnsA = transposeA ? matrixA.numberOfRows : matrixA.numberOfColumns;
+        int rowsB = transposeB ? matrixB.numberOfColumns : matrixB.numberOfRows;
+        int columnsB = transposeB ? matrixB.numberOfRows : matrixB.numberOfColumns;
+        multiplyCheck(rowsA, columnsA, rowsB, columnsB);
+        resultCheck(result, rowsA, columnsB);
+        overlapCheck(result, matrixA);
+        overlapCheck(result, matrixB);
+
+        FloatKernels.multiply(rowsA, columnsB, columnsA,
+            matrixA.data, matrixA.offset,
+            transposeA ? 1 : matrixA.stride, transposeA ? matrixA.stride : 1,
+            matrixB.data, matrixB.offset,
+            transposeB ? 1 : matrixB.stride, transposeB ? matrixB.stride : 1,
+            result.data, result.offset, result.stride);
+    }
+
+    /**
+     * Writes the product of a float matrix and a double matrix into a given
+     * double result matrix, summing in double precision
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with the second matrix
+     */
+    public static void multiplyInto(FloatMatrix matrixA, Matrix matrixB, Matrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        multiplyCheck(matrixA.numberOfRows, matrixA.numberOfColumns,
+            matrixB.getRows(), matrixB.getColumns());
+        resultCheck(result, matrixA.numberOfRows, matrixB.getColumns());
+        if(result.getData() == matrixB.getData()){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+
+        // The kernel works on row-major arrays, so other matrices are copied
+        Matrix b = OffHeapKernels.onHeap(matrixB);
+        Matrix target = result.isRowMajor() ? result : new Matrix(result.getRows(), result.getColumns());
+        FloatKernels.multiply(matrixA.numberOfRows, b.getColumns(), matrixA.numberOfColumns,
+            matrixA.data, matrixA.offset, matrixA.stride, 1,
+            b.getData(), b.getOffset(), b.getStride(),
+            target.getData(), target.getOffset(), target.getStride());
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+    }
+
+    /**
+     * Writes the product of the transpose of a float matrix and a double
+     * matrix into a given double result matrix, summing in double precision
+     * @param matrixA the matrix whose transpose is the first in the
+     * multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with the second matrix
+     */
+    public static void multiplyTransposeAInto(FloatMatrix matrixA, Matrix matrixB, Matrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        multiplyCheck(matrixA.numberOfColumns, matrixA.numberOfRows,
+            matrixB.getRows(), matrixB.getColumns());
+        resultCheck(result, matrixA.numberOfColumns, matrixB.getColumns());
+        if(result.getData() == matrixB.getData()){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+
+        Matrix b = OffHeapKernels.onHeap(matrixB);
+        Matrix target = result.isRowMajor() ? result : new Matrix(result.getRows(), result.getColumns());
+        FloatKernels.multiply(matrixA.numberOfColumns, b.getColumns(), matrixA.numberOfRows,
+            matrixA.data, matrixA.offset, 1, matrixA.stride,
+            b.getData(), b.getOffset(), b.getStride(),
+            target.getData(), target.getOffset(), target.getStride());
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+    }
+
+    /**
+     * Writes function(weights * input + bias) into a given double result
+     * matrix, summing in double precision, where the bias is a column added
+     * to every column of the product
+     * @param weights the float matrix that is the first in the multiplication
+     * @param input the second matrix in the multiplication
+     * @param bias a column with one value for each row of the weights
+     * @param function the function applied to every element, or null for none
+     * @param preActivation the matrix the values before the function is
+     * applied are written to, or null if they are not needed
+     * @param result the matrix the output is written to, which cannot share
+     * storage with any operand
+     */
+    public static void affineInto(FloatMatrix weights, Matrix input, Matrix bias,
+                                  DoubleUnaryOperator function,
+                                  Matrix preActivation, Matrix result){
+        handleNull(weights, input, "Matrices cannot be null for multiplication");
+        handleNull(bias, "Bias cannot be null");
+        resultCheck(result, weights.numberOfRows, input.getColumns());
+        if(bias.getRows() != weights.numberOfRows || bias.getColumns() != 1){
+            throw new IllegalArgumentException(
+                "Invalid shape for bias. Expected: " + weights.numberOfRows +
+                "x1 but got: " + bias.getRows() + "x" + bias.getColumns());
+        }
+        if(result.getData() == bias.getData()){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+        if(preActivation != null){
+            resultCheck(preActivation, weights.numberOfRows, input.getColumns());
+            if(preActivation.getData() == result.getData() ||
+                preActivation.getData() == input.getData()){
+                throw new IllegalArgumentException(
+                        "Result matrix cannot share storage with an operand");
+            }
+        }
+        Matrix target = result.isRowMajor() ? result : new Matrix(result.getRows(), result.getColumns());
+        Matrix biasValues = OffHeapKernels.onHeap(bias);
+        Matrix preValues = preActivation != null && !preActivation.isRowMajor() ?
+            new Matrix(preActivation.getRows(), preActivation.getColumns()) : preActivation;
+        multiplyInto(weights, input, target);
+
+        // Apply the bias and function while the rows of the product are
+        // still in cache
+        double[] c = target.getData();
+        for(int i = 0; i < target.getRows(); i++){
+            double b = biasValues.getData()[biasValues.getOffset() + i * biasValues.getStride()];
+            int cIndex = target.getOffset() + i * target.getStride();
+            for(int j = 0; j < target.getColumns(); j++){
+                double value = c[cIndex + j] + b;
+                if(preValues != null){
+                    preValues.getData()[preValues.getOffset() +
+                        i * preValues.getStride() + j] = value;
+                }
+                c[cIndex + j] = function == null ? value : function.applyAsDouble(value);
+            }
+        }
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+        if(preValues != preActivation){
+            OffHeapKernels.copy(preValues, preActivation);
+        }
+    }
+
+    /**
+     * Adds scaler * column * row^T to the matrix in place, where both vectors
+     * are double columns. This is the update a layer applies to its weights
+     * from its output gradient and input, without storing the gradient of the
+     * weights
+     * @param scaler the scaling value of the outer product
+     * @param column a column with one value for each row of the matrix
+     * @param row a column with one value for each column of the matrix
+     */
+    public void addOuterProductInPlace(double scaler, Matrix column, Matrix row){
+        handleNull(column, row, "Vectors cannot be null for the outer product");
+        if(column.getRows() != this.numberOfRows || column.getColumns() != 1 ||
+            row.getRows() != this.numberOfColumns || row.getColumns() != 1){
+            throw new IllegalArgumentException(
+                "Invalid shapes for outer product. Expected: " + this.numberOfRows +
+                "x1 and " + this.numberOfColumns + "x1 but got: " + column.getRows() +
+                "x" + column.getColumns() + " and " + row.getRows() + "x" + row.getColumns());
+        }
+        FloatKernels.addOuterProduct(this, scaler, column, row);
+    }
+
+    /**
+     * Returns the element wise product of two matrices
+     * @param matrix1 the first matrix
+     * @param matrix2 the second matrix
+     * @return the element wise product of the matrices
+     */
+    public static FloatMatrix elementWiseMultiply(FloatMatrix matrix1, FloatMatrix matrix2){
+        handleNull(matrix1, matrix2, "Matrices cannot be null for element wise multiplication");
+        FloatMatrix result = new FloatMatrix(matrix1.numberOfRows, matrix1.numberOfColumns);
+        elementWiseMultiplyInto(matrix1, matrix2, result);
+        return result;
+    }
+
+    /**
+     * Writes the element wise product of two matrices into a given result
+     * matrix, which may be one of the operands
+     * @param matrix1 the first matrix
+     * @param matrix2 the second matrix
+     * @param result the matrix the product is written to
+     */
+    public static void elementWiseMultiplyInto(FloatMatrix matrix1, FloatMatrix matrix2, FloatMatrix result){
+        handleNull(matrix1, matrix2, "Matrices cannot be null for element wise multiplication");
+        addCheck(matrix1, matrix2);
+        resultCheck(result, matrix1.numberOfRows, matrix1.numberOfColumns);
+        FloatKernels.elementWiseMultiply(matrix1, matrix2, result);
+    }
+
+    /**
+     * Multiplies each element of the matrix by the corresponding element of
+     * the given matrix, in place
+     * @param matrix the matrix to multiply by
+     */
+    public void elementWiseMultiplyInPlace(FloatMatrix matrix){
+        elementWiseMultiplyInto(this, matrix, this);
+    }
+
+    /**
+     * Adds two matrices and returns the sum
+     * @param matrixA the first matrix to add
+     * @param matrixB the second matrix to add
+     * @return the sum of the matrices
+     */
+    public static FloatMatrix add(FloatMatrix matrixA, FloatMatrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for addition");
+        FloatMatrix result = new FloatMatrix(matrixA.numberOfRows, matrixA.numberOfColumns);
+        addInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Adds two matrices and writes the sum into a given result matrix, which
+     * may be one of the operands
+     * @param matrixA the first matrix to add
+     * @param matrixB the second matrix to add
+     * @param result the matrix the sum is written to
+     */
+    public static void addInto(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for addition");
+        addCheck(matrixA, matrixB);
+        resultCheck(result, matrixA.numberOfRows, matrixA.numberOfColumns);
+        FloatKernels.add(matrixA, matrixB, result);
+    }
+
+    /**
+     * Adds the given matrix to the matrix in place
+     * @param matrix the matrix to add
+     */
+    public void addInPlace(FloatMatrix matrix){
+        addInto(this, matrix, this);
+    }
+
+    /**
+     * Subtracts two matrices and returns the difference
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     * @return the diffence between the first and second matrix
+     */
+    public static FloatMatrix subtract(FloatMatrix matrixA, FloatMatrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for subtraction");
+        FloatMatrix result = new FloatMatrix(matrixA.numberOfRows, matrixA.numberOfColumns);
+        subtractInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Subtracts two matrices and writes the difference into a given result
+     * matrix, which may be one of the operands
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     * @param result the matrix the difference is written to
+     */
+    public static void subtractInto(FloatMatrix matrixA, FloatMatrix matrixB, FloatMatrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for subtraction");
+        addCheck(matrixA, matrixB);
+        resultCheck(result, matrixA.numberOfRows, matrixA.numberOfColumns);
+        FloatKernels.subtract(matrixA, matrixB, result);
+    }
+
+    /**
+     * Subtracts the given matrix from the matrix in place
+     * @param matrix the matrix to subtract
+     */
+    public void subtractInPlace(FloatMatrix matrix){
+        subtractInto(this, matrix, this);
+    }
+
+    /**
+     * Scales the matrix by a given scaler
+     * @param matrix the matrix to be scaled
+     * @param scaler the scaling value
+     * @return scaled matrix
+     */
+    public static FloatMatrix scale(FloatMatrix matrix, float scaler){
+        handleNull(matrix, "Matrix cannot be null for scaling");
+        FloatMatrix result = new FloatMatrix(matrix.numberOfRows, matrix.numberOfColumns);
+        scaleInto(matrix, scaler, result);
+        return result;
+    }
+
+    /**
+     * Scales the matrix by a given scaler and writes it into a given result
+     * matrix, which may be the matrix itself
+     * @param matrix the matrix to be scaled
+     * @param scaler the scaling value
+     * @param result the matrix the scaled values are written to
+     */
+    public static void scaleInto(FloatMatrix matrix, float scaler, FloatMatrix result){
+        handleNull(matrix, "Matrix cannot be null for scaling");
+        resultCheck(result, matrix.numberOfRows, matrix.numberOfColumns);
+        FloatKernels.scale(matrix, scaler, result);
+    }
+
+    /**
+     * Scales the matrix by a given scaler in place
+     * @param scaler the scaling value
+     */
+    public void scaleInPlace(float scaler){
+        FloatKernels.scale(this, scaler, this);
+    }
+
+    /**
+     * Computes the cross correlation between a given matrix and kernel and
+     * returns the computed matrix
+     * @param matrix the matrix for the cross correleation
+     * @param kernel the kernal for the cross correlation
+     * @return the cross correlated matrix of the kernel and given matrix
+     */
+    public static FloatMatrix convolution(FloatMatrix matrix, FloatMatrix kernel){
+        handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
+        convolutionCheck(matrix, kernel);
+
+        FloatMatrix output = new FloatMatrix(
+            matrix.numberOfRows - kernel.numberOfRows + 1,
+            matrix.numberOfColumns - kernel.numberOfColumns + 1);
+        convolutionInto(matrix, kernel, output);
+        return output;
+    }
+
+    /**
+     * Computes the cross correlation between a given matrix and kernel and
+     * writes it into a given result matrix
+     * @param matrix the matrix for the cross correleation
+     * @param kernel the kernal for the cross correlation
+     * @param result the matrix the output is written to, which cannot share
+     * storage with the matrix or kernel
+     */
+    public static void convolutionInto(FloatMatrix matrix, FloatMatrix kernel, FloatMatrix result){
+        handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
+        convolutionCheck(matrix, kernel);
+        resultCheck(result, matrix.numberOfRows - kernel.numberOfRows + 1,
+            matrix.numberOfColumns - kernel.numberOfColumns + 1);
+        overlapCheck(result, matrix);
+        overlapCheck(result, kernel);
+
+        FloatKernels.convolution(matrix, kernel, result);
+    }
+
+    /**
+     * A helper method to check if the kernel fits inside the matrix
+     * @param matrix the matrix for the convolution
+     * @param kernel the kernel for the convolution
+     */
+    private static void convolutionCheck(FloatMatrix matrix, FloatMatrix kernel){
+        if(matrix.numberOfRows < kernel.numberOfRows ||
+            matrix.numberOfColumns < kernel.numberOfColumns) {
+            throw new IllegalArgumentException("Kernel size is larger than the matrix size.");
+        }
+    }
+
+    public FloatMatrix convolution(FloatMatrix kernal){
+        handleNull(kernal, "Matrices and kernel cannot be null for convolution");
+        return convolution(this, kernal);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.numberOfRows; i++) {
+            for (int j = 0; j < this.numberOfColumns; j++) {
+                sb.append(String.format("%.4f ", this.data[index(i, j)]));
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package matrix;
+
+/**
+ * This class implements a single precision column vector as a FloatMatrix of
+ * size n and 1, the counterpart of Vector
+ *
+ * @author Joseph Bronsten
+ */
+public class FloatVector extends FloatMatrix {
+    /**
+     * Creates a vector object from an array of floats, with a height of the
+     * length of the array and a width of 1. The array is copied
+     * @param vector the array of floats that becomes the column vector
+     */
+    public FloatVector(float[] vector) {
+        super(vector.clone(), vector.length, 1);
+    }
+
+    /**
+     * Creates a vector of a given length with each entry with a given value
+     * @param length the length of the column vector
+     * @param value the value at each entry
+     */
+    public FloatVector(int length, float value){
+        super(length, 1, value);
+    }
+
+    /**
+     * Creates a vector of a given length with each entry with a value of 0
+     * @param length the length of the column vector
+     */
+    public FloatVector(int length){
+        super(length, 1);
+    }
+
+    /**
+     * Creates a single precision copy of a vector, rounding each value to the
+     * nearest float
+     * @param vector the vector to copy
+     */
+    public FloatVector(Vector vector){
+        super(vector);
+    }
+
+    /**
+     * Returns a double precision copy of the vector
+     * @return the vector as a Vector object
+     */
+    public Vector toVector(){
+        return Vector.wrap(toMatrix().getData());
+    }
+
+    /**
+     * Gets the value at the given index
+     * @param row given index
+     * @return the value at the index
+     */
+    public float get(int row){
+        return this.get(row, 0);
+    }
+
+    /**
+     * Sets the value at a given index to a given value
+     * @param row the given index
+     * @param value the given value
+     */
+    public void set(int row, float value){
+        this.set(row, 0, value);
+    }
+
+    /**
+     * Returns a copy of the values of the vector as an array
+     * @return an array of floats with the values of the vector
+     */
+    public float[] toArray() {
+        return this.getColumn(0);
+    }
+
+    /**
+     * Calculates the dot product of two given vectors as the sum of the product
+     * of each corresponding entry, summed in double precision
+     * @param vector1 the first vector
+     * @param vector2 the second vector
+     * @return the dot product of the given vectors
+     */
+    public static double dotProduct(FloatVector vector1, FloatVector vector2){
+        if(vector1.getRows() != vector2.getRows()){
+            throw new IllegalArgumentException(
+                    "Vectors must have the same length for dot product");
+        }
+        float[] a = vector1.getData();
+        float[] b = vector2.getData();
+        double sum = 0;
+        for(int i = 0; i < vector1.getRows(); i++){
+            sum += (double) a[vector1.getOffset() + i * vector1.getStride()] *
+                b[vector2.getOffset() + i * vector2.getStride()];
+        }
+        return sum;
+    }
+
+    public static FloatVector scale(FloatVector vector, float scaler){
+        FloatVector result = new FloatVector(vector.getRows());
+        scaleInto(vector, scaler, result);
+        return result;
+    }
+
+    public static FloatVector add(FloatVector vector1, FloatVector vector2){
+        FloatVector result = new FloatVector(vector1.getRows());
+        addInto(vector1, vector2, result);
+        return result;
+    }
+
+    public static FloatVector subtract(FloatVector vector1, FloatVector vector2){
+        FloatVector result = new FloatVector(vector1.getRows());
+        subtractInto(vector1, vector2, result);
+        return result;
+    }
+
+    public static FloatVector multiply(FloatMatrix matrix, FloatVector vector){
+        FloatVector result = new FloatVector(matrix.getRows());
+        multiplyInto(matrix, vector, result);
+        return result;
+    }
+
+    /**
+     * Multiplies a float matrix with a double vector, summing in double
+     * precision
+     * @param matrix the float matrix
+     * @param vector the vector with as many entries as the matrix has columns
+     * @return the product of the matrix and the vector
+     */
+    public static Vector multiply(FloatMatrix matrix, Vector vector){
+        Vector result = new Vector(matrix.getRows());
+        multiplyInto(matrix, vector, result);
+        return result;
+    }
+
+    /**
+     * Multiplies the transpose of a float matrix with a double vector,
+     * summing in double precision
+     * @param matrix the float matrix whose transpose is multiplied
+     * @param vector the vector with as many entries as the matrix has rows
+     * @return the product of the transpose of the matrix and the vector
+     */
+    public static Vector multiplyTranspose(FloatMatrix matrix, Vector vector){
+        Vector result = new Vector(matrix.getColumns());
+        multiplyTransposeAInto(matrix, vector, result);
+        return result;
+    }
+
+    public static FloatVector elementWiseMultiply(FloatVector vector1, FloatVector vector2){
+        FloatVector result = new FloatVector(vector1.getRows());
+        elementWiseMultiplyInto(vector1, vector2, result);
+        return result;
+    }
+}
@@ -0,0 +1,465 @@
+package matrix;
+
+/**
+ * This class implements a cache blocked matrix multiplication. The second
+ * matrix is copied in panels of KC rows by NC columns that stay in the last
+ * level cache, the first matrix in panels of MC rows by KC columns that stay
+ * in L2, and a micro kernel computes MR by NR tiles of the result with the
+ * partial sums kept in local variables. Products below a size threshold use
+ * the simple loop in Kernels, where the cost of packing is not worth it.
+ * Products with a single column, such as a matrix times a vector, use Gemv.
+ * Large products are split into tiles of the result that are computed on the
+ * fork/join pool of the package. Every element of a tile is summed exactly as
+ * in the sequential kernel, so the split does not change the result
+ *
+ * @author Joseph Bronsten
+ */
+final class Gemm {
+    /** Rows of the result computed by one call of the micro kernel */
+    static final int MR = 4;
+    /** Columns of the result computed by one call of the micro kernel */
+    static final int NR = 4;
+    /** Rows of the first matrix packed into one L2 panel */
+    static final int MC = 128;
+    /** Shared dimension of one packed panel */
+    static final int KC = 256;
+    /** Columns of the second matrix packed into one panel */
+    static final int NC = 2048;
+
+    /**
+     * The number of multiply-adds above which the blocked kernel is used
+     */
+    static final long BLOCKED_THRESHOLD = 32L * 32 * 32;
+    /**
+     * The number of multiply-adds above which the product is split across
+     * threads
+     */
+    static final long PARALLEL_THRESHOLD = 128L * 128 * 128;
+    /**
+     * How many times longer than the result is wide or tall the shared
+     * dimension must be before it is split across threads
+     */
+    static final int SHARED_SPLIT_RATIO = 4;
+
+    private Gemm(){}
+
+    /**
+     * Work applied to each tile of the result right after its last partial
+     * sums are stored, while the tile is still in cache
+     */
+    interface Epilogue {
+        /**
+         * Applies the work to a tile of the result
+         * @param c the array holding the result
+         * @param cIndex the index of the first element of the tile
+         * @param cStride the distance between two rows of the result
+         * @param row the row of the result the tile starts at
+         * @param column the column of the result the tile starts at
+         * @param rows the number of rows in the tile
+         * @param columns the number of columns in the tile
+         */
+        void apply(double[] c, int cIndex, int cStride,
+                   int row, int column, int rows, int columns);
+    }
+
+    /**
+     * Computes the product of two matrices into a result matrix, choosing the
+     * blocked kernel for large products
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to
+     */
+    static void multiply(Matrix matrixA, Matrix matrixB, Matrix result){
+        multiply(matrixA, false, matrixB, false, result);
+    }
+
+    /**
+     * Computes the product of two matrices into a result matrix, where either
+     * matrix can be used transposed without copying it
+     * @param matrixA the first matrix in the multiplication
+     * @param transposeA true to multiply by the transpose of the first matrix
+     * @param matrixB the second matrix in the multiplication
+     * @param transposeB true to multiply by the transpose of the second matrix
+     * @param result the matrix the product is written to
+     */
+    static void multiply(Matrix matrixA, boolean transposeA,
+                         Matrix matrixB, boolean transposeB, Matrix result){
+        multiply(matrixA, transposeA, matrixB, transposeB, result, null);
+    }
+
+    /**
+     * Computes the product of two matrices into a result matrix and applies
+     * an epilogue to every tile of the result once it is complete
+     * @param matrixA the first matrix in the multiplication
+     * @param transposeA true to multiply by the transpose of the first matrix
+     * @param matrixB the second matrix in the multiplication
+     * @param transposeB true to multiply by the transpose of the second matrix
+     * @param result the matrix the product is written to
+     * @param epilogue the work applied to the result, or null for none
+     */
+    static void multiply(Matrix matrixA, boolean transposeA,
+                         Matrix matrixB, boolean transposeB, Matrix result,
+                         Epilogue epilogue){
+        // A transposed view is the matrix it was made from read transposed
+        if(matrixA.isTransposed()){
+            matrixA = matrixA.storage();
+            transposeA = !transposeA;
+        }
+        if(matrixB.isTransposed()){
+            matrixB = matrixB.storage();
+            transposeB = !transposeB;
+        }
+        if(result.isTransposed() && epilogue == null){
+            // The transpose of the product is B^T A^T
+            multiply(matrixB, !transposeB, matrixA, !transposeA, result.storage(), null);
+            return;
+        }
+        if(OffHeapKernels.any(matrixA, matrixB, result)){
+            OffHeapKernels.multiply(matrixA, transposeA, matrixB, transposeB, result, epilogue);
+            return;
+        }
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        int commonDim = transposeA ? matrixA.getRows() : matrixA.getColumns();
+        int aRowStep = transposeA ? 1 : matrixA.getStride();
+        int aColumnStep = transposeA ? matrixA.getStride() : 1;
+        int bRowStep = transposeB ? 1 : matrixB.getStride();
+        int bColumnStep = transposeB ? matrixB.getStride() : 1;
+
+        if(columns == 1 && aColumnStep == 1){
+            // A matrix-vector product, where each element is the dot product
+            // of a row of A, and the epilogue finishes each group of rows as
+            // they are read instead of walking the result a second time
+            Gemv.multiply(rows, commonDim,
+                matrixA.getData(), matrixA.getOffset(), aRowStep,
+                matrixB.getData(), matrixB.getOffset(), bRowStep,
+                result.getData(), result.getOffset(), result.getStride(), epilogue);
+            return;
+        }
+        if(!useBlocked(rows, columns, commonDim)){
+            Kernels.multiply(rows, columns, commonDim,
+                matrixA.getData(), matrixA.getOffset(), aRowStep, aColumnStep,
+                matrixB.getData(), matrixB.getOffset(), bRowStep, bColumnStep,
+                result.getData(), result.getOffset(), result.getStride());
+            if(epilogue != null){
+                epilogue.apply(result.getData(), result.getOffset(),
+                    result.getStride(), 0, 0, rows, columns);
+            }
+            return;
+        }
+        multiply(rows, columns, commonDim,
+            matrixA.getData(), matrixA.getOffset(), aRowStep, aColumnStep,
+            matrixB.getData(), matrixB.getOffset(), bRowStep, bColumnStep,
+            result.getData(), result.getOffset(), result.getStride(), epilogue);
+    }
+
+    /**
+     * Returns if a product of the given shape is large enough for the blocked
+     * kernel
+     * @param rows the rows of the result
+     * @param columns the columns of the result
+     * @param commonDim the shared dimension of the product
+     * @return true if the blocked kernel should be used
+     */
+    static boolean useBlocked(int rows, int columns, int commonDim){
+        return rows >= MR && columns >= NR &&
+            (long) rows * columns * commonDim >= BLOCKED_THRESHOLD;
+    }
+
+    /**
+     * Computes C = A * B, where A is rows by commonDim, B is commonDim by
+     * columns and C is rows by columns, splitting large products across
+     * threads. The operands and epilogue are described as in
+     * multiplyBlocked.
+     * <p>
+     * The result is normally split into tiles, which gives the same values as
+     * the sequential kernel. When deterministic mode is off and the shared
+     * dimension is much longer than the result, the shared dimension is split
+     * instead and the partial products are added together, which changes the
+     * rounding of the result. This is never done when there is an epilogue
+     */
+    static void multiply(int rows, int columns, int commonDim,
+                         double[] a, int aOffset, int aRowStep, int aColumnStep,
+                         double[] b, int bOffset, int bRowStep, int bColumnStep,
+                         double[] c, int cOffset, int cStride, Epilogue epilogue){
+        long work = (long) rows * columns * commonDim;
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD)){
+            multiplyBlocked(rows, columns, commonDim,
+                a, aOffset, aRowStep, aColumnStep,
+                b, bOffset, bRowStep, bColumnStep,
+                c, cOffset, cStride, epilogue, 0, 0);
+            return;
+        }
+        if(epilogue == null && !Parallel.deterministic() && commonDim >= 2 * KC &&
+            commonDim >= SHARED_SPLIT_RATIO * Math.max(rows, columns)){
+            multiplySplitShared(rows, columns, commonDim,
+                a, aOffset, aRowStep, aColumnStep,
+                b, bOffset, bRowStep, bColumnStep,
+                c, cOffset, cStride);
+            return;
+        }
+
+        // Aim for a few tiles per thread so uneven tiles balance out, 
+        // splitting the rows first so each tile packs a smaller part of A
+        int targetTiles = 4 * Parallel.parallelism();
+        int rowTiles = Math.min(targetTiles, (rows + MR - 1) / MR);
+        int columnTiles = Math.min((targetTiles + rowTiles - 1) / rowTiles,
+            (columns + NR - 1) / NR);
+        int tileRows = roundUp((rows + rowTiles - 1) / rowTiles, MR);
+        int tileColumns = roundUp((columns + columnTiles - 1) / columnTiles, NR);
+        int rowCount = (rows + tileRows - 1) / tileRows;
+        int columnCount = (columns + tileColumns - 1) / tileColumns;
+
+        Parallel.forRange(0, rowCount * columnCount, tile -> {
+            int i = tile / columnCount * tileRows;
+            int j = tile % columnCount * tileColumns;
+            multiplyBlocked(Math.min(tileRows, rows - i), 
+                Math.min(tileColumns, columns - j), commonDim,
+                a, aOffset + i * aRowStep, aRowStep, aColumnStep,
+                b, bOffset + j * bColumnStep, bRowStep, bColumnStep,
+                c, cOffset + i * cStride + j, cStride, epilogue, i, j);
+        });
+    }
+
+    /**
+     * Computes a product by splitting the shared dimension into one chunk per
+     * thread. The first chunk is written straight to C and the others to
+     * their own buffers, which are then added to C in order of the chunks
+     */
+    private static void multiplySplitShared(int rows, int columns, int commonDim,
+                         double[] a, int aOffset, int aRowStep, int aColumnStep,
+                         double[] b, int bOffset, int bRowStep, int bColumnStep,
+                         double[] c, int cOffset, int cStride){
+        int chunks = Math.min(Parallel.parallelism(), commonDim / KC);
+        int chunkSize = roundUp((commonDim + chunks - 1) / chunks, KC);
+        int chunkCount = (commonDim + chunkSize - 1) / chunkSize;
+        double[][] partials = new double[chunkCount][];
+
+        Parallel.forRange(0, chunkCount, chunk -> {
+            int p = chunk * chunkSize;
+            int length = Math.min(chunkSize, commonDim - p);
+            if(chunk == 0){
+                multiplyBlocked(rows, columns, length,
+                    a, aOffset, aRowStep, aColumnStep,
+                    b, bOffset, bRowStep, bColumnStep,
+                    c, cOffset, cStride, null, 0, 0);
+            }
+            else {
+                partials[chunk] = new double[rows * columns];
+                multiplyBlocked(rows, columns, length,
+                    a, aOffset + p * aColumnStep, aRowStep, aColumnStep,
+                    b, bOffset + p * bRowStep, bRowStep, bColumnStep,
+                    partials[chunk], 0, columns, null, 0, 0);
+            }
+        });
+
+        for(int chunk = 1; chunk < chunkCount; chunk++){
+            double[] partial = partials[chunk];
+            for(int i = 0; i < rows; i++){
+                int cIndex = cOffset + i * cStride;
+                int pIndex = i * columns;
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] += partial[pIndex + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes C = A * B with the blocked kernel, where A is rows by commonDim,
+     * B is commonDim by columns and C is rows by columns. The element (i, k)
+     * of A is read from a[aOffset + i * aRowStep + k * aColumnStep], so a
+     * transposed operand can be passed by swapping its steps, and likewise
+     * for B
+     * @param rows the rows of the result
+     * @param columns the columns of the result
+     * @param commonDim the shared dimension of the product
+     * @param a the array holding the first matrix
+     * @param aOffset the index of the first element of A
+     * @param aRowStep the distance between two rows of A
+     * @param aColumnStep the distance between two columns of A
+     * @param b the array holding the second matrix
+     * @param bOffset the index of the first element of B
+     * @param bRowStep the distance between two rows of B
+     * @param bColumnStep the distance between two columns of B
+     * @param c the array the result is written to
+     * @param cOffset the index of the first element of C
+     * @param cStride the distance between two rows of C
+     * @param epilogue the work applied to each finished tile, or null
+     * @param row the row the epilogue is told C starts at
+     * @param column the column the epilogue is told C starts at
+     */
+    static void multiplyBlocked(int rows, int columns, int commonDim,
+                         double[] a, int aOffset, int aRowStep, int aColumnStep,
+                         double[] b, int bOffset, int bRowStep, int bColumnStep,
+                         double[] c, int cOffset, int cStride,
+                         Epilogue epilogue, int row, int column){
+        int kc = Math.min(KC, commonDim);
+        double[] packedA = new double[roundUp(Math.min(MC, rows), MR) * kc];
+        double[] packedB = new double[roundUp(Math.min(NC, columns), NR) * kc];
+        double[] edge = new double[MR * NR];
+
+        for(int jc = 0; jc < columns; jc += NC){
+            int nc = Math.min(NC, columns - jc);
+            for(int pc = 0; pc < commonDim; pc += KC){
+                int pk = Math.min(KC, commonDim - pc);
+                packB(b, bOffset + pc * bRowStep + jc * bColumnStep,
+                    bRowStep, bColumnStep, pk, nc, packedB);
+                for(int ic = 0; ic < rows; ic += MC){
+                    int mc = Math.min(MC, rows - ic);
+                    packA(a, aOffset + ic * aRowStep + pc * aColumnStep,
+                        aRowStep, aColumnStep, mc, pk, packedA);
+                    macroKernel(mc, nc, pk, packedA, packedB,
+                        c, cOffset + ic * cStride + jc, cStride, pc == 0, edge,
+                        pc + pk == commonDim ? epilogue : null,
+                        row + ic, column + jc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a block of A into panels of MR rows, where each panel stores the
+     * MR values of one column next to each other. Rows past the end of the
+     * block are padded with zeros
+     */
+    private static void packA(double[] a, int offset, int rowStep, int columnStep,
+                              int mc, int kc, double[] packed){
+        int index = 0;
+        for(int ir = 0; ir < mc; ir += MR){
+            int mr = Math.min(MR, mc - ir);
+            for(int p = 0; p < kc; p++){
+                int source = offset + ir * rowStep + p * columnStep;
+                for(int r = 0; r < mr; r++){
+                    packed[index++] = a[source + r * rowStep];
+                }
+                for(int r = mr; r < MR; r++){
+                    packed[index++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a block of B into panels of NR columns, where each panel stores
+     * the NR values of one row next to each other. Columns past the end of the
+     * block are padded with zeros
+     */
+    private static void packB(double[] b, int offset, int rowStep, int columnStep,
+                              int kc, int nc, double[] packed){
+        int index = 0;
+        for(int jr = 0; jr < nc; jr += NR){
+            int nr = Math.min(NR, nc - jr);
+            for(int p = 0; p < kc; p++){
+                int source = offset + p * rowStep + jr * columnStep;
+                for(int s = 0; s < nr; s++){
+                    packed[index++] = b[source + s * columnStep];
+                }
+                for(int s = nr; s < NR; s++){
+                    packed[index++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies a packed panel of A with a packed panel of B one MR by NR
+     * tile at a time, applying the epilogue to each tile after it is stored
+     */
+    private static void macroKernel(int mc, int nc, int kc,
+                                    double[] packedA, double[] packedB,
+                                    double[] c, int cOffset, int cStride,
+                                    boolean overwrite, double[] edge,
+                                    Epilogue epilogue, int row, int column){
+        for(int jr = 0; jr < nc; jr += NR){
+            int nr = Math.min(NR, nc - jr);
+            for(int ir = 0; ir < mc; ir += MR){
+                int mr = Math.min(MR, mc - ir);
+                int cIndex = cOffset + ir * cStride + jr;
+                if(mr == MR && nr == NR){
+                    microKernel(kc, packedA, ir * kc, packedB, jr * kc,
+                        c, cIndex, cStride, overwrite);
+                }
+                else {
+                    microKernel(kc, packedA, ir * kc, packedB, jr * kc,
+                        edge, 0, NR, true);
+                    for(int r = 0; r < mr; r++){
+                        for(int s = 0; s < nr; s++){
+                            if(overwrite){
+                                c[cIndex + r * cStride + s] = edge[r * NR + s];
+                            }
+                            else {
+                                c[cIndex + r * cStride + s] += edge[r * NR + s];
+                            }
+                        }
+                    }
+                }
+                if(epilogue != null){
+                    epilogue.apply(c, cIndex, cStride, row + ir, column + jr, mr, nr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes a 4 by 4 tile of the result from a packed panel of A and a
+     * packed panel of B, keeping the sixteen partial sums in local variables
+     * so they can live in registers. Each sum is accumulated in order of the
+     * shared dimension starting from zero
+     */
+    private static void microKernel(int kc, double[] a, int aIndex,
+                                    double[] b, int bIndex,
+                                    double[] c, int cIndex, int cStride,
+                                    boolean overwrite){
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for(int p = 0; p < kc; p++){
+            double a0 = a[aIndex];
+            double a1 = a[aIndex + 1];
+            double a2 = a[aIndex + 2];
+            double a3 = a[aIndex + 3];
+            double b0 = b[bIndex];
+            double b1 = b[bIndex + 1];
+            double b2 = b[bIndex + 2];
+            double b3 = b[bIndex + 3];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+
+            aIndex += MR;
+            bIndex += NR;
+        }
+
+        int c0 = cIndex;
+        int c1 = c0 + cStride;
+        int c2 = c1 + cStride;
+        int c3 = c2 + cStride;
+        if(overwrite){
+            c[c0] = c00; c[c0 + 1] = c01; c[c0 + 2] = c02; c[c0 + 3] = c03;
+            c[c1] = c10; c[c1 + 1] = c11; c[c1 + 2] = c12; c[c1 + 3] = c13;
+            c[c2] = c20; c[c2 + 1] = c21; c[c2 + 2] = c22; c[c2 + 3] = c23;
+            c[c3] = c30; c[c3 + 1] = c31; c[c3 + 2] = c32; c[c3 + 3] = c33;
+        }
+        else {
+            c[c0] += c00; c[c0 + 1] += c01; c[c0 + 2] += c02; c[c0 + 3] += c03;
+            c[c1] += c10; c[c1 + 1] += c11; c[c1 + 2] += c12; c[c1 + 3] += c13;
+            c[c2] += c20; c[c2 + 1] += c21; c[c2 + 2] += c22; c[c2 + 3] += c23;
+            c[c3] += c30; c[c3 + 1] += c31; c[c3 + 2] += c32; c[c3 + 3] += c33;
+        }
+    }
+
+    /**
+     * Rounds a value up to the next multiple of a block size
+     * @param value the value to round
+     * @param block the block size
+     * @return the smallest multiple of block that is at least value
+     */
+    static int roundUp(int value, int block){
+        return (value + block - 1) / block * block;
+    }
+}
@@ -0,0 +1,104 @@
+package matrix;
+
+/**
+ * This class implements the product of a row-major matrix with a vector.
+ * Each element of the result is the dot product of a row of the matrix with
+ * the vector, so the rows are read once in order and the vector, which stays
+ * in cache, is read once for every four rows by ArrayOps.dot4. The product is
+ * bound by the speed the matrix is read from memory, so tall matrices are
+ * split into blocks of rows that are read in parallel.
+ * <p>
+ * Rows are grouped in fours counted from the first row whatever the split,
+ * so every element is summed the same way for any number of threads
+ *
+ * @author Joseph Bronsten
+ */
+final class Gemv {
+    /** The number of rows whose dot products are computed together */
+    private static final int ROWS = 4;
+
+    /** The fewest rows each parallel task computes */
+    private static final int ROW_BLOCK = 64;
+
+    /** The number of multiply-adds below which products run on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 17;
+
+    private Gemv(){}
+
+    /**
+     * Computes y = A * x and applies an epilogue to every group of rows of
+     * the result once it is complete
+     * @param rows the rows of A and of the result
+     * @param commonDim the columns of A and the length of x
+     * @param a the array holding A
+     * @param aOffset the index of the first element of A
+     * @param aStride the distance between two rows of A
+     * @param x the array holding x
+     * @param xOffset the index of the first value of x
+     * @param xStep the distance between two values of x
+     * @param y the array the result is written to
+     * @param yOffset the index of the first value of the result
+     * @param yStep the distance between two values of the result
+     * @param epilogue the work applied to the result, or null for none
+     */
+    static void multiply(int rows, int commonDim,
+                         double[] a, int aOffset, int aStride,
+                         double[] x, int xOffset, int xStep,
+                         double[] y, int yOffset, int yStep, Gemm.Epilogue epilogue){
+        if(xStep != 1){
+            // Gather the vector so the dot products read it in order
+            try (ScratchPool.Scope scope = ScratchPool.open()) {
+                double[] values = scope.array(commonDim);
+                for(int k = 0; k < commonDim; k++){
+                    values[k] = x[xOffset + k * xStep];
+                }
+                multiply(rows, commonDim, a, aOffset, aStride, values, 0, 1,
+                    y, yOffset, yStep, epilogue);
+            }
+            return;
+        }
+        if(!Parallel.worthSplitting((long) rows * commonDim, PARALLEL_THRESHOLD) ||
+            rows < 2 * ROW_BLOCK){
+            multiplyRows(0, rows, commonDim, a, aOffset, aStride, x, xOffset,
+                y, yOffset, yStep, epilogue);
+            return;
+        }
+        int targetBlocks = 4 * Parallel.parallelism();
+        int blockRows = Math.max(ROW_BLOCK,
+            Gemm.roundUp((rows + targetBlocks - 1) / targetBlocks, ROWS));
+        int blocks = (rows + blockRows - 1) / blockRows;
+        Parallel.forRange(0, blocks, block -> {
+            int start = block * blockRows;
+            multiplyRows(start, Math.min(rows, start + blockRows), commonDim,
+                a, aOffset, aStride, x, xOffset, y, yOffset, yStep, epilogue);
+        });
+    }
+
+    /**
+     * Computes the rows of y = A * x from start to end exclusive, where start
+     * is a multiple of ROWS
+     */
+    private static void multiplyRows(int start, int end, int commonDim,
+                                     double[] a, int aOffset, int aStride,
+                                     double[] x, int xOffset,
+                                     double[] y, int yOffset, int yStep,
+                                     Gemm.Epilogue epilogue){
+        ArrayOps ops = Kernels.OPS;
+        int i = start;
+        for(; i + ROWS <= end; i += ROWS){
+            int yIndex = yOffset + i * yStep;
+            ops.dot4(a, aOffset + i * aStride, aStride, x, xOffset,
+                y, yIndex, yStep, commonDim);
+            if(epilogue != null){
+                epilogue.apply(y, yIndex, yStep, i, 0, ROWS, 1);
+            }
+        }
+        for(; i < end; i++){
+            int yIndex = yOffset + i * yStep;
+            y[yIndex] = ops.dot(a, aOffset + i * aStride, x, xOffset, commonDim);
+            if(epilogue != null){
+                epilogue.apply(y, yIndex, yStep, i, 0, 1, 1);
+            }
+        }
+    }
+}
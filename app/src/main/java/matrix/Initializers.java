@@ -0,0 +1,102 @@
+package matrix;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class fills matrices with random values for the initializers of
+ * Matrix. The values are drawn from SplittableRandom generators, one for each
+ * block of BLOCK_VALUES values of the matrix in row-major order. The
+ * generators are split from a generator of the seed one block after another
+ * before any values are drawn, so every block gets the same generator, and the
+ * matrix the same values, whichever thread fills it and however many threads
+ * there are.
+ *
+ * @author Joseph Bronsten
+ */
+final class Initializers {
+    /** The number of values drawn from the generator of one block */
+    private static final int BLOCK_VALUES = 1 << 14;
+
+    /** The number of values below which a matrix is filled on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 16;
+
+    private Initializers(){}
+
+    /**
+     * Draws a value from a generator
+     */
+    interface Sampler {
+        double next(SplittableRandom random);
+    }
+
+    /**
+     * Fills a row-major matrix with values drawn from a sampler
+     * @param matrix the matrix to fill, which must have a backing array
+     * @param seed the seed of the generators
+     * @param sampler the distribution of the values
+     */
+    static void fill(Matrix matrix, long seed, Sampler sampler){
+        double[] data = matrix.getData();
+        int columns = matrix.getColumns();
+        long count = (long) matrix.getRows() * columns;
+        int blocks = (int) ((count + BLOCK_VALUES - 1) / BLOCK_VALUES);
+
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] generators = new SplittableRandom[blocks];
+        for(int block = 0; block < blocks; block++){
+            generators[block] = root.split();
+        }
+
+        Block body = block -> {
+            SplittableRandom random = generators[block];
+            long start = (long) block * BLOCK_VALUES;
+            long end = Math.min(count, start + BLOCK_VALUES);
+            int i = (int) (start / columns);
+            int j = (int) (start % columns);
+            int index = matrix.getOffset() + i * matrix.getStride() + j;
+            for(long n = start; n < end; n++){
+                data[index++] = sampler.next(random);
+                if(++j == columns){
+                    j = 0;
+                    i++;
+                    index = matrix.getOffset() + i * matrix.getStride();
+                }
+            }
+        };
+        if(Parallel.worthSplitting(count, PARALLEL_THRESHOLD)){
+            Parallel.forRange(0, blocks, body::fill);
+        }
+        else {
+            for(int block = 0; block < blocks; block++){
+                body.fill(block);
+            }
+        }
+    }
+
+    /**
+     * The work for one block of values
+     */
+    private interface Block {
+        void fill(int block);
+    }
+
+    /**
+     * Returns a sampler of a uniform distribution
+     * @param min the smallest value
+     * @param max the bound the values are below
+     * @return the sampler
+     */
+    static Sampler uniform(double min, double max){
+        return random -> random.nextDouble(min, max);
+    }
+
+    /**
+     * Returns a sampler of a normal distribution
+     * @param mean the mean of the values
+     * @param standardDeviation the standard deviation of the values
+     * @return the sampler
+     */
+    static Sampler normal(double mean, double standardDeviation){
+        return random -> mean + standardDeviation * random.nextGaussian();
+    }
+}
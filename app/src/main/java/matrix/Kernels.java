@@ -0,0 +1,565 @@
+package matrix;
+
+import java.util.function.IntConsumer;
+
+/**
+ * This class holds the loops behind the operations of Matrix. Every kernel
+ * works directly on the flat row-major arrays backing the matrices, where the
+ * element at (row, column) is stored at offset + row * stride + column. The
+ * callers are expected to have checked the shapes of the matrices.
+ * <p>
+ * The element wise kernels run each row through an ArrayOps. The SIMD
+ * implementation is used when the jdk.incubator.vector module is present,
+ * unless the system property matrix.simd is set to false.
+ * <p>
+ * Operations on an OffHeapMatrix are handed to OffHeapKernels, which calls
+ * back into these kernels with blocks of the matrix copied to the heap
+ *
+ * @author Joseph Bronsten
+ */
+final class Kernels {
+    /** The element wise loops used by the kernels */
+    static final ArrayOps OPS = loadArrayOps();
+
+    /**
+     * The side of the largest block the transposes handle with a plain loop,
+     * chosen so a block of the input and of the output both fit in L1
+     */
+    static final int TRANSPOSE_BLOCK = 32;
+
+    /**
+     * The number of outputs in a band of an im2col convolution, so the band
+     * stays in cache while each row of the patch matrix is added into it
+     */
+    private static final int IM2COL_BAND = 1024;
+
+    /** The number of multiply-adds below which convolutions run on one thread */
+    private static final long CONVOLUTION_PARALLEL_THRESHOLD = 1L << 21;
+
+    /** The number of rows of an outer product update each parallel task adds */
+    private static final int OUTER_PRODUCT_ROWS = 32;
+
+    /** The number of elements below which outer product updates run on one thread */
+    private static final long OUTER_PRODUCT_PARALLEL_THRESHOLD = 1L << 18;
+
+    private Kernels(){}
+
+    /**
+     * Picks the SIMD implementation of the element wise loops if the Vector
+     * API can be used, and the scalar implementation otherwise
+     * @return the element wise loops to use
+     */
+    private static ArrayOps loadArrayOps(){
+        if(Boolean.parseBoolean(System.getProperty("matrix.simd", "true")) &&
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            try {
+                return (ArrayOps) Class.forName("matrix.SimdArrayOps")
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall through to the scalar loops
+            }
+        }
+        return new ScalarArrayOps();
+    }
+
+    /**
+     * Computes the element wise sum of two matrices into a result matrix
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     * @param result the matrix the sum is written to
+     */
+    static void add(Matrix matrixA, Matrix matrixB, Matrix result){
+        if(OffHeapKernels.any(matrixA, matrixB, result)){
+            OffHeapKernels.elementWise(matrixA, matrixB, result, Kernels::add);
+            return;
+        }
+        double[] a = matrixA.getData();
+        double[] b = matrixB.getData();
+        double[] c = result.getData();
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        if(matrixA.isContiguous() && matrixB.isContiguous() && result.isContiguous()){
+            columns *= rows;
+            rows = 1;
+        }
+        for(int i = 0; i < rows; i++){
+            int aIndex = matrixA.getOffset() + i * matrixA.getStride();
+            int bIndex = matrixB.getOffset() + i * matrixB.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            OPS.add(a, aIndex, b, bIndex, c, cIndex, columns);
+        }
+    }
+
+    /**
+     * Computes the element wise difference of two matrices into a result
+     * matrix
+     * @param matrixA the first matrix
+     * @param matrixB the matrix subtracted from the first matrix
+     * @param result the matrix the difference is written to
+     */
+    static void subtract(Matrix matrixA, Matrix matrixB, Matrix result){
+        if(OffHeapKernels.any(matrixA, matrixB, result)){
+            OffHeapKernels.elementWise(matrixA, matrixB, result, Kernels::subtract);
+            return;
+        }
+        double[] a = matrixA.getData();
+        double[] b = matrixB.getData();
+        double[] c = result.getData();
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        if(matrixA.isContiguous() && matrixB.isContiguous() && result.isContiguous()){
+            columns *= rows;
+            rows = 1;
+        }
+        for(int i = 0; i < rows; i++){
+            int aIndex = matrixA.getOffset() + i * matrixA.getStride();
+            int bIndex = matrixB.getOffset() + i * matrixB.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            OPS.subtract(a, aIndex, b, bIndex, c, cIndex, columns);
+        }
+    }
+
+    /**
+     * Computes the element wise product of two matrices into a result matrix
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix
+     * @param result the matrix the product is written to
+     */
+    static void elementWiseMultiply(Matrix matrixA, Matrix matrixB, Matrix result){
+        if(OffHeapKernels.any(matrixA, matrixB, result)){
+            OffHeapKernels.elementWise(matrixA, matrixB, result, Kernels::elementWiseMultiply);
+            return;
+        }
+        double[] a = matrixA.getData();
+        double[] b = matrixB.getData();
+        double[] c = result.getData();
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        if(matrixA.isContiguous() && matrixB.isContiguous() && result.isContiguous()){
+            columns *= rows;
+            rows = 1;
+        }
+        for(int i = 0; i < rows; i++){
+            int aIndex = matrixA.getOffset() + i * matrixA.getStride();
+            int bIndex = matrixB.getOffset() + i * matrixB.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            OPS.multiply(a, aIndex, b, bIndex, c, cIndex, columns);
+        }
+    }
+
+    /**
+     * Scales every element of a matrix into a result matrix, the result may be
+     * the same matrix as the input
+     * @param matrix the matrix to scale
+     * @param scaler the scaling value
+     * @param result the matrix the scaled values are written to
+     */
+    static void scale(Matrix matrix, double scaler, Matrix result){
+        if(OffHeapKernels.any(matrix, result)){
+            OffHeapKernels.elementWise(matrix, matrix, result,
+                (a, b, c) -> scale(a, scaler, c));
+            return;
+        }
+        double[] a = matrix.getData();
+        double[] c = result.getData();
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        if(matrix.isContiguous() && result.isContiguous()){
+            columns *= rows;
+            rows = 1;
+        }
+        for(int i = 0; i < rows; i++){
+            int aIndex = matrix.getOffset() + i * matrix.getStride();
+            int cIndex = result.getOffset() + i * result.getStride();
+            OPS.scale(a, aIndex, scaler, c, cIndex, columns);
+        }
+    }
+
+    /**
+     * Adds scaler * x * y^T to a matrix in place, where x and y are columns.
+     * Each row of the matrix gets a scaled copy of y added to it, so the
+     * matrix is read and written once, in blocks of rows run in parallel. The
+     * rows of an off-heap matrix are staged a block at a time, see
+     * OffHeapKernels.updateRows
+     * @param matrix the matrix that is updated
+     * @param scaler the scaling value of the outer product
+     * @param x the column with one value for each row of the matrix
+     * @param y the column with one value for each column of the matrix
+     */
+    static void addOuterProduct(Matrix matrix, double scaler, Matrix x, Matrix y){
+        Matrix column = OffHeapKernels.onHeap(x);
+        double[] xData = column.getData();
+        int columns = matrix.getColumns();
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            // Gather y so every row adds it in order
+            double[] row = scope.array(columns);
+            for(int j = 0; j < columns; j++){
+                row[j] = y.get(j, 0);
+            }
+            OffHeapKernels.updateRows(matrix, (a, offset, stride, first, rows) -> {
+                IntConsumer block = b -> {
+                    int end = Math.min(rows, (b + 1) * OUTER_PRODUCT_ROWS);
+                    for(int i = b * OUTER_PRODUCT_ROWS; i < end; i++){
+                        double value = scaler *
+                            xData[column.getOffset() + (first + i) * column.getStride()];
+                        int aIndex = offset + i * stride;
+                        for(int j = 0; j < columns; j++){
+                            a[aIndex + j] += value * row[j];
+                        }
+                    }
+                };
+                int blocks = (rows + OUTER_PRODUCT_ROWS - 1) / OUTER_PRODUCT_ROWS;
+                if(Parallel.worthSplitting((long) rows * columns, OUTER_PRODUCT_PARALLEL_THRESHOLD) &&
+                    blocks > 1){
+                    Parallel.forRange(0, blocks, block);
+                }
+                else {
+                    for(int b = 0; b < blocks; b++){
+                        block.accept(b);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Computes C = A * B with simple loops, where the operands are described
+     * as in Gemm.multiplyBlocked so either of them can be read transposed.
+     * The order of the loops is picked so the innermost loop reads memory in
+     * order, while each element is still summed in order of the shared 
+     * dimension starting from zero
+     * @param rows the rows of the result
+     * @param columns the columns of the result
+     * @param commonDim the shared dimension of the product
+     * @param a the array holding the first matrix
+     * @param aOffset the index of the first element of A
+     * @param aRowStep the distance between two rows of A
+     * @param aColumnStep the distance between two columns of A
+     * @param b the array holding the second matrix
+     * @param bOffset the index of the first element of B
+     * @param bRowStep the distance between two rows of B
+     * @param bColumnStep the distance between two columns of B
+     * @param c the array the result is written to
+     * @param cOffset the index of the first element of C
+     * @param cStride the distance between two rows of C
+     */
+    static void multiply(int rows, int columns, int commonDim,
+                         double[] a, int aOffset, int aRowStep, int aColumnStep,
+                         double[] b, int bOffset, int bRowStep, int bColumnStep,
+                         double[] c, int cOffset, int cStride){
+        if(aColumnStep != 1){
+            // A is read transposed, so walk it one stored row at a time (k-i-j)
+            for(int i = 0; i < rows; i++){
+                int cIndex = cOffset + i * cStride;
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = 0;
+                }
+            }
+            for(int k = 0; k < commonDim; k++){
+                int aIndex = aOffset + k * aColumnStep;
+                int bIndex = bOffset + k * bRowStep;
+                for(int i = 0; i < rows; i++){
+                    double value = a[aIndex + i * aRowStep];
+                    int cIndex = cOffset + i * cStride;
+                    for(int j = 0; j < columns; j++){
+                        c[cIndex + j] += value * b[bIndex + j * bColumnStep];
+                    }
+                }
+            }
+        }
+        else if(bColumnStep != 1){
+            // B is read transposed, so each element is a dot product (i-j-k)
+            for(int i = 0; i < rows; i++){
+                int aIndex = aOffset + i * aRowStep;
+                int cIndex = cOffset + i * cStride;
+                for(int j = 0; j < columns; j++){
+                    int bIndex = bOffset + j * bColumnStep;
+                    double sum = 0;
+                    for(int k = 0; k < commonDim; k++){
+                        sum += a[aIndex + k] * b[bIndex + k * bRowStep];
+                    }
+                    c[cIndex + j] = sum;
+                }
+            }
+        }
+        else {
+            // Both are read in order, so stream rows of B into rows of C (i-k-j)
+            for(int i = 0; i < rows; i++){
+                int aIndex = aOffset + i * aRowStep;
+                int cIndex = cOffset + i * cStride;
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = 0;
+                }
+                for(int k = 0; k < commonDim; k++){
+                    double value = a[aIndex + k];
+                    int bIndex = bOffset + k * bRowStep;
+                    for(int j = 0; j < columns; j++){
+                        c[cIndex + j] += value * b[bIndex + j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the transpose of a matrix into a result matrix. The matrix is
+     * split in half along its longer side until the pieces fit in cache, so
+     * neither the reads nor the writes stride across the whole matrix
+     * @param matrix the matrix to transpose
+     * @param result the matrix the transpose is written to
+     */
+    static void transpose(Matrix matrix, Matrix result){
+        if(OffHeapKernels.any(matrix, result)){
+            OffHeapKernels.transpose(matrix, result);
+            return;
+        }
+        transpose(matrix.getData(), matrix.getOffset(), matrix.getStride(),
+            result.getData(), result.getOffset(), result.getStride(),
+            matrix.getRows(), matrix.getColumns());
+    }
+
+    /**
+     * Writes the transpose of a block of A into C
+     * @param a the array holding the block to transpose
+     * @param aIndex the index of the first element of the block
+     * @param aStride the distance between two rows of A
+     * @param c the array the transpose is written to
+     * @param cIndex the index the first element of the transpose is written to
+     * @param cStride the distance between two rows of C
+     * @param rows the rows of the block
+     * @param columns the columns of the block
+     */
+    private static void transpose(double[] a, int aIndex, int aStride,
+                                  double[] c, int cIndex, int cStride,
+                                  int rows, int columns){
+        if(rows <= TRANSPOSE_BLOCK && columns <= TRANSPOSE_BLOCK){
+            for(int i = 0; i < rows; i++){
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j * cStride + i] = a[aIndex + i * aStride + j];
+                }
+            }
+        }
+        else if(rows >= columns){
+            int half = rows / 2;
+            transpose(a, aIndex, aStride, c, cIndex, cStride, half, columns);
+            transpose(a, aIndex + half * aStride, aStride, c, cIndex + half, cStride,
+                rows - half, columns);
+        }
+        else {
+            int half = columns / 2;
+            transpose(a, aIndex, aStride, c, cIndex, cStride, rows, half);
+            transpose(a, aIndex + half, aStride, c, cIndex + half * cStride, cStride,
+                rows, columns - half);
+        }
+    }
+
+    /**
+     * Transposes a square matrix in place, one pair of blocks mirrored across
+     * the diagonal at a time
+     * @param matrix the square matrix to transpose
+     */
+    static void transposeInPlace(Matrix matrix){
+        if(!matrix.isRowMajor()){
+            OffHeapKernels.transposeInPlace(matrix);
+            return;
+        }
+        double[] a = matrix.getData();
+        int offset = matrix.getOffset();
+        int stride = matrix.getStride();
+        int size = matrix.getRows();
+
+        for(int ib = 0; ib < size; ib += TRANSPOSE_BLOCK){
+            int iEnd = Math.min(ib + TRANSPOSE_BLOCK, size);
+            for(int jb = ib; jb < size; jb += TRANSPOSE_BLOCK){
+                int jEnd = Math.min(jb + TRANSPOSE_BLOCK, size);
+                for(int i = ib; i < iEnd; i++){
+                    // Blocks on the diagonal only swap above the diagonal
+                    for(int j = Math.max(jb, i + 1); j < jEnd; j++){
+                        int upper = offset + i * stride + j;
+                        int lower = offset + j * stride + i;
+                        double value = a[upper];
+                        a[upper] = a[lower];
+                        a[lower] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution of a matrix with a kernel into a result matrix
+     * of shape (rows - kernelRows + 1) x (columns - kernelColumns + 1) by
+     * lowering it to a product (im2col). For each band of output rows, the
+     * input values that each kernel value multiplies are copied into one row
+     * of a patch matrix, so the band is the product of the flipped kernel, as
+     * a single row, and the patch matrix. Every output is summed in the same
+     * order as convolutionDirect, so the results are identical.
+     * <p>
+     * The patch matrix is built in an array from the ScratchPool of the
+     * thread, and bands hold about IM2COL_BAND outputs so the array stays
+     * small. Large convolutions compute their bands in parallel.
+     * <p>
+     * Kernels large enough that FftConvolution is expected to be faster are
+     * convolved with it instead, which differs from the direct loop by
+     * rounding within FftConvolution.TOLERANCE. 3x3 kernels are convolved
+     * with WinogradConvolution, which also differs by rounding
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     */
+    static void convolution(Matrix matrix, Matrix kernel, Matrix result){
+        if(OffHeapKernels.any(matrix, kernel, result)){
+            OffHeapKernels.convolution(matrix, kernel, result);
+            return;
+        }
+        if(FftConvolution.preferred(matrix.getRows(), matrix.getColumns(),
+            kernel.getRows(), kernel.getColumns())){
+            FftConvolution.convolution(matrix, kernel, result);
+            return;
+        }
+        if(WinogradConvolution.supports(result.getRows(), result.getColumns(), kernel)){
+            WinogradConvolution.convolution(matrix, kernel, result);
+            return;
+        }
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        int kernelSize = kernel.getRows() * kernel.getColumns();
+        int bandRows = Math.max(1, Math.min(rows, IM2COL_BAND / columns));
+        long work = (long) rows * columns * kernelSize;
+        if(!Parallel.worthSplitting(work, CONVOLUTION_PARALLEL_THRESHOLD)){
+            for(int row = 0; row < rows; row += bandRows){
+                convolutionBand(matrix, kernel, result, row, Math.min(bandRows, rows - row));
+            }
+            return;
+        }
+        int parallelRows = Math.max(1, (rows + Parallel.parallelism() - 1) / Parallel.parallelism());
+        int band = Math.min(bandRows, parallelRows);
+        Parallel.forRange(0, (rows + band - 1) / band, index -> {
+            int row = index * band;
+            convolutionBand(matrix, kernel, result, row, Math.min(band, rows - row));
+        });
+    }
+
+    /**
+     * Computes a band of output rows of a convolution as one product of the
+     * flipped kernel with the patch matrix of the band
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     * @param firstRow the first output row of the band
+     * @param count the number of output rows in the band
+     */
+    private static void convolutionBand(Matrix matrix, Matrix kernel, Matrix result,
+                                        int firstRow, int count){
+        int kernelRows = kernel.getRows();
+        int kernelColumns = kernel.getColumns();
+        int kernelSize = kernelRows * kernelColumns;
+        int columns = result.getColumns();
+        int n = count * columns;
+        boolean direct = result.isContiguous();
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] scratch = scope.array(kernelSize + kernelSize * n + (direct ? 0 : n));
+
+            for (int i = 0; i < kernelRows; i++) {
+                for (int j = 0; j < kernelColumns; j++) {
+                    scratch[i * kernelColumns + j] =
+                        kernel.get(kernelRows - 1 - i, kernelColumns - 1 - j);
+                }
+            }
+            // Row r * kernelColumns + s of the patch matrix holds the input values
+            // the kernel value at (r, s) multiplies, for every output of the band
+            double[] m = matrix.getData();
+            for (int r = 0; r < kernelRows; r++) {
+                for (int s = 0; s < kernelColumns; s++) {
+                    int patchIndex = kernelSize + (r * kernelColumns + s) * n;
+                    for (int i = 0; i < count; i++) {
+                        System.arraycopy(m, matrix.getOffset() + (firstRow + i + r) * matrix.getStride() + s,
+                            scratch, patchIndex + i * columns, columns);
+                    }
+                }
+            }
+
+            Matrix kernelRow = new Matrix(scratch, 0, kernelSize, 1, kernelSize);
+            Matrix patches = new Matrix(scratch, kernelSize, n, kernelSize, n);
+            Matrix output = direct ?
+                new Matrix(result.getData(), result.getOffset() + firstRow * result.getStride(), n, 1, n) :
+                new Matrix(scratch, kernelSize + kernelSize * n, n, 1, n);
+            Gemm.multiply(kernelRow, patches, output);
+
+            if (!direct) {
+                double[] c = result.getData();
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(scratch, output.getOffset() + i * columns,
+                        c, result.getOffset() + (firstRow + i) * result.getStride(), columns);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution of a matrix with a kernel into a result matrix
+     * of shape (rows - kernelRows + 1) x (columns - kernelColumns + 1) with
+     * a direct loop over every output and kernel value. It is kept as the
+     * reference the faster convolutions are checked against
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     */
+    static void convolutionDirect(Matrix matrix, Matrix kernel, Matrix result){
+        if(OffHeapKernels.any(matrix, kernel, result)){
+            OffHeapKernels.convolution(matrix, kernel, result);
+            return;
+        }
+        double[] m = matrix.getData();
+        double[] c = result.getData();
+        int kernelRows = kernel.getRows();
+        int kernelColumns = kernel.getColumns();
+
+        double[] flippedKernel = new double[kernelRows * kernelColumns];
+        for (int i = 0; i < kernelRows; i++) {
+            for (int j = 0; j < kernelColumns; j++) {
+                flippedKernel[i * kernelColumns + j] =
+                    kernel.get(kernelRows - 1 - i, kernelColumns - 1 - j);
+            }
+        }
+
+        for (int i = 0; i < result.getRows(); i++) { // Iterate over the output rows
+            int cIndex = result.getOffset() + i * result.getStride();
+            for (int j = 0; j < result.getColumns(); j++) { // Iterate over the output columns
+                double sum = 0;
+                // Weighted sum of element-wise multiplication between matrix and kernel
+                for (int r = 0; r < kernelRows; r++) { // Iterate over kernel rows
+                    int mIndex = matrix.getOffset() + (i + r) * matrix.getStride() + j;
+                    int kIndex = r * kernelColumns;
+                    for (int s = 0; s < kernelColumns; s++) { // Iterate over kernel columns
+                        sum += m[mIndex + s] * flippedKernel[kIndex + s];
+                    }
+                }
+                c[cIndex + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * Computes the dot product of two strided sequences of values
+     * @param a the array of the first sequence
+     * @param aIndex the index of the first value of the first sequence
+     * @param aStep the distance between two values of the first sequence
+     * @param b the array of the second sequence
+     * @param bIndex the index of the first value of the second sequence
+     * @param bStep the distance between two values of the second sequence
+     * @param length the number of values in each sequence
+     * @return the dot product of the sequences
+     */
+    static double dot(double[] a, int aIndex, int aStep,
+                      double[] b, int bIndex, int bStep, int length){
+        if(aStep == 1 && bStep == 1){
+            return OPS.dot(a, aIndex, b, bIndex, length);
+        }
+        double sum = 0;
+        for(int i = 0; i < length; i++){
+            sum += a[aIndex + i * aStep] * b[bIndex + i * bStep];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,198 @@
+package matrix;
+
+/**
+ * This class is the LU decomposition of a square matrix with partial
+ * pivoting, P * A = L * U, where P swaps the rows of A, L is lower triangular
+ * with ones on its diagonal and U is upper triangular. It is created with
+ * Matrix.lu, and once created it solves systems with the matrix, and finds
+ * its inverse and determinant, without factoring it again.
+ * <p>
+ * The matrix is factored BLOCK columns at a time, and after each panel of
+ * columns the rest of the matrix is updated with one product on the blocked
+ * and parallel kernel used by Matrix.multiply, so a large factorization runs
+ * at close to the speed of a product and uses every thread
+ *
+ * @author Joseph Bronsten
+ */
+public final class LUDecomposition {
+    private final double[] lu;
+    private final int[] pivots;
+    private final int size;
+    private final boolean singular;
+
+    /**
+     * Factors a square matrix, which is copied and not changed
+     * @param matrix the matrix to factor
+     */
+    LUDecomposition(Matrix matrix){
+        handleNull(matrix, "Matrix cannot be null for decomposition");
+        if(matrix.getRows() != matrix.getColumns()){
+            throw new IllegalArgumentException(
+                "Matrix must be square for LU decomposition. Got shape: " +
+                matrix.getRows() + "x" + matrix.getColumns());
+        }
+        this.size = matrix.getRows();
+        Matrix copy = new Matrix(size, size);
+        OffHeapKernels.copy(matrix, copy);
+        this.lu = copy.getData();
+        this.pivots = new int[size];
+        this.singular = DecompositionKernels.lu(lu, size, pivots);
+    }
+
+    private static void handleNull(Object obj, String msg){
+        if(obj == null){
+            throw new NullPointerException(msg);
+        }
+    }
+
+    /**
+     * Returns the number of rows and columns of the factored matrix
+     * @return an int with the size of the matrix
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Returns if the matrix is singular, which is when a pivot is exactly
+     * zero. A matrix that is nearly singular is not detected, and systems
+     * with it are solved with a large error
+     * @return true if the matrix has no inverse
+     */
+    public boolean isSingular(){
+        return singular;
+    }
+
+    /**
+     * Returns the lower triangular factor, with ones on its diagonal
+     * @return a new matrix with the values of L
+     */
+    public Matrix getL(){
+        Matrix result = new Matrix(size, size);
+        double[] data = result.getData();
+        for(int i = 0; i < size; i++){
+            System.arraycopy(lu, i * size, data, i * size, i);
+            data[i * size + i] = 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the upper triangular factor
+     * @return a new matrix with the values of U
+     */
+    public Matrix getU(){
+        Matrix result = new Matrix(size, size);
+        double[] data = result.getData();
+        for(int i = 0; i < size; i++){
+            System.arraycopy(lu, i * size + i, data, i * size + i, size - i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the permutation of the rows, where row i of P * A is row
+     * getPivot()[i] of A
+     * @return a new array with the row of A for each row of L * U
+     */
+    public int[] getPivot(){
+        int[] rows = new int[size];
+        for(int i = 0; i < size; i++){
+            rows[i] = i;
+        }
+        for(int i = 0; i < size; i++){
+            int value = rows[i];
+            rows[i] = rows[pivots[i]];
+            rows[pivots[i]] = value;
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the determinant of the matrix, the product of the diagonal of U
+     * with the sign of the row swaps. The product can overflow for a large
+     * matrix even when the matrix is well conditioned
+     * @return the determinant of the matrix
+     */
+    public double determinant(){
+        double result = 1;
+        for(int i = 0; i < size; i++){
+            if(pivots[i] != i){
+                result = -result;
+            }
+            result *= lu[i * size + i];
+        }
+        return result;
+    }
+
+    /**
+     * Solves A * X = B, where each column of B is a right hand side
+     * @param matrix the matrix B, with as many rows as A
+     * @return the solution X
+     */
+    public Matrix solve(Matrix matrix){
+        handleNull(matrix, "Matrix cannot be null for solve");
+        if(matrix.getRows() != size){
+            throw new IllegalArgumentException(
+                "Right hand side must have " + size + " rows. Got shape: " +
+                matrix.getRows() + "x" + matrix.getColumns());
+        }
+        Matrix result = new Matrix(size, matrix.getColumns());
+        OffHeapKernels.copy(matrix, result);
+        solveInPlace(result);
+        return result;
+    }
+
+    /**
+     * Solves A * x = b for a single right hand side
+     * @param vector the vector b, with as many entries as A has rows
+     * @return the solution x
+     */
+    public Vector solve(Vector vector){
+        handleNull(vector, "Vector cannot be null for solve");
+        if(vector.getRows() != size){
+            throw new IllegalArgumentException(
+                "Right hand side must have " + size + " rows. Got length: " +
+                vector.getRows());
+        }
+        Vector result = new Vector(size);
+        OffHeapKernels.copy(vector, result);
+        solveInPlace(result);
+        return result;
+    }
+
+    /**
+     * Returns the inverse of the matrix, found by solving for the columns of
+     * the identity. Solving with solve is faster and more accurate than
+     * multiplying by the inverse
+     * @return the inverse of the matrix
+     */
+    public Matrix inverse(){
+        Matrix result = new Matrix(size, size);
+        double[] data = result.getData();
+        for(int i = 0; i < size; i++){
+            data[i * size + i] = 1;
+        }
+        solveInPlace(result);
+        return result;
+    }
+
+    /**
+     * Overwrites a row-major matrix with no offset and a stride of its
+     * columns with the solution of A * X = B
+     */
+    private void solveInPlace(Matrix matrix){
+        if(singular){
+            throw new IllegalArgumentException("Matrix is singular");
+        }
+        double[] x = matrix.getData();
+        int columns = matrix.getColumns();
+        for(int i = 0; i < size; i++){
+            if(pivots[i] != i){
+                DecompositionKernels.swapRows(x, columns, i, pivots[i]);
+            }
+        }
+        DecompositionKernels.solveLower(size, columns, lu, 0, size, 1, true, x, 0, columns);
+        DecompositionKernels.solveUpper(size, columns, lu, 0, size, 1, false, x, 0, columns);
+    }
+}
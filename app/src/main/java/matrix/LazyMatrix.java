@@ -0,0 +1,583 @@
+package matrix;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * This class describes element wise arithmetic on matrices without computing
+ * it. The operations build a small tree of the expression, and eval or
+ * evalInto computes the whole tree in one pass over the values, so an
+ * expression such as
+ * <pre>
+ *     weights.lazy().minus(grad.lazy().times(learningRate)).evalInto(weights);
+ * </pre>
+ * reads each matrix once and writes the result once, instead of allocating
+ * and walking a temporary matrix for every operation.
+ * <p>
+ * The pass works on chunks of a row at a time. Each operation of the tree
+ * computes its chunk with the element wise loops of the matrix kernels into
+ * a small buffer that stays in cache, reading the matrices it uses directly.
+ * <p>
+ * The values of the matrices are read when the expression is evaluated, not
+ * when it is built, so an expression can be evaluated again after they
+ * change. The result may be one of the matrices of the expression. When the
+ * expression reads an OffHeapMatrix or is evaluated into one, the rows of
+ * those matrices are copied to the heap a block at a time, see
+ * OffHeapKernels, so the pass never copies a whole off-heap matrix
+ *
+ * @author Joseph Bronsten
+ */
+public abstract class LazyMatrix {
+    /** The number of values computed at once by each operation */
+    private static final int CHUNK = 512;
+
+    /** The number of values above which the chunks are computed in parallel */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private final int numberOfRows;
+    private final int numberOfColumns;
+
+    /**
+     * Creates an expression with the given shape
+     * @param rows the number of rows of the value of the expression
+     * @param columns the number of columns of the value of the expression
+     */
+    LazyMatrix(int rows, int columns){
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
+    }
+
+    /**
+     * Returns the number of rows of the value of the expression
+     * @return an int with the number of rows
+     */
+    public int getRows(){
+        return this.numberOfRows;
+    }
+
+    /**
+     * Returns the number of columns of the value of the expression
+     * @return an int with the number of columns
+     */
+    public int getColumns(){
+        return this.numberOfColumns;
+    }
+
+    /**
+     * Returns the element wise sum of this expression and another
+     * @param other the expression that is added
+     * @return the expression of the sum
+     */
+    public LazyMatrix plus(LazyMatrix other){
+        shapeCheck(other, "addition");
+        return new Binary(this, other, Binary.ADD);
+    }
+
+    /**
+     * Returns the element wise difference of this expression and another
+     * @param other the expression that is subtracted
+     * @return the expression of the difference
+     */
+    public LazyMatrix minus(LazyMatrix other){
+        shapeCheck(other, "subtraction");
+        return new Binary(this, other, Binary.SUBTRACT);
+    }
+
+    /**
+     * Returns the element wise product of this expression and another
+     * @param other the expression that is multiplied
+     * @return the expression of the product
+     */
+    public LazyMatrix times(LazyMatrix other){
+        shapeCheck(other, "element wise multiplication");
+        return new Binary(this, other, Binary.MULTIPLY);
+    }
+
+    /**
+     * Returns this expression scaled by a value
+     * @param scaler the scaling value
+     * @return the expression of the scaled values
+     */
+    public LazyMatrix times(double scaler){
+        return new Scale(this, scaler);
+    }
+
+    /**
+     * Returns the expression of a function applied to each value of this
+     * expression, such as an activation function
+     * @param function the function to apply
+     * @return the expression of the values of the function
+     */
+    public LazyMatrix map(DoubleUnaryOperator function){
+        if(function == null){
+            throw new NullPointerException("Function cannot be null");
+        }
+        return new Map(this, function);
+    }
+
+    /**
+     * Computes the value of the expression into a new matrix
+     * @return the value of the expression
+     */
+    public Matrix eval(){
+        Matrix result = new Matrix(this.numberOfRows, this.numberOfColumns);
+        evalInto(result);
+        return result;
+    }
+
+    /**
+     * Computes the value of the expression into a given result matrix in one
+     * pass
+     * @param result the matrix the value is written to, which may be one of
+     * the matrices of the expression but cannot otherwise share their storage
+     */
+    public void evalInto(Matrix result){
+        if(result == null){
+            throw new NullPointerException("Result matrix cannot be null");
+        }
+        if(result.getRows() != this.numberOfRows || result.getColumns() != this.numberOfColumns){
+            throw new IllegalArgumentException(
+                "Invalid shape for result matrix. Expected: " + this.numberOfRows + "x" +
+                this.numberOfColumns + " but got: " + result.getRows() + "x" + result.getColumns());
+        }
+        // Transposed views are copied whole, because the result may share
+        // their storage, while off-heap matrices are staged a block at a time
+        List<Matrix> matrices = new ArrayList<>();
+        leaves(matrices);
+        java.util.Map<Matrix, Matrix> copies = new IdentityHashMap<>();
+        boolean staged = result.isOffHeap();
+        for(Matrix matrix : matrices){
+            if(matrix.isOffHeap()){
+                staged = true;
+            }
+            else if(!matrix.isRowMajor()){
+                copies.computeIfAbsent(matrix, OffHeapKernels::onHeap);
+            }
+        }
+        LazyMatrix expression = copies.isEmpty() ? this : replace(copies);
+        Matrix target = !result.isRowMajor() && !result.isOffHeap() ?
+            new Matrix(result.getRows(), result.getColumns()) : result;
+        if(staged){
+            expression.evaluateStaged(target);
+        }
+        else {
+            expression.evaluateRowMajor(target);
+        }
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+    }
+
+    /**
+     * Computes the value of the expression into a target matrix one block of
+     * rows at a time, copying the rows of the off-heap matrices of the
+     * expression into scratch arrays and the rows of an off-heap target back
+     * @param target the matrix the value is written to
+     */
+    private void evaluateStaged(Matrix target){
+        List<Matrix> matrices = new ArrayList<>();
+        leaves(matrices);
+        int rows = this.numberOfRows;
+        int blockRows = Math.min(rows, OffHeapKernels.blockRows(this.numberOfColumns));
+        int blocks = (rows + blockRows - 1) / blockRows;
+        IntConsumer block = b ->
+            evaluateBlock(matrices, target, b * blockRows, Math.min(blockRows, rows - b * blockRows));
+        if(blocks > 1 && Parallel.worthSplitting((long) rows * this.numberOfColumns, PARALLEL_THRESHOLD)){
+            Parallel.forRange(0, blocks, block);
+        }
+        else {
+            for(int b = 0; b < blocks; b++){
+                block.accept(b);
+            }
+        }
+    }
+
+    /**
+     * Computes a block of rows of the value of the expression. The matrices
+     * with backing arrays are read through views of the rows of the block
+     * @param matrices the matrices the expression reads
+     * @param target the matrix the value is written to
+     * @param row the first row of the block
+     * @param count the number of rows in the block
+     */
+    private void evaluateBlock(List<Matrix> matrices, Matrix target, int row, int count){
+        int columns = this.numberOfColumns;
+        java.util.Map<Matrix, Matrix> blocks = new IdentityHashMap<>();
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            for(Matrix matrix : matrices){
+                if(!blocks.containsKey(matrix)){
+                    Matrix block = rows(matrix, row, count, scope);
+                    if(!matrix.isRowMajor()){
+                        matrix.copyRowsTo(row, count, block.getData(), 0, columns);
+                    }
+                    blocks.put(matrix, block);
+                }
+            }
+            // A target that is also read is staged with its values
+            Matrix targetBlock = blocks.get(target);
+            if(targetBlock == null){
+                targetBlock = rows(target, row, count, scope);
+            }
+            replace(blocks).evaluateRowMajor(targetBlock);
+            if(!target.isRowMajor()){
+                target.copyRowsFrom(row, count, targetBlock.getData(), 0, columns);
+            }
+        }
+    }
+
+    /**
+     * Returns a block of rows of a matrix, which is a view of the rows for a
+     * row-major matrix and an array from the scope for other matrices
+     */
+    private static Matrix rows(Matrix matrix, int row, int count, ScratchPool.Scope scope){
+        int columns = matrix.getColumns();
+        if(matrix.isRowMajor()){
+            return new Matrix(matrix.getData(), matrix.getOffset() + row * matrix.getStride(),
+                matrix.getStride(), count, columns);
+        }
+        return new Matrix(scope.array(count * columns), 0, columns, count, columns);
+    }
+
+    /**
+     * Computes the value of the expression, which reads only row-major
+     * matrices, into a row-major target matrix in one pass
+     * @param target the matrix the value is written to
+     */
+    private void evaluateRowMajor(Matrix target){
+        List<Matrix> matrices = new ArrayList<>();
+        leaves(matrices);
+        boolean contiguous = target.isContiguous();
+        boolean aliased = false;
+        for(Matrix matrix : matrices){
+            contiguous &= matrix.isContiguous();
+            if(matrix.getData() == target.getData()){
+                if(matrix.getOffset() != target.getOffset() || matrix.getStride() != target.getStride()){
+                    throw new IllegalArgumentException(
+                            "Result matrix cannot share storage with an operand");
+                }
+                aliased = true;
+            }
+        }
+        // A contiguous expression is one row of all of its values
+        int rows = contiguous ? 1 : this.numberOfRows;
+        int columns = contiguous ? this.numberOfRows * this.numberOfColumns : this.numberOfColumns;
+        int chunksPerRow = (columns + CHUNK - 1) / CHUNK;
+        int depth = depth();
+        boolean copy = aliased;
+
+        long values = (long) rows * columns;
+        if(!Parallel.worthSplitting(values, PARALLEL_THRESHOLD)){
+            evaluateChunks(target, 0, rows * chunksPerRow, chunksPerRow, columns, depth, copy);
+        }
+        else {
+            int chunks = rows * chunksPerRow;
+            int tasks = Math.min(chunks, Parallel.parallelism() * 4);
+            Parallel.forRange(0, tasks, task ->
+                evaluateChunks(target, task * chunks / tasks, (task + 1) * chunks / tasks,
+                    chunksPerRow, columns, depth, copy));
+        }
+    }
+
+    /**
+     * Computes a range of chunks of the value of the expression
+     * @param target the matrix the value is written to
+     * @param first the first chunk
+     * @param last the chunk after the last one
+     * @param chunksPerRow the number of chunks in a row
+     * @param columns the number of values in a row
+     * @param depth the number of buffers the operations need
+     * @param copy true to compute each chunk into a buffer before writing it,
+     * because the target is also read by the expression
+     */
+    private void evaluateChunks(Matrix target, int first, int last, int chunksPerRow,
+                                int columns, int depth, boolean copy){
+        double[] c = target.getData();
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[][] buffers = new double[depth + 1][];
+            for(int i = 0; i <= depth; i++){
+                buffers[i] = scope.array(CHUNK);
+            }
+            for(int chunk = first; chunk < last; chunk++){
+                int row = chunk / chunksPerRow;
+                int column = (chunk % chunksPerRow) * CHUNK;
+                int length = Math.min(CHUNK, columns - column);
+                int cIndex = target.getOffset() + row * target.getStride() + column;
+                if(copy){
+                    evaluate(row, column, length, buffers[depth], 0, buffers, 0);
+                    System.arraycopy(buffers[depth], 0, c, cIndex, length);
+                }
+                else {
+                    evaluate(row, column, length, c, cIndex, buffers, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * A helper method to check that two expressions have the same shape
+     */
+    private void shapeCheck(LazyMatrix other, String operation){
+        if(other == null){
+            throw new NullPointerException("Expression cannot be null for " + operation);
+        }
+        if(this.numberOfRows != other.numberOfRows || this.numberOfColumns != other.numberOfColumns){
+            throw new IllegalArgumentException(
+                "Invalid shapes for " + operation + ". Cannot combine matrix of shape: " +
+                this.numberOfRows + "x" + this.numberOfColumns + " with matrix of shape: " +
+                other.numberOfRows + "x" + other.numberOfColumns);
+        }
+    }
+
+    /**
+     * Computes a chunk of a row of the value of the expression
+     * @param row the row of the chunk
+     * @param column the first column of the chunk
+     * @param length the number of values in the chunk
+     * @param out the array the chunk is written to
+     * @param outIndex the index the first value is written to
+     * @param buffers the buffers the operations compute their operands in
+     * @param depth the first buffer this operation may use
+     */
+    abstract void evaluate(int row, int column, int length, double[] out, int outIndex,
+                           double[][] buffers, int depth);
+
+    /**
+     * Adds the matrices the expression reads to a list
+     * @param matrices the list of matrices
+     */
+    abstract void leaves(List<Matrix> matrices);
+
+    /**
+     * Returns the expression with some of its matrices replaced, which is
+     * the expression itself if it reads none of them
+     * @param matrices the matrices that replace the matrices of the expression
+     * @return the expression that reads the replacements
+     */
+    abstract LazyMatrix replace(java.util.Map<Matrix, Matrix> matrices);
+
+    /**
+     * Returns the number of buffers the expression needs to be evaluated
+     * @return the number of buffers
+     */
+    abstract int depth();
+
+    /**
+     * Returns the matrix this expression reads directly, or null if it has
+     * to be computed
+     * @return the matrix of a leaf of the expression
+     */
+    Matrix matrix(){
+        return null;
+    }
+
+    /**
+     * Computes a chunk of an operand, or finds it in the matrix of a leaf
+     * without copying it
+     * @return the array holding the chunk, whose first value is at the index
+     * returned by index
+     */
+    private static double[] operand(LazyMatrix operand, int row, int column, int length,
+                                    double[] out, int outIndex, double[][] buffers, int depth){
+        Matrix matrix = operand.matrix();
+        if(matrix != null){
+            return matrix.getData();
+        }
+        operand.evaluate(row, column, length, out, outIndex, buffers, depth);
+        return out;
+    }
+
+    /**
+     * Returns the index of the first value of a chunk of an operand in the
+     * array returned by operand
+     */
+    private static int index(LazyMatrix operand, int row, int column, int outIndex){
+        Matrix matrix = operand.matrix();
+        if(matrix != null){
+            return matrix.getOffset() + row * matrix.getStride() + column;
+        }
+        return outIndex;
+    }
+
+    /**
+     * An expression that is the value of a matrix
+     */
+    static final class Leaf extends LazyMatrix {
+        private final Matrix matrix;
+
+        Leaf(Matrix matrix){
+            super(matrix.getRows(), matrix.getColumns());
+            this.matrix = matrix;
+        }
+
+        @Override
+        LazyMatrix replace(java.util.Map<Matrix, Matrix> matrices){
+            Matrix replacement = matrices.get(this.matrix);
+            return replacement == null ? this : new Leaf(replacement);
+        }
+
+        @Override
+        Matrix matrix(){
+            return this.matrix;
+        }
+
+        @Override
+        void evaluate(int row, int column, int length, double[] out, int outIndex,
+                      double[][] buffers, int depth){
+            System.arraycopy(this.matrix.getData(),
+                this.matrix.getOffset() + row * this.matrix.getStride() + column,
+                out, outIndex, length);
+        }
+
+        @Override
+        void leaves(List<Matrix> matrices){
+            matrices.add(this.matrix);
+        }
+
+        @Override
+        int depth(){
+            return 0;
+        }
+    }
+
+    /**
+     * An expression that combines two expressions element by element
+     */
+    private static final class Binary extends LazyMatrix {
+        static final int ADD = 0;
+        static final int SUBTRACT = 1;
+        static final int MULTIPLY = 2;
+
+        private final LazyMatrix left;
+        private final LazyMatrix right;
+        private final int operation;
+
+        Binary(LazyMatrix left, LazyMatrix right, int operation){
+            super(left.getRows(), left.getColumns());
+            this.left = left;
+            this.right = right;
+            this.operation = operation;
+        }
+
+        @Override
+        LazyMatrix replace(java.util.Map<Matrix, Matrix> matrices){
+            LazyMatrix left = this.left.replace(matrices);
+            LazyMatrix right = this.right.replace(matrices);
+            return left == this.left && right == this.right ? this :
+                new Binary(left, right, this.operation);
+        }
+
+        @Override
+        void evaluate(int row, int column, int length, double[] out, int outIndex,
+                      double[][] buffers, int depth){
+            // The left operand is computed in the output, and the right one
+            // in the buffer of this depth
+            double[] a = operand(this.left, row, column, length, out, outIndex, buffers, depth + 1);
+            int aIndex = index(this.left, row, column, outIndex);
+            double[] b = operand(this.right, row, column, length, buffers[depth], 0, buffers, depth + 1);
+            int bIndex = index(this.right, row, column, 0);
+            switch(this.operation){
+                case ADD:
+                    Kernels.OPS.add(a, aIndex, b, bIndex, out, outIndex, length);
+                    break;
+                case SUBTRACT:
+                    Kernels.OPS.subtract(a, aIndex, b, bIndex, out, outIndex, length);
+                    break;
+                default:
+                    Kernels.OPS.multiply(a, aIndex, b, bIndex, out, outIndex, length);
+            }
+        }
+
+        @Override
+        void leaves(List<Matrix> matrices){
+            this.left.leaves(matrices);
+            this.right.leaves(matrices);
+        }
+
+        @Override
+        int depth(){
+            return 1 + Math.max(this.left.depth(), this.right.depth());
+        }
+    }
+
+    /**
+     * An expression that scales another expression
+     */
+    private static final class Scale extends LazyMatrix {
+        private final LazyMatrix operand;
+        private final double scaler;
+
+        Scale(LazyMatrix operand, double scaler){
+            super(operand.getRows(), operand.getColumns());
+            this.operand = operand;
+            this.scaler = scaler;
+        }
+
+        @Override
+        LazyMatrix replace(java.util.Map<Matrix, Matrix> matrices){
+            LazyMatrix operand = this.operand.replace(matrices);
+            return operand == this.operand ? this : new Scale(operand, this.scaler);
+        }
+
+        @Override
+        void evaluate(int row, int column, int length, double[] out, int outIndex,
+                      double[][] buffers, int depth){
+            double[] a = operand(this.operand, row, column, length, out, outIndex, buffers, depth);
+            Kernels.OPS.scale(a, index(this.operand, row, column, outIndex), this.scaler,
+                out, outIndex, length);
+        }
+
+        @Override
+        void leaves(List<Matrix> matrices){
+            this.operand.leaves(matrices);
+        }
+
+        @Override
+        int depth(){
+            return this.operand.depth();
+        }
+    }
+
+    /**
+     * An expression that applies a function to each value of another
+     * expression
+     */
+    private static final class Map extends LazyMatrix {
+        private final LazyMatrix operand;
+        private final DoubleUnaryOperator function;
+
+        Map(LazyMatrix operand, DoubleUnaryOperator function){
+            super(operand.getRows(), operand.getColumns());
+            this.operand = operand;
+            this.function = function;
+        }
+
+        @Override
+        LazyMatrix replace(java.util.Map<Matrix, Matrix> matrices){
+            LazyMatrix operand = this.operand.replace(matrices);
+            return operand == this.operand ? this : new Map(operand, this.function);
+        }
+
+        @Override
+        void evaluate(int row, int column, int length, double[] out, int outIndex,
+                      double[][] buffers, int depth){
+            double[] a = operand(this.operand, row, column, length, out, outIndex, buffers, depth);
+            int aIndex = index(this.operand, row, column, outIndex);
+            for(int i = 0; i < length; i++){
+                out[outIndex + i] = this.function.applyAsDouble(a[aIndex + i]);
+            }
+        }
+
+        @Override
+        void leaves(List<Matrix> matrices){
+            this.operand.leaves(matrices);
+        }
+
+        @Override
+        int depth(){
+            return this.operand.depth();
+        }
+    }
+}
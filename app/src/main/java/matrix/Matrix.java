@@ -1,6 +1,10 @@
 package matrix;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleUnaryOperator;
 /**
  * This class allows the operation of two matices through multiplication and 
  * addition as well as manipulation of a singular matrix
@@ -8,13 +12,16 @@ import java.util.*;
  * @author Joseph Bronsten
  */
 public class Matrix {
-    private double[][] matrix;
+    private double[] data;
+    private int offset;
+    private int stride;
     private int numberOfRows;
     private int numberOfColumns;
+    private boolean transposed;
 
     /**
      * Creates a new matrix object given a 2d array of doubles and the shape of
-     * the matrix
+     * the matrix. The values are copied into a single flat row-major array
      * @param matrix a 2d array of doubles
      * @param rows an int for the number of rows in the matrix
      * @param columns an int for the number of columns in the matrix
@@ -30,7 +37,9 @@ public class Matrix {
                     "Invalid number of rows or columns");
         }
 
-        this.matrix = matrix;
+        this.data = flatten(matrix, rows, columns);
+        this.offset = 0;
+        this.stride = columns;
         this.numberOfRows = rows;
         this.numberOfColumns = columns;
 
@@ -45,7 +54,45 @@ public class Matrix {
         this(matrix, matrix.length, matrix[0].length);
     }
 
-    
+    /**
+     * Creates a matrix that uses the given flat row-major array as its 
+     * storage without copying it. The element at (row, column) is stored at
+     * index offset + row * stride + column, which allows the matrix to be a 
+     * view over a block of a larger array
+     * @param data the backing array
+     * @param offset the index of the first element of the matrix
+     * @param stride the distance in the array between the start of two rows
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public Matrix(double[] data, int offset, int stride, int rows, int columns){
+        handleNull(data, "Matrix data cannot be null");
+        if(rows <= 0 || columns <= 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        if(offset < 0 || stride < columns || 
+            offset + (long) (rows - 1) * stride + columns > data.length){
+            throw new IllegalArgumentException(
+                    "Invalid offset or stride for the matrix data");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
+    }
+
+    /**
+     * Creates a matrix that uses the given flat row-major array as its 
+     * storage without copying it
+     * @param data the backing array of length rows * columns
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public Matrix(double[] data, int rows, int columns){
+        this(data, 0, columns, rows, columns);
+    }
 
     /**
      * Create a new matrix object with a 2d array of zeros with the given shape
@@ -53,7 +100,24 @@ public class Matrix {
      * @param columns an int for the number of columns in the matrix
      */
     public Matrix(int rows, int columns){
-        this(new double[rows][columns], rows, columns);
+        this(new double[elementCount(rows, columns)], rows, columns);
+    }
+
+    /**
+     * Creates a matrix of the given shape, which is either filled with zeros
+     * or has no backing array at all for subclasses in this package that
+     * store their values somewhere else
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param allocate true to allocate a backing array of zeros
+     */
+    Matrix(int rows, int columns, boolean allocate){
+        int count = elementCount(rows, columns);
+        this.data = allocate ? new double[count] : null;
+        this.offset = 0;
+        this.stride = columns;
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
     }
 
     /**
@@ -64,35 +128,138 @@ public class Matrix {
      * @param value a double which each index of the matrix is set to
      */
     public Matrix(int rows, int columns, double value){
-        this(new double[rows][columns], rows, columns);
-        for(int i = 0; i < rows; i++){
-            for(int j = 0; j < columns; j++){
-                this.matrix[i][j] = value;
-            }
-        }
-        this.numberOfRows = rows;
-        this.numberOfColumns = columns;
+        this(rows, columns);
+        Arrays.fill(this.data, value);
     }
 
     /**
      * Initializes the matrix with values drawn from a uniform distribution
-     * between the given minimum and maximum values.
+     * between the given minimum and maximum values, with a random seed. See
+     * uniform for a matrix that can be reproduced from a seed
      * @param rows an int for the number of rows in the matrix
      * @param columns an int for the number of columns in the matrix
      * @param min the minimum value of the uniform distribution
      * @param max the maximum value of the uniform distribution
      */
     public Matrix(int rows, int columns, double min, double max) {
-        this(new double[rows][columns], rows, columns);
+        this(rows, columns);
         if (min >= max) {
             throw new IllegalArgumentException("Min must be less than Max.");
         }
-        
-        for (int i = 0; i < numberOfRows; i++) {
-            for (int j = 0; j < numberOfColumns; j++) {
-                this.matrix[i][j] = min + (max - min) * Math.random();
+
+        Initializers.fill(this, ThreadLocalRandom.current().nextLong(),
+            Initializers.uniform(min, max));
+    }
+
+    /**
+     * Creates a matrix with values drawn from a uniform distribution between
+     * the given minimum and maximum values. The matrix is filled in parallel
+     * and the same seed always gives the same values, whatever the
+     * parallelism level
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param min the minimum value of the uniform distribution
+     * @param max the maximum value of the uniform distribution
+     * @param seed the seed of the random values
+     * @return the random matrix
+     */
+    public static Matrix uniform(int rows, int columns, double min, double max, long seed){
+        Matrix result = new Matrix(rows, columns);
+        if (!(min < max) || Double.isInfinite(max - min)) {
+            throw new IllegalArgumentException("Min must be less than Max.");
+        }
+        Initializers.fill(result, seed, Initializers.uniform(min, max));
+        return result;
+    }
+
+    /**
+     * Creates a matrix with values drawn from a normal distribution. The
+     * matrix is filled in parallel and the same seed always gives the same
+     * values, whatever the parallelism level
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param mean the mean of the normal distribution
+     * @param standardDeviation the standard deviation of the normal
+     * distribution
+     * @param seed the seed of the random values
+     * @return the random matrix
+     */
+    public static Matrix normal(int rows, int columns, double mean, double standardDeviation,
+                                long seed){
+        Matrix result = new Matrix(rows, columns);
+        if (!(standardDeviation >= 0) || Double.isInfinite(standardDeviation)) {
+            throw new IllegalArgumentException(
+                    "Standard deviation must be a non negative number.");
+        }
+        Initializers.fill(result, seed, Initializers.normal(mean, standardDeviation));
+        return result;
+    }
+
+    /**
+     * Creates a matrix of weights with He initialization, drawn uniformly
+     * between -sqrt(6 / columns) and sqrt(6 / columns) where the number of
+     * columns is the number of inputs each row of the weights sums over
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param seed the seed of the random values
+     * @return the random matrix
+     */
+    public static Matrix he(int rows, int columns, long seed){
+        double max = Math.sqrt(6.0 / columns);
+        return uniform(rows, columns, -max, max, seed);
+    }
+
+    /**
+     * Creates a matrix of weights with Xavier initialization, drawn uniformly
+     * between -sqrt(6 / (rows + columns)) and sqrt(6 / (rows + columns))
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param seed the seed of the random values
+     * @return the random matrix
+     */
+    public static Matrix xavier(int rows, int columns, long seed){
+        double max = Math.sqrt(6.0 / ((double) rows + columns));
+        return uniform(rows, columns, -max, max, seed);
+    }
+
+    /**
+     * A helper method that checks the shape of a new matrix and returns the
+     * number of elements needed to store it
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @return the number of elements in the matrix
+     */
+    private static int elementCount(int rows, int columns){
+        if(rows <= 0 || columns <= 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        long count = (long) rows * columns;
+        if(count > Integer.MAX_VALUE){
+            throw new IllegalArgumentException(
+                    "Matrix is too large: " + rows + "x" + columns);
+        }
+        return (int) count;
+    }
+
+    /**
+     * A helper method that copies a 2d array into a flat row-major array
+     * @param matrix the 2d array to copy
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @return the flat array
+     */
+    private static double[] flatten(double[][] matrix, int rows, int columns){
+        double[] flat = new double[elementCount(rows, columns)];
+        for(int i = 0; i < rows; i++){
+            handleNull(matrix[i], "Matrix rows cannot be null");
+            if(matrix[i].length != columns){
+                throw new IllegalArgumentException(
+                        "Invalid number of rows or columns");
             }
+            System.arraycopy(matrix[i], 0, flat, i * columns, columns);
         }
+        return flat;
     }
 
     /**
@@ -148,7 +315,92 @@ public class Matrix {
      * @param matrixB the second matrix to add
      */
     private static void addCheck(Matrix matrixA, Matrix matrixB){
-        addCheck(matrixA.matrix, matrixB.matrix);
+        if((matrixA.numberOfRows != matrixB.numberOfRows) || 
+            (matrixA.numberOfColumns != matrixB.numberOfColumns)){
+                throw new IllegalArgumentException(
+                    "Invalid shapes for matrix addition");
+            }
+    }
+
+    /**
+     * A helper method to check if the matrix is of the right size to multiply
+     * @param matrixA the first matrix to multiply
+     * @param matrixB the second matrix to multipy
+     */
+    private static void multiplyCheck(Matrix matrixA, Matrix matrixB){
+        if(matrixA.numberOfColumns != matrixB.numberOfRows) {
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply matrix of shape: " + 
+                matrixA.numberOfRows + "x" + matrixA.numberOfColumns + " with matrix of shape: " +
+                matrixB.numberOfRows + "x" + matrixB.numberOfColumns);
+        }
+    }
+
+    /**
+     * A helper method to check if a result matrix has the given shape
+     * @param result the matrix an operation writes to
+     * @param rows the number of rows the result must have
+     * @param columns the number of columns the result must have
+     */
+    private static void resultCheck(Matrix result, int rows, int columns){
+        handleNull(result, "Result matrix cannot be null");
+        if(result.numberOfRows != rows || result.numberOfColumns != columns){
+            throw new IllegalArgumentException(
+                "Invalid shape for result matrix. Expected: " + rows + "x" + 
+                columns + " but got: " + result.numberOfRows + "x" + 
+                result.numberOfColumns);
+        }
+    }
+
+    /**
+     * A helper method to check that a result matrix does not share its storage
+     * with an operand, for operations that read an operand after writing to 
+     * the result
+     * @param result the matrix an operation writes to
+     * @param operand the matrix the operation reads from
+     */
+    private static void overlapCheck(Matrix result, Matrix operand){
+        if(result == operand || (result.data != null && result.data == operand.data)){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+    }
+
+    /**
+     * Sets the number of threads the matrix operations may use for large
+     * inputs. A value of 1 makes every operation run on the calling thread
+     * @param parallelism the number of threads, at least 1
+     */
+    public static void setParallelism(int parallelism){
+        Parallel.setParallelism(parallelism);
+    }
+
+    /**
+     * Returns the number of threads the matrix operations may use for large
+     * inputs, which defaults to the number of available processors
+     * @return the number of threads
+     */
+    public static int getParallelism(){
+        return Parallel.parallelism();
+    }
+
+    /**
+     * Sets if the matrix operations must give results that are identical for
+     * any number of threads. When it is off, operations may split their work
+     * in ways that change the rounding of the result
+     * @param deterministic true to turn deterministic mode on
+     */
+    public static void setDeterministic(boolean deterministic){
+        Parallel.setDeterministic(deterministic);
+    }
+
+    /**
+     * Returns if the matrix operations must give results that are identical
+     * for any number of threads
+     * @return true if deterministic mode is on
+     */
+    public static boolean isDeterministic(){
+        return Parallel.deterministic();
     }
 
     /**
@@ -176,36 +428,334 @@ public class Matrix {
     }
 
     /**
-     * Returns a 2d array representing the matrix
+     * Returns the flat row-major array backing the matrix. Changes to the 
+     * array are reflected in the matrix. For a transposed view it is the
+     * array of the matrix it transposes
+     * @return the backing array of the matrix
+     */
+    public double[] getData(){
+        return this.data;
+    }
+
+    /**
+     * Returns the index in the backing array of the first element
+     * @return the offset of the matrix in its backing array
+     */
+    public int getOffset(){
+        return this.offset;
+    }
+
+    /**
+     * Returns the distance in the backing array between the start of two 
+     * consecutive rows, or of two consecutive columns for a transposed view
+     * @return the row stride of the matrix
+     */
+    public int getStride(){
+        return this.stride;
+    }
+
+    /**
+     * Returns if the rows of the matrix are stored next to each other without
+     * any gaps in the backing array
+     * @return true if the stride is equal to the number of columns and the
+     * matrix is not a transposed view
+     */
+    public boolean isContiguous(){
+        return !this.transposed && this.stride == this.numberOfColumns;
+    }
+
+    /**
+     * Returns if the matrix is a transposed view, whose element at (row,
+     * column) is the element at (column, row) of the matrix it was made from
+     * @return true if the matrix is a transposed view
+     */
+    public boolean isTransposed(){
+        return this.transposed;
+    }
+
+    /**
+     * Returns a view of a row of the matrix, which shares its storage
+     * @param row an int with the row to view
+     * @return a 1 x columns matrix over the row
+     */
+    public Matrix row(int row){
+        return submatrix(row, 0, 1, this.numberOfColumns);
+    }
+
+    /**
+     * Returns a view of a column of the matrix, which shares its storage and
+     * reads the column with the stride of the matrix
+     * @param column an int with the column to view
+     * @return a column vector over the column
+     */
+    public Vector column(int column){
+        viewCheck();
+        if(!(column >= 0 && column < this.numberOfColumns)){
+            throw new IllegalArgumentException(
+                    "Invalid column index");
+        }
+        if(this.transposed){
+            // A column of the view is a row of the matrix it transposes
+            return new Vector(getData(), this.offset + column * this.stride, 1, this.numberOfRows);
+        }
+        return new Vector(getData(), index(0, column), this.stride, this.numberOfRows);
+    }
+
+    /**
+     * Returns a view of a rectangular block of the matrix, which shares its
+     * storage, for example a mini-batch of the rows of a dataset
+     * @param row the first row of the block
+     * @param column the first column of the block
+     * @param rows an int for the number of rows in the block
+     * @param columns an int for the number of columns in the block
+     * @return a rows x columns matrix over the block
+     */
+    public Matrix submatrix(int row, int column, int rows, int columns){
+        viewCheck();
+        if(rows <= 0 || columns <= 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        if(row < 0 || column < 0 || row + rows > this.numberOfRows ||
+            column + columns > this.numberOfColumns){
+            throw new IllegalArgumentException(
+                "Invalid block of matrix of shape: " + this.numberOfRows + "x" +
+                this.numberOfColumns + ". Got rows " + row + " to " + (row + rows) +
+                " and columns " + column + " to " + (column + columns));
+        }
+        if(this.transposed){
+            return new Matrix(getData(), index(row, column), this.stride, columns, rows)
+                .transposedView();
+        }
+        return new Matrix(getData(), index(row, column), this.stride, rows, columns);
+    }
+
+    /**
+     * Returns a view of the transpose of the matrix, which shares its storage
+     * and reads it in transposed order. Products use the view without copying
+     * it, and the other operations copy it into row-major order first
+     * @return a columns x rows matrix over the same values
+     */
+    public Matrix transposedView(){
+        viewCheck();
+        if(this.transposed){
+            return storage();
+        }
+        Matrix view = new Matrix(getData(), this.offset, this.stride,
+            this.numberOfRows, this.numberOfColumns);
+        view.numberOfRows = this.numberOfColumns;
+        view.numberOfColumns = this.numberOfRows;
+        view.transposed = true;
+        return view;
+    }
+
+    /**
+     * Throws an error if the matrix has no backing array a view can share,
+     * which is the case for an off-heap matrix
+     */
+    private void viewCheck(){
+        if(isOffHeap()){
+            throw new IllegalArgumentException(
+                "An off-heap matrix cannot be viewed, copy it to the heap with toMatrix first");
+        }
+    }
+
+    /**
+     * Returns the matrix a transposed view was made from, which is the
+     * matrix itself if it is not a transposed view
+     * @return a matrix over the same storage in row-major order
+     */
+    Matrix storage(){
+        if(!this.transposed){
+            return this;
+        }
+        return new Matrix(this.data, this.offset, this.stride,
+            this.numberOfColumns, this.numberOfRows);
+    }
+
+    /**
+     * Returns an expression of the values of the matrix, which builds element
+     * wise arithmetic that is computed in one pass when it is evaluated
+     * @return the matrix as a LazyMatrix
+     */
+    public LazyMatrix lazy(){
+        return new LazyMatrix.Leaf(this);
+    }
+
+    /**
+     * Returns a rank 2 tensor that is a view of the matrix
+     * @return the tensor sharing the backing array of the matrix
+     * @throws IllegalArgumentException if the matrix is stored off the heap
+     */
+    public Tensor toTensor(){
+        viewCheck();
+        return new Tensor(getData(), this.offset, new int[]{this.numberOfRows, this.numberOfColumns},
+            this.transposed ? new int[]{1, this.stride} : new int[]{this.stride, 1});
+    }
+
+    /**
+     * Writes the matrix to a binary file, replacing the file if it exists.
+     * The file holds the shape, type and byte order of the matrix in a header
+     * followed by the values in row-major order, see MatrixFile
+     * @param path the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        handleNull(path, "Path cannot be null");
+        MatrixFile.write(this, path);
+    }
+
+    /**
+     * Reads a matrix written by save into a new matrix on the heap
+     * @param path the path of the file
+     * @return the matrix in the file
+     * @throws IOException if the file cannot be read or is not a matrix file
+     */
+    public static Matrix load(Path path) throws IOException {
+        handleNull(path, "Path cannot be null");
+        return MatrixFile.read(path);
+    }
+
+    /**
+     * Maps a file written by save into memory as a read only matrix. The
+     * values are read from the file as they are used instead of all being
+     * loaded up front, and writing to the matrix throws a
+     * ReadOnlyBufferException. The file stays mapped until the matrix is
+     * closed or garbage collected
+     * @param path the path of the file
+     * @return an off-heap matrix over the values in the file
+     * @throws IOException if the file cannot be mapped or is not a matrix file
+     */
+    public static OffHeapMatrix mmap(Path path) throws IOException {
+        return mmap(path, false);
+    }
+
+    /**
+     * Maps a file written by save into memory. When writable, changes to the
+     * matrix are written back to the file
+     * @param path the path of the file
+     * @param writable true to map the file for reading and writing
+     * @return an off-heap matrix over the values in the file
+     * @throws IOException if the file cannot be mapped or is not a matrix file
+     */
+    public static OffHeapMatrix mmap(Path path, boolean writable) throws IOException {
+        handleNull(path, "Path cannot be null");
+        return MatrixFile.map(path, writable);
+    }
+
+    /**
+     * Returns if the values of the matrix are stored off the heap instead of
+     * in a backing array, in which case the kernels have to copy them to the
+     * heap before using them
+     * @return true if the matrix has no backing array
+     */
+    boolean isOffHeap(){
+        return false;
+    }
+
+    /**
+     * Returns if the element at (row, column) is stored at index offset +
+     * row * stride + column of a backing array, which is what the kernels
+     * work on. Other matrices, off-heap matrices and transposed views, are
+     * copied into that layout by OffHeapKernels
+     * @return true if the kernels can use the backing array directly
+     */
+    boolean isRowMajor(){
+        return !this.transposed;
+    }
+
+    /**
+     * Copies rows of the matrix into an array
+     * @param row the first row to copy
+     * @param count the number of rows to copy
+     * @param target the array the rows are copied to
+     * @param offset the index the first row is copied to
+     * @param stride the distance between two rows in the array
+     */
+    void copyRowsTo(int row, int count, double[] target, int offset, int stride){
+        for(int i = 0; i < count; i++){
+            for(int j = 0; j < this.numberOfColumns; j++){
+                target[offset + i * stride + j] = this.data[index(row + i, j)];
+            }
+        }
+    }
+
+    /**
+     * Copies rows from an array into the matrix
+     * @param row the first row to write
+     * @param count the number of rows to write
+     * @param source the array the rows are copied from
+     * @param offset the index of the first row in the array
+     * @param stride the distance between two rows in the array
+     */
+    void copyRowsFrom(int row, int count, double[] source, int offset, int stride){
+        for(int i = 0; i < count; i++){
+            for(int j = 0; j < this.numberOfColumns; j++){
+                this.data[index(row + i, j)] = source[offset + i * stride + j];
+            }
+        }
+    }
+
+    /**
+     * Returns the index in the backing array of the given element
+     * @param row the row index
+     * @param column the column index
+     * @return the index of the element in the backing array
+     */
+    private int index(int row, int column){
+        if(this.transposed){
+            return this.offset + column * this.stride + row;
+        }
+        return this.offset + row * this.stride + column;
+    }
+
+    /**
+     * Returns a 2d array representing the matrix. The array is a copy of the
+     * matrix, so changes to it are not reflected in the matrix
      * @return a 2d array of doubles representing the matrix
      */
     public double[][] get() {
-        return this.matrix;
+        double[][] result = new double[this.numberOfRows][];
+        for(int i = 0; i < this.numberOfRows; i++){
+            result[i] = getRow(i);
+        }
+        return result;
     }
 
     /**
-     * Sets the matrix to the given matrix
+     * Sets the matrix to the given matrix. The values are copied into a new 
+     * flat row-major array
      * @param matrix the new matrix
      */
     public void set(double[][] matrix){
         handleNull(matrix, "Matrix cannot null");
-        if(matrix.length == 0){
+        if(matrix.length == 0 || matrix[0].length == 0){
             throw new IllegalArgumentException(
                     "Matrix rows or columns cannot be of size 0");
         }
-        this.matrix = matrix;
+        this.data = flatten(matrix, matrix.length, matrix[0].length);
+        this.offset = 0;
+        this.stride = matrix[0].length;
         this.numberOfRows = matrix.length;
         this.numberOfColumns = matrix[0].length;
+        this.transposed = false;
     } 
 
     /**
-     * Returns the given row and returns it as an array
+     * Returns a copy of the given row as an array
      * @param row an int with the row to return
      * @return an array of doubles representing the row
      */
     public double[] getRow(int row){
         if(row >= 0 && row < this.numberOfRows){
-            return this.matrix[row];
+            if(this.transposed){
+                double[] values = new double[this.numberOfColumns];
+                copyRowsTo(row, 1, values, 0, this.numberOfColumns);
+                return values;
+            }
+            int start = index(row, 0);
+            return Arrays.copyOfRange(this.data, start, 
+                start + this.numberOfColumns);
         }
         else {
             throw new IllegalArgumentException(
@@ -222,7 +772,7 @@ public class Matrix {
         if(column >= 0 && column < this.numberOfColumns){
             double[] columnArray = new double[this.numberOfRows];
             for(int i = 0; i < this.numberOfRows; i++){
-                columnArray[i] = this.matrix[i][column];
+                columnArray[i] = this.data[index(i, column)];
             }
             return columnArray;
         }
@@ -247,7 +797,7 @@ public class Matrix {
             throw new IllegalArgumentException(
                     "Invalid column index");
         }
-        return this.matrix[row][column];
+        return this.data[index(row, column)];
 
     }
 
@@ -260,7 +810,7 @@ public class Matrix {
     public void set(int row, int column, double value){
         if((row >= 0 && row < this.numberOfRows) &&     
                 (column >= 0 && column < this.numberOfColumns)){
-            this.matrix[row][column] = value;
+            this.data[index(row, column)] = value;
         } 
         else {
             throw new IllegalArgumentException(
@@ -275,17 +825,7 @@ public class Matrix {
      */
     public static double[][] transpose(double[][] matrix){
         handleNull(matrix, "Matrices and cannot be null for transposition");
-        // Initialize the result matrix
-        double[][] result = new double[matrix[0].length][matrix.length];
-        
-        // Perform the transpose operation                               
-        for(int i = 0; i < matrix[0].length; i++){
-            for(int j = 0; j < matrix.length; j++){
-                result[i][j] = matrix[j][i];
-            }
-        }
-
-        return result;
+        return transpose(new Matrix(matrix)).get();
     }
     
     /**
@@ -295,12 +835,39 @@ public class Matrix {
      */
     public static Matrix transpose(Matrix matrix){
         handleNull(matrix, "Matrices and cannot be null for transposition");
-        double[][] result = transpose(matrix.get());
-        return new Matrix(result);
+        Matrix result = new Matrix(matrix.numberOfColumns, matrix.numberOfRows);
+        transposeInto(matrix, result);
+        return result;
+    }
+
+    /**
+     * Writes the transpose of the matrix into a given result matrix
+     * @param matrix the matrix to transpose
+     * @param result the matrix the transpose is written to, which cannot 
+     * share storage with the given matrix
+     */
+    public static void transposeInto(Matrix matrix, Matrix result){
+        handleNull(matrix, "Matrices and cannot be null for transposition");
+        resultCheck(result, matrix.numberOfColumns, matrix.numberOfRows);
+        overlapCheck(result, matrix);
+        Kernels.transpose(matrix, result);
+    }
+
+    /**
+     * Transposes the matrix in place, which is only possible for a square
+     * matrix
+     */
+    public void transposeInPlace(){
+        if(this.numberOfRows != this.numberOfColumns){
+            throw new IllegalArgumentException(
+                "Only a square matrix can be transposed in place. Got shape: " +
+                this.numberOfRows + "x" + this.numberOfColumns);
+        }
+        Kernels.transposeInPlace(this);
     }
 
     public Matrix T(){
-        return new Matrix(transpose(this.matrix));
+        return transpose(this);
     }
 
     /**
@@ -314,35 +881,228 @@ public class Matrix {
         handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
         multiplyCheck(matrixA, matrixB);
 
-        int rows = matrixA.length;
-        int columns = matrixB[0].length;
-        int commonDim = matrixA[0].length;
+        return multiply(new Matrix(matrixA), new Matrix(matrixB)).get();
+    }
+
+    /**
+     * Returns the product of the two matrices
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @return the product of both matrices as a Matrix object
+     */
+    public static Matrix multiply(Matrix matrixA, Matrix matrixB) {
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        multiplyCheck(matrixA, matrixB);
 
-        // Initialize the result matrix
-        double[][] result = new double[rows][columns];
+        Matrix result = new Matrix(matrixA.numberOfRows, matrixB.numberOfColumns);
+        multiplyInto(matrixA, matrixB, result);
+        return result;
+    }
 
-        // Perform matrix multiplication
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                for (int k = 0; k < commonDim; k++) {
-                    result[i][j] += matrixA[i][k] * matrixB[k][j];
-                }
-            }
+    /**
+     * Writes the product of the two matrices into a given result matrix
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with either operand
+     */
+    public static void multiplyInto(Matrix matrixA, Matrix matrixB, Matrix result) {
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        multiplyCheck(matrixA, matrixB);
+        resultCheck(result, matrixA.numberOfRows, matrixB.numberOfColumns);
+        overlapCheck(result, matrixA);
+        overlapCheck(result, matrixB);
+
+        Gemm.multiply(matrixA, matrixB, result);
+    }
+
+    /**
+     * Returns the product of the transpose of the first matrix with the second
+     * matrix, reading the first matrix in transposed order instead of copying
+     * it
+     * @param matrixA the matrix whose transpose is the first in the
+     * multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @return the product of the transpose of the first matrix and the second
+     */
+    public static Matrix multiplyTransposeA(Matrix matrixA, Matrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        Matrix result = new Matrix(matrixA.numberOfColumns, matrixB.numberOfColumns);
+        multiplyTransposeAInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Writes the product of the transpose of the first matrix with the second
+     * matrix into a given result matrix
+     * @param matrixA the matrix whose transpose is the first in the
+     * multiplication
+     * @param matrixB the second matrix in the multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with either operand
+     */
+    public static void multiplyTransposeAInto(Matrix matrixA, Matrix matrixB, Matrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        if(matrixA.numberOfRows != matrixB.numberOfRows){
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply the transpose of matrix of shape: " +
+                matrixA.numberOfRows + "x" + matrixA.numberOfColumns + " with matrix of shape: " +
+                matrixB.numberOfRows + "x" + matrixB.numberOfColumns);
         }
+        resultCheck(result, matrixA.numberOfColumns, matrixB.numberOfColumns);
+        overlapCheck(result, matrixA);
+        overlapCheck(result, matrixB);
+
+        Gemm.multiply(matrixA, true, matrixB, false, result);
+    }
 
+    /**
+     * Returns the product of the first matrix with the transpose of the second
+     * matrix, reading the second matrix in transposed order instead of
+     * copying it
+     * @param matrixA the first matrix in the multiplication
+     * @param matrixB the matrix whose transpose is the second in the
+     * multiplication
+     * @return the product of the first matrix and the transpose of the second
+     */
+    public static Matrix multiplyTransposeB(Matrix matrixA, Matrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        Matrix result = new Matrix(matrixA.numberOfRows, matrixB.numberOfRows);
+        multiplyTransposeBInto(matrixA, matrixB, result);
         return result;
     }
 
     /**
-     * Returns the product of the two matrices
+     * Writes the product of the first matrix with the transpose of the second
+     * matrix into a given result matrix
      * @param matrixA the first matrix in the multiplication
-     * @param matrixB the second matrix in the multiplication
-     * @return the product of both matrices as a Matrix object
+     * @param matrixB the matrix whose transpose is the second in the
+     * multiplication
+     * @param result the matrix the product is written to, which cannot share
+     * storage with either operand
      */
-    public static Matrix multiply(Matrix matrixA, Matrix matrixB) {
+    public static void multiplyTransposeBInto(Matrix matrixA, Matrix matrixB, Matrix result){
         handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
-        double[][] result = multiply(matrixA.get(), matrixB.get());
-        return new Matrix(result);
+        if(matrixA.numberOfColumns != matrixB.numberOfColumns){
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply matrix of shape: " +
+                matrixA.numberOfRows + "x" + matrixA.numberOfColumns + " with the transpose of matrix of shape: " +
+                matrixB.numberOfRows + "x" + matrixB.numberOfColumns);
+        }
+        resultCheck(result, matrixA.numberOfRows, matrixB.numberOfRows);
+        overlapCheck(result, matrixA);
+        overlapCheck(result, matrixB);
+
+        Gemm.multiply(matrixA, false, matrixB, true, result);
+    }
+
+    /**
+     * Writes function(weights * input + bias) into a given result matrix,
+     * where the bias is a column added to every column of the product. The
+     * bias and function are applied to each tile of the product as soon as it
+     * is computed, so the product is never read back from memory
+     * @param weights the first matrix in the multiplication
+     * @param input the second matrix in the multiplication
+     * @param bias a column with one value for each row of the weights
+     * @param function the function applied to every element, or null for none
+     * @param preActivation the matrix the values before the function is
+     * applied are written to, or null if they are not needed
+     * @param result the matrix the output is written to, which cannot share
+     * storage with any operand
+     */
+    public static void affineInto(Matrix weights, Matrix input, Matrix bias,
+                                  DoubleUnaryOperator function,
+                                  Matrix preActivation, Matrix result){
+        handleNull(weights, input, "Matrices cannot be null for multiplication");
+        handleNull(bias, "Bias cannot be null");
+        multiplyCheck(weights, input);
+        if(bias.numberOfRows != weights.numberOfRows || bias.numberOfColumns != 1){
+            throw new IllegalArgumentException(
+                "Invalid shape for bias. Expected: " + weights.numberOfRows +
+                "x1 but got: " + bias.numberOfRows + "x" + bias.numberOfColumns);
+        }
+        resultCheck(result, weights.numberOfRows, input.numberOfColumns);
+        overlapCheck(result, weights);
+        overlapCheck(result, input);
+        overlapCheck(result, bias);
+        if(preActivation != null){
+            resultCheck(preActivation, weights.numberOfRows, input.numberOfColumns);
+            overlapCheck(preActivation, weights);
+            overlapCheck(preActivation, input);
+            overlapCheck(preActivation, bias);
+            overlapCheck(preActivation, result);
+        }
+
+        // The epilogue works on arrays, so off-heap matrices go through copies
+        Matrix biasValues = OffHeapKernels.onHeap(bias);
+        Matrix preValues = preActivation != null && !preActivation.isRowMajor() ?
+            new Matrix(preActivation.numberOfRows, preActivation.numberOfColumns) : preActivation;
+        Gemm.multiply(weights, false, input, false, result,
+            (c, cIndex, cStride, row, column, rows, columns) -> {
+                for(int r = 0; r < rows; r++){
+                    double b = biasValues.data[biasValues.index(row + r, 0)];
+                    int index = cIndex + r * cStride;
+                    for(int s = 0; s < columns; s++){
+                        double value = c[index + s] + b;
+                        if(preValues != null){
+                            preValues.data[preValues.index(row + r, column + s)] = value;
+                        }
+                        c[index + s] = function == null ? value : function.applyAsDouble(value);
+                    }
+                }
+            });
+        if(preValues != preActivation){
+            OffHeapKernels.copy(preValues, preActivation);
+        }
+    }
+
+    /**
+     * Returns the LU decomposition of the matrix with partial pivoting, which
+     * can solve many systems with the matrix after factoring it once
+     * @return the decomposition of the square matrix
+     */
+    public LUDecomposition lu(){
+        return new LUDecomposition(this);
+    }
+
+    /**
+     * Returns the Cholesky decomposition of the matrix, which must be
+     * symmetric positive definite. Only the lower triangle is read
+     * @return the decomposition of the matrix
+     */
+    public CholeskyDecomposition cholesky(){
+        return new CholeskyDecomposition(this);
+    }
+
+    /**
+     * Returns the determinant of the square matrix, found from its LU
+     * decomposition
+     * @return the determinant of the matrix
+     */
+    public double determinant(){
+        return lu().determinant();
+    }
+
+    /**
+     * Returns the inverse of the square matrix, found from its LU
+     * decomposition. Solving with solve is faster and more accurate than
+     * multiplying by the inverse
+     * @return the inverse of the matrix
+     */
+    public Matrix inverse(){
+        return lu().inverse();
+    }
+
+    /**
+     * Solves the system A * X = B with the LU decomposition of A, where each
+     * column of B is a right hand side
+     * @param matrixA the square matrix of the system
+     * @param matrixB the right hand sides, with as many rows as A
+     * @return the solution X
+     */
+    public static Matrix solve(Matrix matrixA, Matrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for solve");
+        return matrixA.lu().solve(matrixB);
     }
 
     public static double[][] elementWiseMultiply(double[][] matrix1, double[][] matrix2) {
@@ -351,24 +1111,41 @@ public class Matrix {
             throw new IllegalArgumentException("Matrices must have the same dimensions for element wise multiplication.");
         }
 
-        // Get the dimensions of the matrices
-        int rows = matrix1.length;
-        int cols = matrix1[0].length;
-
-        // Create a result matrix
-        double[][] result = new double[rows][cols];
+        return elementWiseMultiply(new Matrix(matrix1), new Matrix(matrix2)).get();
+    }
+    public static Matrix elementWiseMultiply(Matrix matrix1, Matrix matrix2){
+        handleNull(matrix1, matrix2, "Matrices cannot be null for element wise multiplication");
+        Matrix result = new Matrix(matrix1.numberOfRows, matrix1.numberOfColumns);
+        elementWiseMultiplyInto(matrix1, matrix2, result);
+        return result;
+    }
 
-        // Perform element-wise multiplication
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result[i][j] = matrix1[i][j] * matrix2[i][j];
-            }
+    /**
+     * Writes the element wise product of two matrices into a given result 
+     * matrix, which may be one of the operands
+     * @param matrix1 the first matrix
+     * @param matrix2 the second matrix
+     * @param result the matrix the product is written to
+     */
+    public static void elementWiseMultiplyInto(Matrix matrix1, Matrix matrix2, Matrix result){
+        handleNull(matrix1, matrix2, "Matrices cannot be null for element wise multiplication");
+        // Check if both matrices have the same dimensions
+        if (matrix1.numberOfRows != matrix2.numberOfRows || 
+            matrix1.numberOfColumns != matrix2.numberOfColumns) {
+            throw new IllegalArgumentException("Matrices must have the same dimensions for element wise multiplication.");
         }
+        resultCheck(result, matrix1.numberOfRows, matrix1.numberOfColumns);
 
-        return result;
+        Kernels.elementWiseMultiply(matrix1, matrix2, result);
     }
-    public static Matrix elementWiseMultiply(Matrix matrix1, Matrix matrix2){
-        return new Matrix(elementWiseMultiply(matrix1.get(), matrix2.get()));
+
+    /**
+     * Multiplies each element of the matrix by the corresponding element of 
+     * the given matrix, in place
+     * @param matrix the matrix to multiply by
+     */
+    public void elementWiseMultiplyInPlace(Matrix matrix){
+        elementWiseMultiplyInto(this, matrix, this);
     }
     
 
@@ -382,18 +1159,8 @@ public class Matrix {
         handleNull(matrixA, matrixB, "Matrices cannot be null for addition");
         // Check the size of the matrices and make sure they are the same size
         addCheck(matrixA, matrixB);
-        
-        // Iterate through the elements of the matrix and add the corresponding 
-        // element together
-
-        double[][] result = new double[matrixA.length][matrixA[0].length];
-        for(int i = 0; i < matrixA.length; i++){
-            for(int j = 0; j < matrixA[0].length; j++){
-                result[i][j] = matrixA[i][j] + matrixB[i][j];
-            }
-        }
 
-        return result;
+        return add(new Matrix(matrixA), new Matrix(matrixB)).get();
     }
 
     /**
@@ -403,12 +1170,34 @@ public class Matrix {
      * @return the sum of the matrices
      */
     public static Matrix add(Matrix matrixA, Matrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for addition");
+        Matrix result = new Matrix(matrixA.numberOfRows, matrixA.numberOfColumns);
+        addInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Adds two matrices and writes the sum into a given result matrix, which
+     * may be one of the operands
+     * @param matrixA the first matrix to add
+     * @param matrixB the second matrix to add
+     * @param result the matrix the sum is written to
+     */
+    public static void addInto(Matrix matrixA, Matrix matrixB, Matrix result){
         handleNull(matrixA, matrixB, "Matrices cannot be null for addition");
         // Check the size of the matrices and make sure they are the same size
         addCheck(matrixA, matrixB);
+        resultCheck(result, matrixA.numberOfRows, matrixA.numberOfColumns);
 
-        double[][] result = add(matrixA.get(), matrixB.get());
-        return new Matrix(result);
+        Kernels.add(matrixA, matrixB, result);
+    }
+
+    /**
+     * Adds the given matrix to the matrix in place
+     * @param matrix the matrix to add
+     */
+    public void addInPlace(Matrix matrix){
+        addInto(this, matrix, this);
     }
 
 
@@ -423,15 +1212,8 @@ public class Matrix {
 
         // Check the size of the matrices and make sure they are the same size
         addCheck(matrixA, matrixB);
-        
-        double[][] result = new double[matrixA.length][matrixA[0].length];
-        for(int i = 0; i < matrixA.length; i++){
-            for(int j = 0; j < matrixA[0].length; j++){
-                result[i][j] = matrixA[i][j] - matrixB[i][j];
-            }
-        }
-        
-        return result;
+
+        return subtract(new Matrix(matrixA), new Matrix(matrixB)).get();
     }
     /**
      * Subtracts two matrices and returns the difference
@@ -440,23 +1222,61 @@ public class Matrix {
      * @return the diffence between the first and second matrix
      */
     public static Matrix subtract(Matrix matrixA, Matrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for subtraction");
+        Matrix result = new Matrix(matrixA.numberOfRows, matrixA.numberOfColumns);
+        subtractInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Subtracts two matrices and writes the difference into a given result 
+     * matrix, which may be one of the operands
+     * @param matrixA the first matrix 
+     * @param matrixB the second matrix
+     * @param result the matrix the difference is written to
+     */
+    public static void subtractInto(Matrix matrixA, Matrix matrixB, Matrix result){
         handleNull(matrixA, matrixB, "Matrices cannot be null for subtraction");
         // Check the size of the matrix and make sure theh are of the same size
         addCheck(matrixA, matrixB);
-        
-        double[][] result = subtract(matrixA.get(), matrixB.get());
-        return new Matrix(result);
+        resultCheck(result, matrixA.numberOfRows, matrixA.numberOfColumns);
+
+        Kernels.subtract(matrixA, matrixB, result);
+    }
+
+    /**
+     * Subtracts the given matrix from the matrix in place
+     * @param matrix the matrix to subtract
+     */
+    public void subtractInPlace(Matrix matrix){
+        subtractInto(this, matrix, this);
+    }
+
+    /**
+     * Adds scaler * column * row^T to the matrix in place. This is the update
+     * a layer applies to its weights from its output gradient and input,
+     * without storing the gradient of the weights
+     * @param scaler the scaling value of the outer product
+     * @param column a column with one value for each row of the matrix
+     * @param row a column with one value for each column of the matrix
+     */
+    public void addOuterProductInPlace(double scaler, Matrix column, Matrix row){
+        handleNull(column, row, "Vectors cannot be null for the outer product");
+        if(column.numberOfRows != this.numberOfRows || column.numberOfColumns != 1 ||
+            row.numberOfRows != this.numberOfColumns || row.numberOfColumns != 1){
+            throw new IllegalArgumentException(
+                "Invalid shapes for outer product. Expected: " + this.numberOfRows +
+                "x1 and " + this.numberOfColumns + "x1 but got: " + column.numberOfRows +
+                "x" + column.numberOfColumns + " and " + row.numberOfRows + "x" + row.numberOfColumns);
+        }
+        overlapCheck(this, column);
+        overlapCheck(this, row);
+        Kernels.addOuterProduct(this, scaler, column, row);
     }
 
     public static double[][] scale(double[][] matrix, double scaler){
         handleNull(matrix, "Matrix cannot be null for scaling");
-        double[][] result = new double[matrix.length][matrix[0].length];
-        for(int i = 0; i < matrix.length; i++){
-            for(int j = 0; j < matrix[0].length; j++){
-                result[i][j] = matrix[i][j] * scaler;
-            }
-        }
-        return result;
+        return scale(new Matrix(matrix), scaler).get();
     }
 
     /**
@@ -467,8 +1287,22 @@ public class Matrix {
      */
     public static Matrix scale(Matrix matrix, double scaler){
         handleNull(matrix, "Matrix cannot be null for scaling");
-        double[][] result = scale(matrix.get(), scaler);
-        return new Matrix(result);
+        Matrix result = new Matrix(matrix.numberOfRows, matrix.numberOfColumns);
+        scaleInto(matrix, scaler, result);
+        return result;
+    }
+
+    /**
+     * Scales the matrix by a given scaler and writes it into a given result 
+     * matrix, which may be the matrix itself
+     * @param matrix the matrix to be scaled
+     * @param scaler the scaling value
+     * @param result the matrix the scaled values are written to
+     */
+    public static void scaleInto(Matrix matrix, double scaler, Matrix result){
+        handleNull(matrix, "Matrix cannot be null for scaling");
+        resultCheck(result, matrix.numberOfRows, matrix.numberOfColumns);
+        Kernels.scale(matrix, scaler, result);
     }
     
     /**
@@ -476,7 +1310,155 @@ public class Matrix {
      * @param scaler the scaling value
      */
     public void scale(double scaler){
-        this.matrix = scale(this.matrix, scaler);
+        scaleInPlace(scaler);
+    }
+
+    /**
+     * Scales the matrix by a given scaler in place
+     * @param scaler the scaling value
+     */
+    public void scaleInPlace(double scaler){
+        Kernels.scale(this, scaler, this);
+    }
+
+    /**
+     * Computes the sum of the values of the matrix. The values are summed
+     * pairwise, so the result is the same for any number of threads and
+     * its rounding error grows with the log of the number of values
+     * @return the sum of the values
+     */
+    public double sum(){
+        return Reductions.sum(values());
+    }
+
+    /**
+     * Returns the largest value of the matrix
+     * @return the largest value, or NaN if the matrix holds a NaN
+     */
+    public double max(){
+        return Reductions.max(values());
+    }
+
+    /**
+     * Returns the index of the first occurrence of the largest value of the
+     * matrix, counting the values in row-major order, which for a vector is
+     * its row. A NaN counts as larger than every other value
+     * @return the index of the largest value
+     */
+    public int argmax(){
+        return Reductions.argmax(OffHeapKernels.onHeap(this));
+    }
+
+    /**
+     * Computes the sum of the absolute values of the matrix, summed pairwise
+     * like sum
+     * @return the L1 norm of the matrix
+     */
+    public double normL1(){
+        return Reductions.normL1(values());
+    }
+
+    /**
+     * Computes the square root of the sum of the squares of the values of the
+     * matrix, which is the Frobenius norm of a matrix and the Euclidean norm
+     * of a vector. It does not overflow for values whose squares would
+     * @return the L2 norm of the matrix
+     */
+    public double normL2(){
+        return Reductions.normL2(values());
+    }
+
+    /**
+     * Computes the sum of every row of the matrix, summed pairwise like sum
+     * @return a vector with the sum of each row
+     */
+    public Vector rowSums(){
+        if(this.transposed){
+            return storage().columnSums();
+        }
+        double[] sums = new double[this.numberOfRows];
+        Reductions.rowSums(OffHeapKernels.onHeap(this), sums);
+        return Vector.wrap(sums);
+    }
+
+    /**
+     * Computes the sum of every column of the matrix. The rows are added in
+     * blocks whose sums are added pairwise, so the result is the same for any
+     * number of threads
+     * @return a vector with the sum of each column
+     */
+    public Vector columnSums(){
+        if(this.transposed){
+            return storage().rowSums();
+        }
+        double[] sums = new double[this.numberOfColumns];
+        Reductions.columnSums(OffHeapKernels.onHeap(this), sums);
+        return Vector.wrap(sums);
+    }
+
+    /**
+     * Returns the largest value of every row of the matrix
+     * @return a vector with the largest value of each row
+     */
+    public Vector rowMax(){
+        if(this.transposed){
+            return storage().columnMax();
+        }
+        double[] max = new double[this.numberOfRows];
+        Reductions.rowMax(OffHeapKernels.onHeap(this), max);
+        return Vector.wrap(max);
+    }
+
+    /**
+     * Returns the largest value of every column of the matrix
+     * @return a vector with the largest value of each column
+     */
+    public Vector columnMax(){
+        if(this.transposed){
+            return storage().rowMax();
+        }
+        double[] max = new double[this.numberOfColumns];
+        Reductions.columnMax(OffHeapKernels.onHeap(this), max);
+        return Vector.wrap(max);
+    }
+
+    /**
+     * Returns the column of the first occurrence of the largest value of
+     * every row of the matrix, such as the predicted class of each row of
+     * scores
+     * @return an array with the column of the largest value of each row
+     */
+    public int[] rowArgmax(){
+        if(this.transposed){
+            return storage().columnArgmax();
+        }
+        int[] indices = new int[this.numberOfRows];
+        Reductions.rowArgmax(OffHeapKernels.onHeap(this), indices);
+        return indices;
+    }
+
+    /**
+     * Returns the row of the first occurrence of the largest value of every
+     * column of the matrix
+     * @return an array with the row of the largest value of each column
+     */
+    public int[] columnArgmax(){
+        if(this.transposed){
+            return storage().rowArgmax();
+        }
+        int[] indices = new int[this.numberOfColumns];
+        Reductions.columnArgmax(OffHeapKernels.onHeap(this), indices);
+        return indices;
+    }
+
+    /**
+     * Returns the values of the matrix in a row-major backing array for the
+     * reductions over all of the values, which for a transposed view is the
+     * matrix it was made from, so it is not copied
+     * @return a matrix with the same values in some order
+     */
+    private Matrix values(){
+        return this.transposed ? storage() : OffHeapKernels.onHeap(this);
     }
 
     /**
@@ -488,41 +1470,7 @@ public class Matrix {
      */
     public static double[][] convolution(double[][] matrix, double[][] kernel) {
         handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
-        int matrixRows = matrix.length; // number of rows in matrix
-        int matrixColumns = matrix[0].length; // number of columns in matrix
-    
-        int kernelRows = kernel.length; // number of rows in kernel
-        int kernelColumns = kernel[0].length; // number of columns in kernel
-        
-        if(matrixRows < kernelRows || matrixColumns < kernelColumns) {
-            throw new IllegalArgumentException("Kernel size is larger than the matrix size.");
-        }
-
-        int outputRows = matrixRows - kernelRows + 1;
-        int outputColumns = matrixColumns - kernelColumns + 1;
-    
-        double[][] output = new double[outputRows][outputColumns];
-        
-        double[][] flippedKernel = new double[kernelRows][kernelColumns];
-        for (int i = 0; i < kernelRows; i++) {
-            for (int j = 0; j < kernelColumns; j++) {
-                flippedKernel[i][j] = kernel[kernelRows - 1 - i][kernelColumns - 1 - j];
-            }
-        }
-
-        for (int i = 0; i < outputRows; i++) { // Iterate over the output rows
-            for (int j = 0; j < outputColumns; j++) { // Iterate over the output columns
-                double sum = 0;
-                // Weighted sum of element-wise multiplication between matrix and kernel
-                for (int m = 0; m < kernelRows; m++) { // Iterate over kernel rows
-                    for (int n = 0; n < kernelColumns; n++) { // Iterate over kernel columns
-                        sum += matrix[i + m][j + n] * flippedKernel[m][n];
-                    }
-                }
-                output[i][j] = sum;
-            }
-        }
-        return output;
+        return convolution(new Matrix(matrix), new Matrix(kernel)).get();
     }
 
     /**
@@ -534,29 +1482,105 @@ public class Matrix {
      */
     public static Matrix convolution(Matrix matrix, Matrix kernel){
         handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
-        return new Matrix(
-            convolution(matrix.get(), kernel.get()));
+        convolutionCheck(matrix, kernel);
+
+        Matrix output = new Matrix(
+            matrix.numberOfRows - kernel.numberOfRows + 1, 
+            matrix.numberOfColumns - kernel.numberOfColumns + 1);
+        convolutionInto(matrix, kernel, output);
+        return output;
+    }
+
+    /**
+     * Computes the cross correlation between a given matrix and kernel and 
+     * writes it into a given result matrix
+     * @param matrix the matrix for the cross correleation
+     * @param kernel the kernal for the cross correlation
+     * @param result the matrix the output is written to, which cannot share 
+     * storage with the matrix or kernel
+     */
+    public static void convolutionInto(Matrix matrix, Matrix kernel, Matrix result){
+        handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
+        convolutionCheck(matrix, kernel);
+        resultCheck(result, matrix.numberOfRows - kernel.numberOfRows + 1, 
+            matrix.numberOfColumns - kernel.numberOfColumns + 1);
+        overlapCheck(result, matrix);
+        overlapCheck(result, kernel);
+
+        Kernels.convolution(matrix, kernel, result);
+    }
+
+    /**
+     * Computes the convolution of a given matrix and kernel with a direct
+     * loop over every output and kernel value. It gives the same values as
+     * convolution but is slower, and is kept as the reference the faster
+     * convolutions are tested against
+     * @param matrix the matrix for the convolution
+     * @param kernel the kernel for the convolution
+     * @return the convolution of the kernel and given matrix
+     */
+    public static Matrix convolutionDirect(Matrix matrix, Matrix kernel){
+        handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
+        convolutionCheck(matrix, kernel);
+
+        Matrix output = new Matrix(
+            matrix.numberOfRows - kernel.numberOfRows + 1, 
+            matrix.numberOfColumns - kernel.numberOfColumns + 1);
+        Kernels.convolutionDirect(matrix, kernel, output);
+        return output;
+    }
+
+    /**
+     * Computes the convolution of a given matrix and kernel with the fast
+     * Fourier transform, which is what convolution uses for large kernels.
+     * Each output differs from convolutionDirect by at most
+     * 1e-10 * sum(|kernel|) * max(|matrix|)
+     * @param matrix the matrix for the convolution
+     * @param kernel the kernel for the convolution
+     * @return the convolution of the kernel and given matrix
+     */
+    public static Matrix convolutionFFT(Matrix matrix, Matrix kernel){
+        handleNull(matrix, kernel, "Matrices and kernel cannot be null for convolution");
+        convolutionCheck(matrix, kernel);
+
+        Matrix output = new Matrix(
+            matrix.numberOfRows - kernel.numberOfRows + 1, 
+            matrix.numberOfColumns - kernel.numberOfColumns + 1);
+        FftConvolution.convolution(OffHeapKernels.onHeap(matrix),
+            OffHeapKernels.onHeap(kernel), output);
+        return output;
+    }
+
+    /**
+     * A helper method to check if the kernel fits inside the matrix
+     * @param matrix the matrix for the convolution
+     * @param kernel the kernel for the convolution
+     */
+    private static void convolutionCheck(Matrix matrix, Matrix kernel){
+        if(matrix.numberOfRows < kernel.numberOfRows || 
+            matrix.numberOfColumns < kernel.numberOfColumns) {
+            throw new IllegalArgumentException("Kernel size is larger than the matrix size.");
+        }
     }
 
     public double[][] convolution(double[][] kernal){
         handleNull(kernal, "Matrices and kernel cannot be null for convolution");
-        return convolution(this.matrix, kernal);
+        return convolution(this, new Matrix(kernal)).get();
     }
 
     public Matrix convolution(Matrix kernal){
         handleNull(kernal, "Matrices and kernel cannot be null for convolution");
-        return new Matrix(convolution(this.matrix, kernal.get()));
+        return convolution(this, kernal);
     }
 
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (double[] row : matrix) {
-            for (double value : row) {
-                sb.append(String.format("%.4f ", value));
+        for (int i = 0; i < this.numberOfRows; i++) {
+            for (int j = 0; j < this.numberOfColumns; j++) {
+                sb.append(String.format("%.4f ", get(i, j)));
             }
             sb.append("\n");
         }
         return sb.toString();
     }
 }
-
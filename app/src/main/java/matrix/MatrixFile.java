@@ -0,0 +1,224 @@
+package matrix;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads and writes matrices in a binary file format made to be
+ * mapped into memory. A file is a header of HEADER_SIZE bytes followed by the
+ * values of the matrix in row-major order without any gaps. The header holds,
+ * in order:
+ * <ul>
+ *     <li>the 4 bytes of MAGIC</li>
+ *     <li>a byte with the version of the format, VERSION</li>
+ *     <li>a byte with the type of the values, FLOAT64</li>
+ *     <li>a byte with the byte order of the header fields and values that
+ *     follow it, LITTLE_ENDIAN or BIG_ENDIAN</li>
+ *     <li>a byte of zero</li>
+ *     <li>the number of rows and of columns as 8 byte integers</li>
+ *     <li>zeros up to HEADER_SIZE bytes</li>
+ * </ul>
+ * The header has a size of a multiple of 8 bytes, so the values are aligned
+ * in a mapped file. Files are written in the byte order of the platform and
+ * can be read on platforms of either order
+ *
+ * @author Joseph Bronsten
+ */
+final class MatrixFile {
+    /** The first bytes of every matrix file */
+    private static final byte[] MAGIC = {'J', 'M', 'L', 'M'};
+
+    /** The version of the format written by this class */
+    private static final byte VERSION = 1;
+
+    /** The type of values stored as 8 byte IEEE 754 doubles */
+    private static final byte FLOAT64 = 1;
+
+    private static final byte LITTLE_ENDIAN = 0;
+    private static final byte BIG_ENDIAN = 1;
+
+    /** The number of bytes before the first value */
+    static final int HEADER_SIZE = 64;
+
+    /** The number of values moved between the file and the heap at once */
+    private static final int CHUNK_VALUES = 1 << 16;
+
+    private MatrixFile(){}
+
+    /**
+     * The shape and byte order read from the header of a file
+     */
+    private static final class Header {
+        final int rows;
+        final int columns;
+        final ByteOrder order;
+
+        Header(int rows, int columns, ByteOrder order){
+            this.rows = rows;
+            this.columns = columns;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Writes a matrix to a file, replacing the file if it exists
+     * @param matrix the matrix to write
+     * @param path the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Matrix matrix, Path path) throws IOException {
+        int rows = matrix.getRows();
+        int columns = matrix.getColumns();
+        ByteOrder order = ByteOrder.nativeOrder();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(order);
+            header.put(MAGIC).put(VERSION).put(FLOAT64)
+                .put(order == ByteOrder.LITTLE_ENDIAN ? LITTLE_ENDIAN : BIG_ENDIAN).put((byte) 0)
+                .putLong(rows).putLong(columns);
+            header.position(0);
+            writeFully(channel, header);
+
+            ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_VALUES * Double.BYTES).order(order);
+            DoubleBuffer values = bytes.asDoubleBuffer();
+            double[] row = matrix.isRowMajor() ? null : new double[columns];
+            for(int i = 0; i < rows; i++){
+                double[] source = row;
+                int index = 0;
+                if(row == null){
+                    source = matrix.getData();
+                    index = matrix.getOffset() + i * matrix.getStride();
+                }
+                else {
+                    matrix.copyRowsTo(i, 1, row, 0, columns);
+                }
+                for(int j = 0; j < columns; ){
+                    int count = Math.min(columns - j, values.remaining());
+                    values.put(source, index + j, count);
+                    j += count;
+                    if(!values.hasRemaining()){
+                        flush(channel, bytes, values);
+                    }
+                }
+            }
+            flush(channel, bytes, values);
+        }
+    }
+
+    /**
+     * Writes the values put into a chunk and empties it
+     */
+    private static void flush(FileChannel channel, ByteBuffer bytes, DoubleBuffer values)
+            throws IOException {
+        bytes.position(0).limit(values.position() * Double.BYTES);
+        writeFully(channel, bytes);
+        bytes.clear();
+        values.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a matrix from a file onto the heap
+     * @param path the path of the file
+     * @return the matrix in the file
+     * @throws IOException if the file cannot be read or is not a matrix file
+     */
+    static Matrix read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel, path);
+            Matrix matrix = new Matrix(header.rows, header.columns);
+            double[] data = matrix.getData();
+            ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_VALUES * Double.BYTES).order(header.order);
+            long position = HEADER_SIZE;
+            for(int index = 0; index < data.length; ){
+                int count = Math.min(data.length - index, CHUNK_VALUES);
+                bytes.clear().limit(count * Double.BYTES);
+                while(bytes.hasRemaining()){
+                    if(channel.read(bytes, position + bytes.position()) < 0){
+                        throw new EOFException("Matrix file is shorter than its shape: " + path);
+                    }
+                }
+                bytes.flip();
+                bytes.asDoubleBuffer().get(data, index, count);
+                index += count;
+                position += (long) count * Double.BYTES;
+            }
+            return matrix;
+        }
+    }
+
+    /**
+     * Maps a matrix file into memory
+     * @param path the path of the file
+     * @param writable true to write changes to the matrix back to the file
+     * @return an off-heap matrix over the values in the file
+     * @throws IOException if the file cannot be mapped or is not a matrix file
+     */
+    static OffHeapMatrix map(Path path, boolean writable) throws IOException {
+        StandardOpenOption[] options = writable ?
+            new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE} :
+            new StandardOpenOption[]{StandardOpenOption.READ};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            Header header = readHeader(channel, path);
+            return OffHeapMatrix.map(channel, HEADER_SIZE, header.rows, header.columns,
+                header.order, writable);
+        }
+    }
+
+    /**
+     * Reads and checks the header of a file
+     * @param channel the channel of the file
+     * @param path the path of the file, for the error messages
+     * @return the shape and byte order of the matrix
+     * @throws IOException if the file is not a matrix file this class can read
+     */
+    private static Header readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while(header.hasRemaining()){
+            if(channel.read(header, header.position()) < 0){
+                throw new IOException("Not a matrix file: " + path);
+            }
+        }
+        header.flip();
+        for(byte b : MAGIC){
+            if(header.get() != b){
+                throw new IOException("Not a matrix file: " + path);
+            }
+        }
+        byte version = header.get();
+        if(version != VERSION){
+            throw new IOException("Unsupported matrix file version " + version + ": " + path);
+        }
+        byte type = header.get();
+        if(type != FLOAT64){
+            throw new IOException("Unsupported matrix value type " + type + ": " + path);
+        }
+        byte endianness = header.get();
+        if(endianness != LITTLE_ENDIAN && endianness != BIG_ENDIAN){
+            throw new IOException("Invalid byte order " + endianness + ": " + path);
+        }
+        ByteOrder order = endianness == LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        header.order(order).position(8);
+        long rows = header.getLong();
+        long columns = header.getLong();
+        if(rows <= 0 || columns <= 0 || rows > Integer.MAX_VALUE || columns > Integer.MAX_VALUE
+                || rows * columns > Integer.MAX_VALUE){
+            throw new IOException("Invalid matrix shape " + rows + "x" + columns + ": " + path);
+        }
+        if(channel.size() < HEADER_SIZE + rows * columns * Double.BYTES){
+            throw new EOFException("Matrix file is shorter than its shape: " + path);
+        }
+        return new Header((int) rows, (int) columns, order);
+    }
+}
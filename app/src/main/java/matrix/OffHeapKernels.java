@@ -0,0 +1,292 @@
+package matrix;
+
+/**
+ * This class runs the kernels on operands that include a matrix without a
+ * row-major backing array, which is an OffHeapMatrix or a transposed view.
+ * The kernels work on arrays, so the rows of such operands are copied into
+ * arrays a block at a time, the ordinary kernel is run on the block, and rows
+ * of such a result are copied back. Only one block of each operand is copied
+ * at a time for the element wise operations and the expressions of
+ * LazyMatrix, for updates in place such as the outer product update of the
+ * weights of a layer, and for the first operand of a product, which is where
+ * the weights of a layer are used. The second operand and the result of a
+ * product, and the operands of a transpose or convolution, are copied whole.
+ * Products take transposed views without copying them, see Gemm
+ *
+ * @author Joseph Bronsten
+ */
+final class OffHeapKernels {
+    /** The number of values in a block of rows copied to the heap at once */
+    private static final int BLOCK_VALUES = 1 << 16;
+
+    private OffHeapKernels(){}
+
+    /**
+     * Returns if any of the given matrices has no row-major backing array
+     * @param matrices the matrices to check
+     * @return true if a kernel has to go through this class
+     */
+    static boolean any(Matrix... matrices){
+        for(Matrix matrix : matrices){
+            if(!matrix.isRowMajor()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a matrix with the values of the given matrix that has a
+     * row-major backing array, which is the matrix itself unless it is stored
+     * off the heap or is a transposed view
+     * @param matrix the matrix to read
+     * @return the matrix or a row-major copy of it on the heap
+     */
+    static Matrix onHeap(Matrix matrix){
+        if(matrix.isRowMajor()){
+            return matrix;
+        }
+        Matrix copy = new Matrix(matrix.getRows(), matrix.getColumns());
+        matrix.copyRowsTo(0, matrix.getRows(), copy.getData(), 0, matrix.getColumns());
+        return copy;
+    }
+
+    /**
+     * Copies the values of one matrix into another of the same shape, either
+     * of which may have no row-major backing array
+     * @param source the matrix to read
+     * @param target the matrix to write
+     */
+    static void copy(Matrix source, Matrix target){
+        if(!source.isRowMajor()){
+            if(!target.isRowMajor()){
+                source = onHeap(source);
+            }
+            else {
+                source.copyRowsTo(0, source.getRows(),
+                    target.getData(), target.getOffset(), target.getStride());
+                return;
+            }
+        }
+        if(!target.isRowMajor()){
+            target.copyRowsFrom(0, target.getRows(),
+                source.getData(), source.getOffset(), source.getStride());
+            return;
+        }
+        for(int i = 0; i < source.getRows(); i++){
+            System.arraycopy(source.getData(), source.getOffset() + i * source.getStride(),
+                target.getData(), target.getOffset() + i * target.getStride(),
+                source.getColumns());
+        }
+    }
+
+    /**
+     * Returns a block of rows of a matrix that has a backing array. For a
+     * row-major matrix it is a view of the rows, and for other matrices the
+     * rows are copied into the given scratch array
+     * @param matrix the matrix to read
+     * @param row the first row of the block
+     * @param rows the number of rows in the block
+     * @param scratch an array of at least rows * columns values
+     * @return the block of rows
+     */
+    private static Matrix rows(Matrix matrix, int row, int rows, double[] scratch){
+        int columns = matrix.getColumns();
+        if(matrix.isRowMajor()){
+            return new Matrix(matrix.getData(), matrix.getOffset() + row * matrix.getStride(),
+                matrix.getStride(), rows, columns);
+        }
+        matrix.copyRowsTo(row, rows, scratch, 0, columns);
+        return new Matrix(scratch, 0, columns, rows, columns);
+    }
+
+    /**
+     * Returns the number of rows of the given length in a block
+     * @param columns the length of a row
+     * @return the number of rows, at least one
+     */
+    static int blockRows(int columns){
+        return Math.max(1, BLOCK_VALUES / columns);
+    }
+
+    /**
+     * The element wise kernels, which write a result of the same shape as
+     * their operands
+     */
+    interface ElementWise {
+        void apply(Matrix matrixA, Matrix matrixB, Matrix result);
+    }
+
+    /**
+     * Runs an element wise kernel one block of rows at a time. The result may
+     * be one of the operands
+     * @param matrixA the first matrix
+     * @param matrixB the second matrix, which may be the same as the first
+     * @param result the matrix the kernel writes to
+     * @param kernel the kernel to run on each block
+     */
+    static void elementWise(Matrix matrixA, Matrix matrixB, Matrix result, ElementWise kernel){
+        int rows = result.getRows();
+        int columns = result.getColumns();
+        int blockRows = Math.min(rows, blockRows(columns));
+        double[] scratchA = !matrixA.isRowMajor() ? new double[blockRows * columns] : null;
+        double[] scratchB = !matrixB.isRowMajor() && matrixB != matrixA ?
+            new double[blockRows * columns] : null;
+        double[] scratchC = !result.isRowMajor() ? new double[blockRows * columns] : null;
+
+        for(int row = 0; row < rows; row += blockRows){
+            int count = Math.min(blockRows, rows - row);
+            Matrix a = rows(matrixA, row, count, scratchA);
+            Matrix b = matrixB == matrixA ? a : rows(matrixB, row, count, scratchB);
+            Matrix c = !result.isRowMajor() ? new Matrix(scratchC, 0, columns, count, columns) :
+                rows(result, row, count, null);
+            kernel.apply(a, b, c);
+            if(!result.isRowMajor()){
+                result.copyRowsFrom(row, count, scratchC, 0, columns);
+            }
+        }
+    }
+
+    /**
+     * An update of rows of a matrix in place, given as an array in row-major
+     * order
+     */
+    interface RowUpdate {
+        /**
+         * Updates a block of rows of the matrix
+         * @param a the array holding the rows
+         * @param offset the index of the first element of the block
+         * @param stride the distance between two rows in the array
+         * @param row the row of the matrix the block starts at
+         * @param rows the number of rows in the block
+         */
+        void apply(double[] a, int offset, int stride, int row, int rows);
+    }
+
+    /**
+     * Runs an update of a matrix in place. A row-major matrix is updated in
+     * its backing array at once, and the rows of other matrices are copied
+     * into a scratch array a block at a time, updated and copied back, so the
+     * whole matrix is never copied to the heap
+     * @param matrix the matrix to update
+     * @param update the update to run on the rows
+     */
+    static void updateRows(Matrix matrix, RowUpdate update){
+        int rows = matrix.getRows();
+        int columns = matrix.getColumns();
+        if(matrix.isRowMajor()){
+            update.apply(matrix.getData(), matrix.getOffset(), matrix.getStride(), 0, rows);
+            return;
+        }
+        int blockRows = Math.min(rows, blockRows(columns));
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] scratch = scope.array(blockRows * columns);
+            for(int row = 0; row < rows; row += blockRows){
+                int count = Math.min(blockRows, rows - row);
+                matrix.copyRowsTo(row, count, scratch, 0, columns);
+                update.apply(scratch, 0, columns, row, count);
+                matrix.copyRowsFrom(row, count, scratch, 0, columns);
+            }
+        }
+    }
+
+    /**
+     * Computes a product where any of the matrices may have no row-major
+     * backing array, with the operands described as in Gemm.multiply
+     * @param matrixA the first matrix in the multiplication
+     * @param transposeA true to multiply by the transpose of the first matrix
+     * @param matrixB the second matrix in the multiplication
+     * @param transposeB true to multiply by the transpose of the second matrix
+     * @param result the matrix the product is written to
+     * @param epilogue the work applied to the result, or null for none
+     */
+    static void multiply(Matrix matrixA, boolean transposeA,
+                         Matrix matrixB, boolean transposeB, Matrix result,
+                         Gemm.Epilogue epilogue){
+        Matrix right = onHeap(matrixB);
+        Matrix target = !result.isRowMajor() ?
+            new Matrix(result.getRows(), result.getColumns()) : result;
+        int storedRows = matrixA.getRows();
+        int blockRows = Math.min(storedRows, blockRows(matrixA.getColumns()));
+        double[] scratch = !matrixA.isRowMajor() ? new double[blockRows * matrixA.getColumns()] : null;
+
+        if(!transposeA){
+            // Each block of rows of A gives the same block of rows of C
+            for(int row = 0; row < storedRows; row += blockRows){
+                int count = Math.min(blockRows, storedRows - row);
+                int first = row;
+                Gemm.multiply(rows(matrixA, row, count, scratch), false, right, transposeB,
+                    rows(target, row, count, null),
+                    epilogue == null ? null : (c, cIndex, cStride, r, column, rows, columns) ->
+                        epilogue.apply(c, cIndex, cStride, first + r, column, rows, columns));
+            }
+        }
+        else {
+            // Each block of rows of A is a block of the shared dimension, so
+            // the products of the blocks are summed into C
+            Matrix partial = storedRows > blockRows ?
+                new Matrix(target.getRows(), target.getColumns()) : null;
+            for(int row = 0; row < storedRows; row += blockRows){
+                int count = Math.min(blockRows, storedRows - row);
+                Matrix rightBlock = transposeB ?
+                    new Matrix(right.getData(), right.getOffset() + row, right.getStride(),
+                        right.getRows(), count) :
+                    rows(right, row, count, null);
+                Gemm.multiply(rows(matrixA, row, count, scratch), true, rightBlock, transposeB,
+                    row == 0 ? target : partial);
+                if(row != 0){
+                    Kernels.add(target, partial, target);
+                }
+            }
+            if(epilogue != null){
+                epilogue.apply(target.getData(), target.getOffset(), target.getStride(),
+                    0, 0, target.getRows(), target.getColumns());
+            }
+        }
+
+        if(target != result){
+            copy(target, result);
+        }
+    }
+
+    /**
+     * Writes the transpose of a matrix into a result matrix, either of which
+     * may have no row-major backing array
+     * @param matrix the matrix to transpose
+     * @param result the matrix the transpose is written to
+     */
+    static void transpose(Matrix matrix, Matrix result){
+        Matrix target = !result.isRowMajor() ?
+            new Matrix(result.getRows(), result.getColumns()) : result;
+        Kernels.transpose(onHeap(matrix), target);
+        if(target != result){
+            copy(target, result);
+        }
+    }
+
+    /**
+     * Transposes a square matrix without a row-major backing array in place
+     * @param matrix the matrix to transpose
+     */
+    static void transposeInPlace(Matrix matrix){
+        Matrix values = onHeap(matrix);
+        Kernels.transposeInPlace(values);
+        copy(values, matrix);
+    }
+
+    /**
+     * Computes the convolution of a matrix with a kernel into a result
+     * matrix, any of which may have no row-major backing array
+     * @param matrix the matrix to convolve
+     * @param kernel the kernel of the convolution
+     * @param result the matrix the convolution is written to
+     */
+    static void convolution(Matrix matrix, Matrix kernel, Matrix result){
+        Matrix target = !result.isRowMajor() ?
+            new Matrix(result.getRows(), result.getColumns()) : result;
+        Kernels.convolution(onHeap(matrix), onHeap(kernel), target);
+        if(target != result){
+            copy(target, result);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package matrix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a matrix whose values are stored outside of the Java heap, so
+ * large matrices such as the weights of a model do not add to the work of the
+ * garbage collector. It can be used anywhere a Matrix can, including as the
+ * weights of a Dense layer, and its operations run the same kernels as a
+ * Matrix on blocks of rows that are copied to and from the heap as needed.
+ * <p>
+ * The memory is released when close is called, after which the matrix cannot
+ * be used and its operations throw an IllegalStateException. Every read or
+ * write of the memory is counted while it runs, so a matrix closed while
+ * another thread is using it is only released once those operations finish.
+ * A matrix that is never closed is released when it is garbage collected.
+ * <p>
+ * The values can also be a file mapped into memory, see Matrix.mmap, in which
+ * case they are read from the file as they are used and close unmaps it.
+ * <p>
+ * An off-heap matrix has no backing array, so getData throws an exception,
+ * the views row, column, submatrix, transposedView and toTensor throw an
+ * IllegalArgumentException, and it cannot be used by operations that need an
+ * array, such as the mixed precision operations of FloatMatrix. Views can be
+ * taken of the copy returned by toMatrix
+ *
+ * @author Joseph Bronsten
+ */
+public class OffHeapMatrix extends Matrix implements AutoCloseable {
+    /** The largest number of values stored in one buffer */
+    private static final int MAX_BLOCK_VALUES = 1 << 27;
+
+    /** Frees the memory of a direct buffer, or null if it cannot be done */
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The memory is then only released by the garbage collector
+            invokeCleaner = null;
+            unsafe = null;
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    /** The bit of the state that is set once the matrix is closed */
+    private static final int CLOSED = 1 << 31;
+
+    private final int rowsPerBlock;
+    private final ByteBuffer[] buffers;
+    private final DoubleBuffer[] blocks;
+
+    /**
+     * The number of operations using the memory, with the CLOSED bit set once
+     * close has been called. The memory is released by whichever of close
+     * and the last operation leaves the state at CLOSED with no users
+     */
+    private final AtomicInteger state = new AtomicInteger();
+
+    /**
+     * Creates an off-heap matrix of zeros with the given shape
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     */
+    public OffHeapMatrix(int rows, int columns){
+        this(rows, columns, (position, size) ->
+            ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder()));
+    }
+
+    /**
+     * Creates a source of the memory of the blocks of an off-heap matrix
+     */
+    private interface BlockSource {
+        ByteBuffer block(long position, int size);
+    }
+
+    /**
+     * Creates an off-heap matrix whose blocks of rows are stored in the
+     * buffers given by a source
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param source the source of the buffer of each block, given the byte
+     * position of the block in the matrix and its size in bytes
+     */
+    private OffHeapMatrix(int rows, int columns, BlockSource source){
+        super(rows, columns, false);
+        this.rowsPerBlock = Math.max(1, MAX_BLOCK_VALUES / columns);
+        if((long) columns * Double.BYTES > Integer.MAX_VALUE){
+            throw new IllegalArgumentException(
+                    "Matrix rows are too long to store off the heap: " + columns);
+        }
+        int blockCount = (rows + this.rowsPerBlock - 1) / this.rowsPerBlock;
+        this.buffers = new ByteBuffer[blockCount];
+        this.blocks = new DoubleBuffer[blockCount];
+        for(int block = 0; block < blockCount; block++){
+            int blockRows = Math.min(this.rowsPerBlock, rows - block * this.rowsPerBlock);
+            this.buffers[block] = source.block((long) block * this.rowsPerBlock * columns * Double.BYTES,
+                blockRows * columns * Double.BYTES);
+            this.blocks[block] = this.buffers[block].asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Creates an off-heap matrix over a region of a file mapped into memory.
+     * The file stays mapped after the channel is closed, until the matrix is
+     * closed or garbage collected
+     * @param channel the channel of the file
+     * @param position the byte position of the first value in the file
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param order the byte order of the values in the file
+     * @param writable true to write changes to the values back to the file,
+     * false to map the file read only
+     * @return the matrix over the file
+     * @throws IOException if the file cannot be mapped
+     */
+    static OffHeapMatrix map(FileChannel channel, long position, int rows, int columns,
+                             ByteOrder order, boolean writable) throws IOException {
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        try {
+            return new OffHeapMatrix(rows, columns, (block, size) -> {
+                try {
+                    return channel.map(mode, position + block, size).order(order);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Creates an off-heap copy of a matrix
+     * @param matrix the matrix to copy
+     */
+    public OffHeapMatrix(Matrix matrix){
+        this(matrix.getRows(), matrix.getColumns());
+        OffHeapKernels.copy(matrix, this);
+    }
+
+    /**
+     * Returns a copy of the matrix stored on the heap
+     * @return the matrix as an ordinary Matrix
+     */
+    public Matrix toMatrix(){
+        Matrix result = new Matrix(getRows(), getColumns());
+        copyRowsTo(0, getRows(), result.getData(), 0, getColumns());
+        return result;
+    }
+
+    /**
+     * Releases the memory of the matrix, at once if no other thread is using
+     * it and otherwise when the last operation using it finishes. Calling it
+     * more than once has no effect
+     */
+    @Override
+    public void close(){
+        int previous = this.state.getAndUpdate(value -> value | CLOSED);
+        if(previous == 0){
+            release();
+        }
+    }
+
+    /**
+     * Returns if the matrix has been closed
+     * @return true if close has been called
+     */
+    public boolean isClosed(){
+        return (this.state.get() & CLOSED) != 0;
+    }
+
+    /**
+     * Frees the memory of the buffers, which is only called once no
+     * operation can use them again
+     */
+    private void release(){
+        if(INVOKE_CLEANER == null){
+            return;
+        }
+        for(ByteBuffer buffer : this.buffers){
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                // Leave the buffer to the garbage collector
+            }
+        }
+    }
+
+    @Override
+    boolean isOffHeap(){
+        return true;
+    }
+
+    @Override
+    boolean isRowMajor(){
+        return false;
+    }
+
+    /**
+     * An off-heap matrix has no backing array
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public double[] getData(){
+        throw new UnsupportedOperationException(
+                "An off-heap matrix has no backing array");
+    }
+
+    /**
+     * Counts an operation as using the memory, checking that the matrix is
+     * still open. Each call must be followed by a call to done
+     * @return the buffers holding the rows of the matrix
+     */
+    private DoubleBuffer[] acquire(){
+        while(true){
+            int value = this.state.get();
+            if((value & CLOSED) != 0){
+                throw new IllegalStateException("Off-heap matrix has been closed");
+            }
+            if(this.state.compareAndSet(value, value + 1)){
+                return this.blocks;
+            }
+        }
+    }
+
+    /**
+     * Ends an operation started by acquire, releasing the memory if the
+     * matrix was closed while it ran and it was the last one
+     */
+    private void done(){
+        if(this.state.decrementAndGet() == CLOSED){
+            release();
+        }
+    }
+
+    /**
+     * Copies rows of the matrix into an array
+     * @param row the first row to copy
+     * @param count the number of rows to copy
+     * @param target the array the rows are copied to
+     * @param offset the index the first row is copied to
+     * @param stride the distance between two rows in the array
+     */
+    @Override
+    void copyRowsTo(int row, int count, double[] target, int offset, int stride){
+        DoubleBuffer[] current = acquire();
+        try {
+            int columns = getColumns();
+            for(int i = 0; i < count; i++){
+                int r = row + i;
+                current[r / this.rowsPerBlock].get((r % this.rowsPerBlock) * columns,
+                    target, offset + i * stride, columns);
+            }
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Copies rows from an array into the matrix
+     * @param row the first row to write
+     * @param count the number of rows to write
+     * @param source the array the rows are copied from
+     * @param offset the index of the first row in the array
+     * @param stride the distance between two rows in the array
+     */
+    @Override
+    void copyRowsFrom(int row, int count, double[] source, int offset, int stride){
+        DoubleBuffer[] current = acquire();
+        try {
+            int columns = getColumns();
+            for(int i = 0; i < count; i++){
+                int r = row + i;
+                current[r / this.rowsPerBlock].put((r % this.rowsPerBlock) * columns,
+                    source, offset + i * stride, columns);
+            }
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Throws an error if the given index is outside of the matrix
+     * @param row the row index
+     * @param column the column index
+     */
+    private void indexCheck(int row, int column){
+        if(!(row >= 0 && row < getRows())){
+            throw new IllegalArgumentException(
+                    "Invalid row index");
+        }
+        if(!(column >= 0 && column < getColumns())){
+            throw new IllegalArgumentException(
+                    "Invalid column index");
+        }
+    }
+
+    @Override
+    public double get(int row, int column){
+        indexCheck(row, column);
+        DoubleBuffer[] current = acquire();
+        try {
+            return current[row / this.rowsPerBlock].get(
+                (row % this.rowsPerBlock) * getColumns() + column);
+        } finally {
+            done();
+        }
+    }
+
+    @Override
+    public void set(int row, int column, double value){
+        indexCheck(row, column);
+        DoubleBuffer[] current = acquire();
+        try {
+            current[row / this.rowsPerBlock].put(
+                (row % this.rowsPerBlock) * getColumns() + column, value);
+        } finally {
+            done();
+        }
+    }
+
+    @Override
+    public double[] getRow(int row){
+        indexCheck(row, 0);
+        double[] result = new double[getColumns()];
+        copyRowsTo(row, 1, result, 0, getColumns());
+        return result;
+    }
+
+    @Override
+    public double[] getColumn(int column){
+        indexCheck(0, column);
+        double[] result = new double[getRows()];
+        for(int i = 0; i < getRows(); i++){
+            result[i] = get(i, column);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the values of the matrix to the given 2d array, which must have the
+     * shape of the matrix since the off-heap memory cannot be resized
+     * @param matrix the new values
+     */
+    @Override
+    public void set(double[][] matrix){
+        if(matrix == null){
+            throw new NullPointerException("Matrix cannot null");
+        }
+        if(matrix.length != getRows() || matrix[0].length != getColumns()){
+            throw new IllegalArgumentException(
+                    "Invalid number of rows or columns");
+        }
+        OffHeapKernels.copy(new Matrix(matrix), this);
+    }
+}
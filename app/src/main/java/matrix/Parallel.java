@@ -0,0 +1,187 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * This class holds the fork/join pool used by the parallel kernels of the
+ * matrix package together with the settings controlling it. The settings are
+ * changed through the static methods of Matrix.
+ * <p>
+ * Changing the parallelism level replaces the pool. The old pool is only shut
+ * down once every invocation running on it has finished, so the level can be
+ * changed while other threads are using the kernels
+ *
+ * @author Joseph Bronsten
+ */
+final class Parallel {
+    private static volatile int parallelism =
+        Runtime.getRuntime().availableProcessors();
+    private static volatile boolean deterministic = false;
+    /** The pool new invocations run on, guarded by the lock of the class */
+    private static PoolHandle current;
+
+    private Parallel(){}
+
+    /**
+     * Returns the number of threads the parallel kernels may use
+     * @return the parallelism level
+     */
+    static int parallelism(){
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads the parallel kernels may use, a value of 1
+     * makes every kernel run sequentially
+     * @param level the parallelism level
+     */
+    static synchronized void setParallelism(int level){
+        if(level < 1){
+            throw new IllegalArgumentException(
+                    "Parallelism must be at least 1");
+        }
+        if(level != parallelism){
+            parallelism = level;
+            if(current != null){
+                PoolHandle retired = current;
+                current = null;
+                if(retired.users == 0){
+                    retired.pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns if the kernels must give results that do not depend on the
+     * number of threads
+     * @return true if deterministic mode is on
+     */
+    static boolean deterministic(){
+        return deterministic;
+    }
+
+    /**
+     * Sets if the kernels must give results that do not depend on the number
+     * of threads
+     * @param value true to turn deterministic mode on
+     */
+    static void setDeterministic(boolean value){
+        deterministic = value;
+    }
+
+    /**
+     * Returns if work of the given size should be split across threads
+     * @param work the size of the work, for example a number of multiply-adds
+     * @param threshold the size below which the work stays sequential
+     * @return true if the work should run in parallel
+     */
+    static boolean worthSplitting(long work, long threshold){
+        return parallelism > 1 && work >= threshold;
+    }
+
+    /**
+     * Runs a task in the pool and waits for it to finish. A task started
+     * from a thread of the pool runs directly in that thread
+     * @param task the task to run
+     */
+    static void invoke(ForkJoinTask<?> task){
+        PoolHandle handle = acquire();
+        try {
+            if(ForkJoinTask.getPool() == handle.pool){
+                task.invoke();
+            }
+            else {
+                handle.pool.invoke(task);
+            }
+        } finally {
+            release(handle);
+        }
+    }
+
+    /**
+     * Calls the body once for every index in a range, spreading the calls
+     * across the threads of the pool, and waits for all of them to finish
+     * @param start the first index
+     * @param end the index after the last index
+     * @param body the work to run for each index
+     */
+    static void forRange(int start, int end, IntConsumer body){
+        if(end - start <= 1 || parallelism == 1){
+            for(int i = start; i < end; i++){
+                body.accept(i);
+            }
+            return;
+        }
+        invoke(new RangeTask(start, end, body));
+    }
+
+    /**
+     * A task that splits a range of indices in half until a single index is
+     * left
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final IntConsumer body;
+
+        RangeTask(int start, int end, IntConsumer body){
+            this.start = start;
+            this.end = end;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute(){
+            if(end - start == 1){
+                body.accept(start);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new RangeTask(start, middle, body), 
+                new RangeTask(middle, end, body));
+        }
+    }
+
+    /**
+     * Returns the current pool, creating it the first time it is needed, and
+     * counts the caller as using it until release is called
+     * @return the handle of the pool to run on
+     */
+    private static synchronized PoolHandle acquire(){
+        if(current == null){
+            current = new PoolHandle(new ForkJoinPool(parallelism));
+        }
+        current.users++;
+        return current;
+    }
+
+    /**
+     * Ends a use of a pool started by acquire, shutting the pool down if it
+     * has been replaced and this was the last invocation running on it
+     * @param handle the handle returned by acquire
+     */
+    private static synchronized void release(PoolHandle handle){
+        handle.users--;
+        if(handle.users == 0 && handle != current){
+            handle.pool.shutdown();
+        }
+    }
+
+    /**
+     * A pool together with the number of invocations running on it
+     */
+    private static final class PoolHandle {
+        private final ForkJoinPool pool;
+        private int users;
+
+        PoolHandle(ForkJoinPool pool){
+            this.pool = pool;
+        }
+    }
+}
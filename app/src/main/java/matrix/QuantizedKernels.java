@@ -0,0 +1,152 @@
+package matrix;
+
+/**
+ * This class holds the loops behind the operations of QuantizedMatrix. Both
+ * operands of a product are held as 8 bit integers, their products are summed
+ * exactly in integers and each sum is only turned back into a double once,
+ * when it is scaled by the scales of its row and of the input.
+ * <p>
+ * Values are quantized to the range -127 to 127, so a product of two values
+ * is at most 127 * 127 and ACCUMULATOR_BLOCK of them always fit in an int.
+ * Longer dot products add the int sums of each block into a long
+ *
+ * @author Joseph Bronsten
+ */
+final class QuantizedKernels {
+    /** The largest magnitude of a quantized value */
+    static final int LEVELS = 127;
+
+    /** The number of products summed in an int before they are added to a long */
+    private static final int ACCUMULATOR_BLOCK = 1 << 16;
+
+    /** The number of rows of the result each parallel task computes */
+    private static final int ROW_BLOCK = 16;
+
+    /** The number of multiply-adds below which products run on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private QuantizedKernels(){}
+
+    /**
+     * Rounds a value divided by a scale to the nearest quantized value,
+     * clamping values outside of the range. NaN is quantized to zero
+     * @param value the value to quantize
+     * @param scale the value one step of the quantized values stands for
+     * @return the quantized value
+     */
+    static byte quantize(double value, double scale){
+        double level = Math.rint(value / scale);
+        return (byte) Math.max(-LEVELS, Math.min(LEVELS, level));
+    }
+
+    /**
+     * Quantizes the columns of a matrix with one scale into an array where
+     * each column is stored contiguously, so the dot products of the rows of
+     * the weights with a column read both operands in order
+     * @param input the matrix to quantize, which must be row-major
+     * @param scale the value one step of the quantized values stands for
+     * @param columns the array the columns are written to, column j starting
+     * at index j * input.getRows()
+     */
+    static void quantizeColumns(Matrix input, double scale, byte[] columns){
+        double[] x = input.getData();
+        int rows = input.getRows();
+        for(int i = 0; i < rows; i++){
+            int xIndex = input.getOffset() + i * input.getStride();
+            for(int j = 0; j < input.getColumns(); j++){
+                columns[j * rows + i] = quantize(x[xIndex + j], scale);
+            }
+        }
+    }
+
+    /**
+     * Returns the dot product of two arrays of quantized values
+     * @param a the first array
+     * @param aIndex the index of the first value of the first array
+     * @param b the second array
+     * @param bIndex the index of the first value of the second array
+     * @param length the number of values in the dot product
+     * @return the exact sum of the products
+     */
+    static long dot(byte[] a, int aIndex, byte[] b, int bIndex, int length){
+        long total = 0;
+        for(int start = 0; start < length; start += ACCUMULATOR_BLOCK){
+            int end = Math.min(length, start + ACCUMULATOR_BLOCK);
+            // Four independent sums so the multiply-adds do not wait on each
+            // other
+            int sum0 = 0;
+            int sum1 = 0;
+            int sum2 = 0;
+            int sum3 = 0;
+            int k = start;
+            for(; k + 3 < end; k += 4){
+                sum0 += a[aIndex + k] * b[bIndex + k];
+                sum1 += a[aIndex + k + 1] * b[bIndex + k + 1];
+                sum2 += a[aIndex + k + 2] * b[bIndex + k + 2];
+                sum3 += a[aIndex + k + 3] * b[bIndex + k + 3];
+            }
+            for(; k < end; k++){
+                sum0 += a[aIndex + k] * b[bIndex + k];
+            }
+            total += (long) sum0 + sum1 + sum2 + sum3;
+        }
+        return total;
+    }
+
+    /**
+     * Computes C = dequantize(A * X) + bias, where A is a row-major array of
+     * quantized weights with a scale for each row and X holds quantized
+     * columns with one scale for all of them. Large products are split into
+     * blocks of rows of the result that are computed in parallel
+     * @param rows the rows of the result
+     * @param columns the columns of the result
+     * @param commonDim the shared dimension of the product
+     * @param a the quantized weights, row i starting at index i * commonDim
+     * @param scales the scale of each row of the weights
+     * @param x the quantized columns, column j starting at index j * commonDim
+     * @param inputScale the scale of the quantized columns
+     * @param bias the value added to each row of the result, or null for none
+     * @param c the array the result is written to
+     * @param cOffset the index of the first element of C
+     * @param cStride the distance between two rows of C
+     */
+    static void multiply(int rows, int columns, int commonDim,
+                         byte[] a, double[] scales, byte[] x, double inputScale,
+                         double[] bias, double[] c, int cOffset, int cStride){
+        forRowBlocks(rows, (long) rows * columns * commonDim, (start, end) -> {
+            for(int i = start; i < end; i++){
+                int aIndex = i * commonDim;
+                int cIndex = cOffset + i * cStride;
+                double scale = scales[i] * inputScale;
+                double b = bias == null ? 0 : bias[i];
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = dot(a, aIndex, x, j * commonDim, commonDim) * scale + b;
+                }
+            }
+        });
+    }
+
+    /**
+     * Splits the rows of a result into blocks of ROW_BLOCK rows, and computes
+     * them in parallel if the work is large enough
+     * @param rows the number of rows of the result
+     * @param work the number of multiply-adds in the operation
+     * @param body the work for a range of rows from start to end exclusive
+     */
+    private static void forRowBlocks(int rows, long work, RowRange body){
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD) || rows <= ROW_BLOCK){
+            body.apply(0, rows);
+            return;
+        }
+        int blocks = (rows + ROW_BLOCK - 1) / ROW_BLOCK;
+        Parallel.forRange(0, blocks, block ->
+            body.apply(block * ROW_BLOCK, Math.min(rows, (block + 1) * ROW_BLOCK)));
+    }
+
+    /**
+     * The work for a range of rows of a result
+     */
+    private interface RowRange {
+        void apply(int start, int end);
+    }
+}
@@ -0,0 +1,304 @@
+package matrix;
+
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * This class is a matrix quantized to 8 bit integers for inference. Each row
+ * has its own scale, the largest magnitude in the row divided by 127, and the
+ * value of an element is its quantized value times the scale of its row.
+ * This takes an eighth of the memory of a Matrix, and a product with it reads
+ * an eighth of the bytes.
+ * <p>
+ * The products quantize their double input with a single scale, which is
+ * usually found ahead of time by calibrate from sample inputs, sum the
+ * products of the 8 bit values exactly in integers and scale each sum back to
+ * a double. Input values larger than the calibrated range are clamped.
+ * <p>
+ * A quantized matrix cannot be changed once it is created
+ *
+ * @author Joseph Bronsten
+ */
+public final class QuantizedMatrix {
+    private final byte[] data;
+    private final double[] scales;
+    private final int numberOfRows;
+    private final int numberOfColumns;
+
+    private QuantizedMatrix(byte[] data, double[] scales, int rows, int columns){
+        this.data = data;
+        this.scales = scales;
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
+    }
+
+    /**
+     * Quantizes a matrix with a symmetric scale for each row. A row of zeros
+     * has a scale of zero and NaN values are quantized to zero
+     * @param matrix the matrix to quantize
+     * @return the quantized matrix
+     */
+    public static QuantizedMatrix quantize(Matrix matrix){
+        handleNull(matrix, "Matrix cannot be null");
+        Matrix values = OffHeapKernels.onHeap(matrix);
+        int rows = values.getRows();
+        int columns = values.getColumns();
+        byte[] data = new byte[rows * columns];
+        double[] scales = new double[rows];
+        double[] x = values.getData();
+        for(int i = 0; i < rows; i++){
+            int index = values.getOffset() + i * values.getStride();
+            double largest = 0;
+            for(int j = 0; j < columns; j++){
+                if(Math.abs(x[index + j]) > largest){
+                    largest = Math.abs(x[index + j]);
+                }
+            }
+            if(largest == 0){
+                continue;
+            }
+            scales[i] = largest / QuantizedKernels.LEVELS;
+            for(int j = 0; j < columns; j++){
+                data[i * columns + j] = QuantizedKernels.quantize(x[index + j], scales[i]);
+            }
+        }
+        return new QuantizedMatrix(data, scales, rows, columns);
+    }
+
+    /**
+     * Returns the input scale that covers the range of a set of sample
+     * inputs, the largest magnitude of any of their values divided by 127. If
+     * every value is zero the scale covers the range -1 to 1. NaN values are
+     * ignored
+     * @param samples the sample inputs, which must not be empty
+     * @return the scale to quantize inputs with
+     */
+    public static double calibrate(List<? extends Matrix> samples){
+        handleNull(samples, "Samples cannot be null");
+        if(samples.isEmpty()){
+            throw new IllegalArgumentException(
+                    "At least one sample is needed for calibration");
+        }
+        double largest = 0;
+        for(Matrix sample : samples){
+            handleNull(sample, "Samples cannot be null");
+            Matrix values = OffHeapKernels.onHeap(sample);
+            double[] x = values.getData();
+            for(int i = 0; i < values.getRows(); i++){
+                int index = values.getOffset() + i * values.getStride();
+                for(int j = 0; j < values.getColumns(); j++){
+                    if(Math.abs(x[index + j]) > largest){
+                        largest = Math.abs(x[index + j]);
+                    }
+                }
+            }
+        }
+        if(Double.isInfinite(largest)){
+            throw new IllegalArgumentException("Samples cannot be infinite");
+        }
+        if(largest == 0){
+            largest = 1;
+        }
+        return largest / QuantizedKernels.LEVELS;
+    }
+
+    /**
+     * A helper method that throws an error if the passed object is null
+     * @param obj the object to check
+     * @param msg the error message
+     */
+    private static void handleNull(Object obj, String msg){
+        if(obj == null){
+            throw new NullPointerException(msg);
+        }
+    }
+
+    /**
+     * Returns the number of rows in the matrix
+     * @return an int with the number of rows
+     */
+    public int getRows(){
+        return this.numberOfRows;
+    }
+
+    /**
+     * Returns the number of columns in the matrix
+     * @return an int with the number of columns
+     */
+    public int getColumns(){
+        return this.numberOfColumns;
+    }
+
+    /**
+     * Throws an error if the given index is outside of the matrix
+     * @param row the row index
+     * @param column the column index
+     */
+    private void indexCheck(int row, int column){
+        if(!(row >= 0 && row < this.numberOfRows)){
+            throw new IllegalArgumentException(
+                    "Invalid row index");
+        }
+        if(!(column >= 0 && column < this.numberOfColumns)){
+            throw new IllegalArgumentException(
+                    "Invalid column index");
+        }
+    }
+
+    /**
+     * Returns the quantized value at the given index
+     * @param row the row index
+     * @param column the column index
+     * @return the 8 bit value, between -127 and 127
+     */
+    public byte getQuantized(int row, int column){
+        indexCheck(row, column);
+        return this.data[row * this.numberOfColumns + column];
+    }
+
+    /**
+     * Returns the scale of a row, the value one step of its quantized values
+     * stands for
+     * @param row the row index
+     * @return the scale of the row
+     */
+    public double getScale(int row){
+        indexCheck(row, 0);
+        return this.scales[row];
+    }
+
+    /**
+     * Returns the value at the given index, its quantized value times the
+     * scale of its row
+     * @param row the row index
+     * @param column the column index
+     * @return the value at the index
+     */
+    public double get(int row, int column){
+        return getQuantized(row, column) * this.scales[row];
+    }
+
+    /**
+     * Returns the values of the matrix as a double precision matrix
+     * @return the matrix as a Matrix object
+     */
+    public Matrix toMatrix(){
+        Matrix result = new Matrix(this.numberOfRows, this.numberOfColumns);
+        double[] values = result.getData();
+        for(int i = 0; i < values.length; i++){
+            values[i] = this.data[i] * this.scales[i / this.numberOfColumns];
+        }
+        return result;
+    }
+
+    /**
+     * Writes the product of a quantized matrix and a double matrix into a
+     * given result matrix. The columns of the input are quantized with the
+     * input scale before they are multiplied
+     * @param matrixA the quantized matrix
+     * @param input the second matrix in the multiplication
+     * @param inputScale the scale the input is quantized with
+     * @param result the matrix the product is written to
+     */
+    public static void multiplyInto(QuantizedMatrix matrixA, Matrix input, double inputScale,
+                                    Matrix result){
+        affineInto(matrixA, input, inputScale, null, null, null, result);
+    }
+
+    /**
+     * Writes function(weights * input + bias) into a given result matrix,
+     * where the product is computed on the quantized weights and input and the
+     * bias is added in double precision as each sum is scaled back
+     * @param weights the quantized matrix that is the first in the
+     * multiplication
+     * @param input the second matrix in the multiplication
+     * @param inputScale the scale the input is quantized with
+     * @param bias a column with one value for each row of the weights, or
+     * null for none
+     * @param function the function applied to every element, or null for none
+     * @param preActivation the matrix the values before the function is
+     * applied are written to, or null if they are not needed
+     * @param result the matrix the output is written to
+     */
+    public static void affineInto(QuantizedMatrix weights, Matrix input, double inputScale,
+                                  Matrix bias, DoubleUnaryOperator function,
+                                  Matrix preActivation, Matrix result){
+        handleNull(weights, "Matrices cannot be null for multiplication");
+        handleNull(input, "Matrices cannot be null for multiplication");
+        handleNull(result, "Result matrix cannot be null");
+        if(weights.numberOfColumns != input.getRows()){
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply matrix of shape: " +
+                weights.numberOfRows + "x" + weights.numberOfColumns +
+                " with matrix of shape: " + input.getRows() + "x" + input.getColumns());
+        }
+        if(!(inputScale > 0) || Double.isInfinite(inputScale)){
+            throw new IllegalArgumentException(
+                    "Input scale must be a positive number: " + inputScale);
+        }
+        resultCheck(result, weights.numberOfRows, input.getColumns());
+        if(preActivation != null){
+            resultCheck(preActivation, weights.numberOfRows, input.getColumns());
+        }
+        double[] biasValues = null;
+        if(bias != null){
+            if(bias.getRows() != weights.numberOfRows || bias.getColumns() != 1){
+                throw new IllegalArgumentException(
+                    "Invalid shape for bias. Expected: " + weights.numberOfRows +
+                    "x1 but got: " + bias.getRows() + "x" + bias.getColumns());
+            }
+            biasValues = bias.getColumn(0);
+        }
+
+        // The input is quantized into its own array first, so the result may
+        // share storage with any operand
+        int columns = input.getColumns();
+        byte[] x = new byte[columns * weights.numberOfColumns];
+        QuantizedKernels.quantizeColumns(OffHeapKernels.onHeap(input), inputScale, x);
+        Matrix target = result.isRowMajor() ? result : new Matrix(result.getRows(), columns);
+        QuantizedKernels.multiply(weights.numberOfRows, columns, weights.numberOfColumns,
+            weights.data, weights.scales, x, inputScale, biasValues,
+            target.getData(), target.getOffset(), target.getStride());
+
+        if(preActivation != null){
+            OffHeapKernels.copy(target, preActivation);
+        }
+        if(function != null){
+            double[] c = target.getData();
+            for(int i = 0; i < target.getRows(); i++){
+                int cIndex = target.getOffset() + i * target.getStride();
+                for(int j = 0; j < columns; j++){
+                    c[cIndex + j] = function.applyAsDouble(c[cIndex + j]);
+                }
+            }
+        }
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+    }
+
+    /**
+     * A helper method to check if a result matrix has the given shape
+     * @param result the matrix an operation writes to
+     * @param rows the number of rows the result must have
+     * @param columns the number of columns the result must have
+     */
+    private static void resultCheck(Matrix result, int rows, int columns){
+        if(result.getRows() != rows || result.getColumns() != columns){
+            throw new IllegalArgumentException(
+                "Invalid shape for result matrix. Expected: " + rows + "x" +
+                columns + " but got: " + result.getRows() + "x" + result.getColumns());
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.numberOfRows; i++) {
+            for (int j = 0; j < this.numberOfColumns; j++) {
+                sb.append(String.format("%.4f ", get(i, j)));
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
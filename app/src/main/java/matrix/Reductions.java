@@ -0,0 +1,431 @@
+package matrix;
+
+/**
+ * This class holds the loops behind the reductions of Matrix. The values of a
+ * matrix are taken in row-major order and summed in blocks of BLOCK values
+ * with the loops of ArrayOps, and the sums of the blocks are added pairwise,
+ * so the rounding error grows with the log of the number of values instead of
+ * with the number of values.
+ * <p>
+ * The blocks and the order they are added in depend only on the shape of the
+ * matrix, so the results are the same for any number of threads and for any
+ * stride. Column sums add blocks of ROW_BLOCK rows pairwise in the same way
+ *
+ * @author Joseph Bronsten
+ */
+final class Reductions {
+    /** The number of values summed in one pass before the sums are added pairwise */
+    private static final int BLOCK = 1024;
+
+    /** The number of rows added one after another before column sums are added pairwise */
+    private static final int ROW_BLOCK = 32;
+
+    /** The fewest columns a task of a column reduction works on */
+    private static final int COLUMN_BAND = 256;
+
+    /** The number of values below which reductions run on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private Reductions(){}
+
+    /**
+     * A reduction of a contiguous range of values to a sum
+     */
+    private interface RangeSum {
+        double apply(double[] a, int aIndex, int length);
+    }
+
+    /**
+     * Computes the sum of the values of a matrix
+     * @param matrix the matrix to sum
+     * @return the sum of the values
+     */
+    static double sum(Matrix matrix){
+        return sum(matrix, Kernels.OPS::sum);
+    }
+
+    /**
+     * Computes the sum of the absolute values of a matrix
+     * @param matrix the matrix to sum
+     * @return the L1 norm of the values
+     */
+    static double normL1(Matrix matrix){
+        return sum(matrix, Kernels.OPS::sumAbs);
+    }
+
+    /**
+     * Computes the square root of the sum of the squares of the values of a
+     * matrix. When the sum of the squares overflows or underflows, the values
+     * are divided by the largest absolute value before they are squared
+     * @param matrix the matrix to sum
+     * @return the L2 norm of the values
+     */
+    static double normL2(Matrix matrix){
+        double squares = sum(matrix, Kernels.OPS::sumSquares);
+        if(!Double.isInfinite(squares) && squares >= Double.MIN_NORMAL){
+            return Math.sqrt(squares);
+        }
+        double largest = 0;
+        for(int i = 0; i < matrix.getRows(); i++){
+            int index = matrix.getOffset() + i * matrix.getStride();
+            for(int j = 0; j < matrix.getColumns(); j++){
+                largest = Math.max(largest, Math.abs(matrix.getData()[index + j]));
+            }
+        }
+        if(largest == 0 || Double.isInfinite(largest) || Double.isNaN(largest)){
+            return Math.sqrt(squares);
+        }
+        double scale = 1 / largest;
+        double scaled = sum(matrix, (a, aIndex, length) -> {
+            double sum = 0;
+            for(int i = 0; i < length; i++){
+                double value = a[aIndex + i] * scale;
+                sum += value * value;
+            }
+            return sum;
+        });
+        return largest * Math.sqrt(scaled);
+    }
+
+    /**
+     * Sums every value of a matrix with the given range reduction
+     */
+    private static double sum(Matrix matrix, RangeSum op){
+        int count = matrix.getRows() * matrix.getColumns();
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        if(!Parallel.worthSplitting(count, PARALLEL_THRESHOLD)){
+            return pairwise(matrix, 0, count, 0, blocks, op);
+        }
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] sums = scope.array(blocks);
+            int tasks = Math.min(blocks, Parallel.parallelism() * 4);
+            Parallel.forRange(0, tasks, task -> {
+                for(int b = task * blocks / tasks; b < (task + 1) * blocks / tasks; b++){
+                    sums[b] = block(matrix, b * BLOCK, Math.min(count, (b + 1) * BLOCK), op);
+                }
+            });
+            return combine(sums, 0, blocks);
+        }
+    }
+
+    /**
+     * Sums a range of blocks of a range of values, adding the sums of the
+     * two halves of the blocks
+     * @param matrix the matrix to sum
+     * @param start the first value, counted in row-major order
+     * @param end the value after the last one
+     * @param firstBlock the first block, counted from the start
+     * @param lastBlock the block after the last one
+     * @param op the reduction of a range of values
+     * @return the sum of the blocks
+     */
+    private static double pairwise(Matrix matrix, int start, int end,
+                                   int firstBlock, int lastBlock, RangeSum op){
+        if(lastBlock - firstBlock == 1){
+            return block(matrix, start + firstBlock * BLOCK,
+                Math.min(end, start + lastBlock * BLOCK), op);
+        }
+        int middle = (firstBlock + lastBlock) >>> 1;
+        return pairwise(matrix, start, end, firstBlock, middle, op) +
+            pairwise(matrix, start, end, middle, lastBlock, op);
+    }
+
+    /**
+     * Adds the sums of a range of blocks in the same order as pairwise
+     */
+    private static double combine(double[] sums, int first, int last){
+        if(last - first == 1){
+            return sums[first];
+        }
+        int middle = (first + last) >>> 1;
+        return combine(sums, first, middle) + combine(sums, middle, last);
+    }
+
+    /**
+     * Sums a range of values, one row at a time
+     * @param matrix the matrix to sum
+     * @param start the first value, counted in row-major order
+     * @param end the value after the last one
+     * @param op the reduction of a range of values
+     * @return the sum of the range
+     */
+    private static double block(Matrix matrix, int start, int end, RangeSum op){
+        int columns = matrix.getColumns();
+        double sum = 0;
+        while(start < end){
+            int row = start / columns;
+            int column = start % columns;
+            int length = Math.min(end - start, columns - column);
+            sum += op.apply(matrix.getData(),
+                matrix.getOffset() + row * matrix.getStride() + column, length);
+            start += length;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns if a value should replace the largest value found so far, which
+     * is the case if it is larger or it is the first NaN
+     */
+    private static boolean larger(double value, double largest){
+        return value > largest || (value != value && largest == largest);
+    }
+
+    /**
+     * Returns the index of the first occurrence of a value in a range
+     */
+    private static int indexOf(double[] a, int aIndex, int length, double value){
+        boolean nan = value != value;
+        for(int i = 0; i < length; i++){
+            double v = a[aIndex + i];
+            if(nan ? v != v : v == value){
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the largest value of a matrix
+     * @param matrix the matrix to search
+     * @return the largest value, or NaN if the matrix holds a NaN
+     */
+    static double max(Matrix matrix){
+        int index = argmax(matrix);
+        int columns = matrix.getColumns();
+        return matrix.get(index / columns, index % columns);
+    }
+
+    /**
+     * Finds the first occurrence of the largest value of a matrix
+     * @param matrix the matrix to search
+     * @return the index of the value in row-major order. A NaN counts as
+     * larger than every other value
+     */
+    static int argmax(Matrix matrix){
+        int count = matrix.getRows() * matrix.getColumns();
+        if(!Parallel.worthSplitting(count, PARALLEL_THRESHOLD)){
+            return argmax(matrix, 0, count);
+        }
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        int tasks = Math.min(blocks, Parallel.parallelism() * 4);
+        int[] indices = new int[tasks];
+        Parallel.forRange(0, tasks, task ->
+            indices[task] = argmax(matrix, (int) ((long) task * blocks / tasks) * BLOCK,
+                (int) Math.min(count, (long) (task + 1) * blocks / tasks * BLOCK)));
+        // Keep the first of equal values by only taking larger ones
+        int index = indices[0];
+        double largest = value(matrix, index);
+        for(int task = 1; task < tasks; task++){
+            double value = value(matrix, indices[task]);
+            if(larger(value, largest)){
+                largest = value;
+                index = indices[task];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Finds the first occurrence of the largest value of a range of values
+     * @param matrix the matrix to search
+     * @param start the first value, counted in row-major order
+     * @param end the value after the last one
+     * @return the index of the value in row-major order
+     */
+    private static int argmax(Matrix matrix, int start, int end){
+        int columns = matrix.getColumns();
+        double[] a = matrix.getData();
+        int index = start;
+        double largest = value(matrix, start);
+        while(start < end){
+            int row = start / columns;
+            int column = start % columns;
+            int length = Math.min(end - start, columns - column);
+            int aIndex = matrix.getOffset() + row * matrix.getStride() + column;
+            double max = Kernels.OPS.max(a, aIndex, length);
+            if(larger(max, largest) || start == index){
+                largest = max;
+                index = start + indexOf(a, aIndex, length, max);
+            }
+            start += length;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the value at an index counted in row-major order
+     */
+    private static double value(Matrix matrix, int index){
+        return matrix.get(index / matrix.getColumns(), index % matrix.getColumns());
+    }
+
+    /**
+     * Computes the sum of every row of a matrix
+     * @param matrix the matrix to sum
+     * @param result the array the sums are written to
+     */
+    static void rowSums(Matrix matrix, double[] result){
+        int columns = matrix.getColumns();
+        int blocks = (columns + BLOCK - 1) / BLOCK;
+        rows(matrix, row -> result[row] = pairwise(matrix, row * columns, (row + 1) * columns,
+            0, blocks, Kernels.OPS::sum));
+    }
+
+    /**
+     * Finds the largest value of every row of a matrix
+     * @param matrix the matrix to search
+     * @param result the array the largest values are written to
+     */
+    static void rowMax(Matrix matrix, double[] result){
+        rows(matrix, row -> result[row] = Kernels.OPS.max(matrix.getData(),
+            matrix.getOffset() + row * matrix.getStride(), matrix.getColumns()));
+    }
+
+    /**
+     * Finds the column of the first occurrence of the largest value of every
+     * row of a matrix
+     * @param matrix the matrix to search
+     * @param result the array the columns are written to
+     */
+    static void rowArgmax(Matrix matrix, int[] result){
+        int columns = matrix.getColumns();
+        rows(matrix, row -> result[row] = argmax(matrix, row * columns, (row + 1) * columns) -
+            row * columns);
+    }
+
+    /**
+     * Runs a body for every row of a matrix, in parallel for large matrices
+     */
+    private static void rows(Matrix matrix, java.util.function.IntConsumer body){
+        int rows = matrix.getRows();
+        if(!Parallel.worthSplitting((long) rows * matrix.getColumns(), PARALLEL_THRESHOLD)){
+            for(int i = 0; i < rows; i++){
+                body.accept(i);
+            }
+            return;
+        }
+        int tasks = Math.min(rows, Parallel.parallelism() * 4);
+        Parallel.forRange(0, tasks, task -> {
+            for(int i = task * rows / tasks; i < (task + 1) * rows / tasks; i++){
+                body.accept(i);
+            }
+        });
+    }
+
+    /**
+     * Computes the sum of every column of a matrix
+     * @param matrix the matrix to sum
+     * @param result the array the sums are written to
+     */
+    static void columnSums(Matrix matrix, double[] result){
+        int blocks = (matrix.getRows() + ROW_BLOCK - 1) / ROW_BLOCK;
+        columns(matrix, (first, width) -> columnSums(matrix, first, width, 0, blocks, result, first));
+    }
+
+    /**
+     * Sums a band of columns over a range of blocks of rows, adding the sums
+     * of the two halves of the blocks
+     * @param matrix the matrix to sum
+     * @param column the first column of the band
+     * @param width the number of columns in the band
+     * @param firstBlock the first block of rows
+     * @param lastBlock the block after the last one
+     * @param out the array the sums are written to
+     * @param outIndex the index the sum of the first column is written to
+     */
+    private static void columnSums(Matrix matrix, int column, int width, int firstBlock,
+                                   int lastBlock, double[] out, int outIndex){
+        double[] a = matrix.getData();
+        if(lastBlock - firstBlock == 1){
+            int first = firstBlock * ROW_BLOCK;
+            int last = Math.min(matrix.getRows(), first + ROW_BLOCK);
+            int aIndex = matrix.getOffset() + first * matrix.getStride() + column;
+            System.arraycopy(a, aIndex, out, outIndex, width);
+            for(int i = first + 1; i < last; i++){
+                aIndex += matrix.getStride();
+                Kernels.OPS.add(out, outIndex, a, aIndex, out, outIndex, width);
+            }
+            return;
+        }
+        int middle = (firstBlock + lastBlock) >>> 1;
+        columnSums(matrix, column, width, firstBlock, middle, out, outIndex);
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] half = scope.array(width);
+            columnSums(matrix, column, width, middle, lastBlock, half, 0);
+            Kernels.OPS.add(out, outIndex, half, 0, out, outIndex, width);
+        }
+    }
+
+    /**
+     * Finds the largest value of every column of a matrix
+     * @param matrix the matrix to search
+     * @param result the array the largest values are written to
+     */
+    static void columnMax(Matrix matrix, double[] result){
+        double[] a = matrix.getData();
+        columns(matrix, (column, width) -> {
+            int aIndex = matrix.getOffset() + column;
+            System.arraycopy(a, aIndex, result, column, width);
+            for(int i = 1; i < matrix.getRows(); i++){
+                aIndex += matrix.getStride();
+                Kernels.OPS.maximum(result, column, a, aIndex, result, column, width);
+            }
+        });
+    }
+
+    /**
+     * Finds the row of the first occurrence of the largest value of every
+     * column of a matrix
+     * @param matrix the matrix to search
+     * @param result the array the rows are written to
+     */
+    static void columnArgmax(Matrix matrix, int[] result){
+        double[] a = matrix.getData();
+        columns(matrix, (column, width) -> {
+            try (ScratchPool.Scope scope = ScratchPool.open()) {
+                double[] largest = scope.array(width);
+                int aIndex = matrix.getOffset() + column;
+                System.arraycopy(a, aIndex, largest, 0, width);
+                java.util.Arrays.fill(result, column, column + width, 0);
+                for(int i = 1; i < matrix.getRows(); i++){
+                    aIndex += matrix.getStride();
+                    for(int j = 0; j < width; j++){
+                        if(larger(a[aIndex + j], largest[j])){
+                            largest[j] = a[aIndex + j];
+                            result[column + j] = i;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A body run for a band of columns
+     */
+    private interface Band {
+        void run(int column, int width);
+    }
+
+    /**
+     * Runs a body for bands of the columns of a matrix, in parallel for
+     * large matrices
+     */
+    private static void columns(Matrix matrix, Band body){
+        int columns = matrix.getColumns();
+        int bands = 1;
+        if(Parallel.worthSplitting((long) matrix.getRows() * columns, PARALLEL_THRESHOLD)){
+            bands = Math.max(1, Math.min(Parallel.parallelism() * 4, columns / COLUMN_BAND));
+        }
+        if(bands == 1){
+            body.run(0, columns);
+            return;
+        }
+        int count = bands;
+        Parallel.forRange(0, count, band -> {
+            int first = band * columns / count;
+            body.run(first, (band + 1) * columns / count - first);
+        });
+    }
+}
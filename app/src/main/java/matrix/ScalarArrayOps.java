@@ -0,0 +1,122 @@
+package matrix;
+
+/**
+ * This class implements the element wise loops of ArrayOps with plain scalar
+ * code, which is used when the JDK Vector API is not available
+ *
+ * @author Joseph Bronsten
+ */
+final class ScalarArrayOps implements ArrayOps {
+
+    @Override
+    public void add(double[] a, int aIndex, double[] b, int bIndex,
+                    double[] c, int cIndex, int length){
+        for(int i = 0; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] + b[bIndex + i];
+        }
+    }
+
+    @Override
+    public void subtract(double[] a, int aIndex, double[] b, int bIndex,
+                         double[] c, int cIndex, int length){
+        for(int i = 0; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] - b[bIndex + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] a, int aIndex, double[] b, int bIndex,
+                         double[] c, int cIndex, int length){
+        for(int i = 0; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] * b[bIndex + i];
+        }
+    }
+
+    @Override
+    public void scale(double[] a, int aIndex, double scaler,
+                      double[] c, int cIndex, int length){
+        for(int i = 0; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] * scaler;
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int aIndex, double[] b, int bIndex, int length){
+        double sum = 0;
+        for(int i = 0; i < length; i++){
+            sum += a[aIndex + i] * b[bIndex + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the four dot products with one sum for each row, so each row
+     * is summed in the same order as by dot
+     */
+    @Override
+    public void dot4(double[] a, int aIndex, int aStride, double[] x, int xIndex,
+                     double[] y, int yIndex, int yStep, int length){
+        int a1 = aIndex + aStride;
+        int a2 = a1 + aStride;
+        int a3 = a2 + aStride;
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        for(int i = 0; i < length; i++){
+            double value = x[xIndex + i];
+            sum0 += a[aIndex + i] * value;
+            sum1 += a[a1 + i] * value;
+            sum2 += a[a2 + i] * value;
+            sum3 += a[a3 + i] * value;
+        }
+        y[yIndex] = sum0;
+        y[yIndex + yStep] = sum1;
+        y[yIndex + 2 * yStep] = sum2;
+        y[yIndex + 3 * yStep] = sum3;
+    }
+
+    @Override
+    public void maximum(double[] a, int aIndex, double[] b, int bIndex,
+                        double[] c, int cIndex, int length){
+        for(int i = 0; i < length; i++){
+            c[cIndex + i] = Math.max(a[aIndex + i], b[bIndex + i]);
+        }
+    }
+
+    @Override
+    public double sum(double[] a, int aIndex, int length){
+        double sum = 0;
+        for(int i = 0; i < length; i++){
+            sum += a[aIndex + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumAbs(double[] a, int aIndex, int length){
+        double sum = 0;
+        for(int i = 0; i < length; i++){
+            sum += Math.abs(a[aIndex + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumSquares(double[] a, int aIndex, int length){
+        double sum = 0;
+        for(int i = 0; i < length; i++){
+            sum += a[aIndex + i] * a[aIndex + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double max(double[] a, int aIndex, int length){
+        double max = a[aIndex];
+        for(int i = 1; i < length; i++){
+            max = Math.max(max, a[aIndex + i]);
+        }
+        return max;
+    }
+}
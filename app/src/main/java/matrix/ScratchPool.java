@@ -0,0 +1,322 @@
+package matrix;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps arrays for temporary values so that work repeated with the
+ * same sizes, such as the steps of training a network, reuses them instead of
+ * allocating new ones every time. Each thread has its own pool, and the arrays
+ * in it are grouped by size into buckets of powers of two. A thread keeps at
+ * most MAX_RETAINED values in all of its buckets, and arrays longer than
+ * LARGEST_POOLED values are allocated with their exact length every time and
+ * never kept, so the pool of a thread stays small however large the work
+ * that ran on it.
+ * <p>
+ * Arrays are taken from the pool through a scope and all of them are given
+ * back when the scope is closed:
+ * <pre>
+ *     try (ScratchPool.Scope scope = ScratchPool.open()) {
+ *         Matrix temporary = scope.matrix(rows, columns);
+ *         ...
+ *     }
+ * </pre>
+ * The values of an array taken from the pool are whatever was last written to
+ * it, so they have to be written before they are read, and the arrays cannot
+ * be used after the scope is closed. A scope belongs to the thread that opened
+ * it, and scopes opened inside it must be closed first.
+ * <p>
+ * The pool counts the arrays it could give from a bucket (hits) and the ones
+ * it had to allocate (misses). In debug mode, turned on with setDebug or the
+ * system property matrix.pool.debug, scopes that are garbage collected without
+ * being closed are counted as leaks and reported with the place they were
+ * opened
+ *
+ * @author Joseph Bronsten
+ */
+public final class ScratchPool {
+    /** The log2 of the length of the longest array kept, 4 MB of doubles */
+    private static final int LARGEST_BUCKET = 19;
+
+    /** The length of the longest array kept */
+    private static final int LARGEST_POOLED = 1 << LARGEST_BUCKET;
+
+    /** The number of values kept in all of the buckets of a thread, 32 MB */
+    private static final long MAX_RETAINED = 1L << 22;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder LEAKS = new LongAdder();
+
+    private static volatile boolean debug =
+        Boolean.parseBoolean(System.getProperty("matrix.pool.debug", "false"));
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** The buckets of arrays of each thread, indexed by the log2 of their length */
+    private static final ThreadLocal<Buckets> BUCKETS = ThreadLocal.withInitial(Buckets::new);
+
+    private ScratchPool(){}
+
+    /**
+     * Opens a scope on the calling thread to take arrays from the pool
+     * @return the scope, which must be closed on the same thread
+     */
+    public static Scope open(){
+        return new Scope(BUCKETS.get());
+    }
+
+    /**
+     * Returns the number of arrays that were taken from the pool
+     * @return the number of hits since the counters were reset
+     */
+    public static long hits(){
+        return HITS.sum();
+    }
+
+    /**
+     * Returns the number of arrays that had to be allocated because the pool
+     * had none of the right size. Arrays too long to be kept are not counted
+     * @return the number of misses since the counters were reset
+     */
+    public static long misses(){
+        return MISSES.sum();
+    }
+
+    /**
+     * Returns the number of scopes that were garbage collected without being
+     * closed while debug mode was on
+     * @return the number of leaked scopes since the counters were reset
+     */
+    public static long leaks(){
+        return LEAKS.sum();
+    }
+
+    /**
+     * Sets the hit, miss and leak counters to zero
+     */
+    public static void resetCounters(){
+        HITS.reset();
+        MISSES.reset();
+        LEAKS.reset();
+    }
+
+    /**
+     * Returns if scopes are checked for leaks
+     * @return true if debug mode is on
+     */
+    public static boolean isDebug(){
+        return debug;
+    }
+
+    /**
+     * Sets if scopes are checked for leaks, which records where each scope is
+     * opened and so costs a stack trace per scope
+     * @param value true to turn debug mode on
+     */
+    public static void setDebug(boolean value){
+        debug = value;
+    }
+
+    /**
+     * Drops the arrays kept for the calling thread, so they can be garbage
+     * collected
+     */
+    public static void clear(){
+        BUCKETS.get().clear();
+    }
+
+    /**
+     * Returns the bucket of arrays that can hold the given number of values
+     * @param length the number of values
+     * @return the log2 of the length of the arrays in the bucket
+     */
+    private static int bucket(int length){
+        return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+    }
+
+    /**
+     * The arrays kept for one thread
+     */
+    private static final class Buckets {
+        private final List<ArrayDeque<double[]>> arrays = new ArrayList<>(LARGEST_BUCKET + 1);
+        private long retained;
+        private int openScopes;
+
+        Buckets(){
+            for(int i = 0; i <= LARGEST_BUCKET; i++){
+                this.arrays.add(new ArrayDeque<>());
+            }
+        }
+
+        double[] take(int length){
+            if(length > LARGEST_POOLED){
+                return new double[length];
+            }
+            ArrayDeque<double[]> kept = this.arrays.get(bucket(length));
+            if(!kept.isEmpty()){
+                HITS.increment();
+                double[] array = kept.pop();
+                this.retained -= array.length;
+                return array;
+            }
+            MISSES.increment();
+            return new double[1 << bucket(length)];
+        }
+
+        void give(double[] array){
+            if(array.length > LARGEST_POOLED || this.retained + array.length > MAX_RETAINED){
+                return;
+            }
+            this.arrays.get(bucket(array.length)).push(array);
+            this.retained += array.length;
+        }
+
+        void clear(){
+            for(ArrayDeque<double[]> kept : this.arrays){
+                kept.clear();
+            }
+            this.retained = 0;
+        }
+    }
+
+    /**
+     * The state of a scope that is checked for leaks, which is reported if
+     * the scope is collected before it is closed
+     */
+    private static final class LeakCheck implements Runnable {
+        private final Throwable opened;
+        private volatile boolean closed;
+
+        LeakCheck(Throwable opened){
+            this.opened = opened;
+        }
+
+        @Override
+        public void run(){
+            if(!this.closed){
+                LEAKS.increment();
+                System.err.println("A ScratchPool scope was not closed. It was opened at:");
+                this.opened.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A set of arrays taken from the pool of one thread, which are given back
+     * when the scope is closed
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Buckets buckets;
+        private final Thread owner;
+        private final int depth;
+        private final List<double[]> taken = new ArrayList<>(4);
+        private final LeakCheck leakCheck;
+        private boolean closed;
+
+        private Scope(Buckets buckets){
+            this.buckets = buckets;
+            this.owner = Thread.currentThread();
+            this.depth = ++buckets.openScopes;
+            if(debug){
+                this.leakCheck = new LeakCheck(new Throwable("ScratchPool scope opened"));
+                CLEANER.register(this, this.leakCheck);
+            }
+            else {
+                this.leakCheck = null;
+            }
+        }
+
+        /**
+         * Throws an error if the scope cannot be used by the calling thread
+         */
+        private void check(){
+            if(Thread.currentThread() != this.owner){
+                throw new IllegalStateException(
+                        "A ScratchPool scope can only be used by the thread that opened it");
+            }
+            if(this.closed){
+                throw new IllegalStateException("ScratchPool scope has been closed");
+            }
+        }
+
+        /**
+         * Takes an array of at least the given length from the pool
+         * @param length the number of values needed
+         * @return an array whose values are undefined
+         */
+        public double[] array(int length){
+            check();
+            if(length < 0){
+                throw new IllegalArgumentException("Array length cannot be negative");
+            }
+            double[] array = this.buckets.take(length);
+            this.taken.add(array);
+            return array;
+        }
+
+        /**
+         * Takes a matrix of the given shape whose storage comes from the pool
+         * @param rows an int for the number of rows in the matrix
+         * @param columns an int for the number of columns in the matrix
+         * @return a matrix whose values are undefined
+         */
+        public Matrix matrix(int rows, int columns){
+            if(rows <= 0 || columns <= 0){
+                throw new IllegalArgumentException(
+                        "Matrix rows or columns cannot be of size 0");
+            }
+            long count = (long) rows * columns;
+            if(count > Integer.MAX_VALUE){
+                throw new IllegalArgumentException(
+                        "Matrix is too large: " + rows + "x" + columns);
+            }
+            return new Matrix(array((int) count), 0, columns, rows, columns);
+        }
+
+        /**
+         * Takes a vector of the given length whose storage comes from the pool
+         * @param length the length of the column vector
+         * @return a vector whose values are undefined
+         */
+        public Vector vector(int length){
+            if(length <= 0){
+                throw new IllegalArgumentException(
+                        "Matrix rows or columns cannot be of size 0");
+            }
+            return new Vector(array(length), 0, 1, length);
+        }
+
+        /**
+         * Gives the arrays of the scope back to the pool. Closing a scope more
+         * than once has no effect
+         * @throws IllegalStateException if it is called by another thread, or
+         * a scope opened inside this one is still open
+         */
+        @Override
+        public void close(){
+            if(this.closed){
+                return;
+            }
+            if(Thread.currentThread() != this.owner){
+                throw new IllegalStateException(
+                        "A ScratchPool scope can only be closed by the thread that opened it");
+            }
+            if(this.buckets.openScopes != this.depth){
+                throw new IllegalStateException(
+                        "ScratchPool scopes must be closed in the reverse order they were opened");
+            }
+            this.closed = true;
+            this.buckets.openScopes--;
+            if(this.leakCheck != null){
+                this.leakCheck.closed = true;
+            }
+            for(double[] array : this.taken){
+                this.buckets.give(array);
+            }
+            this.taken.clear();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package matrix;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class implements the element wise loops of ArrayOps with the JDK
+ * Vector API, processing as many values per instruction as the preferred
+ * vector shape of the platform holds. The values left over at the end of a
+ * range are handled with scalar code.
+ * <p>
+ * The class is only loaded when the jdk.incubator.vector module is present,
+ * see Kernels
+ *
+ * @author Joseph Bronsten
+ */
+final class SimdArrayOps implements ArrayOps {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(double[] a, int aIndex, double[] b, int bIndex,
+                    double[] c, int cIndex, int length){
+        int i = 0;
+        for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()){
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bIndex + i);
+            va.add(vb).intoArray(c, cIndex + i);
+        }
+        for(; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] + b[bIndex + i];
+        }
+    }
+
+    @Override
+    public void subtract(double[] a, int aIndex, double[] b, int bIndex,
+                         double[] c, int cIndex, int length){
+        int i = 0;
+        for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()){
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bIndex + i);
+            va.sub(vb).intoArray(c, cIndex + i);
+        }
+        for(; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] - b[bIndex + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] a, int aIndex, double[] b, int bIndex,
+                         double[] c, int cIndex, int length){
+        int i = 0;
+        for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()){
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bIndex + i);
+            va.mul(vb).intoArray(c, cIndex + i);
+        }
+        for(; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] * b[bIndex + i];
+        }
+    }
+
+    @Override
+    public void scale(double[] a, int aIndex, double scaler,
+                      double[] c, int cIndex, int length){
+        int i = 0;
+        for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()){
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            va.mul(scaler).intoArray(c, cIndex + i);
+        }
+        for(; i < length; i++){
+            c[cIndex + i] = a[aIndex + i] * scaler;
+        }
+    }
+
+    /**
+     * Computes the dot product with two vector accumulators so consecutive
+     * fused multiply-adds do not wait on each other. The lanes are summed at
+     * the end, so the rounding differs slightly from the scalar loop
+     */
+    @Override
+    public double dot(double[] a, int aIndex, double[] b, int bIndex, int length){
+        int lanes = SPECIES.length();
+        DoubleVector sum0 = DoubleVector.zero(SPECIES);
+        DoubleVector sum1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for(int bound = length - 2 * lanes; i <= bound; i += 2 * lanes){
+            sum0 = DoubleVector.fromArray(SPECIES, a, aIndex + i)
+                .fma(DoubleVector.fromArray(SPECIES, b, bIndex + i), sum0);
+            sum1 = DoubleVector.fromArray(SPECIES, a, aIndex + i + lanes)
+                .fma(DoubleVector.fromArray(SPECIES, b, bIndex + i + lanes), sum1);
+        }
+        for(int bound = SPECIES.loopBound(length); i < bound; i += lanes){
+            sum0 = DoubleVector.fromArray(SPECIES, a, aIndex + i)
+                .fma(DoubleVector.fromArray(SPECIES, b, bIndex + i), sum0);
+        }
+        double sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+        for(; i < length; i++){
+            sum += a[aIndex + i] * b[bIndex + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the four dot products with one vector accumulator for each
+     * row, so each vector of the range is loaded once for four fused
+     * multiply-adds
+     */
+    @Override
+    public void dot4(double[] a, int aIndex, int aStride, double[] x, int xIndex,
+                     double[] y, int yIndex, int yStep, int length){
+        int a1 = aIndex + aStride;
+        int a2 = a1 + aStride;
+        int a3 = a2 + aStride;
+        DoubleVector sum0 = DoubleVector.zero(SPECIES);
+        DoubleVector sum1 = DoubleVector.zero(SPECIES);
+        DoubleVector sum2 = DoubleVector.zero(SPECIES);
+        DoubleVector sum3 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()){
+            DoubleVector value = DoubleVector.fromArray(SPECIES, x, xIndex + i);
+            sum0 = DoubleVector.fromArray(SPECIES, a, aIndex + i).fma(value, sum0);
+            sum1 = DoubleVector.fromArray(SPECIES, a, a1 + i).fma(value, sum1);
+            sum2 = DoubleVector.fromArray(SPECIES, a, a2 + i).fma(value, sum2);
+            sum3 = DoubleVector.fromArray(SPECIES, a, a3 + i).fma(value, sum3);
+        }
+        double s0 = sum0.reduceLanes(VectorOperators.ADD);
+        double s1 = sum1.reduceLanes(VectorOperators.ADD);
+        double s2 = sum2.reduceLanes(VectorOperators.ADD);
+        double s3 = sum3.reduceLanes(VectorOperators.ADD);
+        for(; i < length; i++){
+            double value = x[xIndex + i];
+            s0 += a[aIndex + i] * value;
+            s1 += a[a1 + i] * value;
+            s2 += a[a2 + i] * value;
+            s3 += a[a3 + i] * value;
+        }
+        y[yIndex] = s0;
+        y[yIndex + yStep] = s1;
+        y[yIndex + 2 * yStep] = s2;
+        y[yIndex + 3 * yStep] = s3;
+    }
+
+    @Override
+    public void maximum(double[] a, int aIndex, double[] b, int bIndex,
+                        double[] c, int cIndex, int length){
+        int i = 0;
+        for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()){
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bIndex + i);
+            va.max(vb).intoArray(c, cIndex + i);
+        }
+        for(; i < length; i++){
+            c[cIndex + i] = Math.max(a[aIndex + i], b[bIndex + i]);
+        }
+    }
+
+    /**
+     * Computes the sum with two vector accumulators, like dot
+     */
+    @Override
+    public double sum(double[] a, int aIndex, int length){
+        int lanes = SPECIES.length();
+        DoubleVector sum0 = DoubleVector.zero(SPECIES);
+        DoubleVector sum1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for(int bound = length - 2 * lanes; i <= bound; i += 2 * lanes){
+            sum0 = sum0.add(DoubleVector.fromArray(SPECIES, a, aIndex + i));
+            sum1 = sum1.add(DoubleVector.fromArray(SPECIES, a, aIndex + i + lanes));
+        }
+        for(int bound = SPECIES.loopBound(length); i < bound; i += lanes){
+            sum0 = sum0.add(DoubleVector.fromArray(SPECIES, a, aIndex + i));
+        }
+        double sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+        for(; i < length; i++){
+            sum += a[aIndex + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumAbs(double[] a, int aIndex, int length){
+        int lanes = SPECIES.length();
+        DoubleVector sum0 = DoubleVector.zero(SPECIES);
+        DoubleVector sum1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for(int bound = length - 2 * lanes; i <= bound; i += 2 * lanes){
+            sum0 = sum0.add(DoubleVector.fromArray(SPECIES, a, aIndex + i).abs());
+            sum1 = sum1.add(DoubleVector.fromArray(SPECIES, a, aIndex + i + lanes).abs());
+        }
+        for(int bound = SPECIES.loopBound(length); i < bound; i += lanes){
+            sum0 = sum0.add(DoubleVector.fromArray(SPECIES, a, aIndex + i).abs());
+        }
+        double sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+        for(; i < length; i++){
+            sum += Math.abs(a[aIndex + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double sumSquares(double[] a, int aIndex, int length){
+        int lanes = SPECIES.length();
+        DoubleVector sum0 = DoubleVector.zero(SPECIES);
+        DoubleVector sum1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for(int bound = length - 2 * lanes; i <= bound; i += 2 * lanes){
+            DoubleVector v0 = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            DoubleVector v1 = DoubleVector.fromArray(SPECIES, a, aIndex + i + lanes);
+            sum0 = v0.fma(v0, sum0);
+            sum1 = v1.fma(v1, sum1);
+        }
+        for(int bound = SPECIES.loopBound(length); i < bound; i += lanes){
+            DoubleVector v0 = DoubleVector.fromArray(SPECIES, a, aIndex + i);
+            sum0 = v0.fma(v0, sum0);
+        }
+        double sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+        for(; i < length; i++){
+            sum += a[aIndex + i] * a[aIndex + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double max(double[] a, int aIndex, int length){
+        int lanes = SPECIES.length();
+        int i = 0;
+        double max = a[aIndex];
+        if(length >= lanes){
+            DoubleVector max0 = DoubleVector.fromArray(SPECIES, a, aIndex);
+            for(i = lanes; i <= length - lanes; i += lanes){
+                max0 = max0.max(DoubleVector.fromArray(SPECIES, a, aIndex + i));
+            }
+            max = max0.reduceLanes(VectorOperators.MAX);
+        }
+        for(; i < length; i++){
+            max = Math.max(max, a[aIndex + i]);
+        }
+        return max;
+    }
+}
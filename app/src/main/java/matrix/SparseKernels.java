@@ -0,0 +1,324 @@
+package matrix;
+
+/**
+ * This class holds the loops behind the operations of SparseMatrix and
+ * SparseVector. The loops only visit the stored values of the sparse
+ * operand. Dense operands that are stored off the heap are copied to the
+ * heap first. The callers are expected to have checked the shapes of the
+ * matrices
+ *
+ * @author Joseph Bronsten
+ */
+final class SparseKernels {
+    /** The number of multiply-adds below which the loops run on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    /** The number of rows of the result each parallel task computes */
+    private static final int ROW_BLOCK = 32;
+
+    private SparseKernels(){}
+
+    /**
+     * Builds a sparse matrix from the non zero values of a dense matrix
+     * @param matrix the dense matrix
+     * @param format the format of the sparse matrix
+     * @return the sparse matrix
+     */
+    static SparseMatrix compress(Matrix matrix, SparseMatrix.Format format){
+        if(matrix == null || format == null){
+            throw new NullPointerException("Matrix and format cannot be null");
+        }
+        Matrix dense = OffHeapKernels.onHeap(matrix);
+        boolean byRow = format == SparseMatrix.Format.CSR;
+        int outer = byRow ? dense.getRows() : dense.getColumns();
+        int inner = byRow ? dense.getColumns() : dense.getRows();
+        int outerStep = byRow ? dense.getStride() : 1;
+        int innerStep = byRow ? 1 : dense.getStride();
+        double[] data = dense.getData();
+
+        int[] pointers = new int[outer + 1];
+        for(int i = 0; i < outer; i++){
+            int count = 0;
+            for(int j = 0; j < inner; j++){
+                if(data[dense.getOffset() + i * outerStep + j * innerStep] != 0){
+                    count++;
+                }
+            }
+            pointers[i + 1] = pointers[i] + count;
+        }
+        int[] indices = new int[pointers[outer]];
+        double[] values = new double[pointers[outer]];
+        for(int i = 0; i < outer; i++){
+            int p = pointers[i];
+            for(int j = 0; j < inner; j++){
+                double value = data[dense.getOffset() + i * outerStep + j * innerStep];
+                if(value != 0){
+                    indices[p] = j;
+                    values[p] = value;
+                    p++;
+                }
+            }
+        }
+        return new SparseMatrix(format, dense.getRows(), dense.getColumns(),
+            pointers, indices, values);
+    }
+
+    /**
+     * Converts a sparse matrix to the other format by counting the values in
+     * each row (or column) of the new format and then placing them in order,
+     * which keeps the indices of the new format increasing
+     * @param matrix the matrix to convert
+     * @return a copy of the matrix in the other format
+     */
+    static SparseMatrix convert(SparseMatrix matrix){
+        boolean toCsc = matrix.getFormat() == SparseMatrix.Format.CSR;
+        int oldOuter = toCsc ? matrix.getRows() : matrix.getColumns();
+        int newOuter = toCsc ? matrix.getColumns() : matrix.getRows();
+        int[] oldPointers = matrix.getPointers();
+        int[] oldIndices = matrix.getIndices();
+        double[] oldValues = matrix.getValues();
+
+        int[] pointers = new int[newOuter + 1];
+        for(int index : oldIndices){
+            pointers[index + 1]++;
+        }
+        for(int i = 0; i < newOuter; i++){
+            pointers[i + 1] += pointers[i];
+        }
+        int[] next = java.util.Arrays.copyOf(pointers, newOuter);
+        int[] indices = new int[oldIndices.length];
+        double[] values = new double[oldValues.length];
+        for(int i = 0; i < oldOuter; i++){
+            for(int p = oldPointers[i]; p < oldPointers[i + 1]; p++){
+                int position = next[oldIndices[p]]++;
+                indices[position] = i;
+                values[position] = oldValues[p];
+            }
+        }
+        return new SparseMatrix(
+            toCsc ? SparseMatrix.Format.CSC : SparseMatrix.Format.CSR,
+            matrix.getRows(), matrix.getColumns(), pointers, indices, values);
+    }
+
+    /**
+     * Computes C = A * B where A is sparse and B is dense
+     * @param matrixA the sparse matrix
+     * @param matrixB the dense matrix
+     * @param result the matrix the product is written to
+     */
+    static void multiply(SparseMatrix matrixA, Matrix matrixB, Matrix result){
+        Matrix b = OffHeapKernels.onHeap(matrixB);
+        Matrix target = !result.isRowMajor() ?
+            new Matrix(result.getRows(), result.getColumns()) : result;
+        int[] pointers = matrixA.getPointers();
+        int[] indices = matrixA.getIndices();
+        double[] values = matrixA.getValues();
+        double[] bData = b.getData();
+        double[] c = target.getData();
+        int columns = target.getColumns();
+
+        if(matrixA.getFormat() == SparseMatrix.Format.CSR){
+            // Each row of C is a sum of the rows of B picked by a row of A
+            forRowBlocks(target.getRows(), (long) matrixA.getNonZeroCount() * columns, (start, end) -> {
+                for(int i = start; i < end; i++){
+                    int cIndex = target.getOffset() + i * target.getStride();
+                    java.util.Arrays.fill(c, cIndex, cIndex + columns, 0);
+                    for(int p = pointers[i]; p < pointers[i + 1]; p++){
+                        addScaledRow(c, cIndex, values[p], bData,
+                            b.getOffset() + indices[p] * b.getStride(), columns);
+                    }
+                }
+            });
+        }
+        else {
+            // Each column of A adds its values times one row of B to C
+            for(int i = 0; i < target.getRows(); i++){
+                int cIndex = target.getOffset() + i * target.getStride();
+                java.util.Arrays.fill(c, cIndex, cIndex + columns, 0);
+            }
+            for(int k = 0; k < matrixA.getColumns(); k++){
+                int bIndex = b.getOffset() + k * b.getStride();
+                for(int p = pointers[k]; p < pointers[k + 1]; p++){
+                    addScaledRow(c, target.getOffset() + indices[p] * target.getStride(),
+                        values[p], bData, bIndex, columns);
+                }
+            }
+        }
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+    }
+
+    /**
+     * Computes C = A * B where A is dense and B is sparse
+     * @param matrixA the dense matrix
+     * @param matrixB the sparse matrix
+     * @param result the matrix the product is written to
+     */
+    static void multiply(Matrix matrixA, SparseMatrix matrixB, Matrix result){
+        Matrix a = OffHeapKernels.onHeap(matrixA);
+        Matrix target = !result.isRowMajor() ?
+            new Matrix(result.getRows(), result.getColumns()) : result;
+        multiply(target.getRows(), matrixA.getColumns(), matrixB,
+            (row, column) -> a.getData()[a.getOffset() + row * a.getStride() + column],
+            target);
+        if(target != result){
+            OffHeapKernels.copy(target, result);
+        }
+    }
+
+    /**
+     * Computes C = A * B in double precision where A holds floats and B is
+     * sparse
+     * @param matrixA the dense float matrix
+     * @param matrixB the sparse matrix
+     * @param result the matrix the product is written to
+     */
+    static void multiply(FloatMatrix matrixA, SparseMatrix matrixB, Matrix result){
+        float[] a = matrixA.getData();
+        multiply(result.getRows(), matrixA.getColumns(), matrixB,
+            (row, column) -> a[matrixA.getOffset() + row * matrixA.getStride() + column],
+            result);
+    }
+
+    /**
+     * Reads an element of a dense matrix as a double
+     */
+    private interface Element {
+        double get(int row, int column);
+    }
+
+    /**
+     * Computes C = A * B where A is dense and read through an Element, and B
+     * is sparse. Each row of C only depends on the same row of A, so blocks
+     * of rows are computed in parallel
+     * @param rows the rows of A and C
+     * @param commonDim the columns of A and rows of B
+     * @param matrixB the sparse matrix
+     * @param a the elements of the dense matrix
+     * @param result the matrix the product is written to, with a backing array
+     */
+    private static void multiply(int rows, int commonDim, SparseMatrix matrixB,
+                                 Element a, Matrix result){
+        int[] pointers = matrixB.getPointers();
+        int[] indices = matrixB.getIndices();
+        double[] values = matrixB.getValues();
+        double[] c = result.getData();
+        int columns = result.getColumns();
+        boolean csc = matrixB.getFormat() == SparseMatrix.Format.CSC;
+
+        forRowBlocks(rows, (long) rows * matrixB.getNonZeroCount(), (start, end) -> {
+            for(int i = start; i < end; i++){
+                int cIndex = result.getOffset() + i * result.getStride();
+                if(csc){
+                    // Each element of C gathers the elements of a row of A
+                    // picked by a column of B
+                    for(int j = 0; j < columns; j++){
+                        double sum = 0;
+                        for(int p = pointers[j]; p < pointers[j + 1]; p++){
+                            sum += a.get(i, indices[p]) * values[p];
+                        }
+                        c[cIndex + j] = sum;
+                    }
+                }
+                else {
+                    // Each element of a row of A scatters a row of B into C
+                    java.util.Arrays.fill(c, cIndex, cIndex + columns, 0);
+                    for(int k = 0; k < commonDim; k++){
+                        if(pointers[k] == pointers[k + 1]){
+                            continue;
+                        }
+                        double value = a.get(i, k);
+                        for(int p = pointers[k]; p < pointers[k + 1]; p++){
+                            c[cIndex + indices[p]] += value * values[p];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds scaler * column * row^T to a dense matrix, where row is a sparse
+     * column, so only the columns of the matrix where row is non zero change.
+     * The rows of an off-heap matrix are staged a block at a time, see
+     * OffHeapKernels.updateRows
+     * @param matrix the matrix that is updated
+     * @param scaler the scaling value of the outer product
+     * @param column a dense column with one value for each row of the matrix
+     * @param row a sparse column with one value for each column of the matrix
+     */
+    static void addOuterProduct(Matrix matrix, double scaler, Matrix column, SparseVector row){
+        Matrix x = OffHeapKernels.onHeap(column);
+        int[] indices = row.getIndices();
+        double[] values = row.getValues();
+        OffHeapKernels.updateRows(matrix, (a, offset, stride, first, rows) ->
+            forRowBlocks(rows, (long) rows * values.length, (start, end) -> {
+                for(int i = start; i < end; i++){
+                    double value = scaler * x.getData()[x.getOffset() + (first + i) * x.getStride()];
+                    int aIndex = offset + i * stride;
+                    for(int p = 0; p < indices.length; p++){
+                        a[aIndex + indices[p]] += value * values[p];
+                    }
+                }
+            }));
+    }
+
+    /**
+     * Adds scaler * column * row^T to a float matrix, where row is a sparse
+     * column, so only the columns of the matrix where row is non zero change
+     * @param matrix the matrix that is updated
+     * @param scaler the scaling value of the outer product
+     * @param column a dense column with one value for each row of the matrix
+     * @param row a sparse column with one value for each column of the matrix
+     */
+    static void addOuterProduct(FloatMatrix matrix, double scaler, Matrix column, SparseVector row){
+        Matrix x = OffHeapKernels.onHeap(column);
+        float[] a = matrix.getData();
+        int[] indices = row.getIndices();
+        double[] values = row.getValues();
+        forRowBlocks(matrix.getRows(), (long) matrix.getRows() * values.length, (start, end) -> {
+            for(int i = start; i < end; i++){
+                double value = scaler * x.getData()[x.getOffset() + i * x.getStride()];
+                int aIndex = matrix.getOffset() + i * matrix.getStride();
+                for(int p = 0; p < indices.length; p++){
+                    a[aIndex + indices[p]] += (float) (value * values[p]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a scaled row of B to a row of C, c[j] += scaler * b[j]
+     */
+    private static void addScaledRow(double[] c, int cIndex, double scaler,
+                                     double[] b, int bIndex, int length){
+        for(int j = 0; j < length; j++){
+            c[cIndex + j] += scaler * b[bIndex + j];
+        }
+    }
+
+    /**
+     * Splits the rows of a result into blocks of ROW_BLOCK rows, and computes
+     * them in parallel if the work is large enough
+     * @param rows the number of rows of the result
+     * @param work the number of multiply-adds in the operation
+     * @param body the work for a range of rows from start to end exclusive
+     */
+    private static void forRowBlocks(int rows, long work, RowRange body){
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD) || rows <= ROW_BLOCK){
+            body.apply(0, rows);
+            return;
+        }
+        int blocks = (rows + ROW_BLOCK - 1) / ROW_BLOCK;
+        Parallel.forRange(0, blocks, block ->
+            body.apply(block * ROW_BLOCK, Math.min(rows, (block + 1) * ROW_BLOCK)));
+    }
+
+    /**
+     * The work for a range of rows of a result
+     */
+    private interface RowRange {
+        void apply(int start, int end);
+    }
+}
@@ -0,0 +1,347 @@
+package matrix;
+
+/**
+ * This class stores a matrix that is mostly zeros by keeping only its non
+ * zero values, in either compressed sparse row (CSR) or compressed sparse
+ * column (CSC) format.
+ * <p>
+ * In CSR format the values of row i are values[pointers[i]] up to but not
+ * including values[pointers[i + 1]], and indices holds the column of each
+ * value. CSC format is the same with the roles of rows and columns swapped.
+ * The indices within each row (or column) are strictly increasing.
+ * <p>
+ * Products with a dense Matrix only do work for the non zero values, so they
+ * cost time in proportion to the number of non zero values instead of the
+ * size of the matrix
+ *
+ * @author Joseph Bronsten
+ */
+public class SparseMatrix {
+
+    /**
+     * The ways a sparse matrix can be laid out
+     */
+    public enum Format {
+        /** Compressed sparse row, where the values are grouped by row */
+        CSR,
+        /** Compressed sparse column, where the values are grouped by column */
+        CSC
+    }
+
+    private final Format format;
+    private final int numberOfRows;
+    private final int numberOfColumns;
+    private final int[] pointers;
+    private final int[] indices;
+    private final double[] values;
+
+    /**
+     * Creates a sparse matrix from its compressed arrays, which are used
+     * without copying them
+     * @param format the format the arrays are laid out in
+     * @param rows an int for the number of rows in the matrix
+     * @param columns an int for the number of columns in the matrix
+     * @param pointers the start of each row (CSR) or column (CSC) in the
+     * other arrays, followed by the number of non zero values
+     * @param indices the column (CSR) or row (CSC) of each value
+     * @param values the non zero values
+     */
+    public SparseMatrix(Format format, int rows, int columns,
+                        int[] pointers, int[] indices, double[] values){
+        if(format == null || pointers == null || indices == null || values == null){
+            throw new NullPointerException("Sparse matrix arrays cannot be null");
+        }
+        if(rows <= 0 || columns <= 0){
+            throw new IllegalArgumentException(
+                    "Matrix rows or columns cannot be of size 0");
+        }
+        int outer = format == Format.CSR ? rows : columns;
+        int inner = format == Format.CSR ? columns : rows;
+        if(pointers.length != outer + 1 || pointers[0] != 0 ||
+            indices.length != values.length || pointers[outer] != values.length){
+            throw new IllegalArgumentException(
+                    "Invalid lengths for the sparse matrix arrays");
+        }
+        for(int i = 0; i < outer; i++){
+            if(pointers[i] > pointers[i + 1]){
+                throw new IllegalArgumentException(
+                        "Sparse matrix pointers must not decrease");
+            }
+            for(int p = pointers[i]; p < pointers[i + 1]; p++){
+                if(indices[p] < 0 || indices[p] >= inner ||
+                    (p > pointers[i] && indices[p] <= indices[p - 1])){
+                    throw new IllegalArgumentException(
+                            "Sparse matrix indices must be increasing and inside the matrix");
+                }
+            }
+        }
+        this.format = format;
+        this.numberOfRows = rows;
+        this.numberOfColumns = columns;
+        this.pointers = pointers;
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * Creates a sparse matrix with the non zero values of a dense matrix
+     * @param matrix the dense matrix
+     * @param format the format to store the values in
+     */
+    public SparseMatrix(Matrix matrix, Format format){
+        this(SparseKernels.compress(matrix, format));
+    }
+
+    /**
+     * Creates a sparse matrix that shares the arrays of another one
+     * @param matrix the sparse matrix whose arrays are used
+     */
+    SparseMatrix(SparseMatrix matrix){
+        this.format = matrix.format;
+        this.numberOfRows = matrix.numberOfRows;
+        this.numberOfColumns = matrix.numberOfColumns;
+        this.pointers = matrix.pointers;
+        this.indices = matrix.indices;
+        this.values = matrix.values;
+    }
+
+    /**
+     * A helper function that throws an error if either passed object is null
+     * @param objA the first object to check
+     * @param objB the second object to check
+     * @param msg the error message
+     */
+    private static void handleNull(Object objA, Object objB, String msg){
+        if(objA == null || objB == null){
+            throw new NullPointerException(msg);
+        }
+    }
+
+    /**
+     * A helper method to check if a result matrix has the given shape
+     * @param result the matrix an operation writes to
+     * @param rows the number of rows the result must have
+     * @param columns the number of columns the result must have
+     */
+    private static void resultCheck(Matrix result, int rows, int columns){
+        if(result == null){
+            throw new NullPointerException("Result matrix cannot be null");
+        }
+        if(result.getRows() != rows || result.getColumns() != columns){
+            throw new IllegalArgumentException(
+                "Invalid shape for result matrix. Expected: " + rows + "x" +
+                columns + " but got: " + result.getRows() + "x" + result.getColumns());
+        }
+    }
+
+    /**
+     * A helper method to check that two matrices can be multiplied
+     */
+    private static void multiplyCheck(int rowsA, int columnsA, int rowsB, int columnsB){
+        if(columnsA != rowsB){
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply matrix of shape: " +
+                rowsA + "x" + columnsA + " with matrix of shape: " +
+                rowsB + "x" + columnsB);
+        }
+    }
+
+    /**
+     * Returns the format the values are stored in
+     * @return CSR or CSC
+     */
+    public Format getFormat(){
+        return this.format;
+    }
+
+    /**
+     * Returns the number of rows in the matrix
+     * @return an int with the number of rows
+     */
+    public int getRows(){
+        return this.numberOfRows;
+    }
+
+    /**
+     * Returns the number of columns in the matrix
+     * @return an int with the number of columns
+     */
+    public int getColumns(){
+        return this.numberOfColumns;
+    }
+
+    /**
+     * Returns the number of values that are stored
+     * @return an int with the number of non zero values
+     */
+    public int getNonZeroCount(){
+        return this.values.length;
+    }
+
+    /**
+     * Returns the start of each row (CSR) or column (CSC) in the index and
+     * value arrays. Changes to the array are reflected in the matrix
+     * @return the pointer array of the matrix
+     */
+    public int[] getPointers(){
+        return this.pointers;
+    }
+
+    /**
+     * Returns the column (CSR) or row (CSC) of each stored value. Changes to
+     * the array are reflected in the matrix
+     * @return the index array of the matrix
+     */
+    public int[] getIndices(){
+        return this.indices;
+    }
+
+    /**
+     * Returns the stored values. Changes to the array are reflected in the
+     * matrix
+     * @return the value array of the matrix
+     */
+    public double[] getValues(){
+        return this.values;
+    }
+
+    /**
+     * Gets a value at the specified index in the matrix
+     * @param row the row index
+     * @param column the column index
+     * @return the value at the index, which is 0 if it is not stored
+     */
+    public double get(int row, int column){
+        if(!(row >= 0 && row < this.numberOfRows)){
+            throw new IllegalArgumentException(
+                    "Invalid row index");
+        }
+        if(!(column >= 0 && column < this.numberOfColumns)){
+            throw new IllegalArgumentException(
+                    "Invalid column index");
+        }
+        int outer = this.format == Format.CSR ? row : column;
+        int inner = this.format == Format.CSR ? column : row;
+        int position = java.util.Arrays.binarySearch(this.indices,
+            this.pointers[outer], this.pointers[outer + 1], inner);
+        return position >= 0 ? this.values[position] : 0;
+    }
+
+    /**
+     * Returns a dense copy of the matrix
+     * @return the matrix as a Matrix object
+     */
+    public Matrix toMatrix(){
+        Matrix result = new Matrix(this.numberOfRows, this.numberOfColumns);
+        double[] data = result.getData();
+        for(int i = 0; i < this.pointers.length - 1; i++){
+            for(int p = this.pointers[i]; p < this.pointers[i + 1]; p++){
+                int row = this.format == Format.CSR ? i : this.indices[p];
+                int column = this.format == Format.CSR ? this.indices[p] : i;
+                data[row * this.numberOfColumns + column] = this.values[p];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the matrix in the given format, which is the matrix itself if it
+     * is already in that format and a converted copy otherwise
+     * @param format the format to return the matrix in
+     * @return the matrix in the given format
+     */
+    public SparseMatrix toFormat(Format format){
+        if(format == null){
+            throw new NullPointerException("Format cannot be null");
+        }
+        if(format == this.format){
+            return this;
+        }
+        return SparseKernels.convert(this);
+    }
+
+    /**
+     * Returns the transpose of the matrix, which shares the arrays of the
+     * matrix since the CSR layout of a matrix is the CSC layout of its
+     * transpose
+     * @return the transpose of the matrix
+     */
+    public SparseMatrix T(){
+        return new SparseMatrix(
+            this.format == Format.CSR ? Format.CSC : Format.CSR,
+            this.numberOfColumns, this.numberOfRows,
+            this.pointers, this.indices, this.values);
+    }
+
+    /**
+     * Returns the product of a sparse matrix and a dense matrix
+     * @param matrixA the sparse matrix that is first in the multiplication
+     * @param matrixB the dense matrix that is second in the multiplication
+     * @return the dense product of the matrices
+     */
+    public static Matrix multiply(SparseMatrix matrixA, Matrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        Matrix result = new Matrix(matrixA.numberOfRows, matrixB.getColumns());
+        multiplyInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Writes the product of a sparse matrix and a dense matrix into a given
+     * result matrix
+     * @param matrixA the sparse matrix that is first in the multiplication
+     * @param matrixB the dense matrix that is second in the multiplication
+     * @param result the matrix the product is written to, which cannot be the
+     * dense matrix
+     */
+    public static void multiplyInto(SparseMatrix matrixA, Matrix matrixB, Matrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        multiplyCheck(matrixA.numberOfRows, matrixA.numberOfColumns,
+            matrixB.getRows(), matrixB.getColumns());
+        resultCheck(result, matrixA.numberOfRows, matrixB.getColumns());
+        if(result == matrixB || (!result.isOffHeap() && !matrixB.isOffHeap() &&
+            result.getData() == matrixB.getData())){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+        SparseKernels.multiply(matrixA, matrixB, result);
+    }
+
+    /**
+     * Returns the product of a dense matrix and a sparse matrix
+     * @param matrixA the dense matrix that is first in the multiplication
+     * @param matrixB the sparse matrix that is second in the multiplication
+     * @return the dense product of the matrices
+     */
+    public static Matrix multiply(Matrix matrixA, SparseMatrix matrixB){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        Matrix result = new Matrix(matrixA.getRows(), matrixB.numberOfColumns);
+        multiplyInto(matrixA, matrixB, result);
+        return result;
+    }
+
+    /**
+     * Writes the product of a dense matrix and a sparse matrix into a given
+     * result matrix
+     * @param matrixA the dense matrix that is first in the multiplication
+     * @param matrixB the sparse matrix that is second in the multiplication
+     * @param result the matrix the product is written to, which cannot be the
+     * dense matrix
+     */
+    public static void multiplyInto(Matrix matrixA, SparseMatrix matrixB, Matrix result){
+        handleNull(matrixA, matrixB, "Matrices cannot be null for multiplication");
+        multiplyCheck(matrixA.getRows(), matrixA.getColumns(),
+            matrixB.numberOfRows, matrixB.numberOfColumns);
+        resultCheck(result, matrixA.getRows(), matrixB.numberOfColumns);
+        if(result == matrixA || (!result.isOffHeap() && !matrixA.isOffHeap() &&
+            result.getData() == matrixA.getData())){
+            throw new IllegalArgumentException(
+                    "Result matrix cannot share storage with an operand");
+        }
+        SparseKernels.multiply(matrixA, matrixB, result);
+    }
+
+    public String toString() {
+        return toMatrix().toString();
+    }
+}
@@ -0,0 +1,147 @@
+package matrix;
+
+/**
+ * This class implements a sparse column vector as a SparseMatrix of size n
+ * and 1 in CSC format, which stores the positions of its non zero entries in
+ * increasing order together with their values. It is the input type for
+ * layers whose inputs are mostly zeros, such as one-hot or bag-of-words
+ * features
+ *
+ * @author Joseph Bronsten
+ */
+public class SparseVector extends SparseMatrix {
+
+    /**
+     * Creates a sparse vector from the positions and values of its non zero
+     * entries, which are used without copying them
+     * @param length the length of the column vector
+     * @param indices the strictly increasing positions of the non zero entries
+     * @param values the values of the non zero entries
+     */
+    public SparseVector(int length, int[] indices, double[] values){
+        super(Format.CSC, length, 1,
+            new int[]{0, values == null ? 0 : values.length}, indices, values);
+    }
+
+    /**
+     * Creates a sparse vector with the non zero entries of a dense vector
+     * @param vector the dense vector
+     */
+    public SparseVector(Vector vector){
+        super(new SparseMatrix(vector, Format.CSC));
+    }
+
+    /**
+     * Returns a dense copy of the vector
+     * @return the vector as a Vector object
+     */
+    public Vector toVector(){
+        return Vector.wrap(toMatrix().getData());
+    }
+
+    /**
+     * Gets the value at the given index
+     * @param row given index
+     * @return the value at the index, which is 0 if it is not stored
+     */
+    public double get(int row){
+        return this.get(row, 0);
+    }
+
+    /**
+     * Calculates the dot product of a sparse vector and a dense vector
+     * @param vector1 the sparse vector
+     * @param vector2 the dense vector
+     * @return the dot product of the given vectors
+     */
+    public static double dotProduct(SparseVector vector1, Vector vector2){
+        if(vector1.getRows() != vector2.getRows()){
+            throw new IllegalArgumentException(
+                    "Vectors must have the same length for dot product");
+        }
+        int[] indices = vector1.getIndices();
+        double[] values = vector1.getValues();
+        double sum = 0;
+        for(int p = 0; p < indices.length; p++){
+            sum += values[p] * vector2.get(indices[p]);
+        }
+        return sum;
+    }
+
+    /**
+     * Multiplies a dense matrix with a sparse vector, only reading the
+     * columns of the matrix where the vector is non zero
+     * @param matrix the dense matrix
+     * @param vector the vector with as many entries as the matrix has columns
+     * @return the product of the matrix and the vector
+     */
+    public static Vector multiply(Matrix matrix, SparseVector vector){
+        Vector result = new Vector(matrix.getRows());
+        multiplyInto(matrix, vector, result);
+        return result;
+    }
+
+    /**
+     * Multiplies a float matrix with a sparse vector, summing in double
+     * precision and only reading the columns of the matrix where the vector
+     * is non zero
+     * @param matrix the float matrix
+     * @param vector the vector with as many entries as the matrix has columns
+     * @return the product of the matrix and the vector
+     */
+    public static Vector multiply(FloatMatrix matrix, SparseVector vector){
+        if(matrix.getColumns() != vector.getRows()){
+            throw new IllegalArgumentException(
+                "Invalid shapes for matrix multiplication. Cannot multiply matrix of shape: " +
+                matrix.getRows() + "x" + matrix.getColumns() + " with matrix of shape: " +
+                vector.getRows() + "x1");
+        }
+        Vector result = new Vector(matrix.getRows());
+        SparseKernels.multiply(matrix, vector, result);
+        return result;
+    }
+
+    /**
+     * Adds scaler * column * row^T to a matrix in place, where row is this
+     * kind of sparse vector. Only the columns of the matrix where row is non
+     * zero are changed, which is the update a layer applies to its weights
+     * for a sparse input
+     * @param matrix the matrix that is updated
+     * @param scaler the scaling value of the outer product
+     * @param column a vector with one value for each row of the matrix
+     * @param row a sparse vector with one value for each column of the matrix
+     */
+    public static void addOuterProduct(Matrix matrix, double scaler, Vector column, SparseVector row){
+        outerProductCheck(matrix.getRows(), matrix.getColumns(), column, row);
+        SparseKernels.addOuterProduct(matrix, scaler, column, row);
+    }
+
+    /**
+     * Adds scaler * column * row^T to a float matrix in place, where row is
+     * this kind of sparse vector. Only the columns of the matrix where row is
+     * non zero are changed
+     * @param matrix the float matrix that is updated
+     * @param scaler the scaling value of the outer product
+     * @param column a vector with one value for each row of the matrix
+     * @param row a sparse vector with one value for each column of the matrix
+     */
+    public static void addOuterProduct(FloatMatrix matrix, double scaler, Vector column, SparseVector row){
+        outerProductCheck(matrix.getRows(), matrix.getColumns(), column, row);
+        SparseKernels.addOuterProduct(matrix, scaler, column, row);
+    }
+
+    /**
+     * A helper method to check the shapes of an outer product update
+     */
+    private static void outerProductCheck(int rows, int columns, Vector column, SparseVector row){
+        if(column == null || row == null){
+            throw new NullPointerException("Vectors cannot be null for the outer product");
+        }
+        if(column.getRows() != rows || row.getRows() != columns){
+            throw new IllegalArgumentException(
+                "Invalid shapes for outer product. Expected: " + rows + "x1 and " +
+                columns + "x1 but got: " + column.getRows() + "x1 and " +
+                row.getRows() + "x1");
+        }
+    }
+}
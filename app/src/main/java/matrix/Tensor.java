@@ -0,0 +1,438 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * This class stores an array of doubles with between 1 and 5 dimensions in a
+ * flat array. The element at index (i0, i1, ...) is stored at
+ * offset + i0 * strides[0] + i1 * strides[1] + ..., so permuting or slicing a
+ * tensor gives a view of the same array without copying it.
+ * <p>
+ * A Matrix is the same layout as a rank 2 tensor whose columns are next to
+ * each other, and a Vector the same as a rank 1 tensor, so they can be
+ * viewed as tensors and back with toTensor, toMatrix and toVector without
+ * copying their values.
+ * <p>
+ * The convolutions take batches in NCHW order: a batch of N inputs, each with
+ * C channels of H x W values, convolved with kernels in KCRS order: K output
+ * channels, each with one R x S kernel for every input channel
+ *
+ * @author Joseph Bronsten
+ */
+public class Tensor {
+    /** The largest number of dimensions of a tensor */
+    public static final int MAX_RANK = 5;
+
+    private final double[] data;
+    private final int offset;
+    private final int[] shape;
+    private final int[] strides;
+
+    /**
+     * Creates a tensor of zeros with the given shape
+     * @param shape the size of each dimension
+     */
+    public Tensor(int... shape){
+        this(new double[elementCount(shape)], shape);
+    }
+
+    /**
+     * Creates a tensor that uses the given array as its storage without
+     * copying it, with the last dimension stored next to each other
+     * @param data the backing array, which holds at least as many values as
+     * the tensor
+     * @param shape the size of each dimension
+     */
+    public Tensor(double[] data, int... shape){
+        this(data, 0, shape, contiguousStrides(shape));
+    }
+
+    /**
+     * Creates a tensor that uses the given array as its storage with the
+     * given layout
+     * @param data the backing array
+     * @param offset the index of the first element
+     * @param shape the size of each dimension
+     * @param strides the distance in the array between two elements next to
+     * each other in each dimension
+     */
+    Tensor(double[] data, int offset, int[] shape, int[] strides){
+        if(data == null || shape == null || strides == null){
+            throw new NullPointerException("Tensor data and shape cannot be null");
+        }
+        if(shape.length < 1 || shape.length > MAX_RANK || strides.length != shape.length){
+            throw new IllegalArgumentException(
+                    "Tensor rank must be between 1 and " + MAX_RANK + " but got: " + shape.length);
+        }
+        long last = offset;
+        for(int d = 0; d < shape.length; d++){
+            if(shape[d] <= 0){
+                throw new IllegalArgumentException(
+                        "Tensor dimensions cannot be of size 0");
+            }
+            if(strides[d] < 0){
+                throw new IllegalArgumentException(
+                        "Tensor strides cannot be negative");
+            }
+            last += (long) (shape[d] - 1) * strides[d];
+        }
+        if(offset < 0 || last >= data.length){
+            throw new IllegalArgumentException(
+                    "Invalid offset or strides for the tensor data");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.shape = shape.clone();
+        this.strides = strides.clone();
+    }
+
+    /**
+     * Returns the number of values in a tensor of the given shape
+     * @param shape the size of each dimension
+     * @return the number of values
+     */
+    private static int elementCount(int[] shape){
+        if(shape == null){
+            throw new NullPointerException("Tensor shape cannot be null");
+        }
+        long count = 1;
+        for(int size : shape){
+            if(size <= 0){
+                throw new IllegalArgumentException(
+                        "Tensor dimensions cannot be of size 0");
+            }
+            count *= size;
+            if(count > Integer.MAX_VALUE){
+                throw new IllegalArgumentException(
+                        "Tensor is too large: " + Arrays.toString(shape));
+            }
+        }
+        return (int) count;
+    }
+
+    /**
+     * Returns the strides of a tensor of the given shape whose last dimension
+     * is stored next to each other
+     * @param shape the size of each dimension
+     * @return the strides of each dimension
+     */
+    private static int[] contiguousStrides(int[] shape){
+        int[] strides = new int[shape.length];
+        int stride = 1;
+        for(int d = shape.length - 1; d >= 0; d--){
+            strides[d] = stride;
+            stride *= shape[d];
+        }
+        return strides;
+    }
+
+    /**
+     * Returns the number of dimensions of the tensor
+     * @return the rank, between 1 and 5
+     */
+    public int getRank(){
+        return this.shape.length;
+    }
+
+    /**
+     * Returns the size of each dimension
+     * @return a copy of the shape
+     */
+    public int[] getShape(){
+        return this.shape.clone();
+    }
+
+    /**
+     * Returns the size of a dimension
+     * @param dimension the dimension
+     * @return the number of indices in the dimension
+     */
+    public int size(int dimension){
+        return this.shape[dimension];
+    }
+
+    /**
+     * Returns the distance in the backing array between two elements next to
+     * each other in each dimension
+     * @return a copy of the strides
+     */
+    public int[] getStrides(){
+        return this.strides.clone();
+    }
+
+    /**
+     * Returns the backing array of the tensor. Changes to the array are
+     * reflected in the tensor
+     * @return the backing array
+     */
+    public double[] getData(){
+        return this.data;
+    }
+
+    /**
+     * Returns the index of the first element in the backing array
+     * @return the offset of the tensor
+     */
+    public int getOffset(){
+        return this.offset;
+    }
+
+    /**
+     * Returns the number of values in the tensor
+     * @return the product of the sizes of the dimensions
+     */
+    public int getSize(){
+        int count = 1;
+        for(int size : this.shape){
+            count *= size;
+        }
+        return count;
+    }
+
+    /**
+     * Returns if the values are stored in order without gaps, with the last
+     * dimension next to each other
+     * @return true if the tensor has the strides of a new tensor of its shape
+     */
+    public boolean isContiguous(){
+        return Arrays.equals(this.strides, contiguousStrides(this.shape));
+    }
+
+    /**
+     * Returns the index in the backing array of the element at an index
+     * @param index the index in each dimension
+     * @return the index in the backing array
+     */
+    private int position(int[] index){
+        if(index == null || index.length != this.shape.length){
+            throw new IllegalArgumentException(
+                    "Expected " + this.shape.length + " indices");
+        }
+        int position = this.offset;
+        for(int d = 0; d < index.length; d++){
+            if(index[d] < 0 || index[d] >= this.shape[d]){
+                throw new IllegalArgumentException(
+                        "Invalid index in dimension " + d);
+            }
+            position += index[d] * this.strides[d];
+        }
+        return position;
+    }
+
+    /**
+     * Gets the value at an index
+     * @param index the index in each dimension
+     * @return the value at the index
+     */
+    public double get(int... index){
+        return this.data[position(index)];
+    }
+
+    /**
+     * Sets the value at an index
+     * @param value the new value
+     * @param index the index in each dimension
+     */
+    public void set(double value, int... index){
+        this.data[position(index)] = value;
+    }
+
+    /**
+     * Returns a view of the tensor with its dimensions reordered, so
+     * dimension d of the view is dimension order[d] of the tensor
+     * @param order a permutation of the dimensions
+     * @return the permuted view
+     */
+    public Tensor permute(int... order){
+        if(order == null || order.length != this.shape.length){
+            throw new IllegalArgumentException(
+                    "Expected " + this.shape.length + " dimensions");
+        }
+        boolean[] seen = new boolean[order.length];
+        int[] shape = new int[order.length];
+        int[] strides = new int[order.length];
+        for(int d = 0; d < order.length; d++){
+            if(order[d] < 0 || order[d] >= order.length || seen[order[d]]){
+                throw new IllegalArgumentException(
+                        "Invalid permutation: " + Arrays.toString(order));
+            }
+            seen[order[d]] = true;
+            shape[d] = this.shape[order[d]];
+            strides[d] = this.strides[order[d]];
+        }
+        return new Tensor(this.data, this.offset, shape, strides);
+    }
+
+    /**
+     * Returns a view of a range of indices in one dimension
+     * @param dimension the dimension to slice
+     * @param start the first index of the range
+     * @param end the index after the last index of the range
+     * @return the view of the range
+     */
+    public Tensor slice(int dimension, int start, int end){
+        if(dimension < 0 || dimension >= this.shape.length){
+            throw new IllegalArgumentException(
+                    "Invalid dimension: " + dimension);
+        }
+        if(start < 0 || end > this.shape[dimension] || start >= end){
+            throw new IllegalArgumentException(
+                    "Invalid range for the slice: " + start + " to " + end);
+        }
+        int[] shape = this.shape.clone();
+        shape[dimension] = end - start;
+        return new Tensor(this.data, this.offset + start * this.strides[dimension],
+            shape, this.strides);
+    }
+
+    /**
+     * Returns the tensor with a new shape holding the same number of values.
+     * A contiguous tensor is reshaped as a view, and any other tensor is
+     * copied first
+     * @param shape the new size of each dimension
+     * @return the reshaped tensor
+     */
+    public Tensor reshape(int... shape){
+        if(elementCount(shape) != getSize()){
+            throw new IllegalArgumentException(
+                    "Cannot reshape a tensor of shape " + Arrays.toString(this.shape) +
+                    " to " + Arrays.toString(shape));
+        }
+        Tensor source = isContiguous() ? this : copy();
+        return new Tensor(source.data, source.offset, shape, contiguousStrides(shape));
+    }
+
+    /**
+     * Returns a contiguous copy of the tensor
+     * @return a new tensor with the values of the tensor
+     */
+    public Tensor copy(){
+        Tensor result = new Tensor(this.shape);
+        TensorKernels.copy(this, result);
+        return result;
+    }
+
+    /**
+     * Returns a matrix that is a view of this rank 2 tensor
+     * @return the matrix sharing the backing array of the tensor
+     * @throws IllegalArgumentException if the tensor is not rank 2 or its
+     * columns are not next to each other
+     */
+    public Matrix toMatrix(){
+        if(this.shape.length != 2 || this.strides[1] != 1 ||
+            (this.shape[0] > 1 && this.strides[0] < this.shape[1])){
+            throw new IllegalArgumentException(
+                    "Only a rank 2 tensor with rows stored in order can be viewed as a matrix");
+        }
+        return new Matrix(this.data, this.offset, Math.max(this.strides[0], this.shape[1]),
+            this.shape[0], this.shape[1]);
+    }
+
+    /**
+     * Returns a vector that is a view of this rank 1 tensor
+     * @return the vector sharing the backing array of the tensor
+     * @throws IllegalArgumentException if the tensor is not rank 1
+     */
+    public Vector toVector(){
+        if(this.shape.length != 1 || (this.shape[0] > 1 && this.strides[0] < 1)){
+            throw new IllegalArgumentException(
+                    "Only a rank 1 tensor can be viewed as a vector");
+        }
+        return new Vector(this.data, this.offset, Math.max(1, this.strides[0]), this.shape[0]);
+    }
+
+    /**
+     * Computes the convolution of a batch of inputs with a set of kernels,
+     * with a stride of 1 and no padding
+     * @param input the inputs in NCHW order
+     * @param kernel the kernels in KCRS order
+     * @return the outputs in NKPQ order, where P = H - R + 1 and Q = W - S + 1
+     */
+    public static Tensor convolution(Tensor input, Tensor kernel){
+        return convolution(input, kernel, 1, 0);
+    }
+
+    /**
+     * Computes the convolution of a batch of inputs with a set of kernels.
+     * Output channel k of input n is the sum over the input channels c of
+     * the convolution of channel c of the input with kernel (k, c), which
+     * flips the kernel like Matrix.convolution does. The inputs are padded
+     * with zeros on every side, and the kernels move by the stride between
+     * two outputs
+     * @param input the inputs in NCHW order
+     * @param kernel the kernels in KCRS order
+     * @param stride the distance between the positions of two outputs
+     * @param padding the number of zeros added on each side of the inputs
+     * @return the outputs in NKPQ order, where P = (H + 2 * padding - R) /
+     * stride + 1 and Q = (W + 2 * padding - S) / stride + 1
+     */
+    public static Tensor convolution(Tensor input, Tensor kernel, int stride, int padding){
+        int[] shape = convolutionShape(input, kernel, stride, padding);
+        Tensor result = new Tensor(shape);
+        TensorKernels.convolution(input, kernel, stride, padding, result);
+        return result;
+    }
+
+    /**
+     * Computes the convolution of a batch of inputs with a set of kernels
+     * into a given result tensor
+     * @param input the inputs in NCHW order
+     * @param kernel the kernels in KCRS order
+     * @param stride the distance between the positions of two outputs
+     * @param padding the number of zeros added on each side of the inputs
+     * @param result the tensor the outputs are written to in NKPQ order,
+     * which cannot share storage with the input or kernel
+     */
+    public static void convolutionInto(Tensor input, Tensor kernel, int stride, int padding,
+                                       Tensor result){
+        int[] shape = convolutionShape(input, kernel, stride, padding);
+        if(result == null){
+            throw new NullPointerException("Result tensor cannot be null");
+        }
+        if(!Arrays.equals(result.shape, shape)){
+            throw new IllegalArgumentException(
+                "Invalid shape for result tensor. Expected: " + Arrays.toString(shape) +
+                " but got: " + Arrays.toString(result.shape));
+        }
+        if(result.data == input.data || result.data == kernel.data){
+            throw new IllegalArgumentException(
+                    "Result tensor cannot share storage with an operand");
+        }
+        TensorKernels.convolution(input, kernel, stride, padding, result);
+    }
+
+    /**
+     * A helper method to check the operands of a convolution and compute the
+     * shape of its output
+     * @return the shape of the output in NKPQ order
+     */
+    private static int[] convolutionShape(Tensor input, Tensor kernel, int stride, int padding){
+        if(input == null || kernel == null){
+            throw new NullPointerException("Input and kernel cannot be null for convolution");
+        }
+        if(input.getRank() != 4 || kernel.getRank() != 4){
+            throw new IllegalArgumentException(
+                    "Convolution needs rank 4 inputs and kernels");
+        }
+        if(input.shape[1] != kernel.shape[1]){
+            throw new IllegalArgumentException(
+                "Input has " + input.shape[1] + " channels but the kernels have " +
+                kernel.shape[1]);
+        }
+        if(stride < 1 || padding < 0){
+            throw new IllegalArgumentException(
+                    "Stride must be at least 1 and padding cannot be negative");
+        }
+        int height = input.shape[2] + 2 * padding - kernel.shape[2];
+        int width = input.shape[3] + 2 * padding - kernel.shape[3];
+        if(height < 0 || width < 0){
+            throw new IllegalArgumentException("Kernel size is larger than the matrix size.");
+        }
+        return new int[]{input.shape[0], kernel.shape[0], height / stride + 1, width / stride + 1};
+    }
+
+    public String toString(){
+        return "Tensor" + Arrays.toString(this.shape) + " " +
+            Arrays.toString(copy().data);
+    }
+}
@@ -0,0 +1,226 @@
+package matrix;
+
+/**
+ * This class holds the loops behind the operations of Tensor. The callers are
+ * expected to have checked the shapes of the tensors
+ *
+ * @author Joseph Bronsten
+ */
+final class TensorKernels {
+    /**
+     * The number of values in the patch matrix of a band of outputs, so it
+     * stays in cache while the product reads it
+     */
+    private static final int PATCH_VALUES = 1 << 18;
+
+    /** The fewest output channels a task computes when they are split across tasks */
+    private static final int MIN_CHANNEL_BLOCK = 8;
+
+    /** The number of multiply-adds below which a convolution runs on one thread */
+    private static final long PARALLEL_THRESHOLD = 1L << 21;
+
+    private TensorKernels(){}
+
+    /**
+     * Copies the values of one tensor into another of the same shape
+     * @param source the tensor to read
+     * @param target the tensor to write
+     */
+    static void copy(Tensor source, Tensor target){
+        int rank = source.getRank();
+        int[] shape = source.getShape();
+        int[] from = source.getStrides();
+        int[] to = target.getStrides();
+        int count = source.getSize() / shape[rank - 1];
+        int[] index = new int[rank];
+        double[] a = source.getData();
+        double[] b = target.getData();
+        // Walk every index of the leading dimensions and copy along the last
+        for(int line = 0; line < count; line++){
+            int aIndex = source.getOffset();
+            int bIndex = target.getOffset();
+            for(int d = 0; d < rank - 1; d++){
+                aIndex += index[d] * from[d];
+                bIndex += index[d] * to[d];
+            }
+            if(from[rank - 1] == 1 && to[rank - 1] == 1){
+                System.arraycopy(a, aIndex, b, bIndex, shape[rank - 1]);
+            }
+            else {
+                for(int j = 0; j < shape[rank - 1]; j++){
+                    b[bIndex + j * to[rank - 1]] = a[aIndex + j * from[rank - 1]];
+                }
+            }
+            for(int d = rank - 2; d >= 0 && ++index[d] == shape[d]; d--){
+                index[d] = 0;
+            }
+        }
+    }
+
+    /**
+     * Computes a batched, multi-channel convolution by lowering it to
+     * products (im2col). For a band of outputs of one image, row
+     * (c, r, s) of the patch matrix holds the input values that kernel value
+     * (k, c, R - 1 - r, S - 1 - s) multiplies, or zero where the window is in
+     * the padding, so the band of every output channel is the product of the
+     * kernels, as a K x CRS matrix, and the patch matrix.
+     * <p>
+     * The images, and blocks of output channels when there are fewer images
+     * than threads, are computed in parallel
+     * @param input the inputs in NCHW order
+     * @param kernel the kernels in KCRS order
+     * @param stride the distance between the positions of two outputs
+     * @param padding the number of zeros added on each side of the inputs
+     * @param result the tensor the outputs are written to in NKPQ order
+     */
+    static void convolution(Tensor input, Tensor kernel, int stride, int padding, Tensor result){
+        int batch = input.size(0);
+        int outputChannels = kernel.size(0);
+        int patchRows = kernel.size(1) * kernel.size(2) * kernel.size(3);
+        int outputs = result.size(2) * result.size(3);
+        Tensor kernels = kernel.isContiguous() ? kernel : kernel.copy();
+        Matrix weights = new Matrix(kernels.getData(), kernels.getOffset(), patchRows,
+            outputChannels, patchRows);
+
+        long work = (long) batch * outputChannels * outputs * patchRows;
+        int channelBlocks = 1;
+        if(Parallel.worthSplitting(work, PARALLEL_THRESHOLD) && batch < Parallel.parallelism()){
+            int perImage = (Parallel.parallelism() + batch - 1) / batch;
+            channelBlocks = Math.max(1, Math.min(perImage, outputChannels / MIN_CHANNEL_BLOCK));
+        }
+        int blocks = channelBlocks;
+        int kernelHeight = kernel.size(2);
+        int kernelWidth = kernel.size(3);
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD)){
+            for(int n = 0; n < batch; n++){
+                convolutionImage(input, n, weights, 0, outputChannels,
+                    kernelHeight, kernelWidth, stride, padding, result);
+            }
+            return;
+        }
+        Parallel.forRange(0, batch * blocks, task -> {
+            int n = task / blocks;
+            int block = task % blocks;
+            int first = block * outputChannels / blocks;
+            int last = (block + 1) * outputChannels / blocks;
+            convolutionImage(input, n, weights, first, last,
+                kernelHeight, kernelWidth, stride, padding, result);
+        });
+    }
+
+    /**
+     * Computes a range of output channels of one image, a band of outputs at
+     * a time, with the patch matrix in an array from the ScratchPool
+     * @param input the inputs in NCHW order
+     * @param n the image of the batch
+     * @param weights the kernels as a K x CRS matrix
+     * @param firstChannel the first output channel
+     * @param lastChannel the output channel after the last one
+     * @param kernelHeight the number of rows of each kernel
+     * @param kernelWidth the number of columns of each kernel
+     * @param stride the distance between the positions of two outputs
+     * @param padding the number of zeros added on each side of the inputs
+     * @param result the tensor the outputs are written to in NKPQ order
+     */
+    private static void convolutionImage(Tensor input, int n, Matrix weights,
+                                         int firstChannel, int lastChannel,
+                                         int kernelHeight, int kernelWidth,
+                                         int stride, int padding, Tensor result){
+        int patchRows = weights.getColumns();
+        int outputWidth = result.size(3);
+        int outputs = result.size(2) * outputWidth;
+        int band = Math.max(1, Math.min(outputs, PATCH_VALUES / patchRows));
+        int channels = lastChannel - firstChannel;
+        int[] strides = result.getStrides();
+        // The outputs of one channel are a row of the product when they are
+        // stored in order, otherwise they go through scratch and are copied
+        boolean direct = strides[3] == 1 && strides[2] == outputWidth &&
+            (channels == 1 || strides[1] >= outputs);
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] patches = scope.array(patchRows * band + (direct ? 0 : channels * band));
+            Matrix block = new Matrix(weights.getData(),
+                weights.getOffset() + firstChannel * weights.getStride(), weights.getStride(),
+                channels, patchRows);
+
+            for(int start = 0; start < outputs; start += band){
+                int count = Math.min(band, outputs - start);
+                lower(input, n, start, count, kernelHeight, kernelWidth, stride, padding,
+                    outputWidth, patches, band);
+                Matrix patchMatrix = new Matrix(patches, 0, band, patchRows, count);
+                if(direct){
+                    int base = result.getOffset() + n * strides[0] + firstChannel * strides[1] + start;
+                    Gemm.multiply(block, patchMatrix,
+                        new Matrix(result.getData(), base, strides[1], channels, count));
+                }
+                else {
+                    int scratch = patchRows * band;
+                    Gemm.multiply(block, patchMatrix, new Matrix(patches, scratch, band, channels, count));
+                    double[] c = result.getData();
+                    for(int k = 0; k < channels; k++){
+                        for(int p = 0; p < count; p++){
+                            int output = start + p;
+                            c[result.getOffset() + n * strides[0] + (firstChannel + k) * strides[1] +
+                                (output / outputWidth) * strides[2] + (output % outputWidth) * strides[3]] =
+                                patches[scratch + k * band + p];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the patch matrix of a band of outputs of one image
+     * @param input the inputs in NCHW order
+     * @param n the image of the batch
+     * @param start the first output of the band, counting along the rows
+     * @param count the number of outputs in the band
+     * @param kernelHeight the number of rows of each kernel
+     * @param kernelWidth the number of columns of each kernel
+     * @param stride the distance between the positions of two outputs
+     * @param padding the number of zeros added on each side of the inputs
+     * @param outputWidth the number of outputs in a row
+     * @param patches the array the patch matrix is written to
+     * @param band the distance between two rows of the patch matrix
+     */
+    private static void lower(Tensor input, int n, int start, int count,
+                              int kernelHeight, int kernelWidth, int stride, int padding, int outputWidth,
+                              double[] patches, int band){
+        int height = input.size(2);
+        int width = input.size(3);
+        int[] strides = input.getStrides();
+        double[] data = input.getData();
+        int channels = input.size(1);
+
+        for(int c = 0; c < channels; c++){
+            int channelIndex = input.getOffset() + n * strides[0] + c * strides[1];
+            for(int r = 0; r < kernelHeight; r++){
+                for(int s = 0; s < kernelWidth; s++){
+                    // The kernel is flipped, so row (c, r, s) pairs with the
+                    // input at (R - 1 - r, S - 1 - s) from the window corner
+                    int rowOffset = kernelHeight - 1 - r - padding;
+                    int columnOffset = kernelWidth - 1 - s - padding;
+                    int patchIndex = ((c * kernelHeight + r) * kernelWidth + s) * band;
+                    for(int p = 0; p < count; ){
+                        int output = start + p;
+                        int y = (output / outputWidth) * stride + rowOffset;
+                        int x0 = output % outputWidth;
+                        int length = Math.min(count - p, outputWidth - x0);
+                        if(y < 0 || y >= height){
+                            java.util.Arrays.fill(patches, patchIndex + p, patchIndex + p + length, 0);
+                        }
+                        else {
+                            int rowIndex = channelIndex + y * strides[2];
+                            for(int q = 0; q < length; q++){
+                                int x = (x0 + q) * stride + columnOffset;
+                                patches[patchIndex + p + q] = x < 0 || x >= width ? 0 :
+                                    data[rowIndex + x * strides[3]];
+                            }
+                        }
+                        p += length;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -3,24 +3,22 @@ package matrix;
 /**
  * This class implements a column vector as a Matrix of size n and 1, and allows
  * the dot product of two vectors to be computed 
+ * <p>
+ * The entries are stored one after another in a flat array like the values of
+ * any Matrix, so an array can be wrapped as a vector, and a vector returned as
+ * an array, without copying it
  * 
  * @author Joseph Bronsten
  */
 public class Vector extends Matrix {
     /**
      * Creates a vector object from an array of doubles, with a height of the 
-     * length of the array and a width of 1
+     * length of the array and a width of 1. The values are copied, see wrap
+     * for a vector that uses the array itself
      * @param vector the array of doubles that becomes the column vector
      */
     public Vector(double[] vector) {
-        this(new double[][]{{0}});
-        
-        double[][] column_vector = new double[vector.length][1];
-
-        for(int i = 0; i < vector.length; i++) {
-            column_vector[i][0] = vector[i];
-        }
-        super.set(column_vector);
+        super(copy(vector), vector.length, 1);
     }
 
     /**
@@ -48,6 +46,53 @@ public class Vector extends Matrix {
         super(length, 1);
     }
 
+    /**
+     * Creates a vector that uses a strided sequence of an array as its
+     * storage without copying it
+     * @param data the backing array
+     * @param offset the index of the first entry
+     * @param step the distance in the array between two entries
+     * @param length the length of the column vector
+     */
+    Vector(double[] data, int offset, int step, int length){
+        super(data, offset, step, length, 1);
+    }
+
+    /**
+     * Creates a vector that uses the given array as its storage without
+     * copying it, so changes to the array and to the vector are seen by both
+     * @param values the array of doubles that becomes the column vector
+     * @return the vector backed by the array
+     */
+    public static Vector wrap(double[] values){
+        if(values == null){
+            throw new NullPointerException("Vector cannot be null");
+        }
+        return new Vector(values, 0, 1, values.length);
+    }
+
+    /**
+     * A helper method that copies the array of a new vector, throwing an error
+     * if it is null, for use before the constructor can run any other code
+     * @param vector the array to copy
+     * @return the copy
+     */
+    private static double[] copy(double[] vector){
+        if(vector == null){
+            throw new NullPointerException("Vector cannot be null");
+        }
+        return vector.clone();
+    }
+
+    /**
+     * Returns a rank 1 tensor that is a view of the vector
+     * @return the tensor sharing the backing array of the vector
+     */
+    @Override
+    public Tensor toTensor(){
+        return new Tensor(getData(), getOffset(), new int[]{getRows()}, new int[]{getStride()});
+    }
+
     /**
      * Gets the value at the given index
      * @param row given index
@@ -70,20 +115,28 @@ public class Vector extends Matrix {
      * @return true if every entry in the vector has a value of zero
      */
     public boolean isZeroVector(){
-        for(double value : this.get()[0]){
-            if(value!= 0){
+        for(int i = 0; i < getRows(); i++){
+            if(get(i) != 0){
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Returns the values of the vector as an array. If the vector is the whole
+     * of its backing array, as a vector that is created with a length or by
+     * wrap is, that array is returned without copying it and changes to it
+     * are seen by the vector. Otherwise the values are copied
+     * @return an array of doubles with the values of the vector
+     */
     public double[] toArray() {
-        double[] array = new double[this.get().length];
-        for(int i = 0; i < array.length; i++) {
-            array[i] = this.get(i);
+        double[] data = getData();
+        if(getOffset() == 0 && (getStride() == 1 || getRows() == 1) &&
+            data.length == getRows()){
+            return data;
         }
-        return array;
+        return getColumn(0);
     }
 
     /**
@@ -117,38 +170,53 @@ public class Vector extends Matrix {
             throw new IllegalArgumentException(
                     "Vectors must have the same length for dot product");
         }
-        double result = dotProduct(vector1.get(), 
-            vector2.get());
+        double result = Kernels.dot(
+            vector1.getData(), vector1.getOffset(), vector1.getStride(),
+            vector2.getData(), vector2.getOffset(), vector2.getStride(),
+            vector1.getRows());
         return result;
     }
 
     public static Vector scale(Vector vector, double scaler){
-        double[][] scaled = scale(vector.get(), scaler);
-        return new Vector(scaled);
+        Vector result = new Vector(vector.getRows());
+        scaleInto(vector, scaler, result);
+        return result;
     }
 
     public static Vector add(Vector vector1, Vector vector2){
-        double[][] sum = add(vector1.get(), vector2.get());
-        return new Vector(sum);
+        Vector result = new Vector(vector1.getRows());
+        addInto(vector1, vector2, result);
+        return result;
     }
 
     public static Vector subtract(Vector vector1, Vector vector2){
-        double[][] difference = subtract(vector1.get(), vector2.get());
-        return new Vector(difference);
+        Vector result = new Vector(vector1.getRows());
+        subtractInto(vector1, vector2, result);
+        return result;
     }
 
     public static Vector multiply(Matrix matrix, Vector vector){
-        double[][] product = multiply(matrix.get(), vector.get());
-        if(product[0].length != 1){
-            throw new IllegalArgumentException(
-                    "Matrix and vector dimensions do not match for multiplication");
-        }
-        return new Vector(product);
+        Vector result = new Vector(matrix.getRows());
+        multiplyInto(matrix, vector, result);
+        return result;
+    }
+
+    /**
+     * Multiplies the transpose of a matrix with a vector, reading the matrix
+     * one row at a time instead of copying its transpose
+     * @param matrix the matrix whose transpose is multiplied
+     * @param vector the vector with as many entries as the matrix has rows
+     * @return the product of the transpose of the matrix and the vector
+     */
+    public static Vector multiplyTranspose(Matrix matrix, Vector vector){
+        Vector result = new Vector(matrix.getColumns());
+        multiplyTransposeAInto(matrix, vector, result);
+        return result;
     }
 
     public static Vector elementWiseMultiply(Vector vector1, Vector vector2){
-        double[][] product = elementWiseMultiply(vector1.get(), vector2.get());
-        return new Vector(product);
+        Vector result = new Vector(vector1.getRows());
+        elementWiseMultiplyInto(vector1, vector2, result);
+        return result;
     }
 }
-
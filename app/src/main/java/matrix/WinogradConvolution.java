@@ -0,0 +1,318 @@
+package matrix;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class computes convolutions with 3x3 kernels by Winograd's minimal
+ * filtering algorithms F(2x2,3x3) and F(4x4,3x3). The output is split into
+ * tiles of 2x2 or 4x4 values, and each tile is computed from a 4x4 or 6x6
+ * tile of the matrix as Y = A^T [(G g G^T) * (B^T d B)] A, where g is the
+ * kernel, d the tile of the matrix and * the element wise product. This
+ * takes 16 multiplies for 4 outputs or 36 multiplies for 16 outputs, instead
+ * of the 9 multiplies each output costs in the direct loop.
+ * <p>
+ * The transformed kernel G g G^T depends only on the kernel, so it is cached
+ * for each kernel matrix together with the values it was computed from, and
+ * recomputed only if the kernel has changed since.
+ * <p>
+ * The transforms change the order of the sums, so the results differ from
+ * the direct loop by rounding. F(4x4,3x3) uses larger constants in its
+ * transforms and rounds a few times more than F(2x2,3x3)
+ *
+ * @author Joseph Bronsten
+ */
+final class WinogradConvolution {
+    /** The number of multiply-adds of the direct loop above which tiles run in parallel */
+    private static final long PARALLEL_THRESHOLD = 1L << 21;
+
+    /** The transformed kernels of the kernel matrices that have been used */
+    private static final Map<Matrix, Transformed> CACHE =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    private WinogradConvolution(){}
+
+    /**
+     * Returns if a convolution with the given shapes can use this class
+     * @param rows the number of rows of the result
+     * @param columns the number of columns of the result
+     * @param kernel the kernel of the convolution
+     * @return true if the kernel is 3x3 and the result holds at least one
+     * 2x2 tile
+     */
+    static boolean supports(int rows, int columns, Matrix kernel){
+        return kernel.getRows() == 3 && kernel.getColumns() == 3 && rows >= 2 && columns >= 2;
+    }
+
+    /**
+     * A kernel transformed for both tile sizes, with the kernel values it was
+     * computed from
+     */
+    private static final class Transformed {
+        final double[] kernel;
+        final double[] small;
+        final double[] large;
+
+        Transformed(double[] kernel){
+            this.kernel = kernel;
+            this.small = transformKernel(kernel, false);
+            this.large = transformKernel(kernel, true);
+        }
+    }
+
+    /**
+     * Computes the convolution of a matrix with a 3x3 kernel into a result
+     * matrix of shape (rows - 2) x (columns - 2). F(4x4,3x3) is used when the
+     * result has at least 4 rows and 4 columns, and F(2x2,3x3) otherwise.
+     * The matrices must have backing arrays
+     * @param matrix the matrix to convolve
+     * @param kernel the 3x3 kernel of the convolution
+     * @param result the matrix the convolution is written to
+     */
+    static void convolution(Matrix matrix, Matrix kernel, Matrix result){
+        boolean large = result.getRows() >= 4 && result.getColumns() >= 4;
+        convolution(matrix, kernel, result, large);
+    }
+
+    /**
+     * Computes the convolution of a matrix with a 3x3 kernel with the given
+     * tile size
+     * @param matrix the matrix to convolve
+     * @param kernel the 3x3 kernel of the convolution
+     * @param result the matrix the convolution is written to
+     * @param large true for F(4x4,3x3) and false for F(2x2,3x3)
+     */
+    static void convolution(Matrix matrix, Matrix kernel, Matrix result, boolean large){
+        Transformed transformed = transformed(kernel);
+        double[] u = large ? transformed.large : transformed.small;
+        int outputTile = large ? 4 : 2;
+        int tileRows = (result.getRows() + outputTile - 1) / outputTile;
+        int tileColumns = (result.getColumns() + outputTile - 1) / outputTile;
+        long work = 9L * result.getRows() * result.getColumns();
+
+        if(!Parallel.worthSplitting(work, PARALLEL_THRESHOLD)){
+            tileRows(matrix, result, u, large, 0, tileRows, tileColumns);
+            return;
+        }
+        int blocks = Math.min(tileRows, Parallel.parallelism() * 4);
+        Parallel.forRange(0, blocks, block ->
+            tileRows(matrix, result, u, large, block * tileRows / blocks,
+                (block + 1) * tileRows / blocks, tileColumns));
+    }
+
+    /**
+     * Returns the transformed kernel, from the cache if the kernel has not
+     * changed since it was transformed
+     * @param kernel the 3x3 kernel
+     * @return the transformed kernel
+     */
+    private static Transformed transformed(Matrix kernel){
+        // The convolution of Matrix flips the kernel, and the transforms
+        // compute a correlation, so the flipped kernel is transformed
+        double[] g = new double[9];
+        for(int i = 0; i < 3; i++){
+            for(int j = 0; j < 3; j++){
+                g[i * 3 + j] = kernel.get(2 - i, 2 - j);
+            }
+        }
+        Transformed transformed = CACHE.get(kernel);
+        if(transformed == null || !java.util.Arrays.equals(transformed.kernel, g)){
+            transformed = new Transformed(g);
+            CACHE.put(kernel, transformed);
+        }
+        return transformed;
+    }
+
+    /**
+     * Computes G g G^T for a 3x3 kernel
+     * @param g the kernel, row major
+     * @param large true for the 6x6 transform of F(4x4,3x3)
+     * @return the transformed kernel, row major
+     */
+    private static double[] transformKernel(double[] g, boolean large){
+        int n = large ? 6 : 4;
+        double[] rows = new double[n * 3];
+        double[] u = new double[n * n];
+        // G applied to each column of g, then to each row of the result
+        for(int j = 0; j < 3; j++){
+            kernelTransform(g, j, 3, rows, j, 3, large);
+        }
+        for(int i = 0; i < n; i++){
+            kernelTransform(rows, i * 3, 1, u, i * n, 1, large);
+        }
+        return u;
+    }
+
+    /**
+     * Applies G to 3 strided values
+     */
+    private static void kernelTransform(double[] g, int gIndex, int gStep,
+                                        double[] u, int uIndex, int uStep, boolean large){
+        double g0 = g[gIndex];
+        double g1 = g[gIndex + gStep];
+        double g2 = g[gIndex + 2 * gStep];
+        if(large){
+            u[uIndex] = g0 / 4;
+            u[uIndex + uStep] = -(g0 + g1 + g2) / 6;
+            u[uIndex + 2 * uStep] = -(g0 - g1 + g2) / 6;
+            u[uIndex + 3 * uStep] = g0 / 24 + g1 / 12 + g2 / 6;
+            u[uIndex + 4 * uStep] = g0 / 24 - g1 / 12 + g2 / 6;
+            u[uIndex + 5 * uStep] = g2;
+        }
+        else {
+            u[uIndex] = g0;
+            u[uIndex + uStep] = (g0 + g1 + g2) / 2;
+            u[uIndex + 2 * uStep] = (g0 - g1 + g2) / 2;
+            u[uIndex + 3 * uStep] = g2;
+        }
+    }
+
+    /**
+     * Computes the output tiles in a range of tile rows
+     * @param matrix the matrix to convolve
+     * @param result the matrix the convolution is written to
+     * @param u the transformed kernel
+     * @param large true for F(4x4,3x3) and false for F(2x2,3x3)
+     * @param firstTileRow the first tile row
+     * @param lastTileRow the tile row after the last one
+     * @param tileColumns the number of tiles in a tile row
+     */
+    private static void tileRows(Matrix matrix, Matrix result, double[] u, boolean large,
+                                 int firstTileRow, int lastTileRow, int tileColumns){
+        int n = large ? 6 : 4;
+        int outputTile = n - 2;
+        double[] m = matrix.getData();
+        double[] c = result.getData();
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            double[] d = scope.array(n * n);
+            double[] v = scope.array(n * n);
+            double[] y = scope.array(outputTile * n);
+
+            for(int tileRow = firstTileRow; tileRow < lastTileRow; tileRow++){
+                int row = tileRow * outputTile;
+                int rows = Math.min(outputTile, result.getRows() - row);
+                for(int tileColumn = 0; tileColumn < tileColumns; tileColumn++){
+                    int column = tileColumn * outputTile;
+                    int columns = Math.min(outputTile, result.getColumns() - column);
+                    int dIndex;
+                    int dStride;
+                    if(rows == outputTile && columns == outputTile){
+                        // Read the tile of the matrix where it is stored
+                        dIndex = matrix.getOffset() + row * matrix.getStride() + column;
+                        dStride = matrix.getStride();
+                        inputTile(m, dIndex, dStride, v, n, large);
+                    }
+                    else {
+                        // A tile at the edge is padded with zeros
+                        java.util.Arrays.fill(d, 0);
+                        for(int i = 0; i < rows + 2; i++){
+                            System.arraycopy(m, matrix.getOffset() + (row + i) * matrix.getStride() + column,
+                                d, i * n, columns + 2);
+                        }
+                        inputTile(d, 0, n, v, n, large);
+                    }
+                    for(int p = 0; p < n * n; p++){
+                        v[p] *= u[p];
+                    }
+                    // A^T applied to each column, then to each of the remaining rows
+                    for(int j = 0; j < n; j++){
+                        outputTransform(v, j, n, y, j, n, large);
+                    }
+                    for(int i = 0; i < rows; i++){
+                        int cIndex = result.getOffset() + (row + i) * result.getStride() + column;
+                        if(columns == outputTile){
+                            outputTransform(y, i * n, 1, c, cIndex, 1, large);
+                        }
+                        else {
+                            outputTransform(y, i * n, 1, d, 0, 1, large);
+                            System.arraycopy(d, 0, c, cIndex, columns);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes B^T d B for an n x n tile of the matrix
+     * @param d the array holding the tile
+     * @param dIndex the index of the first value of the tile
+     * @param dStride the distance between two rows of the tile
+     * @param v the array the n x n transformed tile is written to
+     * @param n the size of the tile
+     * @param large true for F(4x4,3x3) and false for F(2x2,3x3)
+     */
+    private static void inputTile(double[] d, int dIndex, int dStride,
+                                  double[] v, int n, boolean large){
+        // B^T applied to each column, then to each row
+        for(int j = 0; j < n; j++){
+            inputTransform(d, dIndex + j, dStride, v, j, n, large);
+        }
+        for(int i = 0; i < n; i++){
+            inputTransform(v, i * n, 1, v, i * n, 1, large);
+        }
+    }
+
+    /**
+     * Applies B^T to n strided values, which may be transformed in place
+     */
+    private static void inputTransform(double[] d, int dIndex, int dStep,
+                                       double[] v, int vIndex, int vStep, boolean large){
+        if(large){
+            double d0 = d[dIndex];
+            double d1 = d[dIndex + dStep];
+            double d2 = d[dIndex + 2 * dStep];
+            double d3 = d[dIndex + 3 * dStep];
+            double d4 = d[dIndex + 4 * dStep];
+            double d5 = d[dIndex + 5 * dStep];
+            v[vIndex] = 4 * d0 - 5 * d2 + d4;
+            v[vIndex + vStep] = d3 + d4 - 4 * (d1 + d2);
+            v[vIndex + 2 * vStep] = d4 - d3 + 4 * (d1 - d2);
+            v[vIndex + 3 * vStep] = d4 - d2 + 2 * (d3 - d1);
+            v[vIndex + 4 * vStep] = d4 - d2 + 2 * (d1 - d3);
+            v[vIndex + 5 * vStep] = 4 * d1 - 5 * d3 + d5;
+        }
+        else {
+            double d0 = d[dIndex];
+            double d1 = d[dIndex + dStep];
+            double d2 = d[dIndex + 2 * dStep];
+            double d3 = d[dIndex + 3 * dStep];
+            v[vIndex] = d0 - d2;
+            v[vIndex + vStep] = d1 + d2;
+            v[vIndex + 2 * vStep] = d2 - d1;
+            v[vIndex + 3 * vStep] = d1 - d3;
+        }
+    }
+
+    /**
+     * Applies A^T to n strided values, giving n - 2 values
+     */
+    private static void outputTransform(double[] m, int mIndex, int mStep,
+                                        double[] y, int yIndex, int yStep, boolean large){
+        if(large){
+            double m0 = m[mIndex];
+            double m1 = m[mIndex + mStep];
+            double m2 = m[mIndex + 2 * mStep];
+            double m3 = m[mIndex + 3 * mStep];
+            double m4 = m[mIndex + 4 * mStep];
+            double m5 = m[mIndex + 5 * mStep];
+            double sum12 = m1 + m2;
+            double difference12 = m1 - m2;
+            double sum34 = m3 + m4;
+            double difference34 = m3 - m4;
+            y[yIndex] = m0 + sum12 + sum34;
+            y[yIndex + yStep] = difference12 + 2 * difference34;
+            y[yIndex + 2 * yStep] = sum12 + 4 * sum34;
+            y[yIndex + 3 * yStep] = difference12 + 8 * difference34 + m5;
+        }
+        else {
+            double m0 = m[mIndex];
+            double m1 = m[mIndex + mStep];
+            double m2 = m[mIndex + 2 * mStep];
+            double m3 = m[mIndex + 3 * mStep];
+            y[yIndex] = m0 + m1 + m2;
+            y[yIndex + yStep] = m1 - m2 - m3;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package denseTest;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import layer.Dense;
+import layer.activation.ReLu;
+import matrix.Matrix;
+import matrix.Vector;
+
+public class FusedForwardPropTest {
+
+    // Test that the fused forward propagation matches a dense layer followed
+    // by an activation layer, including the activation's backpropagation
+    @Test
+    public void testFusedMatchesSeparateLayers() {
+        int inputSize = 37;
+        int outputSize = 19;
+        Matrix weights = new Matrix(outputSize, inputSize, -1.0, 1.0);
+        Vector biases = new Vector(new Matrix(outputSize, 1, -1.0, 1.0).get());
+        Dense denseLayer = new Dense(inputSize, outputSize, weights, biases);
+        Vector input = new Vector(new Matrix(inputSize, 1, -1.0, 1.0).get());
+
+        ReLu separateActivation = new ReLu(outputSize);
+        Vector expected = separateActivation.forwardProp(denseLayer.forwardProp(input));
+
+        ReLu fusedActivation = new ReLu(outputSize);
+        Vector output = denseLayer.forwardProp(input, fusedActivation);
+
+        assertArrayEquals(expected.toArray(), output.toArray(), 1e-12);
+        assertSame(input, denseLayer.getInputVector());
+
+        Vector outputGrad = new Vector(new Matrix(outputSize, 1, -1.0, 1.0).get());
+        assertArrayEquals(separateActivation.backProp(outputGrad).toArray(),
+            fusedActivation.backProp(outputGrad).toArray(), 1e-12);
+    }
+
+    // Test that an activation of the wrong size is rejected
+    @Test
+    public void testInvalidActivationSize() {
+        Dense denseLayer = new Dense(2, 3, new Matrix(3, 2, 1.0), new Vector(3));
+        Vector input = new Vector(new double[]{1, 2});
+
+        assertThrows(IllegalArgumentException.class, () -> denseLayer.forwardProp(input, new ReLu(2)));
+        assertThrows(NullPointerException.class, () -> denseLayer.forwardProp(input, null));
+    }
+}
@@ -0,0 +1,113 @@
+package denseTest;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import layer.Dense;
+import layer.Layer;
+import layer.QuantizationReport;
+import layer.activation.ReLu;
+import matrix.Matrix;
+import matrix.SparseVector;
+import matrix.Vector;
+
+public class QuantizationTest {
+
+    private static List<Vector> samples(int count, int size) {
+        List<Vector> samples = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            samples.add(new Vector(new Matrix(size, 1, -1.0, 1.0).get()));
+        }
+        return samples;
+    }
+
+    // Test that a quantized layer stays close to the double layer and that
+    // the report measures the drift
+    @Test
+    public void testQuantizedMatchesDoublePrecision() {
+        int inputSize = 64;
+        int outputSize = 10;
+        Matrix weights = new Matrix(outputSize, inputSize, -1.0, 1.0);
+        Vector biases = new Vector(new Matrix(outputSize, 1, -1.0, 1.0).get());
+        Dense doubleLayer = new Dense(inputSize, outputSize, weights, new Vector(biases.toArray()));
+        Dense quantizedLayer = new Dense(inputSize, outputSize, new Matrix(weights.get()),
+            new Vector(biases.toArray()));
+        List<Vector> calibration = samples(50, inputSize);
+
+        QuantizationReport report = quantizedLayer.quantize(calibration);
+        assertTrue(quantizedLayer.isQuantized());
+        assertEquals(1.0 / 127, quantizedLayer.getInputScale(), 1e-3);
+        assertEquals(50, report.getSamples());
+        assertTrue(report.getMaxAbsoluteError() > 0);
+        assertTrue(report.getMeanAbsoluteError() <= report.getMaxAbsoluteError());
+        assertTrue(report.getRelativeError() < 0.02, report.toString());
+        assertTrue(report.getArgmaxAgreement() > 0.8, report.toString());
+
+        double maxError = 0;
+        for (Vector input : calibration) {
+            double[] expected = doubleLayer.forwardProp(input).toArray();
+            double[] actual = quantizedLayer.forwardProp(input).toArray();
+            for (int i = 0; i < outputSize; i++) {
+                maxError = Math.max(maxError, Math.abs(expected[i] - actual[i]));
+            }
+        }
+        assertEquals(report.getMaxAbsoluteError(), maxError, 1e-12);
+
+        Vector input = calibration.get(0);
+        assertArrayEquals(new ReLu(outputSize).forwardProp(quantizedLayer.forwardProp(input)).toArray(),
+            quantizedLayer.forwardProp(input, new ReLu(outputSize)).toArray(), 1e-12);
+        assertArrayEquals(quantizedLayer.forwardProp(input).toArray(),
+            quantizedLayer.forwardProp(new SparseVector(input)).toArray(), 1e-12);
+    }
+
+    // Test that a quantized layer cannot be trained until new weights are set
+    @Test
+    public void testQuantizedLayerState() {
+        Dense layer = new Dense(3, 2, new Matrix(new double[][]{{1, 0, -1}, {-4, 4, 0}}), new Vector(2));
+        assertFalse(layer.isQuantized());
+        assertNull(layer.getQuantizedWeights());
+        assertEquals(0, layer.getInputScale());
+
+        layer.quantize(List.of(new Vector(new double[]{1, 2, 3})));
+        assertArrayEquals(new double[]{-4, 4, 0}, layer.getWeights().getRow(1), 1e-12);
+        assertEquals(-127, layer.getQuantizedWeights().getQuantized(0, 2));
+        layer.forwardProp(new Vector(new double[]{1, 2, 3}));
+        assertThrows(IllegalStateException.class, () -> layer.backProp(new Vector(2)));
+
+        layer.useSinglePrecision();
+        assertFalse(layer.isQuantized());
+        assertTrue(layer.isSinglePrecision());
+
+        assertThrows(IllegalArgumentException.class, () -> layer.quantize(List.of(new Vector(2))));
+        assertThrows(IllegalArgumentException.class, () -> layer.quantize(List.of()));
+        assertThrows(NullPointerException.class, () -> layer.quantize(null));
+    }
+
+    // Test that a dequantized layer holds the quantized values in double and
+    // can be trained again
+    @Test
+    public void testDequantize() {
+        double learningRate = Layer.getLearningRate();
+        try {
+            Layer.setLearningRate(0.5);
+            Dense layer = new Dense(3, 2, new Matrix(new double[][]{{1, 0, -1}, {-4, 4, 0}}), new Vector(2));
+            layer.dequantize();
+            assertFalse(layer.isQuantized());
+
+            layer.quantize(List.of(new Vector(new double[]{1, 2, 3})));
+            Matrix quantized = layer.getWeights();
+            layer.dequantize();
+            assertFalse(layer.isQuantized());
+            assertFalse(layer.isSinglePrecision());
+            assertArrayEquals(quantized.get(), layer.getWeights().get());
+
+            layer.forwardProp(new Vector(new double[]{1, 2, 3}));
+            layer.backProp(new Vector(new double[]{1, 0}));
+            assertArrayEquals(new double[]{0.5, -1, -2.5}, layer.getWeights().getRow(0), 1e-12);
+        } finally {
+            Layer.setLearningRate(learningRate);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package denseTest;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import layer.Dense;
+import layer.Layer;
+import layer.activation.ReLu;
+import matrix.FloatMatrix;
+import matrix.Matrix;
+import matrix.Vector;
+
+public class SinglePrecisionTest {
+
+    // Test that a layer with float weights propagates like a layer holding
+    // the same weights in double
+    @Test
+    public void testMatchesDoublePrecision() {
+        Layer.setLearningRate(0.1);
+        int inputSize = 12;
+        int outputSize = 7;
+        FloatMatrix floatWeights = new FloatMatrix(outputSize, inputSize, -1f, 1f);
+        Vector biases = new Vector(new Matrix(outputSize, 1, -1.0, 1.0).get());
+        Dense floatLayer = new Dense(inputSize, outputSize, floatWeights, new Vector(biases.toArray()));
+        Dense doubleLayer = new Dense(inputSize, outputSize, floatWeights.toMatrix(), new Vector(biases.toArray()));
+        Vector input = new Vector(new Matrix(inputSize, 1, -1.0, 1.0).get());
+
+        assertTrue(floatLayer.isSinglePrecision());
+        assertArrayEquals(doubleLayer.forwardProp(input).toArray(), floatLayer.forwardProp(input).toArray(), 1e-12);
+        assertArrayEquals(doubleLayer.forwardProp(input, new ReLu(outputSize)).toArray(),
+            floatLayer.forwardProp(input, new ReLu(outputSize)).toArray(), 1e-12);
+
+        Vector outputGrad = new Vector(new Matrix(outputSize, 1, -1.0, 1.0).get());
+        Vector doubleInputGrad = doubleLayer.backProp(new Vector(outputGrad.toArray()));
+        Vector floatInputGrad = floatLayer.backProp(new Vector(outputGrad.toArray()));
+
+        assertArrayEquals(doubleInputGrad.toArray(), floatInputGrad.toArray(), 1e-5);
+        assertArrayEquals(doubleLayer.getBias().toArray(), floatLayer.getBias().toArray(), 1e-12);
+        for (int i = 0; i < outputSize; i++) {
+            assertArrayEquals(doubleLayer.getWeights().getRow(i), floatLayer.getWeights().getRow(i), 1e-6);
+        }
+    }
+
+    // Test converting the weights of a layer to single precision
+    @Test
+    public void testUseSinglePrecision() {
+        Dense layer = new Dense(2, 2, new Matrix(new double[][]{{0.1, 0.2}, {0.3, 0.4}}), new Vector(2));
+        assertFalse(layer.isSinglePrecision());
+        assertNull(layer.getFloatWeights());
+
+        layer.useSinglePrecision();
+
+        assertTrue(layer.isSinglePrecision());
+        assertArrayEquals(new float[][]{{0.1f, 0.2f}, {0.3f, 0.4f}}, layer.getFloatWeights().get());
+        assertThrows(IllegalArgumentException.class, () -> layer.setWeights(new FloatMatrix(3, 2)));
+    }
+}
@@ -0,0 +1,45 @@
+package denseTest;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import layer.Dense;
+import layer.Layer;
+import matrix.Matrix;
+import matrix.SparseVector;
+import matrix.Vector;
+
+public class SparseInputTest {
+
+    // Test that a sparse input propagates like the same dense input and that
+    // only the weight columns of the non zero inputs change
+    @Test
+    public void testSparseMatchesDense() {
+        Layer.setLearningRate(0.1);
+        Matrix weights = new Matrix(4, 10, -1.0, 1.0);
+        Dense denseLayer = new Dense(10, 4, new Matrix(weights.get()), new Vector(4));
+        Dense sparseLayer = new Dense(10, 4, new Matrix(weights.get()), new Vector(4));
+        Vector input = new Vector(new double[]{0, 0, 1, 0, 0, 0, 0.5, 0, 0, 0});
+        Vector outputGrad = new Vector(new double[]{0.1, -0.2, 0.3, -0.4});
+
+        assertArrayEquals(denseLayer.forwardProp(input).toArray(),
+            sparseLayer.forwardProp(new SparseVector(input)).toArray(), 1e-12);
+        assertArrayEquals(denseLayer.backProp(new Vector(outputGrad.toArray())).toArray(),
+            sparseLayer.backProp(new Vector(outputGrad.toArray())).toArray(), 1e-12);
+
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(denseLayer.getWeights().getRow(i), sparseLayer.getWeights().getRow(i), 1e-12);
+            for (int j : new int[]{0, 1, 3, 4, 5, 7, 8, 9}) {
+                assertEquals(weights.get(i, j), sparseLayer.getWeights().get(i, j));
+            }
+        }
+        assertArrayEquals(denseLayer.getBias().toArray(), sparseLayer.getBias().toArray(), 1e-12);
+    }
+
+    // Test that a sparse input of the wrong size is rejected
+    @Test
+    public void testInvalidSparseInput() {
+        Dense layer = new Dense(3, 2, new Matrix(2, 3), new Vector(2));
+
+        assertThrows(IllegalArgumentException.class, () -> layer.forwardProp(new SparseVector(4, new int[]{1}, new double[]{1})));
+    }
+}
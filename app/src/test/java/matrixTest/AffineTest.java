@@ -0,0 +1,58 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+
+public class AffineTest {
+    // Test function(W * X + b) against the separate operations for sizes that
+    // take the matrix-vector, simple and blocked paths
+    @Test
+    public void testAffineMatchesSeparateOperations() {
+        int[][] shapes = {{9, 13, 1}, {5, 6, 7}, {70, 90, 45}};
+        for (int[] shape : shapes) {
+            Matrix weights = new Matrix(shape[0], shape[1], -1.0, 1.0);
+            Matrix input = new Matrix(shape[1], shape[2], -1.0, 1.0);
+            Matrix bias = new Matrix(shape[0], 1, -1.0, 1.0);
+            Matrix preActivation = new Matrix(shape[0], shape[2]);
+            Matrix result = new Matrix(shape[0], shape[2]);
+
+            Matrix.affineInto(weights, input, bias, Math::tanh, preActivation, result);
+
+            Matrix product = Matrix.multiply(weights, input);
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[2]; j++) {
+                    double expected = product.get(i, j) + bias.get(i, 0);
+                    assertEquals(expected, preActivation.get(i, j), 1e-12);
+                    assertEquals(Math.tanh(expected), result.get(i, j), 1e-12);
+                }
+            }
+        }
+    }
+
+    // Test that the function and pre activation output are optional
+    @Test
+    public void testAffineWithoutFunction() {
+        Matrix weights = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        Matrix input = new Matrix(new double[][]{{1}, {-1}});
+        Matrix bias = new Matrix(new double[][]{{10}, {20}});
+        Matrix result = new Matrix(2, 1);
+
+        Matrix.affineInto(weights, input, bias, null, null, result);
+
+        assertArrayEquals(new double[][]{{9}, {19}}, result.get());
+    }
+
+    // Test that invalid shapes and shared storage are rejected
+    @Test
+    public void testInvalidAffine() {
+        Matrix weights = new Matrix(2, 3);
+        Matrix input = new Matrix(3, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> Matrix.affineInto(weights, input, new Matrix(3, 1), null, null, new Matrix(2, 1)));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.affineInto(weights, input, new Matrix(2, 1), null, new Matrix(3, 1), new Matrix(2, 1)));
+        Matrix bias = new Matrix(2, 1);
+        assertThrows(IllegalArgumentException.class, () -> Matrix.affineInto(weights, input, bias, null, null, bias));
+    }
+}
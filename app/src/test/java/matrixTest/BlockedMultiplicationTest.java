@@ -0,0 +1,67 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+
+public class BlockedMultiplicationTest {
+    // Reference product computed with the textbook triple loop
+    public static double[][] naiveMultiply(double[][] matrixA, double[][] matrixB) {
+        double[][] result = new double[matrixA.length][matrixB[0].length];
+        for (int i = 0; i < matrixA.length; i++) {
+            for (int j = 0; j < matrixB[0].length; j++) {
+                for (int k = 0; k < matrixB.length; k++) {
+                    result[i][j] += matrixA[i][k] * matrixB[k][j];
+                }
+            }
+        }
+        return result;
+    }
+
+    public static void assertMatrixEquals(double[][] expected, double[][] actual, double epsilon) {
+        assertEquals(expected.length, actual.length, "Matrix row counts differ");
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].length, actual[i].length, "Matrix column counts differ in row " + i);
+            for (int j = 0; j < expected[i].length; j++) {
+                assertEquals(expected[i][j], actual[i][j], epsilon,
+                    String.format("Values differ at position [%d][%d]", i, j));
+            }
+        }
+    }
+
+    // Test a product with edge tiles in every dimension and a shared dimension
+    // larger than one packed panel
+    @Test
+    public void testBlockedMatchesNaiveOddShapes() {
+        Matrix matrixA = new Matrix(67, 301, -1.0, 1.0);
+        Matrix matrixB = new Matrix(301, 45, -1.0, 1.0);
+
+        Matrix result = Matrix.multiply(matrixA, matrixB);
+
+        assertMatrixEquals(naiveMultiply(matrixA.get(), matrixB.get()), result.get(), 1e-9);
+    }
+
+    // Test that a product with a short shared dimension is exact
+    @Test
+    public void testBlockedMatchesNaiveExactly() {
+        Matrix matrixA = new Matrix(64, 100, -1.0, 1.0);
+        Matrix matrixB = new Matrix(100, 64, -1.0, 1.0);
+
+        Matrix result = Matrix.multiply(matrixA, matrixB);
+
+        assertArrayEquals(naiveMultiply(matrixA.get(), matrixB.get()), result.get());
+    }
+
+    // Test the blocked kernel on strided views of larger arrays
+    @Test
+    public void testBlockedOnStridedViews() {
+        Matrix source = new Matrix(80, 90, -1.0, 1.0);
+        Matrix matrixA = new Matrix(source.getData(), 3, 90, 50, 60);
+        Matrix matrixB = new Matrix(source.getData(), 905, 90, 60, 70);
+
+        Matrix result = Matrix.multiply(matrixA, matrixB);
+
+        assertMatrixEquals(naiveMultiply(matrixA.get(), matrixB.get()), result.get(), 1e-9);
+    }
+}
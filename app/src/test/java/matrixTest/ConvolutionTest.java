@@ -213,4 +213,103 @@ public class ConvolutionTest {
             matrix.convolution(kernel);
         }, "Kernel size is larger than the matrix size.");
     }
+
+    // Test that the im2col convolution matches the direct loop for odd shapes
+    @Test
+    public void testConvolutionMatchesDirect() {
+        int[][] shapes = {{7, 9, 3, 2}, {40, 33, 5, 5}, {300, 280, 3, 4}, {12, 5, 12, 1}};
+        for (int[] shape : shapes) {
+            Matrix matrix = new Matrix(shape[0], shape[1], -1.0, 1.0);
+            Matrix kernel = new Matrix(shape[2], shape[3], -1.0, 1.0);
+            Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+            Matrix result = Matrix.convolution(matrix, kernel);
+            for (int i = 0; i < expected.getRows(); i++) {
+                assertArrayEquals(expected.getRow(i), result.getRow(i), 1e-12,
+                    "Convolution does not match the direct loop");
+            }
+        }
+    }
+
+    // Test the im2col convolution on views that do not own their rows
+    @Test
+    public void testConvolutionOfViews() {
+        Matrix backing = new Matrix(20, 20, -1.0, 1.0);
+        Matrix matrix = new Matrix(backing.getData(), 21, 20, 10, 12);
+        Matrix kernel = new Matrix(3, 4, -1.0, 1.0);
+        Matrix output = new Matrix(15, 15);
+        Matrix result = new Matrix(output.getData(), 16, 15, 8, 9);
+
+        Matrix.convolutionInto(matrix, kernel, result);
+        Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertArrayEquals(expected.getRow(i), result.getRow(i), 1e-12,
+                "Convolution of views does not match the direct loop");
+        }
+        assertEquals(0.0, output.get(0, 0), "Convolution wrote outside of the result view");
+    }
+
+    // Test that the FFT convolution matches the direct loop within its tolerance
+    @Test
+    public void testConvolutionFFTMatchesDirect() {
+        int[][] shapes = {{9, 9, 4, 4}, {37, 50, 7, 3}, {200, 150, 20, 9}, {130, 70, 64, 64}};
+        for (int[] shape : shapes) {
+            Matrix matrix = new Matrix(shape[0], shape[1], -1.0, 1.0);
+            Matrix kernel = new Matrix(shape[2], shape[3], -1.0, 1.0);
+            double tolerance = 1e-10 * shape[2] * shape[3];
+            Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+            Matrix result = Matrix.convolutionFFT(matrix, kernel);
+            assertEquals(expected.getRows(), result.getRows());
+            assertEquals(expected.getColumns(), result.getColumns());
+            for (int i = 0; i < expected.getRows(); i++) {
+                assertArrayEquals(expected.getRow(i), result.getRow(i), tolerance,
+                    "FFT convolution does not match the direct loop");
+            }
+        }
+    }
+
+    // Test that a large kernel is convolved correctly when the FFT is chosen
+    @Test
+    public void testConvolutionWithLargeKernel64() {
+        Matrix backing = new Matrix(200, 200, -1.0, 1.0);
+        Matrix matrix = new Matrix(backing.getData(), 201, 200, 150, 180);
+        Matrix kernel = new Matrix(64, 64, -1.0, 1.0);
+        Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+        Matrix result = Matrix.convolution(matrix, kernel);
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertArrayEquals(expected.getRow(i), result.getRow(i), 1e-10 * 64 * 64,
+                "Convolution with a large kernel does not match the direct loop");
+        }
+    }
+
+    // Test the Winograd convolution of 3x3 kernels for both tile sizes and edge tiles
+    @Test
+    public void testConvolution3x3MatchesDirect() {
+        int[][] shapes = {{4, 4}, {5, 9}, {6, 6}, {11, 13}, {64, 64}, {301, 258}};
+        for (int[] shape : shapes) {
+            Matrix matrix = new Matrix(shape[0], shape[1], -1.0, 1.0);
+            Matrix kernel = new Matrix(3, 3, -1.0, 1.0);
+            Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+            Matrix result = Matrix.convolution(matrix, kernel);
+            for (int i = 0; i < expected.getRows(); i++) {
+                assertArrayEquals(expected.getRow(i), result.getRow(i), 1e-12,
+                    "3x3 convolution does not match the direct loop");
+            }
+        }
+    }
+
+    // Test that a changed kernel is transformed again instead of read from the cache
+    @Test
+    public void testConvolution3x3AfterKernelChange() {
+        Matrix matrix = new Matrix(10, 10, -1.0, 1.0);
+        Matrix kernel = new Matrix(3, 3, -1.0, 1.0);
+        Matrix.convolution(matrix, kernel);
+
+        kernel.set(1, 2, 5.0);
+        Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+        Matrix result = Matrix.convolution(matrix, kernel);
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertArrayEquals(expected.getRow(i), result.getRow(i), 1e-12,
+                "3x3 convolution used the transform of the old kernel");
+        }
+    }
 }
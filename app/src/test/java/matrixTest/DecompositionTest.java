@@ -0,0 +1,165 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.CholeskyDecomposition;
+import matrix.LUDecomposition;
+import matrix.Matrix;
+import matrix.Vector;
+
+public class DecompositionTest {
+
+    // Returns the largest absolute difference between two matrices
+    private static double maxAbsDifference(Matrix expected, Matrix actual) {
+        Matrix difference = Matrix.subtract(expected, actual);
+        return Math.max(difference.max(), Matrix.scale(difference, -1).max());
+    }
+
+    private static Matrix identity(int size) {
+        Matrix identity = new Matrix(size, size);
+        for (int i = 0; i < size; i++) {
+            identity.set(i, i, 1);
+        }
+        return identity;
+    }
+
+    // Returns X^T * X + size * I, which is symmetric positive definite
+    private static Matrix spd(int size, long seed) {
+        Matrix x = Matrix.uniform(size, size, -1.0, 1.0, seed);
+        Matrix result = Matrix.multiplyTransposeA(x, x);
+        result.addInPlace(Matrix.scale(identity(size), size));
+        return result;
+    }
+
+    // Test a small system whose solution is known
+    @Test
+    public void testSmallSystem() {
+        Matrix a = new Matrix(new double[][]{{2, 1, 1}, {4, -6, 0}, {-2, 7, 2}});
+        Vector b = Vector.wrap(new double[]{5, -2, 9});
+        assertArrayEquals(new double[]{1, 1, 2}, a.lu().solve(b).toArray(), 1e-12);
+        assertEquals(-16, a.determinant(), 1e-12);
+    }
+
+    // Test that P * A = L * U with a zero leading element that needs a row swap
+    @Test
+    public void testPivoting() {
+        Matrix a = new Matrix(new double[][]{{0, 1, 2}, {3, 4, 5}, {6, 7, 9}});
+        LUDecomposition lu = a.lu();
+        assertFalse(lu.isSingular());
+        Matrix permuted = new Matrix(3, 3);
+        int[] pivot = lu.getPivot();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                permuted.set(i, j, a.get(pivot[i], j));
+            }
+        }
+        assertTrue(maxAbsDifference(permuted, Matrix.multiply(lu.getL(), lu.getU())) < 1e-12);
+        assertEquals(-3, lu.determinant(), 1e-12);
+        assertArrayEquals(new double[]{1, 1, 1},
+            lu.solve(Vector.wrap(new double[]{3, 12, 22})).toArray(), 1e-12);
+    }
+
+    // Test systems larger than one panel, with many right hand sides
+    @Test
+    public void testLargeSystem() {
+        int[] sizes = {63, 64, 65, 300};
+        for (int size : sizes) {
+            Matrix a = Matrix.uniform(size, size, -1.0, 1.0, size);
+            Matrix expected = Matrix.uniform(size, 70, -1.0, 1.0, size + 1);
+            Matrix b = Matrix.multiply(a, expected);
+            assertTrue(maxAbsDifference(expected, Matrix.solve(a, b)) < 1e-8);
+
+            LUDecomposition lu = a.lu();
+            Matrix product = Matrix.multiply(lu.getL(), lu.getU());
+            int[] pivot = lu.getPivot();
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    assertEquals(a.get(pivot[i], j), product.get(i, j), 1e-12);
+                }
+            }
+        }
+    }
+
+    // Test that the inverse times the matrix is the identity
+    @Test
+    public void testInverse() {
+        Matrix a = Matrix.uniform(150, 150, -1.0, 1.0, 3);
+        assertTrue(maxAbsDifference(identity(150), Matrix.multiply(a.inverse(), a)) < 1e-9);
+        Matrix small = new Matrix(new double[][]{{4, 7}, {2, 6}});
+        assertArrayEquals(new double[]{0.6, -0.7}, small.inverse().getRow(0), 1e-12);
+        assertArrayEquals(new double[]{-0.2, 0.4}, small.inverse().getRow(1), 1e-12);
+    }
+
+    // Test that a singular matrix is detected and cannot be solved
+    @Test
+    public void testSingular() {
+        Matrix a = new Matrix(new double[][]{{1, 2, 3}, {2, 4, 6}, {1, 0, 1}});
+        LUDecomposition lu = a.lu();
+        assertTrue(lu.isSingular());
+        assertEquals(0, Math.abs(lu.determinant()));
+        assertThrows(IllegalArgumentException.class, () -> lu.solve(new Vector(3)));
+        assertThrows(IllegalArgumentException.class, () -> a.inverse());
+        assertThrows(IllegalArgumentException.class, () -> new Matrix(2, 3).lu());
+        assertThrows(IllegalArgumentException.class, () -> lu.solve(new Vector(4)));
+        assertThrows(NullPointerException.class, () -> Matrix.solve(a, null));
+    }
+
+    // Test that L * L^T is the matrix, and that only its lower triangle is read
+    @Test
+    public void testCholesky() {
+        int[] sizes = {5, 64, 130, 300};
+        for (int size : sizes) {
+            Matrix a = spd(size, size);
+            Matrix lower = Matrix.add(a, new Matrix(size, size));
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    lower.set(i, j, 1e6);
+                }
+            }
+            CholeskyDecomposition cholesky = lower.cholesky();
+            Matrix l = cholesky.getL();
+            assertEquals(0, l.get(0, size - 1));
+            assertTrue(maxAbsDifference(a, Matrix.multiplyTransposeB(l, l)) < 1e-9 * size);
+
+            Matrix expected = Matrix.uniform(size, 3, -1.0, 1.0, size + 1);
+            Matrix b = Matrix.multiply(a, expected);
+            assertTrue(maxAbsDifference(expected, cholesky.solve(b)) < 1e-10);
+            assertTrue(maxAbsDifference(identity(size),
+                Matrix.multiply(cholesky.inverse(), a)) < 1e-10);
+        }
+        Matrix small = new Matrix(new double[][]{{4, 2}, {2, 3}});
+        assertEquals(8, small.cholesky().determinant(), 1e-12);
+        assertArrayEquals(new double[]{2, 0}, small.cholesky().getL().getRow(0), 1e-12);
+    }
+
+    // Test that a matrix that is not positive definite is rejected
+    @Test
+    public void testNotPositiveDefinite() {
+        Matrix a = new Matrix(new double[][]{{1, 2}, {2, 1}});
+        assertThrows(IllegalArgumentException.class, () -> a.cholesky());
+        assertThrows(IllegalArgumentException.class, () -> new Matrix(3, 2).cholesky());
+    }
+
+    // Test that a factorization split across threads gives exactly the
+    // sequential result
+    @Test
+    public void testParallelMatchesSequential() {
+        int parallelism = Matrix.getParallelism();
+        boolean deterministic = Matrix.isDeterministic();
+        try {
+            Matrix.setDeterministic(true);
+            Matrix a = Matrix.uniform(400, 400, -1.0, 1.0, 11);
+            Matrix s = spd(400, 12);
+            Matrix.setParallelism(1);
+            Matrix inverse = a.inverse();
+            Matrix l = s.cholesky().getL();
+            Matrix.setParallelism(4);
+            assertArrayEquals(inverse.getData(), a.inverse().getData());
+            assertArrayEquals(l.getData(), s.cholesky().getL().getData());
+        } finally {
+            Matrix.setParallelism(parallelism);
+            Matrix.setDeterministic(deterministic);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.Vector;
+
+public class ElementWiseKernelTest {
+    // Test the element wise operations on a length that does not fill the
+    // last group of SIMD lanes, on both contiguous and strided matrices
+    @Test
+    public void testElementWiseOperationsOddLength() {
+        Matrix matrixA = new Matrix(7, 13, -1.0, 1.0);
+        Matrix matrixB = new Matrix(7, 13, -1.0, 1.0);
+        Matrix viewA = new Matrix(matrixA.getData(), 1, 13, 6, 11);
+        Matrix viewB = new Matrix(matrixB.getData(), 2, 13, 6, 11);
+
+        for (Matrix[] pair : new Matrix[][]{{matrixA, matrixB}, {viewA, viewB}}) {
+            Matrix a = pair[0];
+            Matrix b = pair[1];
+            Matrix sum = Matrix.add(a, b);
+            Matrix difference = Matrix.subtract(a, b);
+            Matrix product = Matrix.elementWiseMultiply(a, b);
+            Matrix scaled = Matrix.scale(a, -3.5);
+            for (int i = 0; i < a.getRows(); i++) {
+                for (int j = 0; j < a.getColumns(); j++) {
+                    assertEquals(a.get(i, j) + b.get(i, j), sum.get(i, j));
+                    assertEquals(a.get(i, j) - b.get(i, j), difference.get(i, j));
+                    assertEquals(a.get(i, j) * b.get(i, j), product.get(i, j));
+                    assertEquals(a.get(i, j) * -3.5, scaled.get(i, j));
+                }
+            }
+        }
+    }
+
+    // Test the dot product on a length that does not fill the last group of
+    // SIMD lanes
+    @Test
+    public void testDotProductOddLength() {
+        double[] values1 = new double[1001];
+        double[] values2 = new double[1001];
+        double expected = 0;
+        for (int i = 0; i < values1.length; i++) {
+            values1[i] = Math.sin(i);
+            values2[i] = Math.cos(i);
+            expected += values1[i] * values2[i];
+        }
+
+        double result = Vector.dotProduct(new Vector(values1), new Vector(values2));
+
+        assertEquals(expected, result, 1e-9);
+    }
+}
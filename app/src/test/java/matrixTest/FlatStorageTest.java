@@ -0,0 +1,91 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+
+public class FlatStorageTest {
+    // Test that a 2d array is stored in a single row-major array
+    @Test
+    public void testRowMajorLayout() {
+        Matrix matrix = new Matrix(new double[][]{
+            {1, 2, 3},
+            {4, 5, 6}
+        });
+
+        assertEquals(0, matrix.getOffset());
+        assertEquals(3, matrix.getStride());
+        assertTrue(matrix.isContiguous());
+        assertArrayEquals(new double[]{1, 2, 3, 4, 5, 6}, matrix.getData());
+    }
+
+    // Test that wrapping a flat array does not copy it
+    @Test
+    public void testWrapFlatArray() {
+        double[] data = {1, 2, 3, 4};
+        Matrix matrix = new Matrix(data, 2, 2);
+
+        data[3] = 10;
+        assertEquals(10, matrix.get(1, 1));
+        matrix.set(0, 1, 7);
+        assertEquals(7, data[1]);
+    }
+
+    // Test a view over a block of a larger array using an offset and stride
+    @Test
+    public void testStridedView() {
+        double[] data = {
+            1, 2, 3, 4,
+            5, 6, 7, 8,
+            9, 10, 11, 12
+        };
+        Matrix view = new Matrix(data, 5, 4, 2, 2);
+
+        assertFalse(view.isContiguous());
+        assertArrayEquals(new double[][]{{6, 7}, {10, 11}}, view.get());
+        assertArrayEquals(new double[]{7, 11}, view.getColumn(1));
+
+        Matrix sum = Matrix.add(view, new Matrix(2, 2, 1.0));
+        assertArrayEquals(new double[][]{{7, 8}, {11, 12}}, sum.get());
+
+        Matrix product = Matrix.multiply(view, new Matrix(new double[][]{{1}, {1}}));
+        assertArrayEquals(new double[][]{{13}, {21}}, product.get());
+
+        view.scale(2);
+        assertArrayEquals(new double[]{
+            1, 2, 3, 4,
+            5, 12, 14, 8,
+            9, 20, 22, 12
+        }, data);
+    }
+
+    // Test that the 2d array returned by get is a copy of the matrix
+    @Test
+    public void testGetReturnsCopy() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        double[][] copy = matrix.get();
+        copy[0][0] = 100;
+
+        assertEquals(1, matrix.get(0, 0));
+    }
+
+    // Test that invalid views are rejected
+    @Test
+    public void testInvalidView() {
+        double[] data = new double[6];
+        assertThrows(IllegalArgumentException.class, () -> new Matrix(data, 0, 1, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new Matrix(data, 3, 3, 2, 3));
+        assertThrows(NullPointerException.class, () -> new Matrix((double[]) null, 2, 3));
+    }
+
+    // Test that ragged 2d arrays are rejected
+    @Test
+    public void testRaggedArray() {
+        double[][] ragged = {
+            {1, 2},
+            {3}
+        };
+        assertThrows(IllegalArgumentException.class, () -> new Matrix(ragged));
+    }
+}
@@ -0,0 +1,92 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.FloatMatrix;
+import matrix.FloatVector;
+import matrix.Matrix;
+import matrix.Vector;
+
+public class FloatMatrixTest {
+    // Helper to compare a float matrix with a double matrix
+    private static void assertClose(Matrix expected, FloatMatrix actual, double epsilon) {
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getColumns(), actual.getColumns());
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getColumns(); j++) {
+                assertEquals(expected.get(i, j), actual.get(i, j), epsilon);
+            }
+        }
+    }
+
+    // Test converting between float and double matrices
+    @Test
+    public void testConversion() {
+        Matrix matrix = new Matrix(new double[][]{{1.5, -2}, {0.1, 4}});
+        FloatMatrix floatMatrix = new FloatMatrix(matrix);
+
+        assertArrayEquals(new float[][]{{1.5f, -2f}, {0.1f, 4f}}, floatMatrix.get());
+        assertArrayEquals(new double[][]{{1.5, -2}, {(double) 0.1f, 4}}, floatMatrix.toMatrix().get());
+
+        Vector vector = new Vector(new double[]{1, 2, 3});
+        assertArrayEquals(vector.toArray(), new FloatVector(vector).toVector().toArray());
+    }
+
+    // Test the float operations against the double operations
+    @Test
+    public void testOperationsMatchDouble() {
+        FloatMatrix matrixA = new FloatMatrix(23, 31, -1f, 1f);
+        FloatMatrix matrixB = new FloatMatrix(31, 17, -1f, 1f);
+        FloatMatrix matrixC = new FloatMatrix(23, 31, -1f, 1f);
+        Matrix doubleA = matrixA.toMatrix();
+        Matrix doubleB = matrixB.toMatrix();
+        Matrix doubleC = matrixC.toMatrix();
+
+        assertClose(Matrix.multiply(doubleA, doubleB), FloatMatrix.multiply(matrixA, matrixB), 1e-4);
+        assertClose(Matrix.multiplyTransposeA(doubleA, doubleC), FloatMatrix.multiplyTransposeA(matrixA, matrixC), 1e-4);
+        assertClose(Matrix.multiplyTransposeB(doubleA, doubleC), FloatMatrix.multiplyTransposeB(matrixA, matrixC), 1e-4);
+        assertClose(Matrix.add(doubleA, doubleC), FloatMatrix.add(matrixA, matrixC), 1e-6);
+        assertClose(Matrix.subtract(doubleA, doubleC), FloatMatrix.subtract(matrixA, matrixC), 1e-6);
+        assertClose(Matrix.elementWiseMultiply(doubleA, doubleC), FloatMatrix.elementWiseMultiply(matrixA, matrixC), 1e-6);
+        assertClose(Matrix.scale(doubleA, 0.5), FloatMatrix.scale(matrixA, 0.5f), 1e-6);
+        assertClose(doubleA.T(), matrixA.T(), 0);
+        assertClose(Matrix.convolution(doubleA, doubleB.T()), FloatMatrix.convolution(matrixA, matrixB.T()), 1e-4);
+    }
+
+    // Test the mixed precision products and outer product update
+    @Test
+    public void testMixedPrecision() {
+        FloatMatrix weights = new FloatMatrix(40, 25, -1f, 1f);
+        Matrix doubleWeights = weights.toMatrix();
+        Vector input = new Vector(new Matrix(25, 1, -1.0, 1.0).get());
+        Vector grad = new Vector(new Matrix(40, 1, -1.0, 1.0).get());
+
+        assertArrayEquals(Vector.multiply(doubleWeights, input).toArray(),
+            FloatVector.multiply(weights, input).toArray(), 1e-12);
+        assertArrayEquals(Vector.multiplyTranspose(doubleWeights, grad).toArray(),
+            FloatVector.multiplyTranspose(weights, grad).toArray(), 1e-12);
+
+        Matrix batch = new Matrix(25, 6, -1.0, 1.0);
+        Matrix result = new Matrix(40, 6);
+        FloatMatrix.multiplyInto(weights, batch, result);
+        assertArrayEquals(Matrix.multiply(doubleWeights, batch).get()[5], result.get()[5], 1e-12);
+
+        weights.addOuterProductInPlace(-0.1, grad, input);
+        Matrix expected = Matrix.subtract(doubleWeights,
+            Matrix.scale(Matrix.multiplyTransposeB(grad, input), 0.1));
+        assertClose(expected, weights, 1e-6);
+    }
+
+    // Test that invalid shapes are rejected
+    @Test
+    public void testInvalidShapes() {
+        FloatMatrix matrixA = new FloatMatrix(2, 3);
+        FloatMatrix matrixB = new FloatMatrix(2, 3);
+
+        assertThrows(IllegalArgumentException.class, () -> FloatMatrix.multiply(matrixA, matrixB));
+        assertThrows(IllegalArgumentException.class, () -> FloatMatrix.add(matrixA, new FloatMatrix(3, 2)));
+        assertThrows(IllegalArgumentException.class, () -> FloatMatrix.multiplyInto(matrixA, new Matrix(2, 1), new Matrix(2, 1)));
+        assertThrows(IllegalArgumentException.class, () -> FloatMatrix.multiplyInto(matrixA, matrixA, matrixA));
+    }
+}
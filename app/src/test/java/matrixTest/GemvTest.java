@@ -0,0 +1,87 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.Vector;
+
+public class GemvTest {
+
+    // Multiplies with three nested loops as a reference
+    private static double[] reference(Matrix matrix, Matrix vector) {
+        double[] result = new double[matrix.getRows()];
+        for (int i = 0; i < matrix.getRows(); i++) {
+            double sum = 0;
+            for (int k = 0; k < matrix.getColumns(); k++) {
+                sum += matrix.get(i, k) * vector.get(k, 0);
+            }
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    // Test shapes around the groups of four rows and the vector length
+    @Test
+    public void testShapes() {
+        int[] sizes = {1, 3, 4, 5, 17, 64, 131};
+        for (int rows : sizes) {
+            for (int columns : sizes) {
+                Matrix matrix = new Matrix(rows, columns, -1.0, 1.0);
+                Vector vector = new Vector(new Matrix(columns, 1, -1.0, 1.0).get());
+                assertArrayEquals(reference(matrix, vector),
+                    Vector.multiply(matrix, vector).toArray(), 1e-12);
+            }
+        }
+    }
+
+    // Test strided vectors, results and matrices
+    @Test
+    public void testViews() {
+        Matrix big = new Matrix(60, 50, -1.0, 1.0);
+        Matrix matrix = big.submatrix(3, 5, 41, 30);
+        Vector x = new Matrix(30, 3, -1.0, 1.0).column(1);
+        Matrix result = new Matrix(41, 2);
+        Matrix.multiplyInto(matrix, x, result.submatrix(0, 1, 41, 1));
+        assertArrayEquals(reference(matrix, x), result.getColumn(1), 1e-12);
+
+        Matrix row = new Matrix(1, 30, -1.0, 1.0);
+        Vector product = new Vector(41);
+        Matrix.multiplyInto(matrix, row.transposedView(), product);
+        assertArrayEquals(reference(matrix, row.T()), product.toArray(), 1e-12);
+    }
+
+    // Test that the bias of an affine product is added to every row
+    @Test
+    public void testAffine() {
+        Matrix weights = new Matrix(23, 9, -1.0, 1.0);
+        Vector input = new Vector(new Matrix(9, 1, -1.0, 1.0).get());
+        Vector bias = new Vector(new Matrix(23, 1, -1.0, 1.0).get());
+        Vector output = new Vector(23);
+        Matrix.affineInto(weights, input, bias, null, null, output);
+        double[] expected = reference(weights, input);
+        for (int i = 0; i < 23; i++) {
+            expected[i] += bias.get(i);
+        }
+        assertArrayEquals(expected, output.toArray(), 1e-12);
+    }
+
+    // Test that a tall product split across threads gives exactly the
+    // sequential result
+    @Test
+    public void testParallelMatchesSequential() {
+        int parallelism = Matrix.getParallelism();
+        try {
+            Matrix matrix = new Matrix(2003, 301, -1.0, 1.0);
+            Vector vector = new Vector(new Matrix(301, 1, -1.0, 1.0).get());
+            Matrix.setParallelism(1);
+            double[] sequential = Vector.multiply(matrix, vector).toArray();
+            Matrix.setParallelism(4);
+            double[] parallel = Vector.multiply(matrix, vector).toArray();
+            assertArrayEquals(sequential, parallel);
+            assertArrayEquals(reference(matrix, vector), parallel, 1e-11);
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+    }
+}
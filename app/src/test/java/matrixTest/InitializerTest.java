@@ -0,0 +1,69 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import layer.Dense;
+import matrix.Matrix;
+
+public class InitializerTest {
+
+    // Test that a seed gives the same values for any parallelism level
+    @Test
+    public void testSeedIsReproducible() {
+        int parallelism = Matrix.getParallelism();
+        try {
+            Matrix.setParallelism(1);
+            Matrix uniform = Matrix.uniform(300, 700, -2.0, 3.0, 42);
+            Matrix normal = Matrix.normal(301, 699, 1.0, 0.5, 42);
+            Matrix.setParallelism(4);
+            assertArrayEquals(uniform.getData(), Matrix.uniform(300, 700, -2.0, 3.0, 42).getData());
+            assertArrayEquals(normal.getData(), Matrix.normal(301, 699, 1.0, 0.5, 42).getData());
+            Matrix.setParallelism(3);
+            assertArrayEquals(uniform.getData(), Matrix.uniform(300, 700, -2.0, 3.0, 42).getData());
+
+            Matrix other = Matrix.uniform(300, 700, -2.0, 3.0, 43);
+            assertTrue(other.get(0, 0) != uniform.get(0, 0));
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+    }
+
+    // Test the range and moments of the distributions
+    @Test
+    public void testDistributions() {
+        Matrix uniform = Matrix.uniform(500, 400, -2.0, 3.0, 7);
+        assertTrue(uniform.max() < 3.0);
+        assertTrue(Matrix.scale(uniform, -1).max() <= 2.0);
+        assertEquals(0.5, uniform.sum() / 200000, 0.02);
+
+        Matrix normal = Matrix.normal(500, 400, 1.0, 0.5, 7);
+        double mean = normal.sum() / 200000;
+        assertEquals(1.0, mean, 0.01);
+        Matrix centered = Matrix.subtract(normal, new Matrix(500, 400, mean));
+        assertEquals(0.5, centered.normL2() / Math.sqrt(200000), 0.01);
+
+        double he = Math.sqrt(6.0 / 400);
+        assertTrue(Matrix.he(500, 400, 1).max() < he);
+        assertTrue(Matrix.he(500, 400, 1).max() > he * 0.99);
+        double xavier = Math.sqrt(6.0 / 900);
+        assertTrue(Matrix.xavier(500, 400, 1).max() < xavier);
+        assertTrue(Matrix.xavier(500, 400, 1).max() > xavier * 0.99);
+
+        assertThrows(IllegalArgumentException.class, () -> Matrix.uniform(2, 2, 1.0, 1.0, 0));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.normal(2, 2, 0, -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.he(0, 2, 0));
+    }
+
+    // Test that a seeded dense layer is reproducible, including layers with
+    // more than 6 inputs
+    @Test
+    public void testSeededDense() {
+        Dense dense = new Dense(100, 20, 5);
+        assertArrayEquals(Matrix.he(20, 100, 5).getData(), dense.getWeights().getData());
+        assertArrayEquals(dense.getWeights().getData(), new Dense(100, 20, 5).getWeights().getData());
+        assertTrue(dense.getWeights().normL1() > 0);
+        assertEquals(0, dense.getBias().normL1());
+        assertEquals(100, new Dense(100, 20).getInputSize());
+    }
+}
@@ -0,0 +1,121 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.Vector;
+
+public class IntoTest {
+    // Test that the into variants write to the given result matrix
+    @Test
+    public void testIntoVariants() {
+        Matrix matrixA = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        Matrix matrixB = new Matrix(new double[][]{{5, 6}, {7, 8}});
+        Matrix result = new Matrix(2, 2);
+
+        Matrix.addInto(matrixA, matrixB, result);
+        assertArrayEquals(new double[][]{{6, 8}, {10, 12}}, result.get());
+
+        Matrix.subtractInto(matrixA, matrixB, result);
+        assertArrayEquals(new double[][]{{-4, -4}, {-4, -4}}, result.get());
+
+        Matrix.elementWiseMultiplyInto(matrixA, matrixB, result);
+        assertArrayEquals(new double[][]{{5, 12}, {21, 32}}, result.get());
+
+        Matrix.scaleInto(matrixA, 2, result);
+        assertArrayEquals(new double[][]{{2, 4}, {6, 8}}, result.get());
+
+        Matrix.multiplyInto(matrixA, matrixB, result);
+        assertArrayEquals(new double[][]{{19, 22}, {43, 50}}, result.get());
+
+        Matrix.transposeInto(matrixA, result);
+        assertArrayEquals(new double[][]{{1, 3}, {2, 4}}, result.get());
+    }
+
+    // Test the in place operations
+    @Test
+    public void testInPlace() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        Matrix other = new Matrix(new double[][]{{1, 1}, {2, 2}});
+
+        matrix.addInPlace(other);
+        assertArrayEquals(new double[][]{{2, 3}, {5, 6}}, matrix.get());
+
+        matrix.subtractInPlace(other);
+        assertArrayEquals(new double[][]{{1, 2}, {3, 4}}, matrix.get());
+
+        matrix.elementWiseMultiplyInPlace(other);
+        assertArrayEquals(new double[][]{{1, 2}, {6, 8}}, matrix.get());
+
+        matrix.scaleInPlace(0.5);
+        assertArrayEquals(new double[][]{{0.5, 1}, {3, 4}}, matrix.get());
+    }
+
+    // Test that the product of a matrix and vector can be written to a vector
+    @Test
+    public void testMultiplyIntoVector() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2}, {3, 4}, {5, 6}});
+        Vector vector = new Vector(new double[]{1, -1});
+        Vector result = new Vector(3);
+
+        Matrix.multiplyInto(matrix, vector, result);
+
+        assertArrayEquals(new double[]{-1, -1, -1}, result.toArray());
+    }
+
+    // Test that a result of the wrong shape is rejected
+    @Test
+    public void testInvalidResultShape() {
+        Matrix matrixA = new Matrix(2, 3);
+        Matrix matrixB = new Matrix(3, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> Matrix.multiplyInto(matrixA, matrixB, new Matrix(3, 3)));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.addInto(matrixA, matrixA, new Matrix(3, 2)));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.transposeInto(matrixA, new Matrix(2, 3)));
+        assertThrows(NullPointerException.class, () -> Matrix.scaleInto(matrixA, 2, null));
+    }
+
+    // Test that a product cannot be written over one of its operands
+    @Test
+    public void testMultiplyIntoOperand() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2}, {3, 4}});
+
+        assertThrows(IllegalArgumentException.class, () -> Matrix.multiplyInto(matrix, matrix, matrix));
+    }
+
+    // Test that an outer product is added in place, including to a strided
+    // view and with a strided column, and across threads
+    @Test
+    public void testAddOuterProductInPlace() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        matrix.addOuterProductInPlace(2, Vector.wrap(new double[]{1, -1}),
+            Vector.wrap(new double[]{1, 0, 2}));
+        assertArrayEquals(new double[][]{{3, 2, 7}, {2, 5, 2}}, matrix.get());
+
+        Matrix big = new Matrix(4, 4);
+        Matrix columns = new Matrix(new double[][]{{1, 3}, {2, 4}});
+        big.submatrix(1, 1, 2, 2).addOuterProductInPlace(1, columns.column(0), columns.column(1));
+        assertArrayEquals(new double[][]{{0, 0, 0, 0}, {0, 3, 4, 0}, {0, 6, 8, 0}, {0, 0, 0, 0}},
+            big.get());
+
+        int parallelism = Matrix.getParallelism();
+        try {
+            Matrix weights = new Matrix(700, 500, -1.0, 1.0);
+            Matrix expected = Matrix.add(weights, new Matrix(700, 500));
+            Vector x = new Vector(new Matrix(700, 1, -1.0, 1.0).get());
+            Vector y = new Vector(new Matrix(500, 1, -1.0, 1.0).get());
+            expected.subtractInPlace(Matrix.scale(Matrix.multiplyTransposeB(x, y), 0.5));
+            Matrix.setParallelism(4);
+            weights.addOuterProductInPlace(-0.5, x, y);
+            assertArrayEquals(expected.getData(), weights.getData(), 1e-12);
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+
+        assertThrows(IllegalArgumentException.class,
+            () -> matrix.addOuterProductInPlace(1, new Vector(3), new Vector(3)));
+        assertThrows(NullPointerException.class,
+            () -> matrix.addOuterProductInPlace(1, null, new Vector(3)));
+    }
+}
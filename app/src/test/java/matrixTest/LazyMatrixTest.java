@@ -0,0 +1,106 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.LazyMatrix;
+import matrix.Matrix;
+import matrix.OffHeapMatrix;
+
+public class LazyMatrixTest {
+
+    // Test an update rule evaluated into one of its own operands
+    @Test
+    public void testUpdateRuleInPlace() {
+        Matrix weights = new Matrix(37, 29, -1.0, 1.0);
+        Matrix grad = new Matrix(37, 29, -1.0, 1.0);
+        Matrix expected = Matrix.subtract(weights, Matrix.scale(grad, 0.1));
+
+        weights.lazy().minus(grad.lazy().times(0.1)).evalInto(weights);
+
+        assertArrayEquals(expected.getData(), weights.getData());
+    }
+
+    // Test a deeper expression with every operation against the eager operations
+    @Test
+    public void testNestedExpression() {
+        Matrix a = new Matrix(20, 700, -1.0, 1.0);
+        Matrix b = new Matrix(20, 700, -1.0, 1.0);
+        Matrix c = new Matrix(20, 700, -1.0, 1.0);
+
+        LazyMatrix expression = a.lazy().plus(b.lazy())
+            .times(c.lazy().minus(a.lazy().times(2.0)))
+            .map(Math::tanh)
+            .plus(b.lazy().times(c.lazy()).times(-0.5));
+        Matrix result = expression.eval();
+
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 700; j++) {
+                double x = Math.tanh((a.get(i, j) + b.get(i, j)) * (c.get(i, j) - a.get(i, j) * 2.0))
+                    + b.get(i, j) * c.get(i, j) * -0.5;
+                assertEquals(x, result.get(i, j), 1e-15);
+            }
+        }
+    }
+
+    // Test expressions over views that are not contiguous and off-heap matrices
+    @Test
+    public void testViewsAndOffHeapResult() {
+        Matrix backing = new Matrix(30, 30, -1.0, 1.0);
+        Matrix view = new Matrix(backing.getData(), 31, 30, 10, 12);
+        Matrix other = new Matrix(10, 12, -1.0, 1.0);
+        Matrix expected = Matrix.elementWiseMultiply(view, other);
+
+        try (OffHeapMatrix result = new OffHeapMatrix(10, 12)) {
+            view.lazy().times(other.lazy()).evalInto(result);
+            assertArrayEquals(expected.getData(), result.toMatrix().getData());
+
+            result.lazy().minus(other.lazy()).evalInto(result);
+            assertArrayEquals(Matrix.subtract(expected, other).getData(), result.toMatrix().getData());
+        }
+    }
+
+    // Test an update rule over off-heap weights that span several blocks of
+    // rows, evaluated into the weights and into a matrix on the heap
+    @Test
+    public void testOffHeapBlocks() {
+        Matrix weights = new Matrix(700, 300, -1.0, 1.0);
+        Matrix grad = new Matrix(700, 300, -1.0, 1.0);
+        Matrix square = new Matrix(300, 700, -1.0, 1.0);
+        Matrix expected = Matrix.add(Matrix.subtract(weights, Matrix.scale(grad, 0.1)), square.T());
+
+        try (OffHeapMatrix offHeapWeights = new OffHeapMatrix(weights)) {
+            Matrix onHeap = offHeapWeights.lazy().minus(grad.lazy().times(0.1))
+                .plus(square.transposedView().lazy()).eval();
+            assertArrayEquals(expected.getData(), onHeap.getData(), 1e-15);
+
+            offHeapWeights.lazy().minus(grad.lazy().times(0.1))
+                .plus(square.transposedView().lazy()).evalInto(offHeapWeights);
+            assertArrayEquals(expected.getData(), offHeapWeights.toMatrix().getData(), 1e-15);
+        }
+    }
+
+    // Test that a reused expression reads the current values of its matrices
+    @Test
+    public void testEvaluatedAgain() {
+        Matrix a = new Matrix(3, 3, 1.0);
+        LazyMatrix doubled = a.lazy().times(2.0);
+        a.set(1, 1, 5.0);
+        assertEquals(10.0, doubled.eval().get(1, 1));
+    }
+
+    // Test that invalid shapes and overlapping results are rejected
+    @Test
+    public void testInvalidExpressions() {
+        Matrix a = new Matrix(3, 4);
+        Matrix b = new Matrix(4, 3);
+        assertThrows(IllegalArgumentException.class, () -> a.lazy().plus(b.lazy()));
+        assertThrows(IllegalArgumentException.class, () -> a.lazy().evalInto(b));
+        assertThrows(NullPointerException.class, () -> a.lazy().minus(null));
+
+        Matrix backing = new Matrix(5, 5);
+        Matrix top = new Matrix(backing.getData(), 0, 5, 4, 5);
+        Matrix bottom = new Matrix(backing.getData(), 5, 5, 4, 5);
+        assertThrows(IllegalArgumentException.class, () -> top.lazy().times(2.0).evalInto(bottom));
+    }
+}
@@ -0,0 +1,163 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import matrix.Matrix;
+import matrix.OffHeapMatrix;
+
+public class MatrixFileTest {
+
+    private static void assertMatrixEquals(Matrix expected, Matrix actual) {
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getColumns(), actual.getColumns());
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertArrayEquals(expected.getRow(i), actual.getRow(i));
+        }
+    }
+
+    // Test that saved matrices and views load with the same values
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            Matrix matrix = new Matrix(300, 500, -1.0, 1.0);
+            matrix.save(path);
+            assertEquals(64 + 300 * 500 * 8, Files.size(path));
+            assertMatrixEquals(matrix, Matrix.load(path));
+
+            Matrix block = matrix.submatrix(10, 20, 50, 70);
+            block.save(path);
+            assertMatrixEquals(block, Matrix.load(path));
+
+            Matrix view = block.transposedView();
+            view.save(path);
+            assertMatrixEquals(view, Matrix.load(path));
+
+            try (OffHeapMatrix offHeap = new OffHeapMatrix(matrix)) {
+                offHeap.save(path);
+            }
+            assertMatrixEquals(matrix, Matrix.load(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // Test that a mapped file reads the saved values and cannot be written
+    @Test
+    public void testMmap() throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            Matrix matrix = new Matrix(40, 25, -1.0, 1.0);
+            matrix.save(path);
+            try (OffHeapMatrix mapped = Matrix.mmap(path)) {
+                assertMatrixEquals(matrix, mapped);
+                assertThrows(ReadOnlyBufferException.class, () -> mapped.set(0, 0, 1));
+
+                Matrix other = new Matrix(25, 10, -1.0, 1.0);
+                assertMatrixEquals(Matrix.multiply(matrix, other), Matrix.multiply(mapped, other));
+                assertEquals(matrix.sum(), mapped.sum());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // Test that writes to a writable mapping are saved to the file
+    @Test
+    public void testWritableMmap() throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            Matrix matrix = new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+            matrix.save(path);
+            OffHeapMatrix mapped = Matrix.mmap(path, true);
+            mapped.set(1, 2, -6);
+            mapped.scaleInPlace(2);
+            mapped.close();
+            assertTrue(mapped.isClosed());
+            assertThrows(IllegalStateException.class, () -> mapped.get(0, 0));
+
+            assertArrayEquals(new double[][]{{2, 4, 6}, {8, 10, -12}}, Matrix.load(path).get());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // Test that files in either byte order can be read
+    @Test
+    public void testByteOrder() throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            ByteOrder order = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ?
+                ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            ByteBuffer buffer = ByteBuffer.allocate(64 + 6 * 8).order(order);
+            buffer.put(new byte[]{'J', 'M', 'L', 'M', 1, 1});
+            buffer.put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 0 : 1)).put((byte) 0);
+            buffer.putLong(2).putLong(3).position(64);
+            for (int i = 1; i <= 6; i++) {
+                buffer.putDouble(i);
+            }
+            Files.write(path, buffer.array());
+
+            double[][] expected = {{1, 2, 3}, {4, 5, 6}};
+            assertArrayEquals(expected, Matrix.load(path).get());
+            try (OffHeapMatrix mapped = Matrix.mmap(path)) {
+                assertArrayEquals(expected, mapped.get());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // Test that invalid and truncated files are rejected
+    @Test
+    public void testInvalidFiles() throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            Files.write(path, new byte[100]);
+            assertThrows(IOException.class, () -> Matrix.load(path));
+            assertThrows(IOException.class, () -> Matrix.mmap(path));
+
+            new Matrix(10, 10, 1.0).save(path);
+            byte[] bytes = Files.readAllBytes(path);
+            Files.write(path, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+            assertThrows(IOException.class, () -> Matrix.load(path));
+            assertThrows(IOException.class, () -> Matrix.mmap(path));
+
+            bytes[5] = 2;
+            Files.write(path, bytes);
+            assertThrows(IOException.class, () -> Matrix.load(path));
+
+            assertThrows(NullPointerException.class, () -> Matrix.load(null));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // Test that a header whose shape overflows when multiplied is rejected
+    @Test
+    public void testCorruptShape() throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        try {
+            long[][] shapes = {{1L << 32, 1L << 32}, {1L << 32, 1}, {3, Long.MAX_VALUE}};
+            for (long[] shape : shapes) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 + 8).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.put(new byte[]{'J', 'M', 'L', 'M', 1, 1, 0, 0});
+                buffer.putLong(shape[0]).putLong(shape[1]).position(64);
+                buffer.putDouble(1);
+                Files.write(path, buffer.array());
+                assertThrows(IOException.class, () -> Matrix.load(path));
+                assertThrows(IOException.class, () -> Matrix.mmap(path));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import layer.Dense;
+import layer.Layer;
+import matrix.Matrix;
+import matrix.OffHeapMatrix;
+import matrix.SparseVector;
+import matrix.Tensor;
+import matrix.Vector;
+
+public class OffHeapMatrixTest {
+    // Test that the operations on an off-heap matrix match the operations on
+    // the same values on the heap, for a matrix split into several blocks
+    @Test
+    public void testOperationsMatchOnHeap() {
+        Matrix matrixA = new Matrix(300, 290, -1.0, 1.0);
+        Matrix matrixB = new Matrix(290, 40, -1.0, 1.0);
+        Matrix matrixC = new Matrix(300, 40, -1.0, 1.0);
+
+        try (OffHeapMatrix offHeapA = new OffHeapMatrix(matrixA);
+             OffHeapMatrix offHeapB = new OffHeapMatrix(matrixB);
+             OffHeapMatrix offHeapResult = new OffHeapMatrix(300, 40)) {
+            assertArrayEquals(matrixA.get(), offHeapA.get());
+
+            assertArrayEquals(Matrix.multiply(matrixA, matrixB).get(), Matrix.multiply(offHeapA, matrixB).get());
+            assertArrayEquals(Matrix.multiply(matrixA, matrixB).get(), Matrix.multiply(matrixA, offHeapB).get());
+            Matrix transposedProduct = Matrix.multiplyTransposeA(offHeapA, matrixC);
+            Matrix expectedProduct = Matrix.multiplyTransposeA(matrixA, matrixC);
+            for (int i = 0; i < expectedProduct.getRows(); i++) {
+                assertArrayEquals(expectedProduct.getRow(i), transposedProduct.getRow(i), 1e-12);
+            }
+            assertArrayEquals(Matrix.multiplyTransposeB(matrixA, matrixA).get(),
+                Matrix.multiplyTransposeB(offHeapA, matrixA).get());
+            assertArrayEquals(matrixA.T().get(), offHeapA.T().get());
+
+            Matrix.multiplyInto(matrixA, offHeapB, offHeapResult);
+            assertArrayEquals(Matrix.multiply(matrixA, matrixB).get(), offHeapResult.get());
+
+            offHeapResult.addInPlace(matrixC);
+            offHeapResult.scaleInPlace(0.5);
+            Matrix expected = Matrix.scale(Matrix.add(Matrix.multiply(matrixA, matrixB), matrixC), 0.5);
+            assertArrayEquals(expected.get(), offHeapResult.toMatrix().get());
+        }
+    }
+
+    // Test that a dense layer with off-heap weights trains like one with the
+    // same weights on the heap
+    @Test
+    public void testDenseWithOffHeapWeights() {
+        Layer.setLearningRate(0.1);
+        Matrix weights = new Matrix(5, 8, -1.0, 1.0);
+        Dense layer = new Dense(8, 5, weights, new Vector(5));
+        try (OffHeapMatrix offHeapWeights = new OffHeapMatrix(weights)) {
+            Dense offHeapLayer = new Dense(8, 5, offHeapWeights, new Vector(5));
+            Vector input = new Vector(new Matrix(8, 1, -1.0, 1.0).get());
+            Vector outputGrad = new Vector(new Matrix(5, 1, -1.0, 1.0).get());
+
+            assertArrayEquals(layer.forwardProp(input).toArray(), offHeapLayer.forwardProp(input).toArray());
+            assertArrayEquals(layer.backProp(new Vector(outputGrad.toArray())).toArray(),
+                offHeapLayer.backProp(new Vector(outputGrad.toArray())).toArray(), 1e-12);
+            assertArrayEquals(layer.getWeights().get(), offHeapLayer.getWeights().get());
+        }
+    }
+
+    // Test that backward propagation updates off-heap weights that span
+    // several blocks of rows to the same values as weights on the heap
+    @Test
+    public void testDenseBackPropUpdatesOffHeapWeights() {
+        double learningRate = Layer.getLearningRate();
+        try {
+            Layer.setLearningRate(0.05);
+            Matrix weights = new Matrix(300, 500, -1.0, 1.0);
+            Vector input = new Vector(new Matrix(500, 1, -1.0, 1.0).get());
+            Vector outputGrad = new Vector(new Matrix(300, 1, -1.0, 1.0).get());
+            Matrix expected = Matrix.subtract(weights,
+                Matrix.scale(Matrix.multiplyTransposeB(outputGrad, input), 0.05));
+            try (OffHeapMatrix offHeapWeights = new OffHeapMatrix(weights)) {
+                Dense layer = new Dense(500, 300, offHeapWeights, new Vector(300));
+                layer.forwardProp(input);
+                layer.backProp(new Vector(outputGrad.toArray()));
+                assertSame(offHeapWeights, layer.getWeights());
+                assertArrayEquals(expected.getData(), offHeapWeights.toMatrix().getData(), 1e-12);
+            }
+        } finally {
+            Layer.setLearningRate(learningRate);
+        }
+    }
+
+    // Test that backward propagation of a sparse input updates off-heap
+    // weights that span several blocks of rows like weights on the heap
+    @Test
+    public void testSparseBackPropUpdatesOffHeapWeights() {
+        double learningRate = Layer.getLearningRate();
+        try {
+            Layer.setLearningRate(0.05);
+            Matrix weights = new Matrix(300, 500, -1.0, 1.0);
+            double[] values = new double[500];
+            values[3] = 1;
+            values[250] = -0.5;
+            values[499] = 2;
+            Vector outputGrad = new Vector(new Matrix(300, 1, -1.0, 1.0).get());
+            Dense heapLayer = new Dense(500, 300, new Matrix(weights.get()), new Vector(300));
+            heapLayer.forwardProp(new SparseVector(new Vector(values)));
+            heapLayer.backProp(new Vector(outputGrad.toArray()));
+            try (OffHeapMatrix offHeapWeights = new OffHeapMatrix(weights)) {
+                Dense layer = new Dense(500, 300, offHeapWeights, new Vector(300));
+                layer.forwardProp(new SparseVector(new Vector(values)));
+                layer.backProp(new Vector(outputGrad.toArray()));
+                assertArrayEquals(heapLayer.getWeights().getData(),
+                    offHeapWeights.toMatrix().getData(), 1e-12);
+            }
+        } finally {
+            Layer.setLearningRate(learningRate);
+        }
+    }
+
+    // Test that a tensor cannot share the memory of an off-heap matrix but
+    // can be made from its copy on the heap
+    @Test
+    public void testToTensor() {
+        try (OffHeapMatrix matrix = new OffHeapMatrix(new Matrix(new double[][]{{1, 2}, {3, 4}}))) {
+            assertThrows(IllegalArgumentException.class, matrix::toTensor);
+            Tensor tensor = matrix.toMatrix().toTensor();
+            assertArrayEquals(new int[]{2, 2}, tensor.getShape());
+            assertEquals(3, tensor.get(1, 0));
+        }
+    }
+
+    // Test that a closed matrix cannot be used
+    @Test
+    public void testClose() {
+        OffHeapMatrix matrix = new OffHeapMatrix(2, 2);
+        matrix.set(0, 0, 1.0);
+        assertEquals(1.0, matrix.get(0, 0));
+
+        matrix.close();
+        matrix.close();
+
+        assertTrue(matrix.isClosed());
+        assertThrows(IllegalStateException.class, () -> matrix.get(0, 0));
+        assertThrows(IllegalStateException.class, () -> Matrix.add(matrix, new Matrix(2, 2)));
+        assertThrows(UnsupportedOperationException.class, () -> matrix.getData());
+    }
+
+    // Test that closing a matrix while other threads read it makes their
+    // reads throw IllegalStateException, and never read released memory
+    @Test
+    public void testCloseWhileReading() throws InterruptedException {
+        for (int attempt = 0; attempt < 20; attempt++) {
+            OffHeapMatrix matrix = new OffHeapMatrix(new Matrix(200, 200, 1.0));
+            Throwable[] thrown = new Throwable[4];
+            Thread[] readers = new Thread[thrown.length];
+            for (int t = 0; t < readers.length; t++) {
+                int index = t;
+                readers[t] = new Thread(() -> {
+                    try {
+                        while (true) {
+                            Matrix copy = matrix.toMatrix();
+                            if (copy.sum() != 40000) {
+                                throw new AssertionError("Read changed values");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        thrown[index] = e;
+                    }
+                });
+                readers[t].start();
+            }
+            Thread.sleep(2);
+            matrix.close();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            for (Throwable e : thrown) {
+                assertTrue(e instanceof IllegalStateException);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+
+public class ParallelMultiplicationTest {
+    // Test that the parallel product is identical to the sequential product
+    @Test
+    public void testParallelMatchesSequential() {
+        int parallelism = Matrix.getParallelism();
+        boolean deterministic = Matrix.isDeterministic();
+        try {
+            Matrix matrixA = new Matrix(203, 517, -1.0, 1.0);
+            Matrix matrixB = new Matrix(517, 151, -1.0, 1.0);
+            Matrix.setDeterministic(true);
+
+            Matrix.setParallelism(1);
+            Matrix sequential = Matrix.multiply(matrixA, matrixB);
+            Matrix.setParallelism(4);
+            Matrix parallel = Matrix.multiply(matrixA, matrixB);
+
+            assertArrayEquals(sequential.get(), parallel.get());
+        } finally {
+            Matrix.setParallelism(parallelism);
+            Matrix.setDeterministic(deterministic);
+        }
+    }
+
+    // Test a product with a long shared dimension, which is split across
+    // threads when deterministic mode is off
+    @Test
+    public void testSplitSharedDimension() {
+        int parallelism = Matrix.getParallelism();
+        boolean deterministic = Matrix.isDeterministic();
+        try {
+            Matrix matrixA = new Matrix(40, 3000, -1.0, 1.0);
+            Matrix matrixB = new Matrix(3000, 36, -1.0, 1.0);
+
+            Matrix.setDeterministic(true);
+            Matrix.setParallelism(1);
+            double[][] expected = Matrix.multiply(matrixA, matrixB).get();
+
+            Matrix.setParallelism(4);
+            assertArrayEquals(expected, Matrix.multiply(matrixA, matrixB).get());
+
+            Matrix.setDeterministic(false);
+            double[][] actual = Matrix.multiply(matrixA, matrixB).get();
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], actual[i], 1e-9);
+            }
+        } finally {
+            Matrix.setParallelism(parallelism);
+            Matrix.setDeterministic(deterministic);
+        }
+    }
+
+    // Test that an invalid parallelism level is rejected
+    @Test
+    public void testInvalidParallelism() {
+        assertThrows(IllegalArgumentException.class, () -> Matrix.setParallelism(0));
+    }
+
+    // Test that changing the parallelism level while other threads run
+    // parallel kernels never makes them fail or change their results
+    @Test
+    public void testChangeParallelismWhileRunning() throws InterruptedException {
+        int parallelism = Matrix.getParallelism();
+        try {
+            double[] expected = Matrix.uniform(300, 300, -1.0, 1.0, 5).getData();
+            Throwable[] thrown = new Throwable[3];
+            Thread[] workers = new Thread[thrown.length];
+            for (int t = 0; t < workers.length; t++) {
+                int index = t;
+                workers[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            assertArrayEquals(expected, Matrix.uniform(300, 300, -1.0, 1.0, 5).getData());
+                        }
+                    } catch (Throwable e) {
+                        thrown[index] = e;
+                    }
+                });
+                workers[t].start();
+            }
+            for (int i = 0; i < 5000; i++) {
+                Matrix.setParallelism(2 + i % 3);
+                Thread.yield();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            for (Throwable e : thrown) {
+                assertNull(e);
+            }
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+    }
+}
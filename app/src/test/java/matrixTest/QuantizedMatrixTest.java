@@ -0,0 +1,115 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import matrix.Matrix;
+import matrix.QuantizedMatrix;
+import matrix.Vector;
+
+public class QuantizedMatrixTest {
+
+    // Test the per row scales and the rounding of the quantized values
+    @Test
+    public void testQuantize() {
+        Matrix matrix = new Matrix(new double[][]{{1.27, -0.64, 0.01}, {0, 0, 0}, {-254, 127, 1}});
+        QuantizedMatrix quantized = QuantizedMatrix.quantize(matrix);
+        assertEquals(0.01, quantized.getScale(0), 1e-15);
+        assertEquals(0, quantized.getScale(1));
+        assertEquals(2, quantized.getScale(2));
+        assertEquals(127, quantized.getQuantized(0, 0));
+        assertEquals(-64, quantized.getQuantized(0, 1));
+        assertEquals(1, quantized.getQuantized(0, 2));
+        assertEquals(-127, quantized.getQuantized(2, 0));
+        assertEquals(64, quantized.getQuantized(2, 1));
+        assertEquals(0, quantized.getQuantized(1, 1));
+        assertEquals(-254, quantized.get(2, 0));
+        assertArrayEquals(new double[]{-254, 128, 0}, quantized.toMatrix().getRow(2));
+        assertThrows(IllegalArgumentException.class, () -> quantized.get(3, 0));
+    }
+
+    // Test that the quantized product is the exact integer product scaled
+    @Test
+    public void testMultiplyIsExact() {
+        Matrix weights = new Matrix(37, 53, -1.0, 1.0);
+        Matrix input = new Matrix(53, 5, -2.0, 2.0);
+        QuantizedMatrix quantized = QuantizedMatrix.quantize(weights);
+        double inputScale = QuantizedMatrix.calibrate(List.of(input));
+
+        Matrix result = new Matrix(37, 5);
+        QuantizedMatrix.multiplyInto(quantized, input, inputScale, result);
+        for (int i = 0; i < 37; i++) {
+            for (int j = 0; j < 5; j++) {
+                long sum = 0;
+                for (int k = 0; k < 53; k++) {
+                    long x = Math.round(input.get(k, j) / inputScale);
+                    sum += quantized.getQuantized(i, k) * x;
+                }
+                assertEquals(sum * quantized.getScale(i) * inputScale, result.get(i, j), 1e-12);
+            }
+        }
+
+        Matrix expected = Matrix.multiply(weights, input);
+        for (int i = 0; i < 37; i++) {
+            assertArrayEquals(expected.getRow(i), result.getRow(i), 0.1);
+        }
+    }
+
+    // Test the affine product with a bias, a function and inputs outside of
+    // the calibrated range
+    @Test
+    public void testAffine() {
+        Matrix weights = new Matrix(new double[][]{{1, -1}, {127, 64}});
+        QuantizedMatrix quantized = QuantizedMatrix.quantize(weights);
+        Vector input = new Vector(new double[]{2, 1});
+        Vector bias = new Vector(new double[]{-3, 1});
+        Vector pre = new Vector(2);
+        Vector output = new Vector(2);
+        QuantizedMatrix.affineInto(quantized, input, 1, bias,
+            x -> Math.max(0, x), pre, output);
+        assertArrayEquals(new double[]{-2, 319}, pre.toArray(), 1e-12);
+        assertArrayEquals(new double[]{0, 319}, output.toArray(), 1e-12);
+
+        // The input 2 is clamped to the largest value the scale can hold
+        QuantizedMatrix.affineInto(quantized, input, 1.0 / 127, null, null, null, output);
+        assertArrayEquals(new double[]{0, 191}, output.toArray(), 1e-12);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> QuantizedMatrix.multiplyInto(quantized, new Vector(3), 1, new Vector(2)));
+        assertThrows(IllegalArgumentException.class,
+            () -> QuantizedMatrix.multiplyInto(quantized, input, 0, new Vector(2)));
+        assertThrows(IllegalArgumentException.class, () -> QuantizedMatrix.calibrate(List.of()));
+    }
+
+    // Test that long dot products do not overflow and that the parallel
+    // product matches the sequential one
+    @Test
+    public void testLargeProduct() {
+        int parallelism = Matrix.getParallelism();
+        try {
+            int length = 300000;
+            Matrix weights = new Matrix(4, length, 1.0);
+            Matrix input = new Matrix(length, 1, 1.0);
+            Matrix result = new Matrix(4, 1);
+            QuantizedMatrix.multiplyInto(QuantizedMatrix.quantize(weights), input,
+                QuantizedMatrix.calibrate(List.of(input)), result);
+            assertEquals(length, result.get(0, 0), 1e-6);
+
+            Matrix a = new Matrix(300, 400, -1.0, 1.0);
+            Matrix b = new Matrix(400, 20, -1.0, 1.0);
+            QuantizedMatrix quantized = QuantizedMatrix.quantize(a);
+            double scale = QuantizedMatrix.calibrate(List.of(b));
+            Matrix.setParallelism(1);
+            Matrix sequential = new Matrix(300, 20);
+            QuantizedMatrix.multiplyInto(quantized, b, scale, sequential);
+            Matrix.setParallelism(4);
+            Matrix parallel = new Matrix(300, 20);
+            QuantizedMatrix.multiplyInto(quantized, b, scale, parallel);
+            assertArrayEquals(sequential.getData(), parallel.getData());
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+    }
+}
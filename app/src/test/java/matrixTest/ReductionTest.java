@@ -0,0 +1,123 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+
+import matrix.Matrix;
+import matrix.Vector;
+
+public class ReductionTest {
+
+    // Sums the values exactly and rounds once at the end
+    private static double exactSum(Matrix matrix) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < matrix.getRows(); i++) {
+            for (int j = 0; j < matrix.getColumns(); j++) {
+                sum = sum.add(new BigDecimal(matrix.get(i, j)));
+            }
+        }
+        return sum.doubleValue();
+    }
+
+    // Test the reductions of a small matrix
+    @Test
+    public void testSmallMatrix() {
+        Matrix matrix = new Matrix(new double[][]{{1, -5, 3}, {4, 2, 4}});
+        assertEquals(9, matrix.sum());
+        assertEquals(4, matrix.max());
+        assertEquals(3, matrix.argmax());
+        assertEquals(19, matrix.normL1());
+        assertEquals(Math.sqrt(71), matrix.normL2(), 1e-15);
+        assertArrayEquals(new double[]{-1, 10}, matrix.rowSums().toArray());
+        assertArrayEquals(new double[]{5, -3, 7}, matrix.columnSums().toArray());
+        assertArrayEquals(new double[]{3, 4}, matrix.rowMax().toArray());
+        assertArrayEquals(new double[]{4, 2, 4}, matrix.columnMax().toArray());
+        assertArrayEquals(new int[]{2, 0}, matrix.rowArgmax());
+        assertArrayEquals(new int[]{1, 1, 1}, matrix.columnArgmax());
+
+        Vector vector = new Vector(new double[]{3, 4});
+        assertEquals(5, vector.normL2());
+        assertEquals(1, vector.argmax());
+    }
+
+    // Test that the reductions of a view only read the values of the view
+    @Test
+    public void testView() {
+        Matrix matrix = new Matrix(40, 1500, -1.0, 1.0);
+        Matrix view = new Matrix(matrix.getData(), 3 * 1500 + 7, 1500, 30, 1300);
+        Matrix copy = new Matrix(view.get());
+        assertEquals(copy.sum(), view.sum());
+        assertEquals(copy.normL1(), view.normL1());
+        assertEquals(copy.max(), view.max());
+        assertEquals(copy.argmax(), view.argmax());
+        assertArrayEquals(copy.rowSums().toArray(), view.rowSums().toArray());
+        assertArrayEquals(copy.columnSums().toArray(), view.columnSums().toArray());
+        assertArrayEquals(copy.rowArgmax(), view.rowArgmax());
+        assertArrayEquals(copy.columnArgmax(), view.columnArgmax());
+        assertEquals(exactSum(view), view.sum(), 1e-12);
+    }
+
+    // Test that the pairwise sum stays close to the exact sum
+    @Test
+    public void testAccuracy() {
+        Matrix matrix = new Matrix(1000, 1000, 0.1);
+        double exact = exactSum(matrix);
+        assertEquals(exact, matrix.sum(), Math.ulp(exact) * 16);
+        Vector sums = matrix.columnSums();
+        for (int j = 0; j < 1000; j++) {
+            assertEquals(100, sums.get(j), 1e-12);
+        }
+    }
+
+    // Test the first occurrence of ties and NaN
+    @Test
+    public void testTiesAndNaN() {
+        Matrix matrix = new Matrix(new double[][]{{1, 7, 7}, {7, Double.NaN, 2}});
+        assertTrue(Double.isNaN(matrix.max()));
+        assertEquals(4, matrix.argmax());
+        assertArrayEquals(new int[]{1, 1}, matrix.rowArgmax());
+        assertArrayEquals(new int[]{1, 1, 0}, matrix.columnArgmax());
+
+        Matrix ties = new Matrix(new double[][]{{1, 7, 7}, {7, 3, 2}});
+        assertEquals(1, ties.argmax());
+        assertArrayEquals(new int[]{1, 0, 0}, ties.columnArgmax());
+    }
+
+    // Test that the L2 norm does not overflow or underflow
+    @Test
+    public void testNormRange() {
+        assertEquals(5e200, new Vector(new double[]{3e200, 4e200}).normL2(), 1e186);
+        assertEquals(5e-200, new Vector(new double[]{3e-200, 4e-200}).normL2(), 1e-214);
+        assertEquals(0, new Vector(new double[]{0, 0}).normL2());
+    }
+
+    // Test that the parallel reductions give exactly the sequential values
+    @Test
+    public void testParallelMatchesSequential() {
+        int parallelism = Matrix.getParallelism();
+        try {
+            Matrix matrix = new Matrix(700, 900, -1.0, 1.0);
+            Matrix.setParallelism(1);
+            double sum = matrix.sum();
+            double normL2 = matrix.normL2();
+            int argmax = matrix.argmax();
+            double[] rowSums = matrix.rowSums().toArray();
+            double[] columnSums = matrix.columnSums().toArray();
+            int[] columnArgmax = matrix.columnArgmax();
+
+            Matrix.setParallelism(4);
+            assertEquals(sum, matrix.sum());
+            assertEquals(normL2, matrix.normL2());
+            assertEquals(argmax, matrix.argmax());
+            assertArrayEquals(rowSums, matrix.rowSums().toArray());
+            assertArrayEquals(columnSums, matrix.columnSums().toArray());
+            assertArrayEquals(columnArgmax, matrix.columnArgmax());
+            assertEquals(matrix.max(), matrix.rowMax().max());
+            assertEquals(matrix.max(), matrix.columnMax().max());
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+    }
+}
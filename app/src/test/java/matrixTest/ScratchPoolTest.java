@@ -0,0 +1,169 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import layer.Dense;
+import layer.Layer;
+import matrix.Matrix;
+import matrix.ScratchPool;
+import matrix.Vector;
+
+public class ScratchPoolTest {
+
+    // Test that an array given back to the pool is taken again
+    @Test
+    public void testReuse() {
+        ScratchPool.clear();
+        ScratchPool.resetCounters();
+        double[] first;
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            first = scope.array(100);
+            assertTrue(first.length >= 100);
+        }
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            assertSame(first, scope.array(120));
+            assertNotSame(first, scope.array(100));
+        }
+        assertEquals(1, ScratchPool.hits());
+        assertEquals(2, ScratchPool.misses());
+    }
+
+    // Test that large arrays have their exact length and are never kept
+    @Test
+    public void testLargeArraysBypassPool() {
+        ScratchPool.clear();
+        ScratchPool.resetCounters();
+        double[] first;
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            first = scope.array(3_000_001);
+            assertEquals(3_000_001, first.length);
+        }
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            assertNotSame(first, scope.array(3_000_001));
+        }
+        assertEquals(0, ScratchPool.hits());
+        assertEquals(0, ScratchPool.misses());
+    }
+
+    // Test that a thread keeps a bounded number of values however many
+    // arrays are given back
+    @Test
+    public void testRetainedValuesAreCapped() {
+        ScratchPool.clear();
+        double[][] arrays = new double[16][];
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            for (int i = 0; i < arrays.length; i++) {
+                arrays[i] = scope.array(1 << 19);
+            }
+        }
+        ScratchPool.resetCounters();
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            for (int i = 0; i < arrays.length; i++) {
+                scope.array(1 << 19);
+            }
+        }
+        assertEquals(8, ScratchPool.hits());
+        assertEquals(8, ScratchPool.misses());
+        ScratchPool.clear();
+    }
+
+    // Test the matrices and vectors taken from a scope
+    @Test
+    public void testMatrixAndVector() {
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            Matrix matrix = scope.matrix(3, 5);
+            assertEquals(3, matrix.getRows());
+            assertEquals(5, matrix.getColumns());
+            matrix.set(2, 4, 7);
+            assertEquals(7, matrix.get(2, 4));
+
+            Vector vector = scope.vector(4);
+            assertEquals(4, vector.getRows());
+            vector.set(3, 2);
+            assertEquals(2, vector.get(3));
+
+            assertThrows(IllegalArgumentException.class, () -> scope.matrix(0, 3));
+            assertThrows(IllegalArgumentException.class, () -> scope.array(-1));
+        }
+    }
+
+    // Test that scopes must be closed in order and not used after closing
+    @Test
+    public void testScopeMisuse() {
+        ScratchPool.Scope outer = ScratchPool.open();
+        ScratchPool.Scope inner = ScratchPool.open();
+        assertThrows(IllegalStateException.class, outer::close);
+        inner.close();
+        inner.close();
+        outer.close();
+        assertThrows(IllegalStateException.class, () -> outer.array(10));
+    }
+
+    // Test that a scope cannot be used by another thread
+    @Test
+    public void testOtherThread() throws InterruptedException {
+        try (ScratchPool.Scope scope = ScratchPool.open()) {
+            Throwable[] thrown = new Throwable[1];
+            Thread thread = new Thread(() -> {
+                try {
+                    scope.array(10);
+                } catch (Throwable e) {
+                    thrown[0] = e;
+                }
+            });
+            thread.start();
+            thread.join();
+            assertTrue(thrown[0] instanceof IllegalStateException);
+        }
+    }
+
+    // Test that training steps take their temporaries from the pool
+    @Test
+    public void testDenseUsesPool() {
+        double learningRate = Layer.getLearningRate();
+        try {
+            Layer.setLearningRate(0.01);
+            Dense dense = new Dense(6, 4);
+            Vector input = new Vector(new double[]{1, 2, 3, 4, 5, 6});
+            dense.forwardProp(input);
+            dense.backProp(new Vector(new double[]{1, -1, 0.5, 2}));
+            ScratchPool.resetCounters();
+            dense.forwardProp(input);
+            dense.backProp(new Vector(new double[]{1, -1, 0.5, 2}));
+            assertTrue(ScratchPool.hits() > 0);
+            assertEquals(0, ScratchPool.misses());
+        } finally {
+            Layer.setLearningRate(learningRate);
+        }
+    }
+
+    // Test that a scope that is never closed is reported in debug mode
+    @Test
+    public void testLeakDetection() throws InterruptedException {
+        boolean debug = ScratchPool.isDebug();
+        try {
+            ScratchPool.setDebug(true);
+            ScratchPool.resetCounters();
+            // The leaked scope is opened on its own thread so the scopes of
+            // this thread are not left open
+            Thread thread = new Thread(() -> ScratchPool.open().array(10));
+            thread.start();
+            thread.join();
+            for (int i = 0; i < 100 && ScratchPool.leaks() == 0; i++) {
+                System.gc();
+                Thread.sleep(20);
+            }
+            assertEquals(1, ScratchPool.leaks());
+
+            try (ScratchPool.Scope scope = ScratchPool.open()) {
+                scope.array(10);
+            }
+            System.gc();
+            Thread.sleep(50);
+            assertEquals(1, ScratchPool.leaks());
+        } finally {
+            ScratchPool.setDebug(debug);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.SparseMatrix;
+import matrix.SparseMatrix.Format;
+import matrix.SparseVector;
+import matrix.Vector;
+
+public class SparseMatrixTest {
+    // Helper that makes a random matrix where most values are zero
+    private static Matrix sparseValues(int rows, int columns) {
+        Matrix matrix = new Matrix(rows, columns, -1.0, 1.0);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (Math.random() < 0.9) {
+                    matrix.set(i, j, 0);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    // Test converting between dense, CSR and CSC
+    @Test
+    public void testConversion() {
+        Matrix dense = new Matrix(new double[][]{
+            {0, 2, 0},
+            {1, 0, 3}
+        });
+
+        SparseMatrix csr = new SparseMatrix(dense, Format.CSR);
+        assertArrayEquals(new int[]{0, 1, 3}, csr.getPointers());
+        assertArrayEquals(new int[]{1, 0, 2}, csr.getIndices());
+        assertArrayEquals(new double[]{2, 1, 3}, csr.getValues());
+
+        SparseMatrix csc = csr.toFormat(Format.CSC);
+        assertEquals(Format.CSC, csc.getFormat());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, csc.getPointers());
+        assertArrayEquals(new int[]{1, 0, 1}, csc.getIndices());
+        assertArrayEquals(new double[]{1, 2, 3}, csc.getValues());
+
+        assertArrayEquals(dense.get(), csc.toFormat(Format.CSR).toMatrix().get());
+        assertArrayEquals(dense.T().get(), csr.T().toMatrix().get());
+        assertEquals(3, csc.get(1, 2));
+        assertEquals(0, csc.get(0, 0));
+        assertSame(csr, csr.toFormat(Format.CSR));
+    }
+
+    // Test sparse times dense and dense times sparse products in both formats
+    @Test
+    public void testProductsMatchDense() {
+        Matrix sparseValues = sparseValues(70, 90);
+        Matrix left = new Matrix(20, 70, -1.0, 1.0);
+        Matrix right = new Matrix(90, 15, -1.0, 1.0);
+
+        for (Format format : Format.values()) {
+            SparseMatrix sparse = new SparseMatrix(sparseValues, format);
+            Matrix expectedRight = Matrix.multiply(sparseValues, right);
+            Matrix expectedLeft = Matrix.multiply(left, sparseValues);
+            Matrix resultRight = SparseMatrix.multiply(sparse, right);
+            Matrix resultLeft = SparseMatrix.multiply(left, sparse);
+            for (int i = 0; i < expectedRight.getRows(); i++) {
+                assertArrayEquals(expectedRight.getRow(i), resultRight.getRow(i), 1e-12);
+            }
+            for (int i = 0; i < expectedLeft.getRows(); i++) {
+                assertArrayEquals(expectedLeft.getRow(i), resultLeft.getRow(i), 1e-12);
+            }
+        }
+    }
+
+    // Test the sparse vector products and outer product update
+    @Test
+    public void testSparseVector() {
+        Vector dense = new Vector(new double[]{0, 0, 2, 0, -1});
+        SparseVector vector = new SparseVector(dense);
+        Matrix matrix = new Matrix(3, 5, -1.0, 1.0);
+        Vector column = new Vector(new double[]{1, 2, 3});
+
+        assertArrayEquals(new int[]{2, 4}, vector.getIndices());
+        assertArrayEquals(dense.toArray(), vector.toVector().toArray());
+        assertArrayEquals(Vector.multiply(matrix, dense).toArray(), SparseVector.multiply(matrix, vector).toArray(), 1e-12);
+        assertEquals(Vector.dotProduct(dense, dense), SparseVector.dotProduct(vector, dense), 1e-12);
+
+        Matrix expected = Matrix.add(matrix, Matrix.scale(Matrix.multiplyTransposeB(column, dense), 0.5));
+        SparseVector.addOuterProduct(matrix, 0.5, column, vector);
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(expected.getRow(i), matrix.getRow(i), 1e-12);
+        }
+    }
+
+    // Test that invalid arrays and shapes are rejected
+    @Test
+    public void testInvalidSparseMatrix() {
+        assertThrows(IllegalArgumentException.class, () -> new SparseMatrix(Format.CSR, 2, 2,
+            new int[]{0, 1, 2}, new int[]{1, 2}, new double[]{1, 1}));
+        assertThrows(IllegalArgumentException.class, () -> new SparseVector(3, new int[]{2, 1}, new double[]{1, 1}));
+        assertThrows(IllegalArgumentException.class, () -> SparseMatrix.multiply(new Matrix(2, 3), new SparseVector(2, new int[]{}, new double[]{})));
+    }
+}
@@ -0,0 +1,166 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.Tensor;
+import matrix.Vector;
+
+public class TensorTest {
+
+    // Fills a tensor with the values of a new random tensor of the same shape
+    private static Tensor random(int... shape) {
+        int size = 1;
+        for (int s : shape) {
+            size *= s;
+        }
+        return new Tensor(new Matrix(1, size, -1.0, 1.0).getData(), shape);
+    }
+
+    // Computes the convolution one output at a time as the reference
+    private static Tensor reference(Tensor input, Tensor kernel, int stride, int padding) {
+        int[] in = input.getShape();
+        int[] k = kernel.getShape();
+        int height = (in[2] + 2 * padding - k[2]) / stride + 1;
+        int width = (in[3] + 2 * padding - k[3]) / stride + 1;
+        Tensor result = new Tensor(in[0], k[0], height, width);
+        for (int n = 0; n < in[0]; n++) {
+            for (int o = 0; o < k[0]; o++) {
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        double sum = 0;
+                        for (int c = 0; c < in[1]; c++) {
+                            for (int r = 0; r < k[2]; r++) {
+                                for (int s = 0; s < k[3]; s++) {
+                                    int iy = y * stride + r - padding;
+                                    int ix = x * stride + s - padding;
+                                    if (iy >= 0 && iy < in[2] && ix >= 0 && ix < in[3]) {
+                                        sum += input.get(n, c, iy, ix) *
+                                            kernel.get(o, c, k[2] - 1 - r, k[3] - 1 - s);
+                                    }
+                                }
+                            }
+                        }
+                        result.set(sum, n, o, y, x);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertTensorEquals(Tensor expected, Tensor actual) {
+        assertArrayEquals(expected.getShape(), actual.getShape());
+        assertArrayEquals(expected.copy().getData(), actual.copy().getData(), 1e-12);
+    }
+
+    // Test that a matrix, a vector and their tensors share their values
+    @Test
+    public void testMatrixAndVectorViews() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        Tensor tensor = matrix.toTensor();
+        assertArrayEquals(new int[]{2, 3}, tensor.getShape());
+        assertSame(matrix.getData(), tensor.getData());
+        tensor.set(10, 1, 2);
+        assertEquals(10, matrix.get(1, 2));
+
+        Matrix view = tensor.toMatrix();
+        assertSame(matrix.getData(), view.getData());
+        view.set(0, 0, -1);
+        assertEquals(-1, tensor.get(0, 0));
+
+        Vector vector = new Vector(new double[]{1, 2, 3});
+        Tensor line = vector.toTensor();
+        assertEquals(1, line.getRank());
+        line.set(7, 2);
+        assertEquals(7, vector.get(2));
+        assertEquals(7, line.toVector().get(2));
+    }
+
+    // Test permuted, sliced and reshaped views
+    @Test
+    public void testViews() {
+        Tensor tensor = new Tensor(new double[]{0, 1, 2, 3, 4, 5}, 2, 3);
+        Tensor transposed = tensor.permute(1, 0);
+        assertArrayEquals(new int[]{3, 2}, transposed.getShape());
+        assertEquals(5, transposed.get(2, 1));
+        assertFalse(transposed.isContiguous());
+        assertArrayEquals(new double[]{0, 3, 1, 4, 2, 5}, transposed.copy().getData());
+        assertThrows(IllegalArgumentException.class, transposed::toMatrix);
+
+        Tensor column = tensor.slice(1, 1, 2);
+        assertArrayEquals(new int[]{2, 1}, column.getShape());
+        assertEquals(4, column.get(1, 0));
+
+        Tensor reshaped = tensor.reshape(3, 1, 2);
+        assertSame(tensor.getData(), reshaped.getData());
+        assertEquals(3, reshaped.get(1, 0, 1));
+        assertEquals(4, transposed.reshape(6).get(3));
+    }
+
+    // Test that invalid ranks and shapes are rejected
+    @Test
+    public void testInvalidShapes() {
+        assertThrows(IllegalArgumentException.class, () -> new Tensor(1, 2, 3, 4, 5, 6));
+        assertThrows(IllegalArgumentException.class, () -> new Tensor(3, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Tensor(new double[5], 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> new Tensor(2, 3).reshape(5));
+        assertThrows(IllegalArgumentException.class,
+            () -> Tensor.convolution(new Tensor(1, 2, 5, 5), new Tensor(1, 3, 3, 3)));
+        assertThrows(IllegalArgumentException.class,
+            () -> Tensor.convolution(new Tensor(2, 5, 5), new Tensor(1, 3, 3)));
+    }
+
+    // Test that one channel of one image matches Matrix.convolution
+    @Test
+    public void testSingleChannelMatchesMatrix() {
+        Matrix matrix = new Matrix(9, 11, -1.0, 1.0);
+        Matrix kernel = new Matrix(3, 4, -1.0, 1.0);
+        Tensor result = Tensor.convolution(
+            new Tensor(matrix.getData(), 1, 1, 9, 11), new Tensor(kernel.getData(), 1, 1, 3, 4));
+        Matrix expected = Matrix.convolutionDirect(matrix, kernel);
+        assertArrayEquals(new int[]{1, 1, 7, 8}, result.getShape());
+        assertArrayEquals(expected.getData(), result.getData(), 1e-12);
+    }
+
+    // Test batched, multi-channel convolutions with strides and padding
+    @Test
+    public void testBatchedConvolution() {
+        int[][] cases = {{2, 3, 8, 9, 4, 3, 3, 1, 0}, {3, 2, 10, 7, 5, 3, 2, 2, 1},
+            {1, 4, 6, 6, 2, 5, 5, 1, 2}, {2, 1, 9, 9, 3, 2, 4, 3, 1}};
+        for (int[] c : cases) {
+            Tensor input = random(c[0], c[1], c[2], c[3]);
+            Tensor kernel = random(c[4], c[1], c[5], c[6]);
+            assertTensorEquals(reference(input, kernel, c[7], c[8]),
+                Tensor.convolution(input, kernel, c[7], c[8]));
+        }
+    }
+
+    // Test convolutions of strided views into a strided result
+    @Test
+    public void testConvolutionOfViews() {
+        Tensor input = random(3, 5, 12, 12).permute(1, 0, 3, 2).slice(2, 1, 11);
+        Tensor kernel = random(3, 4, 3, 3).permute(1, 0, 2, 3);
+        Tensor result = new Tensor(4, 5, 8, 10).permute(1, 0, 2, 3);
+        Tensor.convolutionInto(input, kernel, 1, 0, result);
+        assertTensorEquals(reference(input, kernel, 1, 0), result);
+    }
+
+    // Test that the parallel convolution matches the sequential one
+    @Test
+    public void testParallelConvolution() {
+        int parallelism = Matrix.getParallelism();
+        try {
+            Tensor input = random(2, 8, 40, 40);
+            Tensor kernel = random(16, 8, 3, 3);
+            Matrix.setParallelism(1);
+            Tensor expected = Tensor.convolution(input, kernel, 1, 1);
+            Matrix.setParallelism(4);
+            assertTensorEquals(expected, Tensor.convolution(input, kernel, 1, 1));
+            assertTensorEquals(reference(input, kernel, 1, 1), expected);
+        } finally {
+            Matrix.setParallelism(parallelism);
+        }
+    }
+}
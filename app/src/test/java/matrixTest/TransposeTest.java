@@ -45,4 +45,36 @@ public class TransposeTest {
         double[][] result3 = Matrix.transpose(matrix3);
         assertArrayEquals(expectedResult3, result3, "Transposition test 3 failed");
     }
-}
\ No newline at end of file
+
+    // Test the transpose of matrices split into many uneven blocks, for both
+    // contiguous matrices and strided views
+    @Test
+    public void testLargeTranspose() {
+        Matrix matrix = new Matrix(131, 77, -1.0, 1.0);
+        Matrix view = new Matrix(matrix.getData(), 78, 77, 100, 70);
+
+        for (Matrix input : new Matrix[]{matrix, view}) {
+            Matrix result = input.T();
+            for (int i = 0; i < input.getRows(); i++) {
+                for (int j = 0; j < input.getColumns(); j++) {
+                    assertEquals(input.get(i, j), result.get(j, i));
+                }
+            }
+        }
+    }
+
+    // Test the in place transpose of square matrices and that it rejects
+    // matrices that are not square
+    @Test
+    public void testTransposeInPlace() {
+        for (int size : new int[]{1, 3, 70}) {
+            Matrix matrix = new Matrix(size, size, -1.0, 1.0);
+            Matrix expected = matrix.T();
+
+            matrix.transposeInPlace();
+
+            assertArrayEquals(expected.get(), matrix.get());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Matrix(2, 3).transposeInPlace());
+    }
+}
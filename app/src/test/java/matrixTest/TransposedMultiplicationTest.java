@@ -0,0 +1,62 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.Vector;
+
+public class TransposedMultiplicationTest {
+    // Test A^T * B against an explicit transpose for small and blocked sizes
+    @Test
+    public void testMultiplyTransposeA() {
+        for (int size : new int[]{3, 70}) {
+            Matrix matrixA = new Matrix(size + 5, size, -1.0, 1.0);
+            Matrix matrixB = new Matrix(size + 5, size + 2, -1.0, 1.0);
+
+            Matrix expected = Matrix.multiply(matrixA.T(), matrixB);
+            Matrix result = Matrix.multiplyTransposeA(matrixA, matrixB);
+
+            assertArrayEquals(expected.get(), result.get());
+        }
+    }
+
+    // Test A * B^T against an explicit transpose for small and blocked sizes
+    @Test
+    public void testMultiplyTransposeB() {
+        for (int size : new int[]{3, 70}) {
+            Matrix matrixA = new Matrix(size, size + 5, -1.0, 1.0);
+            Matrix matrixB = new Matrix(size + 2, size + 5, -1.0, 1.0);
+
+            Matrix expected = Matrix.multiply(matrixA, matrixB.T());
+            Matrix result = Matrix.multiplyTransposeB(matrixA, matrixB);
+
+            assertArrayEquals(expected.get(), result.get());
+        }
+    }
+
+    // Test the transposed matrix-vector product
+    @Test
+    public void testMultiplyTransposeVector() {
+        Matrix matrix = new Matrix(new double[][]{
+            {1, 2},
+            {3, 4},
+            {5, 6}
+        });
+        Vector vector = new Vector(new double[]{1, 0, -1});
+
+        Vector result = Vector.multiplyTranspose(matrix, vector);
+
+        assertArrayEquals(new double[]{-4, -4}, result.toArray());
+    }
+
+    // Test that incompatible shapes are rejected
+    @Test
+    public void testInvalidShapes() {
+        Matrix matrixA = new Matrix(2, 3);
+        Matrix matrixB = new Matrix(3, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> Matrix.multiplyTransposeA(matrixA, matrixB));
+        assertThrows(IllegalArgumentException.class, () -> Matrix.multiplyTransposeB(matrixA, matrixB));
+    }
+}
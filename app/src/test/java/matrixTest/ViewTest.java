@@ -0,0 +1,157 @@
+package matrixTest;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import matrix.Matrix;
+import matrix.OffHeapMatrix;
+import matrix.Vector;
+
+public class ViewTest {
+
+    private static void assertMatrixEquals(Matrix expected, Matrix actual, double delta) {
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getColumns(), actual.getColumns());
+        for (int i = 0; i < expected.getRows(); i++) {
+            assertArrayEquals(expected.getRow(i), actual.getRow(i), delta);
+        }
+    }
+
+    // Test that row, column and block views share the storage of the matrix
+    @Test
+    public void testViewsShareStorage() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}});
+        Matrix row = matrix.row(1);
+        assertArrayEquals(new double[][]{{4, 5, 6}}, row.get());
+        Vector column = matrix.column(2);
+        assertArrayEquals(new double[]{3, 6, 9}, column.toArray());
+        Matrix block = matrix.submatrix(1, 1, 2, 2);
+        assertArrayEquals(new double[][]{{5, 6}, {8, 9}}, block.get());
+
+        row.set(0, 2, -6);
+        assertEquals(-6, column.get(1));
+        assertEquals(-6, block.get(0, 1));
+        column.set(2, -9);
+        assertEquals(-9, matrix.get(2, 2));
+        assertSame(matrix.getData(), block.getData());
+
+        assertThrows(IllegalArgumentException.class, () -> matrix.row(3));
+        assertThrows(IllegalArgumentException.class, () -> matrix.column(-1));
+        assertThrows(IllegalArgumentException.class, () -> matrix.submatrix(2, 0, 2, 1));
+    }
+
+    // Test the kernels on strided views
+    @Test
+    public void testKernelsOnViews() {
+        Matrix matrix = new Matrix(20, 30, -1.0, 1.0);
+        Matrix block = matrix.submatrix(3, 4, 10, 12);
+        Matrix copy = new Matrix(block.get());
+        Matrix other = new Matrix(12, 7, -1.0, 1.0);
+        assertMatrixEquals(Matrix.multiply(copy, other), Matrix.multiply(block, other), 1e-12);
+        assertMatrixEquals(Matrix.add(copy, copy), Matrix.add(block, block), 0);
+
+        Vector column = matrix.column(5);
+        Vector values = new Vector(matrix.getColumn(5));
+        assertEquals(Vector.dotProduct(values, values), Vector.dotProduct(column, column), 1e-12);
+        assertArrayEquals(Vector.scale(values, 2).toArray(), Vector.scale(column, 2).toArray());
+
+        block.scaleInPlace(0);
+        assertTrue(matrix.get(3, 4) == 0);
+        assertTrue(matrix.get(2, 4) != 0);
+    }
+
+    // Test that a transposed view reads and writes the transposed values
+    @Test
+    public void testTransposedView() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        Matrix view = matrix.transposedView();
+        assertTrue(view.isTransposed());
+        assertFalse(view.isContiguous());
+        assertEquals(3, view.getRows());
+        assertEquals(2, view.getColumns());
+        assertArrayEquals(matrix.T().get(), view.get());
+        view.set(2, 1, 60);
+        assertEquals(60, matrix.get(1, 2));
+
+        assertArrayEquals(new double[]{2, 5}, view.getRow(1));
+        assertArrayEquals(new double[]{1, 2, 3}, view.column(0).toArray());
+        assertArrayEquals(new double[][]{{2, 5}, {3, 60}}, view.submatrix(1, 0, 2, 2).get());
+        assertArrayEquals(new double[][]{{3, 60}}, view.row(2).get());
+        assertArrayEquals(matrix.get(), view.transposedView().get());
+        assertFalse(view.transposedView().isTransposed());
+        assertEquals(60, view.toTensor().get(2, 1));
+    }
+
+    // Test products with transposed views as operands and as the result
+    @Test
+    public void testTransposedProducts() {
+        Matrix a = new Matrix(40, 30, -1.0, 1.0);
+        Matrix b = new Matrix(40, 50, -1.0, 1.0);
+        Matrix expected = Matrix.multiply(a.T(), b);
+        assertMatrixEquals(expected, Matrix.multiply(a.transposedView(), b), 1e-12);
+
+        Matrix c = new Matrix(50, 30, -1.0, 1.0);
+        assertMatrixEquals(Matrix.multiply(b, c),
+            Matrix.multiply(b, c.T().transposedView()), 1e-12);
+
+        Matrix result = new Matrix(40, 30);
+        Matrix.multiplyInto(c.transposedView(), b.transposedView(), result.transposedView());
+        assertMatrixEquals(Matrix.multiply(b, c), result, 1e-12);
+
+        Vector x = new Vector(new double[]{1, -2, 3});
+        Matrix small = new Matrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        assertArrayEquals(Vector.multiplyTranspose(small.T(), x).toArray(),
+            Vector.multiply(small.T().transposedView(), x).toArray(), 1e-12);
+    }
+
+    // Test the element wise operations, reductions and expressions on
+    // transposed views
+    @Test
+    public void testOtherOperationsOnTransposedViews() {
+        Matrix a = new Matrix(6, 9, -1.0, 1.0);
+        Matrix b = new Matrix(9, 6, -1.0, 1.0);
+        Matrix view = a.transposedView();
+        Matrix transpose = a.T();
+
+        assertMatrixEquals(Matrix.add(transpose, b), Matrix.add(view, b), 0);
+        assertMatrixEquals(Matrix.subtract(b, transpose), Matrix.subtract(b, view), 0);
+        assertMatrixEquals(Matrix.elementWiseMultiply(view, view),
+            Matrix.elementWiseMultiply(transpose, transpose), 0);
+
+        Matrix result = new Matrix(6, 9);
+        Matrix.addInto(view, b, result.transposedView());
+        assertMatrixEquals(Matrix.add(transpose, b).T(), result, 0);
+
+        assertEquals(transpose.sum(), view.sum(), 1e-12);
+        assertEquals(transpose.max(), view.max());
+        assertEquals(transpose.argmax(), view.argmax());
+        assertArrayEquals(transpose.rowSums().toArray(), view.rowSums().toArray(), 1e-12);
+        assertArrayEquals(transpose.columnArgmax(), view.columnArgmax());
+
+        assertMatrixEquals(Matrix.add(transpose, b),
+            view.lazy().plus(b.lazy()).eval(), 0);
+        assertMatrixEquals(Matrix.convolution(transpose, b.submatrix(0, 0, 3, 3)),
+            Matrix.convolution(view, b.submatrix(0, 0, 3, 3)), 1e-12);
+        assertMatrixEquals(transpose.T(), view.T(), 0);
+
+        Matrix square = new Matrix(5, 5, -1.0, 1.0);
+        Matrix squareView = square.transposedView();
+        Matrix before = new Matrix(square.get());
+        squareView.transposeInPlace();
+        assertMatrixEquals(before.T(), square, 0);
+    }
+
+    // Test that views of an off-heap matrix are rejected with a clear error,
+    // while operations that copy it still work
+    @Test
+    public void testOffHeapViews() {
+        try (OffHeapMatrix matrix = new OffHeapMatrix(new Matrix(new double[][]{{1, 2}, {3, 4}}))) {
+            assertThrows(IllegalArgumentException.class, () -> matrix.row(0));
+            assertThrows(IllegalArgumentException.class, () -> matrix.column(1));
+            assertThrows(IllegalArgumentException.class, () -> matrix.submatrix(0, 0, 1, 1));
+            assertThrows(IllegalArgumentException.class, matrix::transposedView);
+            assertArrayEquals(new double[]{2, 4}, matrix.toMatrix().column(1).toArray());
+            assertArrayEquals(new double[][]{{1, 3}, {2, 4}}, matrix.T().get());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package vectorTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import matrix.Matrix;
+import matrix.Vector;
+
+public class VectorStorageTest {
+
+    // Test that a wrapped array is shared with the vector both ways
+    @Test
+    public void testWrapSharesArray() {
+        double[] values = {1, 2, 3};
+        Vector vector = Vector.wrap(values);
+        assertSame(values, vector.getData());
+        assertSame(values, vector.toArray());
+        values[1] = 20;
+        assertEquals(20, vector.get(1));
+        vector.scaleInPlace(2);
+        assertArrayEquals(new double[]{2, 40, 6}, values);
+        assertThrows(NullPointerException.class, () -> Vector.wrap(null));
+    }
+
+    // Test that the array constructor copies into one flat array
+    @Test
+    public void testConstructorCopies() {
+        double[] values = {1, 2, 3};
+        Vector vector = new Vector(values);
+        assertNotSame(values, vector.getData());
+        assertEquals(3, vector.getData().length);
+        assertEquals(1, vector.getStride());
+        values[0] = 10;
+        assertEquals(1, vector.get(0));
+        assertThrows(NullPointerException.class, () -> new Vector((double[]) null));
+    }
+
+    // Test that toArray copies the values of a view instead of returning the
+    // array it shares with a matrix
+    @Test
+    public void testToArrayOfView() {
+        Matrix matrix = new Matrix(new double[][]{{1, 2}, {3, 4}});
+        Vector column = matrix.column(1);
+        double[] values = column.toArray();
+        assertArrayEquals(new double[]{2, 4}, values);
+        values[0] = 0;
+        assertEquals(2, matrix.get(0, 1));
+
+        Vector result = Vector.multiply(matrix, Vector.wrap(new double[]{1, 1}));
+        assertSame(result.getData(), result.toArray());
+    }
+
+    // Test that every entry is checked for a zero vector
+    @Test
+    public void testIsZeroVector() {
+        assertTrue(new Vector(4).isZeroVector());
+        assertFalse(Vector.wrap(new double[]{0, 0, 1}).isZeroVector());
+    }
+}